@@ -0,0 +1,434 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Scales the consumers of a listener container between a minimum and a maximum, instead of a fixed number that is sized
+ * for the peaks. Every interval it looks at three signals:
+ *
+ * - the queue depth: more than 'highQueueDepthPerConsumer' waiting messages per consumer is a backlog, fewer than
+ * 'lowQueueDepthPerConsumer' means the consumers are idle;
+ * - the average processing time of the messages of the last interval, compared to the lowest one seen so far (the
+ * baseline): a slower history job with the same work is the database telling it's busy;
+ * - the utilization of the database connection pool (connections in use plus threads waiting for one, divided by the
+ * maximum pool size).
+ *
+ * A backlog adds 'scaleUpStep' consumers, but only when the database has headroom (pool utilization below the low
+ * watermark, processing time below 'lowLatencyFactor' times the baseline). A busy database (pool utilization above the
+ * high watermark or processing time above 'highLatencyFactor' times the baseline) multiplies the consumers by
+ * 'throttleFactor', whatever the queue depth: more consumers would only queue up for the database. Idle consumers are
+ * removed one 'scaleDownStep' at a time. Between the watermarks nothing changes, a change needs the same signal for a
+ * number of consecutive intervals (more for scaling down than for up) and after a change the controller waits
+ * 'cooldownMillis' to see its effect.
+ *
+ * The signals and the way to change the concurrency are plugged in, so the same controller works for the Spring AMQP and
+ * JMS listener containers. Signals that are not set are ignored. Every decision is counted in the
+ * {@link AdaptiveConcurrencyMetrics}; changes are also printed.
+ */
+public class AdaptiveConcurrencyController {
+
+    public enum Decision {
+        SCALE_UP, SCALE_DOWN, THROTTLE, HOLD
+    }
+
+    protected int minConcurrency = 2;
+    protected int maxConcurrency = 20;
+    protected int initialConcurrency;
+    protected long intervalMillis = 1000L;
+    protected long cooldownMillis = 2000L;
+
+    protected long highQueueDepthPerConsumer = 100L;
+    protected long lowQueueDepthPerConsumer = 10L;
+    protected double highLatencyFactor = 1.5;
+    protected double lowLatencyFactor = 1.2;
+    protected double highPoolUtilization = 0.9;
+    protected double lowPoolUtilization = 0.7;
+
+    protected int scaleUpIntervals = 2;
+    protected int scaleDownIntervals = 5;
+    protected int scaleUpStep = 2;
+    protected int scaleDownStep = 1;
+    protected double throttleFactor = 0.75;
+
+    protected String name = "listener";
+    protected LongSupplier queueDepth;
+    protected LongSupplier processedMessages;
+    protected LongSupplier processingNanos;
+    protected DoubleSupplier poolUtilization;
+    protected IntConsumer concurrencySetter;
+
+    protected AdaptiveConcurrencyMetrics metrics = new AdaptiveConcurrencyMetrics();
+
+    protected volatile int concurrency;
+    protected Decision pendingDecision = Decision.HOLD;
+    protected int pendingIntervals;
+    protected long lastChangeNanos;
+    protected long lastMessages;
+    protected long lastProcessingNanos;
+    protected double baselineProcessingMillis = Double.NaN;
+
+    protected ScheduledExecutorService scheduler;
+
+    /**
+     * Sets the initial concurrency (or the minimum when there is none) and evaluates the signals every 'intervalMillis'.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        if (concurrencySetter == null) {
+            throw new RuntimeException("No concurrency setter configured for the adaptive concurrency controller of " + name);
+        }
+        if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+            throw new RuntimeException("Invalid concurrency range " + minConcurrency + "-" + maxConcurrency + " for " + name);
+        }
+
+        long now = System.nanoTime();
+        concurrency = Math.max(minConcurrency, Math.min(maxConcurrency, initialConcurrency > 0 ? initialConcurrency : minConcurrency));
+        concurrencySetter.accept(concurrency);
+        lastChangeNanos = now;
+        lastMessages = processedMessages != null ? processedMessages.getAsLong() : 0L;
+        lastProcessingNanos = processingNanos != null ? processingNanos.getAsLong() : 0L;
+        metrics.recordConcurrency(concurrency, now);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "flowable-concurrency-controller-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                evaluate(System.nanoTime());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Reads the signals, decides and, when needed, changes the concurrency. Called by the controller thread; 'now' is a
+     * System.nanoTime() value, which allows to drive the controller with simulated time.
+     */
+    protected synchronized Decision evaluate(long now) {
+        long depth = queueDepth != null ? queueDepth.getAsLong() : -1L;
+        double pool = poolUtilization != null ? poolUtilization.getAsDouble() : 0.0;
+        double latency = intervalProcessingMillis();
+        if (latency >= 0.0) {
+            // The baseline drifts up slowly (0.1% per interval), so it follows a workload that became heavier for good
+            baselineProcessingMillis = Double.isNaN(baselineProcessingMillis) ? latency : Math.min(latency, baselineProcessingMillis * 1.001);
+        }
+
+        boolean databaseBusy = pool >= highPoolUtilization || (latency >= 0.0 && latency > baselineProcessingMillis * highLatencyFactor);
+        boolean databaseHeadroom = pool < lowPoolUtilization && (latency < 0.0 || latency <= baselineProcessingMillis * lowLatencyFactor);
+        boolean backlog = depth > highQueueDepthPerConsumer * concurrency;
+        boolean idle = depth >= 0 && depth <= lowQueueDepthPerConsumer * concurrency;
+
+        Decision wanted = Decision.HOLD;
+        if (databaseBusy && concurrency > minConcurrency) {
+            wanted = Decision.THROTTLE;
+        } else if (backlog && databaseHeadroom && concurrency < maxConcurrency) {
+            wanted = Decision.SCALE_UP;
+        } else if (idle && !databaseBusy && concurrency > minConcurrency) {
+            wanted = Decision.SCALE_DOWN;
+        }
+        if (backlog && !databaseHeadroom) {
+            metrics.recordDatabaseLimited();
+        }
+
+        if (wanted != pendingDecision) {
+            pendingDecision = wanted;
+            pendingIntervals = 0;
+        }
+        pendingIntervals++;
+
+        Decision decision = wanted;
+        int requiredIntervals = wanted == Decision.SCALE_DOWN ? scaleDownIntervals : scaleUpIntervals;
+        if (wanted != Decision.HOLD && (pendingIntervals < requiredIntervals || now - lastChangeNanos < TimeUnit.MILLISECONDS.toNanos(cooldownMillis))) {
+            metrics.recordDeferred();
+            decision = Decision.HOLD;
+        }
+
+        int oldConcurrency = concurrency;
+        int newConcurrency = oldConcurrency;
+        if (decision == Decision.SCALE_UP) {
+            newConcurrency = Math.min(maxConcurrency, oldConcurrency + scaleUpStep);
+        } else if (decision == Decision.THROTTLE) {
+            newConcurrency = Math.max(minConcurrency, Math.min(oldConcurrency - 1, (int) (oldConcurrency * throttleFactor)));
+        } else if (decision == Decision.SCALE_DOWN) {
+            newConcurrency = Math.max(minConcurrency, oldConcurrency - scaleDownStep);
+        }
+
+        metrics.recordEvaluation(decision, depth, latency, pool);
+        if (newConcurrency != oldConcurrency) {
+            concurrencySetter.accept(newConcurrency);
+            concurrency = newConcurrency;
+            lastChangeNanos = now;
+            pendingDecision = Decision.HOLD;
+            pendingIntervals = 0;
+            metrics.recordConcurrency(newConcurrency, now);
+            System.out.println(String.format("%s consumers %d -> %d (%s): queue depth %d, processing %.2f ms (baseline %.2f ms), db pool %.0f%%",
+                    name, oldConcurrency, newConcurrency, decision, depth, latency, baselineProcessingMillis, pool * 100.0));
+        }
+        return decision;
+    }
+
+    /**
+     * The average processing time of the messages since the last evaluation, -1 when there were none.
+     */
+    protected double intervalProcessingMillis() {
+        if (processedMessages == null || processingNanos == null) {
+            return -1.0;
+        }
+        long messages = processedMessages.getAsLong();
+        long nanos = processingNanos.getAsLong();
+        long intervalMessages = messages - lastMessages;
+        long intervalNanos = nanos - lastProcessingNanos;
+        lastMessages = messages;
+        lastProcessingNanos = nanos;
+        return intervalMessages > 0 ? intervalNanos / (intervalMessages * 1_000_000.0) : -1.0;
+    }
+
+    /**
+     * The connections in use plus the threads waiting for one, relative to the maximum pool size of a Hikari pool.
+     */
+    public static DoubleSupplier hikariPoolUtilization(HikariDataSource dataSource) {
+        return () -> {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            if (pool == null) {
+                return 0.0; // the pool starts with the first connection
+            }
+            return (pool.getActiveConnections() + pool.getThreadsAwaitingConnection()) / (double) dataSource.getMaximumPoolSize();
+        };
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public double getBaselineProcessingMillis() {
+        return baselineProcessingMillis;
+    }
+
+    public AdaptiveConcurrencyMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public void setMinConcurrency(int minConcurrency) {
+        this.minConcurrency = minConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getInitialConcurrency() {
+        return initialConcurrency;
+    }
+
+    public void setInitialConcurrency(int initialConcurrency) {
+        this.initialConcurrency = initialConcurrency;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public long getCooldownMillis() {
+        return cooldownMillis;
+    }
+
+    public void setCooldownMillis(long cooldownMillis) {
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    public long getHighQueueDepthPerConsumer() {
+        return highQueueDepthPerConsumer;
+    }
+
+    public void setHighQueueDepthPerConsumer(long highQueueDepthPerConsumer) {
+        this.highQueueDepthPerConsumer = highQueueDepthPerConsumer;
+    }
+
+    public long getLowQueueDepthPerConsumer() {
+        return lowQueueDepthPerConsumer;
+    }
+
+    public void setLowQueueDepthPerConsumer(long lowQueueDepthPerConsumer) {
+        this.lowQueueDepthPerConsumer = lowQueueDepthPerConsumer;
+    }
+
+    public double getHighLatencyFactor() {
+        return highLatencyFactor;
+    }
+
+    public void setHighLatencyFactor(double highLatencyFactor) {
+        this.highLatencyFactor = highLatencyFactor;
+    }
+
+    public double getLowLatencyFactor() {
+        return lowLatencyFactor;
+    }
+
+    public void setLowLatencyFactor(double lowLatencyFactor) {
+        this.lowLatencyFactor = lowLatencyFactor;
+    }
+
+    public double getHighPoolUtilization() {
+        return highPoolUtilization;
+    }
+
+    public void setHighPoolUtilization(double highPoolUtilization) {
+        this.highPoolUtilization = highPoolUtilization;
+    }
+
+    public double getLowPoolUtilization() {
+        return lowPoolUtilization;
+    }
+
+    public void setLowPoolUtilization(double lowPoolUtilization) {
+        this.lowPoolUtilization = lowPoolUtilization;
+    }
+
+    public int getScaleUpIntervals() {
+        return scaleUpIntervals;
+    }
+
+    public void setScaleUpIntervals(int scaleUpIntervals) {
+        this.scaleUpIntervals = scaleUpIntervals;
+    }
+
+    public int getScaleDownIntervals() {
+        return scaleDownIntervals;
+    }
+
+    public void setScaleDownIntervals(int scaleDownIntervals) {
+        this.scaleDownIntervals = scaleDownIntervals;
+    }
+
+    public int getScaleUpStep() {
+        return scaleUpStep;
+    }
+
+    public void setScaleUpStep(int scaleUpStep) {
+        this.scaleUpStep = scaleUpStep;
+    }
+
+    public int getScaleDownStep() {
+        return scaleDownStep;
+    }
+
+    public void setScaleDownStep(int scaleDownStep) {
+        this.scaleDownStep = scaleDownStep;
+    }
+
+    public double getThrottleFactor() {
+        return throttleFactor;
+    }
+
+    public void setThrottleFactor(double throttleFactor) {
+        this.throttleFactor = throttleFactor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public LongSupplier getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * The number of messages waiting in the queue, negative when unknown.
+     */
+    public void setQueueDepth(LongSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public LongSupplier getProcessedMessages() {
+        return processedMessages;
+    }
+
+    /**
+     * A counter of the messages handled by the consumers, used with the processing nanos for the average processing time.
+     */
+    public void setProcessedMessages(LongSupplier processedMessages) {
+        this.processedMessages = processedMessages;
+    }
+
+    public LongSupplier getProcessingNanos() {
+        return processingNanos;
+    }
+
+    /**
+     * A counter of the total time the consumers spent handling messages.
+     */
+    public void setProcessingNanos(LongSupplier processingNanos) {
+        this.processingNanos = processingNanos;
+    }
+
+    public DoubleSupplier getPoolUtilization() {
+        return poolUtilization;
+    }
+
+    /**
+     * The database connection pool utilization, 1.0 being all connections in use (see {@link #hikariPoolUtilization(HikariDataSource)}).
+     */
+    public void setPoolUtilization(DoubleSupplier poolUtilization) {
+        this.poolUtilization = poolUtilization;
+    }
+
+    public IntConsumer getConcurrencySetter() {
+        return concurrencySetter;
+    }
+
+    /**
+     * Changes the number of consumers of the listener container, for example container::setConcurrentConsumers.
+     */
+    public void setConcurrencySetter(IntConsumer concurrencySetter) {
+        this.concurrencySetter = concurrencySetter;
+    }
+
+}
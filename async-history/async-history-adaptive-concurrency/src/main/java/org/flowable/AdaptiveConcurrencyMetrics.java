@@ -0,0 +1,164 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flowable.AdaptiveConcurrencyController.Decision;
+
+/**
+ * The decisions of the {@link AdaptiveConcurrencyController}: how often it scaled up, down or throttled for the
+ * database, how often a wanted change was held back by the hysteresis or the cooldown, how often a backlog could not be
+ * handled with more consumers because the database was busy, the signals of the last evaluation and the consumer seconds
+ * used (the concurrency integrated over time, to compare with a fixed concurrency).
+ */
+public class AdaptiveConcurrencyMetrics {
+
+    protected final AtomicLong evaluations = new AtomicLong();
+    protected final AtomicLong scaleUps = new AtomicLong();
+    protected final AtomicLong scaleDowns = new AtomicLong();
+    protected final AtomicLong throttles = new AtomicLong();
+    protected final AtomicLong deferred = new AtomicLong();
+    protected final AtomicLong databaseLimited = new AtomicLong();
+
+    protected volatile int concurrency;
+    protected volatile int minConcurrency = Integer.MAX_VALUE;
+    protected volatile int maxConcurrency;
+    protected volatile long lastQueueDepth = -1L;
+    protected volatile double lastProcessingMillis = -1.0;
+    protected volatile double lastPoolUtilization;
+    protected volatile Decision lastDecision = Decision.HOLD;
+
+    protected boolean concurrencyRecorded;
+    protected long concurrencySinceNanos;
+    protected double consumerSeconds;
+
+    public void recordEvaluation(Decision decision, long queueDepth, double processingMillis, double poolUtilization) {
+        evaluations.incrementAndGet();
+        if (decision == Decision.SCALE_UP) {
+            scaleUps.incrementAndGet();
+        } else if (decision == Decision.SCALE_DOWN) {
+            scaleDowns.incrementAndGet();
+        } else if (decision == Decision.THROTTLE) {
+            throttles.incrementAndGet();
+        }
+        lastDecision = decision;
+        lastQueueDepth = queueDepth;
+        lastProcessingMillis = processingMillis;
+        lastPoolUtilization = poolUtilization;
+    }
+
+    public synchronized void recordConcurrency(int newConcurrency, long nowNanos) {
+        if (concurrencyRecorded) {
+            consumerSeconds += concurrency * (nowNanos - concurrencySinceNanos) / 1_000_000_000.0;
+        }
+        concurrency = newConcurrency;
+        concurrencySinceNanos = nowNanos;
+        concurrencyRecorded = true;
+        minConcurrency = Math.min(minConcurrency, newConcurrency);
+        maxConcurrency = Math.max(maxConcurrency, newConcurrency);
+    }
+
+    public void recordDeferred() {
+        deferred.incrementAndGet();
+    }
+
+    public void recordDatabaseLimited() {
+        databaseLimited.incrementAndGet();
+    }
+
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    public long getScaleUps() {
+        return scaleUps.get();
+    }
+
+    public long getScaleDowns() {
+        return scaleDowns.get();
+    }
+
+    /**
+     * Scale downs because the database was busy, whatever the queue depth.
+     */
+    public long getThrottles() {
+        return throttles.get();
+    }
+
+    /**
+     * Evaluations of which the wanted change was held back by the hysteresis or the cooldown.
+     */
+    public long getDeferred() {
+        return deferred.get();
+    }
+
+    /**
+     * Evaluations with a backlog in the queue that didn't get more consumers because the database had no headroom.
+     */
+    public long getDatabaseLimited() {
+        return databaseLimited.get();
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency == Integer.MAX_VALUE ? 0 : minConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getLastQueueDepth() {
+        return lastQueueDepth;
+    }
+
+    public double getLastProcessingMillis() {
+        return lastProcessingMillis;
+    }
+
+    public double getLastPoolUtilization() {
+        return lastPoolUtilization;
+    }
+
+    public Decision getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * The consumer seconds up to the last change of the concurrency.
+     */
+    public synchronized double getConsumerSeconds() {
+        return consumerSeconds;
+    }
+
+    /**
+     * The consumer seconds up to 'nowNanos', a System.nanoTime() value.
+     */
+    public synchronized double getConsumerSeconds(long nowNanos) {
+        return consumerSeconds + (concurrencyRecorded ? concurrency * (nowNanos - concurrencySinceNanos) / 1_000_000_000.0 : 0.0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d consumers (min %d, max %d), %d evaluations: %d scale ups, %d scale downs, %d throttles, %d deferred, "
+                + "%d database limited, last %s at queue depth %d, processing %.2f ms, db pool %.0f%%, %.0f consumer seconds", getConcurrency(),
+                getMinConcurrency(), getMaxConcurrency(), getEvaluations(), getScaleUps(), getScaleDowns(), getThrottles(), getDeferred(),
+                getDatabaseLimited(), getLastDecision(), getLastQueueDepth(), getLastProcessingMillis(), getLastPoolUtilization() * 100.0,
+                getConsumerSeconds(System.nanoTime()));
+    }
+
+}
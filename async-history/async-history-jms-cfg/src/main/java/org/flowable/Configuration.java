@@ -28,7 +28,6 @@ import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jms.connection.CachingConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
-import org.springframework.jms.listener.MessageListenerContainer;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import com.zaxxer.hikari.HikariDataSource;
@@ -126,16 +125,44 @@ public class Configuration {
     }
 
     @Bean
-    public MessageListenerContainer messageListenerContainer() {
+    public DefaultMessageListenerContainer messageListenerContainer() {
         DefaultMessageListenerContainer messageListenerContainer = new DefaultMessageListenerContainer();
         messageListenerContainer.setConnectionFactory(connectionFactory());
         messageListenerContainer.setDestinationName("flowable-history-jobs");
-        messageListenerContainer.setMessageListener(historyJobsMessageListener());
+        messageListenerContainer.setMessageListener(timedHistoryJobsMessageListener());
         messageListenerContainer.setConcurrentConsumers(10);
         messageListenerContainer.start();
         return messageListenerContainer;
     }
 
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public AdaptiveConcurrencyController concurrencyController() {
+        
+        // Scales the consumers between 2 and 20 on the queue depth, the processing time and the connection pool utilization,
+        // instead of the fixed 10 consumers of the container
+        DefaultMessageListenerContainer messageListenerContainer = messageListenerContainer();
+        AdaptiveConcurrencyController concurrencyController = new AdaptiveConcurrencyController();
+        concurrencyController.setName("flowable-history-jobs");
+        concurrencyController.setMinConcurrency(2);
+        concurrencyController.setMaxConcurrency(20);
+        concurrencyController.setInitialConcurrency(10);
+        concurrencyController.setConcurrencySetter(concurrency -> {
+            // Lowering the maximum too makes the superfluous consumers stop, raising it lets the container add consumers
+            messageListenerContainer.setConcurrentConsumers(concurrency);
+            messageListenerContainer.setMaxConcurrentConsumers(concurrency);
+        });
+        concurrencyController.setQueueDepth(new JmsQueueDepth(connectionFactory(), "flowable-history-jobs"));
+        concurrencyController.setProcessedMessages(timedHistoryJobsMessageListener()::getMessages);
+        concurrencyController.setProcessingNanos(timedHistoryJobsMessageListener()::getProcessingNanos);
+        concurrencyController.setPoolUtilization(AdaptiveConcurrencyController.hikariPoolUtilization((HikariDataSource) dataSource()));
+        return concurrencyController;
+    }
+
+    @Bean
+    public TimedMessageListener timedHistoryJobsMessageListener() {
+        return new TimedMessageListener(historyJobsMessageListener());
+    }
+
     @Bean
     public HistoryJobMessageListener historyJobsMessageListener() {
         HistoryJobMessageListener historyJobMessageListener = new HistoryJobMessageListener();
@@ -88,6 +88,7 @@ public class Example {
         System.out.println("All Done");
         System.out.println(processEngine.getHistoryService().createHistoricProcessInstanceQuery().unfinished().count() + " finished process instances");
         System.out.println(processEngine.getHistoryService().createHistoricProcessInstanceQuery().finished().count() + " finished process instances");
+        System.out.println(applicationContext.getBean(AdaptiveConcurrencyController.class).getMetrics());
         
         applicationContext.close();
     }
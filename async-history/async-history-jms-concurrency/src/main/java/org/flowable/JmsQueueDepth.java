@@ -0,0 +1,83 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.Enumeration;
+import java.util.function.LongSupplier;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+
+/**
+ * The queue depth signal of the {@link AdaptiveConcurrencyController} for a JMS queue. JMS has no call for the number of
+ * messages in a queue, so they are counted with a {@link QueueBrowser}, up to 'maxCount': the controller only needs to
+ * know whether there is a backlog, and browsing a deep queue every interval would cost more than it tells. The broker
+ * may also hold back messages that are not paged in yet, so the count is a lower bound. Returns -1 when the queue can't
+ * be browsed.
+ */
+public class JmsQueueDepth implements LongSupplier {
+
+    protected ConnectionFactory connectionFactory;
+    protected String queueName;
+    protected int maxCount = 10000;
+
+    public JmsQueueDepth(ConnectionFactory connectionFactory, String queueName) {
+        this.connectionFactory = connectionFactory;
+        this.queueName = queueName;
+    }
+
+    @Override
+    public long getAsLong() {
+        Connection connection = null;
+        try {
+            connection = connectionFactory.createConnection();
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            QueueBrowser browser = session.createBrowser(session.createQueue(queueName));
+            Enumeration<?> messages = browser.getEnumeration();
+            long count = 0L;
+            while (count < maxCount && messages.hasMoreElements()) {
+                messages.nextElement();
+                count++;
+            }
+            browser.close();
+            session.close();
+            return count;
+
+        } catch (JMSException e) {
+            e.printStackTrace();
+            return -1L;
+
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (JMSException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public void setMaxCount(int maxCount) {
+        this.maxCount = maxCount;
+    }
+
+}
@@ -0,0 +1,58 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+/**
+ * Counts the messages handled by another {@link MessageListener} and the time it spent on them, the processing time
+ * signal of the {@link AdaptiveConcurrencyController}.
+ */
+public class TimedMessageListener implements MessageListener {
+
+    protected final AtomicLong messages = new AtomicLong();
+    protected final AtomicLong processingNanos = new AtomicLong();
+
+    protected MessageListener messageListener;
+
+    public TimedMessageListener(MessageListener messageListener) {
+        this.messageListener = messageListener;
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        long start = System.nanoTime();
+        try {
+            messageListener.onMessage(message);
+        } finally {
+            processingNanos.addAndGet(System.nanoTime() - start);
+            messages.incrementAndGet();
+        }
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    public long getProcessingNanos() {
+        return processingNanos.get();
+    }
+
+    public MessageListener getMessageListener() {
+        return messageListener;
+    }
+
+}
@@ -20,18 +20,18 @@ import javax.sql.DataSource;
 import javax.transaction.SystemException;
 import javax.transaction.UserTransaction;
 
+import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.ActiveMQXAConnectionFactory;
 import org.apache.activemq.command.ActiveMQQueue;
+import org.flowable.codec.HistoryCodecs;
 import org.flowable.engine.ProcessEngine;
 import org.flowable.engine.ProcessEngineConfiguration;
 import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
-import org.flowable.engine.impl.history.async.AsyncHistoryListener;
 import org.flowable.spring.SpringProcessEngineConfiguration;
 import org.flowable.spring.executor.jms.MessageBasedJobManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
-import org.springframework.jms.listener.MessageListenerContainer;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.jta.JtaTransactionManager;
 
@@ -134,10 +134,23 @@ public class Configuration {
         return config;
     }
 
-    @Bean
-    public AsyncHistoryListener jmsAsyncHistoryListener() {
+    @Bean(destroyMethod = "shutdown")
+    public JmsAsyncHistoryListener jmsAsyncHistoryListener() {
         JmsAsyncHistoryListener jmsAsyncHistoryListener = new JmsAsyncHistoryListener();
         jmsAsyncHistoryListener.setJmsTemplate(jmsTemplate());
+
+        // With -DhistoryBatching=true: one BytesMessage per transaction instead of one TextMessage per command.
+        // A batch window above 0 also merges the batches of several transactions (see JmsAsyncHistoryListener)
+        if (Boolean.getBoolean("historyBatching")) {
+            jmsAsyncHistoryListener.setBatchingEnabled(true);
+            jmsAsyncHistoryListener.setMaxBatchSize(500);
+            jmsAsyncHistoryListener.setBatchWindowMillis(0L);
+            jmsAsyncHistoryListener.setTransactionManager(transactionManager());
+
+            // Smile is smaller and cheaper to write than JSON; above 1 KB deflate it with the history key dictionary (see HistoryCodecBenchmark)
+            jmsAsyncHistoryListener.setCodec(HistoryCodecs.SMILE);
+            jmsAsyncHistoryListener.setCompressedCodec(HistoryCodecs.SMILE_DICT);
+        }
         return jmsAsyncHistoryListener;
     }
 
@@ -163,21 +176,49 @@ public class Configuration {
     }
 
     @Bean
-    public MessageListenerContainer messageListenerContainer() {
+    public DefaultMessageListenerContainer messageListenerContainer() {
         DefaultMessageListenerContainer messageListenerContainer = new DefaultMessageListenerContainer();
         messageListenerContainer.setSessionTransacted(true);
         messageListenerContainer.setTransactionManager(transactionManager());
         messageListenerContainer.setConnectionFactory(connectionFactory());
         messageListenerContainer.setDestinationName("flowable-history-jobs");
-        messageListenerContainer.setMessageListener(jmsListener());
+        messageListenerContainer.setMessageListener(timedJmsListener());
         messageListenerContainer.setConcurrentConsumers(10);
         messageListenerContainer.start();
         return messageListenerContainer;
     }
 
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public AdaptiveConcurrencyController concurrencyController() {
+        
+        // Scales the consumers between 2 and 20 on the queue depth and the processing time, instead of the fixed 10 consumers
+        // of the container. The listener doesn't use the database, so there is no pool utilization signal here
+        DefaultMessageListenerContainer messageListenerContainer = messageListenerContainer();
+        AdaptiveConcurrencyController concurrencyController = new AdaptiveConcurrencyController();
+        concurrencyController.setName("flowable-history-jobs");
+        concurrencyController.setMinConcurrency(2);
+        concurrencyController.setMaxConcurrency(20);
+        concurrencyController.setInitialConcurrency(10);
+        concurrencyController.setConcurrencySetter(concurrency -> {
+            // Lowering the maximum too makes the superfluous consumers stop, raising it lets the container add consumers
+            messageListenerContainer.setConcurrentConsumers(concurrency);
+            messageListenerContainer.setMaxConcurrentConsumers(concurrency);
+        });
+        // Browsing is done outside of any XA transaction, so not through the Atomikos connection factory
+        concurrencyController.setQueueDepth(new JmsQueueDepth(new ActiveMQConnectionFactory("tcp://127.0.0.1:61616"), "flowable-history-jobs"));
+        concurrencyController.setProcessedMessages(timedJmsListener()::getMessages);
+        concurrencyController.setProcessingNanos(timedJmsListener()::getProcessingNanos);
+        return concurrencyController;
+    }
+
     @Bean
     public MessageListener jmsListener() {
         return new ExampleJmsListener();
     }
 
+    @Bean
+    public TimedMessageListener timedJmsListener() {
+        return new TimedMessageListener(jmsListener());
+    }
+
 }
@@ -12,10 +12,17 @@
  */
 package org.flowable;
 
+import java.io.IOException;
+
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.TextMessage;
 
+import org.flowable.codec.HistoryCodecs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
 public class ExampleJmsListener implements javax.jms.MessageListener {
 
     @Override
@@ -27,6 +34,19 @@ public class ExampleJmsListener implements javax.jms.MessageListener {
             } catch (JMSException e) {
                 e.printStackTrace();
             }
+
+        } else if (message instanceof BytesMessage) {
+            // A batch from the JmsAsyncHistoryListener
+            BytesMessage bytesMessage = (BytesMessage) message;
+            try {
+                byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+                bytesMessage.readBytes(body);
+                String encoding = bytesMessage.getStringProperty(JmsAsyncHistoryListener.ENCODING_PROPERTY);
+                JsonNode historyNodes = HistoryCodecs.get(encoding).decode(body);
+                System.out.println("Received batch of " + historyNodes.size() + " historical data nodes (" + body.length + " bytes, " + encoding + ")");
+            } catch (JMSException | IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+            }
         }
     }
 
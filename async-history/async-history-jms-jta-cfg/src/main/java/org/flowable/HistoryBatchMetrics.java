@@ -0,0 +1,99 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the history messages sent by the {@link JmsAsyncHistoryListener}: the number of history nodes per message
+ * (in power of two buckets), the message body size and the time the send took.
+ */
+public class HistoryBatchMetrics {
+
+    protected static final int BUCKETS = 16;
+
+    protected final AtomicLong messages = new AtomicLong();
+    protected final AtomicLong nodes = new AtomicLong();
+    protected final AtomicLong bytes = new AtomicLong();
+    protected final AtomicLong sendNanos = new AtomicLong();
+    protected final AtomicLong maxSendNanos = new AtomicLong();
+    protected final AtomicLong maxBatchSize = new AtomicLong();
+    protected final AtomicLongArray batchSizeBuckets = new AtomicLongArray(BUCKETS);
+
+    public void record(int batchSize, long bodyBytes, long durationNanos) {
+        messages.incrementAndGet();
+        nodes.addAndGet(batchSize);
+        bytes.addAndGet(bodyBytes);
+        sendNanos.addAndGet(durationNanos);
+        maxSendNanos.accumulateAndGet(durationNanos, Math::max);
+        maxBatchSize.accumulateAndGet(batchSize, Math::max);
+        batchSizeBuckets.incrementAndGet(Math.min(BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(Math.max(batchSize, 1) - 1)));
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public double getAverageBatchSize() {
+        long count = messages.get();
+        return count > 0 ? (double) nodes.get() / count : 0.0;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public double getAverageSendMillis() {
+        long count = messages.get();
+        return count > 0 ? sendNanos.get() / (count * 1_000_000.0) : 0.0;
+    }
+
+    public double getMaxSendMillis() {
+        return maxSendNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * The number of messages per batch size bucket: bucket i counts the batches of (2^(i-1), 2^i] nodes, the last one everything larger.
+     */
+    public long[] getBatchSizeBuckets() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = batchSizeBuckets.get(i);
+        }
+        return buckets;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder strb = new StringBuilder();
+        strb.append(String.format("%d history messages, %d nodes (avg %.1f, max %d per message), %d KB, send avg %.2f ms, max %.2f ms",
+                getMessages(), getNodes(), getAverageBatchSize(), getMaxBatchSize(), getBytes() / 1024, getAverageSendMillis(), getMaxSendMillis()));
+        long[] buckets = getBatchSizeBuckets();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (buckets[i] > 0) {
+                strb.append(String.format("%n  %s %d nodes: %d", i < BUCKETS - 1 ? "<=" : ">", 1L << (i < BUCKETS - 1 ? i : i - 1), buckets[i]));
+            }
+        }
+        return strb.toString();
+    }
+
+}
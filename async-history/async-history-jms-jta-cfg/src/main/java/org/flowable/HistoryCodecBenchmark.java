@@ -0,0 +1,225 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.flowable.codec.HistoryCodec;
+import org.flowable.codec.HistoryCodecs;
+import org.flowable.engine.impl.history.async.HistoryJsonConstants;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Measures the encode and decode time and the message size of the {@link HistoryCodecs} for batches of history nodes
+ * like the engine generates for the example process. No broker or database is needed.
+ *
+ * System properties: batchSizes (default 1,8,64,500), nodesPerRun (nodes encoded per codec and batch size, default 200000)
+ * and warmupRuns (default 2).
+ */
+public class HistoryCodecBenchmark {
+
+    private static final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+
+    private static final Random random = new Random(42);
+
+    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private static final String[] assignees = { "assigneeOne", "assigneeTwo", "assigneeThree", "assigneeFour", "assigneeFive" };
+
+    public static void main(String[] args) throws Exception {
+        String[] batchSizes = System.getProperty("batchSizes", "1,8,64,500").split(",");
+        int nodesPerRun = Integer.getInteger("nodesPerRun", 200000);
+        int warmupRuns = Integer.getInteger("warmupRuns", 2);
+
+        List<ObjectNode> historyNodes = generateHistoryNodes(20000);
+        Collection<HistoryCodec> codecs = HistoryCodecs.getAll();
+
+        System.out.println(String.format("%-12s %6s %10s %10s %10s %10s %10s", "codec", "batch", "bytes", "bytes/node", "vs json", "encode us", "decode us"));
+        for (String batchSizeString : batchSizes) {
+            int batchSize = Integer.parseInt(batchSizeString.trim());
+            List<List<ObjectNode>> batches = new ArrayList<>();
+            for (int from = 0; from + batchSize <= historyNodes.size(); from += batchSize) {
+                batches.add(historyNodes.subList(from, from + batchSize));
+            }
+
+            double jsonBytes = 0.0;
+            for (HistoryCodec codec : codecs) {
+                verify(codec, batches.get(0));
+                for (int i = 0; i < warmupRuns; i++) {
+                    run(codec, batches, nodesPerRun / batchSize);
+                }
+                long[] result = run(codec, batches, nodesPerRun / batchSize);
+                long iterations = result[0];
+                double bytes = (double) result[1] / iterations;
+                if (codec == HistoryCodecs.JSON) {
+                    jsonBytes = bytes;
+                }
+                System.out.println(String.format("%-12s %6d %10.0f %10.1f %9.0f%% %10.2f %10.2f", codec.getName(), batchSize, bytes, bytes / batchSize,
+                        jsonBytes > 0 ? 100.0 * bytes / jsonBytes : 100.0, result[2] / (iterations * 1000.0), result[3] / (iterations * 1000.0)));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * @return iterations, total bytes, encode nanos, decode nanos
+     */
+    protected static long[] run(HistoryCodec codec, List<List<ObjectNode>> batches, int iterations) throws Exception {
+        iterations = Math.max(iterations, 100);
+        long bytes = 0;
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        int checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            List<ObjectNode> batch = batches.get(i % batches.size());
+            long start = System.nanoTime();
+            byte[] body = codec.encode(batch);
+            long encoded = System.nanoTime();
+            JsonNode decodedNodes = codec.decode(body);
+            decodeNanos += System.nanoTime() - encoded;
+            encodeNanos += encoded - start;
+            bytes += body.length;
+            checksum += decodedNodes.size();
+        }
+        if (checksum != iterations * batches.get(0).size()) {
+            throw new RuntimeException("Codec " + codec.getName() + " lost history nodes");
+        }
+        return new long[] { iterations, bytes, encodeNanos, decodeNanos };
+    }
+
+    protected static void verify(HistoryCodec codec, List<ObjectNode> batch) throws Exception {
+        ArrayNode expected = nodeFactory.arrayNode();
+        expected.addAll(batch);
+        if (!expected.equals(codec.decode(codec.encode(batch)))) {
+            throw new RuntimeException("Codec " + codec.getName() + " does not decode to the encoded history nodes");
+        }
+    }
+
+    /**
+     * Generates the history nodes of process instances of the example process (start, user and service tasks, variables
+     * and identity links) in the order the engine produces them.
+     */
+    protected static List<ObjectNode> generateHistoryNodes(int count) {
+        List<ObjectNode> historyNodes = new ArrayList<>(count);
+        String processDefinitionId = "testProcess:1:" + UUID.randomUUID();
+        long time = System.currentTimeMillis();
+        while (historyNodes.size() < count) {
+            String processInstanceId = UUID.randomUUID().toString();
+            String executionId = UUID.randomUUID().toString();
+            String startTime = dateFormat.format(new Date(time += random.nextInt(1000)));
+
+            ObjectNode processInstance = historyNode(HistoryJsonConstants.TYPE_PROCESS_INSTANCE_START, processInstanceId, processDefinitionId, processInstanceId, startTime);
+            ObjectNode data = (ObjectNode) processInstance.get(HistoryJsonConstants.DATA);
+            data.put(HistoryJsonConstants.ID, processInstanceId);
+            data.put(HistoryJsonConstants.BUSINESS_KEY, "order-" + random.nextInt(1000000));
+            data.put(HistoryJsonConstants.PROCESS_DEFINITION_KEY, "testProcess");
+            data.put(HistoryJsonConstants.PROCESS_DEFINITION_NAME, "Test process");
+            data.put(HistoryJsonConstants.PROCESS_DEFINITION_VERSION, "1");
+            data.put(HistoryJsonConstants.DEPLOYMENT_ID, "1");
+            data.put(HistoryJsonConstants.START_TIME, startTime);
+            data.put(HistoryJsonConstants.START_ACTIVITY_ID, "theStart");
+            historyNodes.add(processInstance);
+
+            historyNodes.add(activity(HistoryJsonConstants.TYPE_ACTIVITY_FULL, "theStart", "startEvent", processInstanceId, executionId, processDefinitionId, startTime));
+            for (String variable : new String[] { "customerId", "amount", "approved" }) {
+                ObjectNode variableNode = historyNode(HistoryJsonConstants.TYPE_VARIABLE_CREATED, processInstanceId, processDefinitionId, executionId, startTime);
+                ObjectNode variableData = (ObjectNode) variableNode.get(HistoryJsonConstants.DATA);
+                variableData.put(HistoryJsonConstants.ID, UUID.randomUUID().toString());
+                variableData.put(HistoryJsonConstants.NAME, variable);
+                variableData.put(HistoryJsonConstants.REVISION, "0");
+                variableData.put(HistoryJsonConstants.VARIABLE_TYPE, "string");
+                variableData.put(HistoryJsonConstants.VARIABLE_TEXT_VALUE, variable + "-" + random.nextInt(100000));
+                variableData.put(HistoryJsonConstants.CREATE_TIME, startTime);
+                variableData.put(HistoryJsonConstants.LAST_UPDATED_TIME, startTime);
+                historyNodes.add(variableNode);
+            }
+
+            for (int i = 1; i <= 4; i++) {
+                String taskTime = dateFormat.format(new Date(time + random.nextInt(60000)));
+                String activityId = (i % 2 == 0 ? "serviceTask0" : "userTask0") + i;
+                historyNodes.add(activity(HistoryJsonConstants.TYPE_ACTIVITY_START, activityId, i % 2 == 0 ? "serviceTask" : "userTask",
+                        processInstanceId, executionId, processDefinitionId, taskTime));
+                if (i % 2 != 0) {
+                    String taskId = UUID.randomUUID().toString();
+                    String assignee = assignees[random.nextInt(assignees.length)];
+                    ObjectNode task = historyNode(HistoryJsonConstants.TYPE_TASK_CREATED, processInstanceId, processDefinitionId, executionId, taskTime);
+                    ObjectNode taskData = (ObjectNode) task.get(HistoryJsonConstants.DATA);
+                    taskData.put(HistoryJsonConstants.ID, taskId);
+                    taskData.put(HistoryJsonConstants.NAME, "User task " + i);
+                    taskData.put(HistoryJsonConstants.TASK_DEFINITION_KEY, activityId);
+                    taskData.put(HistoryJsonConstants.ASSIGNEE, assignee);
+                    taskData.put(HistoryJsonConstants.PRIORITY, "50");
+                    taskData.put(HistoryJsonConstants.CREATE_TIME, taskTime);
+                    historyNodes.add(task);
+
+                    ObjectNode identityLink = historyNode(HistoryJsonConstants.TYPE_IDENTITY_LINK_CREATED, processInstanceId, processDefinitionId, executionId, taskTime);
+                    ObjectNode identityLinkData = (ObjectNode) identityLink.get(HistoryJsonConstants.DATA);
+                    identityLinkData.put(HistoryJsonConstants.ID, UUID.randomUUID().toString());
+                    identityLinkData.put(HistoryJsonConstants.IDENTITY_LINK_TYPE, "participant");
+                    identityLinkData.put(HistoryJsonConstants.USER_ID, assignee);
+                    identityLinkData.put(HistoryJsonConstants.PROCESS_INSTANCE_ID, processInstanceId);
+                    historyNodes.add(identityLink);
+
+                    ObjectNode taskEnd = historyNode(HistoryJsonConstants.TYPE_TASK_ENDED, processInstanceId, processDefinitionId, executionId, taskTime);
+                    ObjectNode taskEndData = (ObjectNode) taskEnd.get(HistoryJsonConstants.DATA);
+                    taskEndData.put(HistoryJsonConstants.ID, taskId);
+                    taskEndData.put(HistoryJsonConstants.END_TIME, taskTime);
+                    historyNodes.add(taskEnd);
+                }
+                historyNodes.add(activity(HistoryJsonConstants.TYPE_ACTIVITY_END, activityId, i % 2 == 0 ? "serviceTask" : "userTask",
+                        processInstanceId, executionId, processDefinitionId, taskTime));
+            }
+
+            String endTime = dateFormat.format(new Date(time + 60000 + random.nextInt(60000)));
+            historyNodes.add(activity(HistoryJsonConstants.TYPE_ACTIVITY_FULL, "theEnd", "endEvent", processInstanceId, executionId, processDefinitionId, endTime));
+            ObjectNode processInstanceEnd = historyNode(HistoryJsonConstants.TYPE_PROCESS_INSTANCE_END, processInstanceId, processDefinitionId, processInstanceId, endTime);
+            ((ObjectNode) processInstanceEnd.get(HistoryJsonConstants.DATA)).put(HistoryJsonConstants.END_TIME, endTime);
+            historyNodes.add(processInstanceEnd);
+        }
+        return historyNodes.subList(0, count);
+    }
+
+    protected static ObjectNode activity(String type, String activityId, String activityType, String processInstanceId,
+            String executionId, String processDefinitionId, String time) {
+        ObjectNode activity = historyNode(type, processInstanceId, processDefinitionId, executionId, time);
+        ObjectNode data = (ObjectNode) activity.get(HistoryJsonConstants.DATA);
+        data.put(HistoryJsonConstants.ACTIVITY_ID, activityId);
+        data.put(HistoryJsonConstants.ACTIVITY_NAME, activityId);
+        data.put(HistoryJsonConstants.ACTIVITY_TYPE, activityType);
+        data.put(type.equals(HistoryJsonConstants.TYPE_ACTIVITY_END) ? HistoryJsonConstants.END_TIME : HistoryJsonConstants.START_TIME, time);
+        return activity;
+    }
+
+    protected static ObjectNode historyNode(String type, String processInstanceId, String processDefinitionId, String executionId, String time) {
+        ObjectNode historyNode = nodeFactory.objectNode();
+        historyNode.put(HistoryJsonConstants.TYPE, type);
+        ObjectNode data = historyNode.putObject(HistoryJsonConstants.DATA);
+        data.put(HistoryJsonConstants.PROCESS_INSTANCE_ID, processInstanceId);
+        data.put(HistoryJsonConstants.PROCESS_DEFINITION_ID, processDefinitionId);
+        data.put(HistoryJsonConstants.EXECUTION_ID, executionId);
+        data.put(HistoryJsonConstants.TENANT_ID, "");
+        data.put(HistoryJsonConstants.TIMESTAMP, time);
+        return historyNode;
+    }
+
+}
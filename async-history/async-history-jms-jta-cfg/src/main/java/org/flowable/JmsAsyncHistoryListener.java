@@ -12,30 +12,100 @@
  */
 package org.flowable;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
 
+import org.flowable.codec.CompressedHistoryCodec;
+import org.flowable.codec.HistoryCodec;
+import org.flowable.codec.HistoryCodecs;
+import org.flowable.engine.common.api.FlowableException;
 import org.flowable.engine.impl.history.async.AsyncHistoryListener;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessageCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+/**
+ * Sends the history data of the engine to a JMS destination.
+ *
+ * By default every call becomes one {@link javax.jms.TextMessage} with a JSON array. With batching enabled, the history nodes of all
+ * commands in one transaction are collected and sent as one {@link BytesMessage} just before the transaction commits (so the send is still
+ * part of the XA transaction). Batches are split at 'maxBatchSize' nodes. The body is written by the 'codec' (JSON by default, see
+ * {@link HistoryCodecs} for Smile and CBOR) and compressed with the 'compressedCodec' when it's larger than 'compressThreshold' bytes;
+ * the {@link #ENCODING_PROPERTY} (the name of the codec) and {@link #BATCH_SIZE_PROPERTY} message properties describe it.
+ *
+ * With a 'batchWindowMillis' above 0, the batches of committed transactions are merged further and sent every window (or when 'maxBatchSize'
+ * is reached) in a transaction of their own. That trades the atomicity with the engine transaction for fewer sends: history of committed
+ * transactions that is still in the window is lost when the process stops abruptly.
+ */
 public class JmsAsyncHistoryListener implements AsyncHistoryListener {
+
+    public static final String ENCODING_PROPERTY = "flowableHistoryEncoding";
+    public static final String BATCH_SIZE_PROPERTY = "flowableHistoryBatchSize";
     
     protected JmsTemplate jmsTemplate;
     
     protected ObjectMapper objectMapper = new ObjectMapper();
     
+    protected boolean batchingEnabled;
+    protected int maxBatchSize = 500;
+    protected long batchWindowMillis;
+    protected int compressThreshold = 1024;
+    protected HistoryCodec codec = HistoryCodecs.JSON;
+    protected CompressedHistoryCodec compressedCodec = HistoryCodecs.JSON_GZIP;
+    protected PlatformTransactionManager transactionManager;
+
+    protected HistoryBatchMetrics metrics = new HistoryBatchMetrics();
+
+    protected final List<ObjectNode> windowBatch = new ArrayList<>();
+    protected ScheduledExecutorService windowFlusher;
+
     @Override
     public void historyDataGenerated(List<ObjectNode> historyObjectNodes) {
+        if (!batchingEnabled) {
+            if (codec == HistoryCodecs.JSON) {
+                sendTextMessage(historyObjectNodes);
+            } else {
+                sendBytesMessage(historyObjectNodes);
+            }
+
+        } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionBatch transactionBatch = (TransactionBatch) TransactionSynchronizationManager.getResource(this);
+            if (transactionBatch == null) {
+                transactionBatch = new TransactionBatch();
+                TransactionSynchronizationManager.bindResource(this, transactionBatch);
+                TransactionSynchronizationManager.registerSynchronization(transactionBatch);
+            }
+            transactionBatch.add(historyObjectNodes);
+
+        } else if (batchWindowMillis > 0) {
+            addToWindow(historyObjectNodes);
+
+        } else {
+            sendBatches(historyObjectNodes);
+        }
+    }
+
+    protected void sendTextMessage(List<ObjectNode> historyObjectNodes) {
         try {
             final String msg = objectMapper.writeValueAsString(historyObjectNodes);
+            long start = System.nanoTime();
             jmsTemplate.send(new MessageCreator() {
                 
                 @Override
@@ -44,11 +114,148 @@ public class JmsAsyncHistoryListener implements AsyncHistoryListener {
                 }
                 
             });
+            metrics.record(historyObjectNodes.size(), msg.length(), System.nanoTime() - start);
         } catch (JsonProcessingException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Sends the nodes as one or more {@link BytesMessage}s of at most 'maxBatchSize' nodes.
+     */
+    protected void sendBatches(List<ObjectNode> historyObjectNodes) {
+        for (int from = 0; from < historyObjectNodes.size(); from += maxBatchSize) {
+            sendBytesMessage(historyObjectNodes.subList(from, Math.min(from + maxBatchSize, historyObjectNodes.size())));
+        }
+    }
+
+    protected void sendBytesMessage(final List<ObjectNode> historyObjectNodes) {
+        try {
+            byte[] encoded = codec.encode(historyObjectNodes);
+            final boolean compressed = compressedCodec != null && encoded.length > compressThreshold;
+            final byte[] body = compressed ? compressedCodec.compress(encoded) : encoded;
+            final String encoding = compressed ? compressedCodec.getName() : codec.getName();
+
+            long start = System.nanoTime();
+            jmsTemplate.send(new MessageCreator() {
+
+                @Override
+                public Message createMessage(Session session) throws JMSException {
+                    BytesMessage message = session.createBytesMessage();
+                    message.writeBytes(body);
+                    message.setStringProperty(ENCODING_PROPERTY, encoding);
+                    message.setIntProperty(BATCH_SIZE_PROPERTY, historyObjectNodes.size());
+                    return message;
+                }
+
+            });
+            metrics.record(historyObjectNodes.size(), body.length, System.nanoTime() - start);
+
+        } catch (IOException e) {
+            // Rethrown so the (XA) transaction rolls back instead of committing without its history
+            throw new FlowableException("Could not encode " + historyObjectNodes.size() + " history nodes with " + codec.getName(), e);
+        }
+    }
+
+    protected void addToWindow(List<ObjectNode> historyObjectNodes) {
+        List<ObjectNode> fullBatch = null;
+        synchronized (windowBatch) {
+            if (windowFlusher == null) {
+                windowFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "flowable-history-batch-flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                windowFlusher.scheduleWithFixedDelay(this::flushWindow, batchWindowMillis, batchWindowMillis, TimeUnit.MILLISECONDS);
+            }
+            windowBatch.addAll(historyObjectNodes);
+            if (windowBatch.size() >= maxBatchSize) {
+                fullBatch = new ArrayList<>(windowBatch);
+                windowBatch.clear();
+            }
+        }
+        if (fullBatch != null) {
+            sendInNewTransaction(fullBatch);
+        }
+    }
+
+    public void flushWindow() {
+        List<ObjectNode> batch;
+        synchronized (windowBatch) {
+            if (windowBatch.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(windowBatch);
+            windowBatch.clear();
+        }
+        try {
+            sendInNewTransaction(batch);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    protected void sendInNewTransaction(final List<ObjectNode> historyObjectNodes) {
+        if (transactionManager == null) {
+            sendBatches(historyObjectNodes);
+            return;
+        }
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.execute(status -> {
+            sendBatches(historyObjectNodes);
+            return null;
+        });
+    }
+
+    /**
+     * Sends what is left in the window and stops the flusher.
+     */
+    public void shutdown() {
+        ScheduledExecutorService flusher;
+        synchronized (windowBatch) {
+            flusher = windowFlusher;
+            windowFlusher = null;
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushWindow();
+    }
+
+    /**
+     * Collects the history nodes of one transaction.
+     */
+    protected class TransactionBatch extends TransactionSynchronizationAdapter {
+
+        protected final List<ObjectNode> historyObjectNodes = new ArrayList<>();
+
+        public void add(List<ObjectNode> nodes) {
+            historyObjectNodes.addAll(nodes);
+            if (batchWindowMillis <= 0 && historyObjectNodes.size() >= maxBatchSize) {
+                sendBatches(new ArrayList<>(historyObjectNodes));
+                historyObjectNodes.clear();
+            }
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (batchWindowMillis <= 0 && !historyObjectNodes.isEmpty()) {
+                sendBatches(historyObjectNodes);
+                historyObjectNodes.clear();
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(JmsAsyncHistoryListener.this);
+            if (status == STATUS_COMMITTED && batchWindowMillis > 0 && !historyObjectNodes.isEmpty()) {
+                addToWindow(historyObjectNodes);
+            }
+        }
+
+    }
+
     public JmsTemplate getJmsTemplate() {
         return jmsTemplate;
     }
@@ -57,4 +264,76 @@ public class JmsAsyncHistoryListener implements AsyncHistoryListener {
         this.jmsTemplate = jmsTemplate;
     }
     
+    public boolean isBatchingEnabled() {
+        return batchingEnabled;
+    }
+
+    public void setBatchingEnabled(boolean batchingEnabled) {
+        this.batchingEnabled = batchingEnabled;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getBatchWindowMillis() {
+        return batchWindowMillis;
+    }
+
+    public void setBatchWindowMillis(long batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public HistoryCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Also drops the compressed codec when it belongs to the previous codec, set it again after this.
+     */
+    public void setCodec(HistoryCodec codec) {
+        this.codec = codec;
+        if (compressedCodec != null && compressedCodec.getDelegate() != codec) {
+            compressedCodec = null;
+        }
+    }
+
+    public CompressedHistoryCodec getCompressedCodec() {
+        return compressedCodec;
+    }
+
+    /**
+     * The codec for bodies above the 'compressThreshold', it has to compress the output of the 'codec'. Null never compresses.
+     */
+    public void setCompressedCodec(CompressedHistoryCodec compressedCodec) {
+        if (compressedCodec != null && compressedCodec.getDelegate() != codec) {
+            throw new IllegalArgumentException("Compressed codec " + compressedCodec.getName() + " does not compress the output of codec " + codec.getName());
+        }
+        this.compressedCodec = compressedCodec;
+    }
+
+    public PlatformTransactionManager getTransactionManager() {
+        return transactionManager;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public HistoryBatchMetrics getMetrics() {
+        return metrics;
+    }
+
 }
@@ -0,0 +1,63 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Compresses the body of another codec. The compression step is exposed separately, so a producer that only
+ * compresses large bodies doesn't have to encode twice.
+ */
+public abstract class CompressedHistoryCodec implements HistoryCodec {
+
+    protected final HistoryCodec delegate;
+    protected final String name;
+
+    protected CompressedHistoryCodec(HistoryCodec delegate, String compression) {
+        this.delegate = delegate;
+        this.name = delegate.getName() + "+" + compression;
+    }
+
+    public HistoryCodec getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public byte[] encode(List<ObjectNode> historyObjectNodes) throws IOException {
+        return compress(delegate.encode(historyObjectNodes));
+    }
+
+    @Override
+    public JsonNode decode(byte[] body) throws IOException {
+        return delegate.decode(decompress(body));
+    }
+
+    public abstract byte[] compress(byte[] encoded) throws IOException;
+
+    public abstract byte[] decompress(byte[] body) throws IOException;
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
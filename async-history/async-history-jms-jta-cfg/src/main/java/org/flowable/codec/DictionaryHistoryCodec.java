@@ -0,0 +1,119 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate with a preset dictionary of the strings every history batch contains (the type names and data keys).
+ * Gzip has to see those strings once in every message before it can refer back to them, which is most of the gain
+ * on small batches.
+ *
+ * Producer and consumer need the same dictionary, so its Adler-32 checksum is part of the name (e.g. 'smile+dict-1a2b3c4d'):
+ * a consumer without that dictionary doesn't know the encoding. The zlib header carries the checksum too, and a body
+ * that was deflated with another dictionary is rejected before it is inflated.
+ */
+public class DictionaryHistoryCodec extends CompressedHistoryCodec {
+
+    public static final String COMPRESSION = "dict";
+
+    protected final byte[] dictionary;
+    protected final int dictionaryId;
+    protected int level = Deflater.DEFAULT_COMPRESSION;
+
+    public DictionaryHistoryCodec(HistoryCodec delegate, byte[] dictionary) {
+        this(delegate, dictionary, adler32(dictionary));
+    }
+
+    protected DictionaryHistoryCodec(HistoryCodec delegate, byte[] dictionary, int dictionaryId) {
+        super(delegate, COMPRESSION + "-" + String.format("%08x", dictionaryId));
+        this.dictionary = dictionary;
+        this.dictionaryId = dictionaryId;
+    }
+
+    protected static int adler32(byte[] bytes) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(bytes);
+        return (int) adler32.getValue();
+    }
+
+    @Override
+    public byte[] compress(byte[] encoded) throws IOException {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(encoded);
+            deflater.finish();
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, encoded.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] body) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(body.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length > 0) {
+                    outputStream.write(buffer, 0, length);
+                } else if (inflater.needsDictionary()) {
+                    if (inflater.getAdler() != dictionaryId) {
+                        throw new IOException(String.format("History message was deflated with dictionary %08x, not with the %08x of %s",
+                                inflater.getAdler(), dictionaryId, name));
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflater.needsInput()) {
+                    throw new IOException("Truncated " + name + " history message");
+                }
+            }
+            return outputStream.toByteArray();
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IOException("Could not decompress " + name + " history message", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    public int getDictionaryId() {
+        return dictionaryId;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+}
@@ -0,0 +1,36 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Turns a batch of history nodes into a message body and back. The name is sent along with the message
+ * (see {@link org.flowable.JmsAsyncHistoryListener#ENCODING_PROPERTY}) so the consumer can look up the same codec in {@link HistoryCodecs}.
+ */
+public interface HistoryCodec {
+
+    String getName();
+
+    byte[] encode(List<ObjectNode> historyObjectNodes) throws IOException;
+
+    /**
+     * @return the array of history nodes
+     */
+    JsonNode decode(byte[] body) throws IOException;
+
+}
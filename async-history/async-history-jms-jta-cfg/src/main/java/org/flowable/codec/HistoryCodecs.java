@@ -0,0 +1,131 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * The known history codecs by name. Producer and consumer resolve the codec from the encoding message property,
+ * so the producer can switch formats without redeploying the consumers at the same time.
+ */
+public class HistoryCodecs {
+
+    protected static final Map<String, HistoryCodec> CODECS = new LinkedHashMap<>();
+
+    /** Activity types, variable types and identity link types */
+    protected static final String[] DICTIONARY_1_VALUES = {
+            "startEvent", "endEvent", "userTask", "serviceTask", "scriptTask", "exclusiveGateway", "parallelGateway", "subProcess",
+            "callActivity", "boundaryEvent", "sequenceFlow", "string", "integer", "long", "double", "boolean", "date", "serializable",
+            "candidate", "participant", "starter", "assignee" };
+
+    /** Data keys, without the ones in {@link #DICTIONARY_1_FREQUENT_KEYS} */
+    protected static final String[] DICTIONARY_1_KEYS = {
+            "id", "name", "description", "revision", "category", "sourceExecutionId", "isMiRootExecution", "taskId", "businessKey",
+            "processDefinitionKey", "processDefinitionName", "processDefinitionVersion", "deploymentId", "startTime", "endTime",
+            "createTime", "claimTime", "lastUpdatedTime", "startUserId", "startActivityId", "activityId", "activityName", "activityType",
+            "superProcessInstanceId", "deleteReason", "parentTaskId", "assignee", "activityAssigneeHandled", "owner", "identityLinkType",
+            "taskDefinitionKey", "formKey", "priority", "dueDate", "property", "variableType", "variableTextValue", "variableTextValue2",
+            "variableDoubleValue", "variableLongValue", "variableBytesValue", "formPropertyId", "formPropertyValue", "userId", "groupId" };
+
+    /** History types */
+    protected static final String[] DICTIONARY_1_TYPES = {
+            "process-instance-start", "subprocess-instance-start", "process-instance-property-changed", "set-process-definition",
+            "activity-start", "activity-end", "activity-full", "form-properties-submitted", "historic-detail-variable-update",
+            "identitylink-created", "identitylink-deleted", "task-created", "task-assignee-changed", "task-owner-changed",
+            "task-property-changed", "task-ended", "variable-created", "variable-updated", "variable-removed", "process-instance-end",
+            "process-instance-deleted", "process-instance-deleted-by-process-definition-id" };
+
+    /** Data keys that occur in every node */
+    protected static final String[] DICTIONARY_1_FREQUENT_KEYS = {
+            "tenantId", "executionId", "processDefinitionId", "processInstanceId", "__timeStamp" };
+
+    public static final HistoryCodec JSON = register(new JacksonHistoryCodec("json", new JsonFactory()));
+    public static final HistoryCodec SMILE = register(new JacksonHistoryCodec("smile", createSmileFactory()));
+    public static final HistoryCodec CBOR = register(new JacksonHistoryCodec("cbor", new CBORFactory()));
+
+    public static final byte[] DEFAULT_DICTIONARY = createDefaultDictionary();
+
+    public static final CompressedHistoryCodec JSON_GZIP = register(new GzipHistoryCodec(JSON));
+    public static final CompressedHistoryCodec SMILE_GZIP = register(new GzipHistoryCodec(SMILE));
+    public static final CompressedHistoryCodec CBOR_GZIP = register(new GzipHistoryCodec(CBOR));
+    public static final CompressedHistoryCodec JSON_DICT = register(new DictionaryHistoryCodec(JSON, DEFAULT_DICTIONARY));
+    public static final CompressedHistoryCodec SMILE_DICT = register(new DictionaryHistoryCodec(SMILE, DEFAULT_DICTIONARY));
+    public static final CompressedHistoryCodec CBOR_DICT = register(new DictionaryHistoryCodec(CBOR, DEFAULT_DICTIONARY));
+
+    public static synchronized <T extends HistoryCodec> T register(T codec) {
+        CODECS.put(codec.getName(), codec);
+        return codec;
+    }
+
+    /**
+     * @return the codec with the given name, JSON when the name is null (messages of producers that don't set the encoding)
+     */
+    public static synchronized HistoryCodec get(String name) {
+        if (name == null) {
+            return JSON;
+        }
+        HistoryCodec codec = CODECS.get(name);
+        if (codec == null && name.contains("+" + DictionaryHistoryCodec.COMPRESSION + "-")) {
+            throw new IllegalArgumentException("History encoding '" + name + "' uses an unknown dictionary, known encodings are " + CODECS.keySet());
+        } else if (codec == null) {
+            throw new IllegalArgumentException("Unknown history encoding '" + name + "', known encodings are " + CODECS.keySet());
+        }
+        return codec;
+    }
+
+    public static synchronized Collection<HistoryCodec> getAll() {
+        return new ArrayList<>(CODECS.values());
+    }
+
+    protected static SmileFactory createSmileFactory() {
+        SmileFactory smileFactory = new SmileFactory();
+        // Ids, types and tenants repeat a lot within a batch, let Smile back-reference them like it does for the keys
+        smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        return smileFactory;
+    }
+
+    /**
+     * Version 1 of the dictionary: the history types and data keys of Flowable 6.1 as they appear in a JSON batch. Deflate
+     * finds matches at a short distance cheapest, so the keys that occur in every node come last.
+     *
+     * The words are fixed rather than read from the engine, so that every producer and consumer builds the same bytes.
+     * Don't change them: the Adler-32 checksum of the dictionary is part of the encoding name (see {@link DictionaryHistoryCodec}),
+     * so a changed dictionary needs a new version and codecs of its own, next to these for the messages still in the queue.
+     */
+    protected static byte[] createDefaultDictionary() {
+        StringBuilder strb = new StringBuilder();
+        for (String value : DICTIONARY_1_VALUES) {
+            strb.append('"').append(value).append("\",");
+        }
+        for (String key : DICTIONARY_1_KEYS) {
+            strb.append('"').append(key).append("\":\"");
+        }
+        for (String type : DICTIONARY_1_TYPES) {
+            strb.append("{\"type\":\"").append(type).append("\",\"data\":{");
+        }
+        for (String frequentKey : DICTIONARY_1_FREQUENT_KEYS) {
+            strb.append("\",\"").append(frequentKey).append("\":\"");
+        }
+        return strb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,56 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Writes the history nodes as an array with the data format of the given Jackson factory (JSON, Smile, CBOR, ...).
+ */
+public class JacksonHistoryCodec implements HistoryCodec {
+
+    protected final String name;
+    protected final ObjectMapper objectMapper;
+
+    public JacksonHistoryCodec(String name, JsonFactory jsonFactory) {
+        this.name = name;
+        this.objectMapper = new ObjectMapper(jsonFactory);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public byte[] encode(List<ObjectNode> historyObjectNodes) throws IOException {
+        return objectMapper.writeValueAsBytes(historyObjectNodes);
+    }
+
+    @Override
+    public JsonNode decode(byte[] body) throws IOException {
+        return objectMapper.readTree(body);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
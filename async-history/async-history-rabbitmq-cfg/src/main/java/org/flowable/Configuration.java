@@ -82,9 +82,20 @@ public class Configuration {
     public RabbitMQMessageBasedJobManager jobManager() {
         RabbitMQMessageBasedJobManager jobManager = new RabbitMQMessageBasedJobManager();
         jobManager.setRabbitTemplate(rabbitTemplate());
+        jobManager.setJobMessagePublisher(jobMessagePublisher());
         return jobManager;
     }
 
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ConfirmedJobMessagePublisher jobMessagePublisher() {
+        ConfirmedJobMessagePublisher jobMessagePublisher = new ConfirmedJobMessagePublisher();
+        jobMessagePublisher.setConnectionFactory(connectionFactory());
+        jobMessagePublisher.setMaxBatchSize(500);
+        jobMessagePublisher.setMaxInFlight(5000);
+        jobMessagePublisher.setConfirmTimeoutMillis(10000L);
+        return jobMessagePublisher;
+    }
+
     @Bean
     public ConnectionFactory connectionFactory() {
         CachingConnectionFactory connectionFactory = new CachingConnectionFactory("localhost");
@@ -0,0 +1,443 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.amqp.rabbit.connection.ChannelProxy;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+
+/**
+ * Publishes history job ids to RabbitMQ without blocking the engine threads.
+ *
+ * {@link #publish(String)} only puts the id in a bounded queue (the engine calls it after the transaction committed). One
+ * publisher thread takes everything that is queued, publishes it on a channel of its own in confirm mode and goes on with
+ * the next batch without waiting: the broker confirms arrive asynchronously. Ids that are nacked, not confirmed within
+ * 'confirmTimeoutMillis' or that were outstanding on a channel that failed are published again, up to 'maxAttempts' times.
+ * At most 'maxInFlight' messages wait for a confirm; when that many are outstanding, the publisher thread waits (the engine
+ * threads don't, the queue takes up the slack).
+ *
+ * An id is dropped when the queue is full or all attempts failed. That's not lost history: the history job is still in
+ * the database and the async history executor picks it up when it checks for jobs that were missed by the message queue.
+ * Confirms make the delivery at-least-once, so a consumer can see the same id twice.
+ */
+public class ConfirmedJobMessagePublisher {
+
+    protected static final AMQP.BasicProperties MESSAGE_PROPERTIES = new AMQP.BasicProperties.Builder()
+            .contentType("text/plain")
+            .contentEncoding("UTF-8")
+            .deliveryMode(2)
+            .build();
+
+    protected ConnectionFactory connectionFactory;
+    protected String exchange = "flowable-exchange";
+    protected String routingKey = "flowable-history-jobs";
+
+    protected int queueCapacity = 100000;
+    protected int maxBatchSize = 500;
+    protected int maxInFlight = 5000;
+    protected long confirmTimeoutMillis = 10000L;
+    protected int maxAttempts = 5;
+    protected long reconnectDelayMillis = 1000L;
+    protected long shutdownTimeoutMillis = 30000L;
+
+    protected JobMessagePublisherMetrics metrics = new JobMessagePublisherMetrics();
+
+    protected BlockingQueue<PendingMessage> queue;
+    protected final Queue<PendingMessage> retryQueue = new ConcurrentLinkedQueue<>();
+    protected Semaphore inFlightPermits;
+
+    protected volatile boolean running;
+    protected volatile long stopDeadline = Long.MAX_VALUE;
+    protected Thread publisherThread;
+
+    // Only used by the publisher thread
+    protected PublisherChannel publisherChannel;
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        // Separate locks for put and take, so the engine threads don't contend with the publisher thread draining the queue
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        inFlightPermits = new Semaphore(maxInFlight);
+        stopDeadline = Long.MAX_VALUE;
+        running = true;
+        publisherThread = new Thread(this::publishLoop, "flowable-job-message-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+    }
+
+    /**
+     * Publishes what is still queued or unconfirmed for at most 'shutdownTimeoutMillis' and closes the channel.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        stopDeadline = System.currentTimeMillis() + shutdownTimeoutMillis;
+        running = false;
+        try {
+            publisherThread.join(shutdownTimeoutMillis + reconnectDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (publisherThread.isAlive()) {
+            publisherThread.interrupt();
+        }
+        int left = queue.size() + retryQueue.size() + (int) metrics.getInFlight();
+        if (left > 0) {
+            System.out.println("Stopped publishing job messages with " + left + " job ids not confirmed, the async history executor will pick these up");
+        }
+    }
+
+    /**
+     * Queues the job id for publishing, never blocks.
+     *
+     * @return false when the id was dropped because the publisher is stopped or the queue is full
+     */
+    public boolean publish(String jobId) {
+        if (running && queue.offer(new PendingMessage(jobId))) {
+            metrics.recordQueued();
+            return true;
+        }
+        metrics.recordDropped();
+        return false;
+    }
+
+    protected void publishLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || (hasWork() && System.currentTimeMillis() < stopDeadline)) {
+            try {
+                expireUnconfirmed();
+                nextBatch(batch);
+                if (!batch.isEmpty()) {
+                    publishBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                batch.clear();
+            }
+        }
+        closeChannel();
+    }
+
+    protected boolean hasWork() {
+        return !queue.isEmpty() || !retryQueue.isEmpty() || metrics.getInFlight() > 0;
+    }
+
+    /**
+     * Retries come first, then whatever is in the queue, waiting a little when there is nothing at all.
+     */
+    protected void nextBatch(List<PendingMessage> batch) throws InterruptedException {
+        PendingMessage message;
+        while (batch.size() < maxBatchSize && (message = retryQueue.poll()) != null) {
+            batch.add(message);
+        }
+        if (batch.isEmpty()) {
+            message = queue.poll(100L, TimeUnit.MILLISECONDS);
+            if (message == null) {
+                return;
+            }
+            batch.add(message);
+        }
+        queue.drainTo(batch, maxBatchSize - batch.size());
+    }
+
+    protected void publishBatch(List<PendingMessage> batch) throws InterruptedException {
+        PublisherChannel channel;
+        try {
+            channel = getChannel();
+        } catch (Exception e) {
+            System.out.println("Could not open a channel to publish job messages: " + e.getMessage());
+            retryQueue.addAll(batch);
+            Thread.sleep(reconnectDelayMillis);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            while (!inFlightPermits.tryAcquire(100L, TimeUnit.MILLISECONDS)) {
+                expireUnconfirmed();
+            }
+            try {
+                channel.publish(batch.get(i));
+            } catch (Exception e) {
+                inFlightPermits.release();
+                System.out.println("Publishing job messages failed, reconnecting: " + e.getMessage());
+                retryQueue.addAll(batch.subList(i, batch.size()));
+                closeChannel();
+                Thread.sleep(reconnectDelayMillis);
+                return;
+            }
+        }
+        metrics.recordBatch();
+    }
+
+    protected PublisherChannel getChannel() throws Exception {
+        if (publisherChannel != null && !publisherChannel.channel.isOpen()) {
+            closeChannel();
+        }
+        if (publisherChannel == null) {
+            Channel channel = connectionFactory.createConnection().createChannel(false);
+            channel.confirmSelect();
+            publisherChannel = new PublisherChannel(channel);
+            channel.addConfirmListener(publisherChannel);
+        }
+        return publisherChannel;
+    }
+
+    /**
+     * Closes the channel; what was still waiting for a confirm on it is published again on the next one.
+     */
+    protected void closeChannel() {
+        PublisherChannel channel = publisherChannel;
+        publisherChannel = null;
+        if (channel == null) {
+            return;
+        }
+        for (Long seqNo : channel.outstanding.keySet()) {
+            PendingMessage message = channel.outstanding.remove(seqNo);
+            if (message != null) {
+                inFlightPermits.release();
+                retry(message);
+                metrics.recordUnconfirmed();
+            }
+        }
+        try {
+            channel.channel.removeConfirmListener(channel);
+            // A confirm-mode channel must not go back to the channel cache of a CachingConnectionFactory:
+            // with the target closed first, closing the proxy drops it instead of caching it
+            if (channel.channel instanceof ChannelProxy) {
+                ((ChannelProxy) channel.channel).getTargetChannel().close();
+            }
+            channel.channel.close();
+        } catch (Exception e) {
+            // The channel is already broken, nothing more to do with it
+        }
+    }
+
+    protected void expireUnconfirmed() {
+        PublisherChannel channel = publisherChannel;
+        if (channel == null) {
+            return;
+        }
+        long expired = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        for (Map.Entry<Long, PendingMessage> entry : channel.outstanding.entrySet()) {
+            if (entry.getValue().publishNanos - expired > 0) {
+                break; // Published in sequence, so the rest is younger
+            }
+            if (channel.outstanding.remove(entry.getKey()) != null) {
+                inFlightPermits.release();
+                retry(entry.getValue());
+                metrics.recordTimedOut();
+            }
+        }
+    }
+
+    protected void retry(PendingMessage message) {
+        if (message.attempts >= maxAttempts) {
+            System.out.println("Giving up on publishing job " + message.jobId + " after " + message.attempts + " attempts");
+            metrics.recordDropped();
+        } else {
+            metrics.recordRetried();
+            retryQueue.add(message);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue != null ? queue.size() + retryQueue.size() : 0;
+    }
+
+    protected static class PendingMessage {
+
+        protected final String jobId;
+        protected int attempts;
+        protected long publishNanos;
+
+        public PendingMessage(String jobId) {
+            this.jobId = jobId;
+        }
+
+    }
+
+    /**
+     * A channel in confirm mode and the messages published on it that weren't confirmed yet, by publish sequence number.
+     */
+    protected class PublisherChannel implements ConfirmListener {
+
+        protected final Channel channel;
+        protected final ConcurrentNavigableMap<Long, PendingMessage> outstanding = new ConcurrentSkipListMap<>();
+
+        public PublisherChannel(Channel channel) {
+            this.channel = channel;
+        }
+
+        public void publish(PendingMessage message) throws Exception {
+            long seqNo = channel.getNextPublishSeqNo();
+            message.attempts++;
+            message.publishNanos = System.nanoTime();
+            outstanding.put(seqNo, message);
+            // Counted as in flight before the confirm can arrive, or hasWork() could see a negative count
+            metrics.recordPublished();
+            try {
+                channel.basicPublish(exchange, routingKey, MESSAGE_PROPERTIES, message.jobId.getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                if (outstanding.remove(seqNo) != null) {
+                    metrics.recordNotPublished();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void handleAck(long seqNo, boolean multiple) {
+            long now = System.nanoTime();
+            for (PendingMessage message : removeConfirmed(seqNo, multiple)) {
+                metrics.recordConfirmed(now - message.publishNanos);
+            }
+        }
+
+        @Override
+        public void handleNack(long seqNo, boolean multiple) {
+            for (PendingMessage message : removeConfirmed(seqNo, multiple)) {
+                // Queue the retry before it stops counting as in flight, or a stopping publisher could think it's done
+                retry(message);
+                metrics.recordNacked();
+            }
+        }
+
+        protected List<PendingMessage> removeConfirmed(long seqNo, boolean multiple) {
+            List<PendingMessage> messages = new ArrayList<>();
+            if (multiple) {
+                for (Long confirmedSeqNo : outstanding.headMap(seqNo, true).keySet()) {
+                    PendingMessage message = outstanding.remove(confirmedSeqNo);
+                    if (message != null) {
+                        messages.add(message);
+                    }
+                }
+            } else {
+                PendingMessage message = outstanding.remove(seqNo);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+            inFlightPermits.release(messages.size());
+            return messages;
+        }
+
+    }
+
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public void setConnectionFactory(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public void setExchange(String exchange) {
+        this.exchange = exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public void setRoutingKey(String routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public long getConfirmTimeoutMillis() {
+        return confirmTimeoutMillis;
+    }
+
+    public void setConfirmTimeoutMillis(long confirmTimeoutMillis) {
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getReconnectDelayMillis() {
+        return reconnectDelayMillis;
+    }
+
+    public void setReconnectDelayMillis(long reconnectDelayMillis) {
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    public JobMessagePublisherMetrics getMetrics() {
+        return metrics;
+    }
+
+}
@@ -0,0 +1,176 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts what the {@link ConfirmedJobMessagePublisher} does with the job ids: queued, published, confirmed or not, retried
+ * and dropped, the number of messages waiting for a confirm and the time between publish and confirm (in power of two
+ * millisecond buckets).
+ */
+public class JobMessagePublisherMetrics {
+
+    protected static final int BUCKETS = 16;
+
+    protected final AtomicLong queued = new AtomicLong();
+    protected final AtomicLong published = new AtomicLong();
+    protected final AtomicLong batches = new AtomicLong();
+    protected final AtomicLong confirmed = new AtomicLong();
+    protected final AtomicLong nacked = new AtomicLong();
+    protected final AtomicLong timedOut = new AtomicLong();
+    protected final AtomicLong retried = new AtomicLong();
+    protected final AtomicLong dropped = new AtomicLong();
+    protected final AtomicLong inFlight = new AtomicLong();
+    protected final AtomicLong maxInFlight = new AtomicLong();
+    protected final AtomicLong confirmNanos = new AtomicLong();
+    protected final AtomicLong maxConfirmNanos = new AtomicLong();
+    protected final AtomicLongArray confirmLatencyBuckets = new AtomicLongArray(BUCKETS);
+
+    public void recordQueued() {
+        queued.incrementAndGet();
+    }
+
+    public void recordPublished() {
+        published.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * A message that was counted as published, but of which the publish failed.
+     */
+    public void recordNotPublished() {
+        published.decrementAndGet();
+        inFlight.decrementAndGet();
+    }
+
+    public void recordBatch() {
+        batches.incrementAndGet();
+    }
+
+    public void recordConfirmed(long latencyNanos) {
+        inFlight.decrementAndGet();
+        confirmed.incrementAndGet();
+        confirmNanos.addAndGet(latencyNanos);
+        maxConfirmNanos.accumulateAndGet(latencyNanos, Math::max);
+        long millis = latencyNanos / 1_000_000;
+        confirmLatencyBuckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis)));
+    }
+
+    public void recordNacked() {
+        inFlight.decrementAndGet();
+        nacked.incrementAndGet();
+    }
+
+    public void recordTimedOut() {
+        inFlight.decrementAndGet();
+        timedOut.incrementAndGet();
+    }
+
+    /**
+     * A published message of which the channel failed before it was confirmed.
+     */
+    public void recordUnconfirmed() {
+        inFlight.decrementAndGet();
+    }
+
+    public void recordRetried() {
+        retried.incrementAndGet();
+    }
+
+    public void recordDropped() {
+        dropped.incrementAndGet();
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getConfirmed() {
+        return confirmed.get();
+    }
+
+    public long getNacked() {
+        return nacked.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * Job ids that were not published because the queue was full or all attempts failed. The history jobs are still in the
+     * database, the async history executor picks them up when it checks for missed jobs.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public double getAverageConfirmMillis() {
+        long count = confirmed.get();
+        return count > 0 ? confirmNanos.get() / (count * 1_000_000.0) : 0.0;
+    }
+
+    public double getMaxConfirmMillis() {
+        return maxConfirmNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * The number of confirms per latency bucket: bucket 0 counts the confirms under 1 ms, bucket i those of [2^(i-1), 2^i) ms,
+     * the last one everything slower.
+     */
+    public long[] getConfirmLatencyBuckets() {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = confirmLatencyBuckets.get(i);
+        }
+        return buckets;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder strb = new StringBuilder();
+        strb.append(String.format("%d job ids queued, %d published in %d batches, %d confirmed, %d nacked, %d timed out, %d retried, %d dropped, "
+                + "%d in flight (max %d), confirm avg %.2f ms, max %.2f ms", getQueued(), getPublished(), getBatches(), getConfirmed(), getNacked(),
+                getTimedOut(), getRetried(), getDropped(), getInFlight(), getMaxInFlight(), getAverageConfirmMillis(), getMaxConfirmMillis()));
+        long[] buckets = getConfirmLatencyBuckets();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (buckets[i] > 0) {
+                strb.append(String.format("%n  %s %d ms: %d", i < BUCKETS - 1 ? "<" : ">=", 1L << (i < BUCKETS - 1 ? i : i - 1), buckets[i]));
+            }
+        }
+        return strb.toString();
+    }
+
+}
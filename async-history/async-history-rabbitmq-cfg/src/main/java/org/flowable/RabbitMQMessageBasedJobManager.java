@@ -20,9 +20,16 @@ public class RabbitMQMessageBasedJobManager extends AbstractMessageBasedJobManag
 
     private RabbitTemplate rabbitTemplate;
     
+    private ConfirmedJobMessagePublisher jobMessagePublisher;
+    
     @Override
     protected void sendMessage(JobInfo job) {
-        rabbitTemplate.convertAndSend("flowable-exchange", "flowable-history-jobs", job.getId());
+        if (jobMessagePublisher != null) {
+            // Queued and published with publisher confirms by another thread, see ConfirmedJobMessagePublisher
+            jobMessagePublisher.publish(job.getId());
+        } else {
+            rabbitTemplate.convertAndSend("flowable-exchange", "flowable-history-jobs", job.getId());
+        }
     }
 
     public RabbitTemplate getRabbitTemplate() {
@@ -32,5 +39,13 @@ public class RabbitMQMessageBasedJobManager extends AbstractMessageBasedJobManag
     public void setRabbitTemplate(RabbitTemplate rabbitTemplate) {
         this.rabbitTemplate = rabbitTemplate;
     }
+
+    public ConfirmedJobMessagePublisher getJobMessagePublisher() {
+        return jobMessagePublisher;
+    }
+
+    public void setJobMessagePublisher(ConfirmedJobMessagePublisher jobMessagePublisher) {
+        this.jobMessagePublisher = jobMessagePublisher;
+    }
     
 }
@@ -0,0 +1,117 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the {@link ConfirmedJobMessagePublisher} against the {@link InMemoryAmqpBroker}, with nacks, lost confirms and failing
+ * channels, and checks that every job id arrives at least once and that publishing doesn't wait for the broker.
+ */
+public class ConfirmedJobMessagePublisherTest {
+
+    protected InMemoryAmqpBroker broker;
+    protected ConfirmedJobMessagePublisher publisher;
+
+    @Before
+    public void setUp() {
+        broker = new InMemoryAmqpBroker();
+        publisher = new ConfirmedJobMessagePublisher();
+        publisher.setConnectionFactory(broker);
+        publisher.setConfirmTimeoutMillis(500L);
+        publisher.setReconnectDelayMillis(100L);
+        publisher.setMaxAttempts(10);
+    }
+
+    @After
+    public void tearDown() {
+        publisher.stop();
+        broker.shutdown();
+    }
+
+    @Test
+    public void testEveryJobIdArrivesWithNacksLostConfirmsAndFailingChannels() throws Exception {
+        int jobIds = 20000;
+        int threads = 4;
+        broker.setNackRate(0.02);
+        broker.setLostConfirmRate(0.005);
+        broker.setChannelFailureInterval(5000);
+        publisher.setQueueCapacity(jobIds);
+        publisher.start();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            executorService.execute(() -> {
+                for (int i = thread; i < jobIds; i += threads) {
+                    publisher.publish("job-" + i);
+                }
+            });
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(1L, TimeUnit.MINUTES));
+        publisher.stop();
+
+        for (int i = 0; i < jobIds; i++) {
+            assertTrue("job-" + i + " was not delivered", broker.getDeliveryCount("job-" + i) > 0);
+        }
+        JobMessagePublisherMetrics metrics = publisher.getMetrics();
+        assertEquals(jobIds, metrics.getQueued());
+        assertEquals(0L, metrics.getDropped());
+        assertEquals(0L, metrics.getInFlight());
+        assertTrue("no messages were nacked", metrics.getNacked() > 0);
+        assertTrue("no messages were retried", metrics.getRetried() > 0);
+        assertTrue("no channel failed", broker.getChannelCount() > 1);
+    }
+
+    @Test
+    public void testPublishDoesNotWaitForConfirms() {
+        int jobIds = 2000;
+        broker.setMaxConfirmLatencyMillis(1000L);
+        publisher.setConfirmTimeoutMillis(5000L);
+        publisher.start();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < jobIds; i++) {
+            assertTrue(publisher.publish("job-" + i));
+        }
+        long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // Waiting for the confirms would take seconds
+        assertTrue("publishing took " + publishMillis + " ms", publishMillis < 1000L);
+
+        publisher.stop();
+        assertEquals(jobIds, broker.getDeliveredMessages());
+        assertEquals(0L, publisher.getMetrics().getInFlight());
+    }
+
+    @Test
+    public void testStoppedPublisherDropsJobIds() {
+        publisher.start();
+        publisher.stop();
+
+        assertFalse(publisher.publish("job-after-stop"));
+        assertEquals(1L, publisher.getMetrics().getDropped());
+        assertEquals(0, broker.getDeliveryCount("job-after-stop"));
+    }
+
+}
@@ -0,0 +1,316 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+
+/**
+ * A stand-in for a RabbitMQ broker in the same JVM, to try the {@link ConfirmedJobMessagePublisher} without one. It only
+ * supports what the publisher uses: channels in confirm mode and basicPublish. Published messages are counted by body.
+ * Confirms arrive asynchronously after a random latency, sometimes for several messages at once ('multiple'), and can
+ * be made unreliable: a fraction of the messages is nacked (and not delivered), a fraction is delivered but never
+ * confirmed, and every channel can be closed after a number of publishes.
+ */
+public class InMemoryAmqpBroker implements ConnectionFactory {
+
+    protected long maxConfirmLatencyMillis = 5L;
+    protected double nackRate;
+    protected double lostConfirmRate;
+    protected int channelFailureInterval;
+
+    protected final Map<String, AtomicInteger> deliveries = new ConcurrentHashMap<>();
+    protected final AtomicInteger channelCount = new AtomicInteger();
+    protected final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    protected final Random random = new Random();
+
+    protected final ScheduledExecutorService confirmScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "in-memory-amqp-broker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public Connection createConnection() {
+        return new Connection() {
+
+            @Override
+            public Channel createChannel(boolean transactional) {
+                return createStandInChannel();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public int getLocalPort() {
+                return 0;
+            }
+
+        };
+    }
+
+    protected Channel createStandInChannel() {
+        final StandInChannel standInChannel = new StandInChannel(channelCount.incrementAndGet());
+        standInChannel.confirmTask = confirmScheduler.scheduleWithFixedDelay(standInChannel::sendDueConfirms, 1L, 1L, TimeUnit.MILLISECONDS);
+        return (Channel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Channel.class },
+                (proxy, method, args) -> standInChannel.invoke(method, args));
+    }
+
+    public int getDeliveryCount(String body) {
+        AtomicInteger count = deliveries.get(body);
+        return count != null ? count.get() : 0;
+    }
+
+    public int getDeliveredMessages() {
+        return deliveries.size();
+    }
+
+    public int getChannelCount() {
+        return channelCount.get();
+    }
+
+    public void shutdown() {
+        confirmScheduler.shutdownNow();
+    }
+
+    protected class StandInChannel {
+
+        protected final int channelNumber;
+        protected volatile boolean open = true;
+        protected boolean confirmMode;
+        protected long nextSeqNo = 1;
+        protected int publishes;
+        protected final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+        protected final ConcurrentSkipListMap<Long, PendingConfirm> pendingConfirms = new ConcurrentSkipListMap<>();
+        protected ScheduledFuture<?> confirmTask;
+
+        public StandInChannel(int channelNumber) {
+            this.channelNumber = channelNumber;
+        }
+
+        public synchronized Object invoke(Method method, Object[] args) throws Exception {
+            switch (method.getName()) {
+                case "confirmSelect":
+                    confirmMode = true;
+                    return null;
+                case "getNextPublishSeqNo":
+                    return confirmMode ? nextSeqNo : 0L;
+                case "addConfirmListener":
+                    confirmListeners.add((ConfirmListener) args[0]);
+                    return null;
+                case "removeConfirmListener":
+                    return confirmListeners.remove(args[0]);
+                case "basicPublish":
+                    if (args.length == 4) {
+                        basicPublish((byte[]) args[3]);
+                        return null;
+                    }
+                    break;
+                case "isOpen":
+                    return open;
+                case "close":
+                    if (args == null || args.length == 0) {
+                        close();
+                        return null;
+                    }
+                    break;
+                case "getChannelNumber":
+                    return channelNumber;
+                case "toString":
+                    return "InMemoryAmqpBroker channel " + channelNumber;
+                case "hashCode":
+                    return System.identityHashCode(this);
+                case "equals":
+                    return args[0] == this;
+            }
+            throw new UnsupportedOperationException(method.getName() + " is not supported by the in-memory AMQP broker");
+        }
+
+        protected void basicPublish(byte[] body) throws IOException {
+            if (!open) {
+                throw new IOException("Channel " + channelNumber + " is closed");
+            }
+            if (channelFailureInterval > 0 && ++publishes > channelFailureInterval) {
+                close();
+                throw new IOException("Channel " + channelNumber + " was closed by the broker");
+            }
+
+            long seqNo = nextSeqNo++;
+            double outcome = random.nextDouble();
+            if (outcome < nackRate) {
+                if (confirmMode) {
+                    pendingConfirms.put(seqNo, new PendingConfirm(dueNanos(), false));
+                }
+                return;
+            }
+
+            deliveries.computeIfAbsent(new String(body, StandardCharsets.UTF_8), key -> new AtomicInteger()).incrementAndGet();
+            if (confirmMode && outcome >= nackRate + lostConfirmRate) {
+                pendingConfirms.put(seqNo, new PendingConfirm(dueNanos(), true));
+            }
+        }
+
+        protected long dueNanos() {
+            return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(random.nextInt((int) maxConfirmLatencyMillis + 1));
+        }
+
+        /**
+         * Confirms the due messages. An ack for a message without pending confirms before it is sometimes sent as
+         * 'multiple', which also confirms the messages of which the confirm was lost.
+         */
+        protected synchronized void sendDueConfirms() {
+            if (!open) {
+                return;
+            }
+            long now = System.nanoTime();
+            Iterator<Map.Entry<Long, PendingConfirm>> iterator = pendingConfirms.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, PendingConfirm> entry = iterator.next();
+                long seqNo = entry.getKey();
+                if (entry.getValue().dueNanos - now > 0) {
+                    continue;
+                }
+                boolean multiple = seqNo == pendingConfirms.firstKey() && random.nextInt(4) == 0;
+                iterator.remove();
+                for (ConfirmListener confirmListener : confirmListeners) {
+                    try {
+                        if (!entry.getValue().ack) {
+                            confirmListener.handleNack(seqNo, false);
+                        } else {
+                            confirmListener.handleAck(seqNo, multiple);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        protected void close() {
+            open = false;
+            pendingConfirms.clear();
+            if (confirmTask != null) {
+                confirmTask.cancel(false);
+            }
+        }
+
+    }
+
+    protected static class PendingConfirm {
+
+        protected final long dueNanos;
+        protected final boolean ack;
+
+        public PendingConfirm(long dueNanos, boolean ack) {
+            this.dueNanos = dueNanos;
+            this.ack = ack;
+        }
+
+    }
+
+    public long getMaxConfirmLatencyMillis() {
+        return maxConfirmLatencyMillis;
+    }
+
+    public void setMaxConfirmLatencyMillis(long maxConfirmLatencyMillis) {
+        this.maxConfirmLatencyMillis = maxConfirmLatencyMillis;
+    }
+
+    public double getNackRate() {
+        return nackRate;
+    }
+
+    public void setNackRate(double nackRate) {
+        this.nackRate = nackRate;
+    }
+
+    public double getLostConfirmRate() {
+        return lostConfirmRate;
+    }
+
+    public void setLostConfirmRate(double lostConfirmRate) {
+        this.lostConfirmRate = lostConfirmRate;
+    }
+
+    public int getChannelFailureInterval() {
+        return channelFailureInterval;
+    }
+
+    public void setChannelFailureInterval(int channelFailureInterval) {
+        this.channelFailureInterval = channelFailureInterval;
+    }
+
+    @Override
+    public String getHost() {
+        return "in-memory";
+    }
+
+    @Override
+    public int getPort() {
+        return 0;
+    }
+
+    @Override
+    public String getVirtualHost() {
+        return "/";
+    }
+
+    @Override
+    public String getUsername() {
+        return "guest";
+    }
+
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        connectionListeners.add(listener);
+    }
+
+    @Override
+    public boolean removeConnectionListener(ConnectionListener listener) {
+        return connectionListeners.remove(listener);
+    }
+
+    @Override
+    public void clearConnectionListeners() {
+        connectionListeners.clear();
+    }
+
+}
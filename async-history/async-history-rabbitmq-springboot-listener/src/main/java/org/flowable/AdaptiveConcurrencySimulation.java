@@ -0,0 +1,181 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Runs the {@link AdaptiveConcurrencyController} against a simulated queue and database, in simulated time, next to a
+ * number of fixed concurrencies. No broker or database is needed and every run gives the same numbers.
+ *
+ * The history jobs arrive at a base rate, with bursts. Every consumer with a connection handles one job at a time. The
+ * database handles 'dbParallelism' jobs without slowing down; beyond that every job gets slower (lock and IO
+ * contention), faster than the extra consumers add, so the throughput goes down when there are too many consumers.
+ * Consumers without a connection (more consumers than the pool size) wait for one.
+ *
+ * System properties: fixed (the fixed concurrencies to compare, default 8,12,16), baseRate (jobs/s, default 200), burstRate
+ * (default 2500), burstSeconds (default 20), burstEvery (seconds, default 90), seconds (default 600), serviceMillis (the
+ * time per job without contention, default 4), dbParallelism (default 8), poolSize (default 16), min and max (the range
+ * of the controller, default 2 and 16).
+ */
+public class AdaptiveConcurrencySimulation {
+
+    protected static final long STEP_NANOS = 10_000_000L;
+
+    protected double baseRate = Double.parseDouble(System.getProperty("baseRate", "200"));
+    protected double burstRate = Double.parseDouble(System.getProperty("burstRate", "2500"));
+    protected int burstSeconds = Integer.getInteger("burstSeconds", 20);
+    protected int burstEvery = Integer.getInteger("burstEvery", 90);
+    protected int seconds = Integer.getInteger("seconds", 600);
+    protected double serviceMillis = Double.parseDouble(System.getProperty("serviceMillis", "4"));
+    protected int dbParallelism = Integer.getInteger("dbParallelism", 8);
+    protected int poolSize = Integer.getInteger("poolSize", 16);
+
+    public static void main(String[] args) {
+        AdaptiveConcurrencySimulation simulation = new AdaptiveConcurrencySimulation();
+        String[] fixed = System.getProperty("fixed", "8,12,16").split(",");
+        int min = Integer.getInteger("min", 2);
+        int max = Integer.getInteger("max", 16);
+
+        System.out.println(String.format("%d s, %.0f jobs/s with bursts of %.0f jobs/s for %d s every %d s, %.1f ms per job, db parallelism %d, pool %d",
+                simulation.seconds, simulation.baseRate, simulation.burstRate, simulation.burstSeconds, simulation.burstEvery, simulation.serviceMillis,
+                simulation.dbParallelism, simulation.poolSize));
+        System.out.println(String.format("%-16s %10s %10s %12s %12s %12s %10s %12s", "consumers", "jobs/s", "max depth", "wait p50 ms", "wait p99 ms",
+                "wait max ms", "job ms", "consumer s"));
+        for (String concurrency : fixed) {
+            int consumers = Integer.parseInt(concurrency.trim());
+            simulation.run(null, consumers).print("fixed " + consumers);
+        }
+
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController();
+        controller.setName("simulation");
+        controller.setMinConcurrency(min);
+        controller.setMaxConcurrency(max);
+        controller.setInitialConcurrency(min);
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+
+        }));
+        Result result;
+        try {
+            result = simulation.run(controller, 0);
+        } finally {
+            System.setOut(console);
+        }
+        result.print("adaptive " + min + "-" + max);
+        System.out.println("Controller: " + controller.getMetrics().toString().replaceAll(", [0-9]+ consumer seconds", ""));
+    }
+
+    protected Result run(AdaptiveConcurrencyController controller, int fixedConcurrency) {
+        Result result = new Result();
+        ArrayDeque<double[]> queue = new ArrayDeque<>(); // arrival step and number of jobs
+        double[] queued = new double[1];
+        double[] processed = new double[1];
+        double[] processingNanos = new double[1];
+        double[] poolUtilization = new double[1];
+        int[] concurrency = new int[] { fixedConcurrency };
+
+        long steps = seconds * 1_000_000_000L / STEP_NANOS;
+        long controllerSteps = 0L;
+        if (controller != null) {
+            controller.setQueueDepth(() -> (long) queued[0]);
+            controller.setProcessedMessages(() -> (long) processed[0]);
+            controller.setProcessingNanos(() -> (long) processingNanos[0]);
+            controller.setPoolUtilization(() -> poolUtilization[0]);
+            controller.setConcurrencySetter(newConcurrency -> concurrency[0] = newConcurrency);
+            controller.concurrency = Math.max(controller.getMinConcurrency(), controller.getInitialConcurrency());
+            concurrency[0] = controller.concurrency;
+            controller.lastChangeNanos = 0L;
+            controller.getMetrics().recordConcurrency(concurrency[0], 0L);
+            controllerSteps = controller.getIntervalMillis() * 1_000_000L / STEP_NANOS;
+        }
+
+        double fractionalArrivals = 0.0;
+        double consumerSeconds = 0.0;
+        double busyJobMillis = 0.0;
+        for (long step = 0; step < steps; step++) {
+            long second = step * STEP_NANOS / 1_000_000_000L;
+            double rate = second % burstEvery < burstSeconds && second >= burstEvery / 2 ? burstRate : baseRate;
+            fractionalArrivals += rate * STEP_NANOS / 1_000_000_000.0;
+            int arrivals = (int) fractionalArrivals;
+            fractionalArrivals -= arrivals;
+            if (arrivals > 0) {
+                queue.addLast(new double[] { step, arrivals });
+                queued[0] += arrivals;
+            }
+
+            // The consumers with a connection do the work, the slower the more of them there are beyond the db parallelism
+            int busy = (int) Math.min(concurrency[0], Math.ceil(queued[0]));
+            int withConnection = Math.min(busy, poolSize);
+            poolUtilization[0] = busy / (double) poolSize;
+            double jobMillis = serviceMillis * Math.pow(Math.max(1.0, withConnection / (double) dbParallelism), 1.5);
+            double completions = Math.min(queued[0], withConnection * (STEP_NANOS / 1_000_000.0) / jobMillis);
+            queued[0] -= completions;
+            processed[0] += completions;
+            processingNanos[0] += completions * jobMillis * 1_000_000.0;
+            busyJobMillis += completions * jobMillis;
+            result.jobs += completions;
+            consumerSeconds += concurrency[0] * STEP_NANOS / 1_000_000_000.0;
+
+            while (completions > 0.0 && !queue.isEmpty()) {
+                double[] head = queue.peekFirst();
+                double taken = Math.min(head[1], completions);
+                long waitMillis = (step - (long) head[0]) * STEP_NANOS / 1_000_000L;
+                if (taken >= 1.0) {
+                    result.waitMillis.recordValueWithCount(waitMillis, (long) taken);
+                }
+                head[1] -= taken;
+                completions -= taken;
+                if (head[1] <= 0.0) {
+                    queue.pollFirst();
+                }
+            }
+            result.maxDepth = Math.max(result.maxDepth, (long) queued[0]);
+
+            if (controller != null && (step + 1) % controllerSteps == 0) {
+                controller.evaluate((step + 1) * STEP_NANOS);
+            }
+        }
+        result.seconds = seconds;
+        result.consumerSeconds = consumerSeconds;
+        result.averageJobMillis = result.jobs > 0 ? busyJobMillis / result.jobs : 0.0;
+        return result;
+    }
+
+    protected static class Result {
+
+        protected double jobs;
+        protected long maxDepth;
+        protected double seconds;
+        protected double consumerSeconds;
+        protected double averageJobMillis;
+        protected Histogram waitMillis = new Histogram(3);
+
+        protected void print(String name) {
+            System.out.println(String.format("%-16s %10.0f %10d %12d %12d %12d %10.2f %12.0f", name, jobs / seconds, maxDepth,
+                    waitMillis.getValueAtPercentile(50.0), waitMillis.getValueAtPercentile(99.0), waitMillis.getMaxValue(), averageJobMillis,
+                    consumerSeconds));
+        }
+
+    }
+
+}
@@ -12,6 +12,8 @@
  */
 package org.flowable;
 
+import java.util.Properties;
+
 import javax.sql.DataSource;
 
 import org.flowable.engine.ProcessEngine;
@@ -19,13 +21,14 @@ import org.flowable.engine.ProcessEngineConfiguration;
 import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
 import org.flowable.engine.impl.history.async.message.AsyncHistoryJobMessageReceiver;
 import org.flowable.spring.SpringProcessEngineConfiguration;
+import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
-import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -55,41 +58,77 @@ public class Application {
     }
     
     @Bean
-    public SimpleMessageListenerContainer container(ConnectionFactory connectionFactory, MessageListenerAdapter listenerAdapter) {
+    public SimpleMessageListenerContainer container(ConnectionFactory connectionFactory, StreamingReceiver streamingReceiver) {
         SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
         container.setQueueNames(queueName);
-        container.setMessageListener(listenerAdapter);
+        container.setMessageListener(streamingReceiver);
         container.setConcurrentConsumers(8);
         container.start();
         return container;
     }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public AdaptiveConcurrencyController concurrencyController(SimpleMessageListenerContainer container, AmqpAdmin amqpAdmin,
+            StreamingReceiver streamingReceiver) {
+        
+        // Scales the consumers between 2 and 16 on the queue depth, the processing time and the connection pool utilization,
+        // instead of the fixed 8 consumers of the container
+        AdaptiveConcurrencyController concurrencyController = new AdaptiveConcurrencyController();
+        concurrencyController.setName(queueName);
+        concurrencyController.setMinConcurrency(2);
+        concurrencyController.setMaxConcurrency(16);
+        concurrencyController.setInitialConcurrency(8);
+        concurrencyController.setConcurrencySetter(container::setConcurrentConsumers);
+        concurrencyController.setQueueDepth(() -> {
+            Properties queueProperties = amqpAdmin.getQueueProperties(queueName);
+            return queueProperties != null ? ((Number) queueProperties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT)).longValue() : -1L;
+        });
+        concurrencyController.setProcessedMessages(streamingReceiver.getMetrics()::getMessages);
+        concurrencyController.setProcessingNanos(streamingReceiver.getMetrics()::getProcessingNanos);
+        concurrencyController.setPoolUtilization(AdaptiveConcurrencyController.hikariPoolUtilization((HikariDataSource) dataSource()));
+        return concurrencyController;
+    }
     
     @Bean
-    public Receiver receiver() {
-        Receiver receiver = new Receiver();
-        receiver.setAsyncHistoryJobMessageReceiver(asyncHistoryJobMessageReceiver());
-        return receiver;
+    public StreamingReceiver streamingReceiver() {
+        // Reads the job ids straight from the message bytes and reports throughput every 10 seconds instead of printing every message.
+        // The Receiver, behind a MessageListenerAdapter, is the simpler version of this (see ReceiverBenchmark for the difference)
+        StreamingReceiver streamingReceiver = new StreamingReceiver();
+        streamingReceiver.setAsyncHistoryJobMessageReceiver(asyncHistoryJobMessageReceiver());
+        streamingReceiver.getMetrics().startReporting(10L);
+        return streamingReceiver;
     }
 
     @Bean
     public AsyncHistoryJobMessageReceiver asyncHistoryJobMessageReceiver() {
         AsyncHistoryJobMessageReceiver asyncHistoryJobMessageReceiver = new AsyncHistoryJobMessageReceiver();
         asyncHistoryJobMessageReceiver.setProcessEngineConfiguration(processEngineConfiguration());
-        asyncHistoryJobMessageReceiver.setAsyncHistoryJobMessageHandler(myJobMessageHandler());
+        if (Boolean.getBoolean("bulkHistoryApplier")) {
+            // Applies the history jobs of the waiting consumers in one transaction, with bulk inserts, instead of every job in
+            // the transaction of its message
+            BulkHistoryJobApplier bulkHistoryJobApplier = bulkHistoryJobApplier();
+            bulkHistoryJobApplier.start();
+            asyncHistoryJobMessageReceiver.setAsyncHistoryJobMessageHandler(bulkHistoryJobApplier);
+        } else {
+            asyncHistoryJobMessageReceiver.setAsyncHistoryJobMessageHandler(myJobMessageHandler());
+        }
         return asyncHistoryJobMessageReceiver;
     }
     
-    @Bean
-    public MessageListenerAdapter listenerAdapter(Receiver receiver) {
-        return new MessageListenerAdapter(receiver, "receiveMessage");
-    }
-    
     @Bean
     public MyJobMessageHandler myJobMessageHandler() {
         return new MyJobMessageHandler();
     }
     
+    @Bean(destroyMethod = "stop")
+    public BulkHistoryJobApplier bulkHistoryJobApplier() {
+        // Only started and used with -DbulkHistoryApplier=true
+        BulkHistoryJobApplier bulkHistoryJobApplier = new BulkHistoryJobApplier(processEngineConfiguration());
+        bulkHistoryJobApplier.setMaxBatchSize(500);
+        return bulkHistoryJobApplier;
+    }
+    
     @Bean
     public DataSource dataSource() {
         String jdbcUrl = "jdbc:mysql://localhost:3306/flowable?useSSL=false&characterEncoding=UTF-8&serverTimezone=UTC";
@@ -0,0 +1,668 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.flowable.engine.common.api.FlowableException;
+import org.flowable.engine.common.impl.interceptor.Command;
+import org.flowable.engine.common.impl.interceptor.CommandContext;
+import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.flowable.engine.impl.history.async.AsyncHistoryJobHandler;
+import org.flowable.engine.impl.history.async.AsyncHistoryJobNotApplicableException;
+import org.flowable.engine.impl.history.async.HistoryJsonConstants;
+import org.flowable.engine.impl.history.async.json.transformer.HistoryJsonTransformer;
+import org.flowable.engine.impl.history.async.message.AsyncHistoryJobMessageHandler;
+import org.flowable.engine.impl.persistence.entity.HistoryJobEntity;
+import org.flowable.engine.impl.util.CommandContextUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * An {@link AsyncHistoryJobMessageHandler} that applies the history jobs of many messages together, instead of every
+ * job in the transaction of its own message.
+ *
+ * {@link #handleJob(HistoryJobEntity, JsonNode)} buffers the job and its decoded history data, and waits until the job is
+ * applied. A flusher thread takes the buffered jobs and applies them in one transaction. Only then does handleJob return
+ * (false, the job is already deleted), so the message of a job is never acknowledged while the job only exists in memory:
+ * the consumers of the listener container wait together for one commit, instead of committing one by one. A batch holds
+ * the jobs that arrived while the previous one was applied, at most 'maxBatchSize', so it is at most as large as the
+ * number of consumers. A 'windowMillis' above 0 waits that long for more jobs, which every consumer then waits too.
+ *
+ * <ul>
+ * <li>the history events are applied with the transformers of the engine, so the resulting history is the same as that
+ * of the async history executor. The new ACT_HI_* rows stay in the entity cache until the end of the transaction, where
+ * the engine inserts them with one bulk insert per table.</li>
+ * <li>the applied jobs are claimed with a JDBC batch delete of their ACT_RU_HISTORY_JOB and ACT_GE_BYTEARRAY rows. When
+ * some of them are already gone (someone else handled them), the transaction is rolled back and the others are applied
+ * again without them.</li>
+ * </ul>
+ *
+ * The jobs of a window are applied in the order the engine created them (create time, then id), whatever order the
+ * consumers received them in, so the events of a process instance are applied in order. An event that needs an earlier
+ * one that isn't there yet (an activity end without its start) is not applicable for the transformers of the engine:
+ * that job is left alone and waits for the next window, the same way the async history executor unacquires it. For a
+ * job with grouped events that only shows while applying it, which rolls back the transaction: the jobs before it are
+ * applied again, the job and the ones after it wait for the next window. Any other failure splits the window in halves,
+ * until the failing job is on its own. A job that still isn't applied 'giveUpAfterMillis' after it was received is given
+ * up: it stays in ACT_RU_HISTORY_JOB, it is counted and logged, and handleJob fails, so its message is redelivered.
+ *
+ * The buffer holds at most 'maxPendingJobs' jobs. When it is full, {@link #handleJob(HistoryJobEntity, JsonNode)} waits
+ * up to 'maxWaitMillis' and then fails, so the message is redelivered later. The consumers wait with a connection of
+ * their own, so the pool needs at least one connection more than there are consumers, for the flusher.
+ *
+ * Only the default transformers of the engine are used: custom ones have to be added to {@link #getHistoryJobHandler()}.
+ * When the applier isn't started, every job is applied right away in the transaction of its message.
+ */
+public class BulkHistoryJobApplier implements AsyncHistoryJobMessageHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkHistoryJobApplier.class);
+
+    protected ProcessEngineConfigurationImpl processEngineConfiguration;
+    protected BatchHistoryJobHandler historyJobHandler = new BatchHistoryJobHandler();
+
+    protected int maxBatchSize = 500;
+    protected long windowMillis = 0L;
+    protected int maxPendingJobs = 5000;
+    protected long maxWaitMillis = 1000L;
+    protected long giveUpAfterMillis = 120000L;
+
+    protected BulkHistoryJobApplierMetrics metrics = new BulkHistoryJobApplierMetrics();
+
+    protected final Object lock = new Object();
+    protected List<PendingJob> pendingJobs = new ArrayList<>();
+    protected Map<String, PendingJob> unfinishedJobs = new HashMap<>();
+    protected long windowStartNanos;
+    protected volatile boolean running;
+    protected Thread flusher;
+
+    public BulkHistoryJobApplier() {
+    }
+
+    public BulkHistoryJobApplier(ProcessEngineConfigurationImpl processEngineConfiguration) {
+        this.processEngineConfiguration = processEngineConfiguration;
+    }
+
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "flowable-history-bulk-applier");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Stops taking jobs and applies the buffered ones. The ones that can't be applied right away are given up, so their
+     * messages are redelivered.
+     */
+    public synchronized void stop() {
+        if (flusher == null) {
+            return;
+        }
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher = null;
+    }
+
+    @Override
+    public boolean handleJob(HistoryJobEntity historyJobEntity, JsonNode historyData) {
+        metrics.recordReceived();
+        synchronized (lock) {
+            if (running) {
+                PendingJob pendingJob = unfinishedJobs.get(historyJobEntity.getId());
+                if (pendingJob != null) {
+                    // Redelivered while the first delivery still waits: wait for the same outcome
+                    metrics.recordDuplicate();
+                } else {
+                    waitForRoom(historyJobEntity.getId());
+                    pendingJob = new PendingJob(historyJobEntity, historyData);
+                    unfinishedJobs.put(pendingJob.id, pendingJob);
+                    addPending(pendingJob);
+                }
+                waitUntilFinished(pendingJob);
+                return false;
+            }
+        }
+
+        // Not started (or stopped): apply it like the async history executor, the receiver deletes the job
+        historyJobHandler.apply(CommandContextUtil.getCommandContext(), historyJobEntity, historyData);
+        metrics.recordAppliedDirectly(historyJobHandler.countEvents(historyData));
+        return true;
+    }
+
+    protected void waitForRoom(String jobId) {
+        long deadline = System.nanoTime() + maxWaitMillis * 1_000_000L;
+        while (pendingJobs.size() >= maxPendingJobs) {
+            long waitNanos = deadline - System.nanoTime();
+            if (waitNanos <= 0L || !running) {
+                metrics.recordRejected();
+                throw new FlowableException("History job buffer full, could not take history job " + jobId);
+            }
+            try {
+                lock.wait(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FlowableException("Interrupted while waiting to buffer history job " + jobId, e);
+            }
+        }
+    }
+
+    /**
+     * Waits until the job is applied, handled by someone else or given up. Throws when it was given up: the transaction of
+     * the message is rolled back and the message is redelivered.
+     */
+    protected void waitUntilFinished(PendingJob pendingJob) {
+        while (!pendingJob.finished) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                // The job stays buffered: when the message comes back, the job is applied or already gone
+                Thread.currentThread().interrupt();
+                throw new FlowableException("Interrupted while waiting for history job " + pendingJob.id, e);
+            }
+        }
+        if (pendingJob.failure != null) {
+            throw new FlowableException("History job " + pendingJob.id + " was not applied", pendingJob.failure);
+        }
+    }
+
+    protected void addPending(PendingJob pendingJob) {
+        if (pendingJobs.isEmpty()) {
+            windowStartNanos = System.nanoTime();
+        }
+        pendingJobs.add(pendingJob);
+        if (pendingJobs.size() >= maxBatchSize) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Wakes up the consumers waiting for the jobs that aren't finished yet. A failure means the jobs were given up.
+     */
+    protected void finish(List<PendingJob> jobs, RuntimeException failure) {
+        synchronized (lock) {
+            for (PendingJob job : jobs) {
+                if (job.finished) {
+                    continue;
+                }
+                job.finished = true;
+                job.failure = failure;
+                unfinishedJobs.remove(job.id, job);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    protected void flushLoop() {
+        while (true) {
+            List<PendingJob> batch = takeBatch();
+            if (batch == null) {
+                return;
+            }
+            try {
+                flush(batch);
+            } catch (RuntimeException e) {
+                // flush handles the failures of the jobs, this is a bug: keep the thread alive for the next window, and don't
+                // leave the consumers of the batch waiting
+                LOGGER.error("Could not apply a batch of {} history jobs", batch.size(), e);
+                finish(batch, e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the window to end (or a full batch) and takes up to 'maxBatchSize' jobs. Returns null when stopped and
+     * nothing is left.
+     */
+    protected List<PendingJob> takeBatch() {
+        synchronized (lock) {
+            while (true) {
+                if (pendingJobs.isEmpty()) {
+                    if (!running) {
+                        return null;
+                    }
+                    waitOnLock(windowMillis * 1_000_000L);
+                    continue;
+                }
+                long waitNanos = windowStartNanos + windowMillis * 1_000_000L - System.nanoTime();
+                if (pendingJobs.size() >= maxBatchSize || waitNanos <= 0L || !running) {
+                    break;
+                }
+                waitOnLock(waitNanos);
+            }
+
+            int size = Math.min(maxBatchSize, pendingJobs.size());
+            List<PendingJob> batch = new ArrayList<>(pendingJobs.subList(0, size));
+            pendingJobs.subList(0, size).clear();
+            windowStartNanos = System.nanoTime();
+            lock.notifyAll();
+            return batch;
+        }
+    }
+
+    protected void waitOnLock(long nanos) {
+        try {
+            lock.wait(Math.max(1L, nanos / 1_000_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    protected void flush(List<PendingJob> batch) {
+        long start = System.nanoTime();
+        batch.sort(CREATION_ORDER);
+        applyInOrder(batch);
+        metrics.recordFlush(batch.size(), System.nanoTime() - start);
+    }
+
+    protected void applyInOrder(List<PendingJob> jobs) {
+        List<PendingJob> remaining = jobs;
+        while (!remaining.isEmpty()) {
+            try {
+                BatchResult result = applyInOneTransaction(remaining);
+                metrics.recordApplied(result.applied.size(), result.appliedEvents);
+                finish(result.applied, null);
+                for (PendingJob notApplicable : result.notApplicable) {
+                    metrics.recordNotApplicable();
+                    retryLater(notApplicable, null);
+                }
+                return;
+
+            } catch (JobsAlreadyHandledException e) {
+                // Rolled back: someone else applied these jobs in the meantime, apply the others again
+                metrics.recordAlreadyHandled(e.jobs.size());
+                finish(e.jobs, null);
+                remaining = new ArrayList<>(remaining);
+                remaining.removeAll(e.jobs);
+
+            } catch (JobNotApplicableException e) {
+                // Rolled back (an event of a grouped job): apply the jobs before it again. It waits for the next window,
+                // with the jobs after it: those often include the next events of the same process instance
+                metrics.recordNotApplicable();
+                retryLater(remaining.get(e.index), null);
+                for (PendingJob laterJob : remaining.subList(e.index + 1, remaining.size())) {
+                    requeue(laterJob);
+                }
+                remaining = new ArrayList<>(remaining.subList(0, e.index));
+
+            } catch (RuntimeException e) {
+                if (remaining.size() == 1) {
+                    retryLater(remaining.get(0), e);
+                    return;
+                }
+                metrics.recordSplit();
+                int half = remaining.size() / 2;
+                applyInOrder(new ArrayList<>(remaining.subList(0, half)));
+                applyInOrder(new ArrayList<>(remaining.subList(half, remaining.size())));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies the applicable jobs and claims them, in one transaction. The jobs that are not applicable yet are left
+     * alone and returned. Throws a {@link JobsAlreadyHandledException} when some jobs were already gone, and a
+     * {@link JobNotApplicableException} when one of the events of a grouped job turned out not to be applicable.
+     */
+    protected BatchResult applyInOneTransaction(final List<PendingJob> jobs) {
+        return processEngineConfiguration.getCommandExecutor().execute(new Command<BatchResult>() {
+
+            @Override
+            public BatchResult execute(CommandContext commandContext) {
+                Connection connection = CommandContextUtil.getDbSqlSession(commandContext).getSqlSession().getConnection();
+                try {
+                    BatchResult result = new BatchResult();
+                    List<PendingJob> applied = result.applied;
+                    for (int i = 0; i < jobs.size(); i++) {
+                        PendingJob job = jobs.get(i);
+                        if (!historyJobHandler.isApplicable(commandContext, job.historyData)) {
+                            result.notApplicable.add(job);
+                            continue;
+                        }
+                        try {
+                            historyJobHandler.apply(commandContext, job.historyJobEntity, job.historyData);
+                        } catch (AsyncHistoryJobNotApplicableException e) {
+                            throw new JobNotApplicableException(i);
+                        }
+                        applied.add(job);
+                        result.appliedEvents += historyJobHandler.countEvents(job.historyData);
+                    }
+
+                    List<PendingJob> alreadyHandled = claimJobs(connection, applied);
+                    if (!alreadyHandled.isEmpty()) {
+                        throw new JobsAlreadyHandledException(alreadyHandled);
+                    }
+                    return result;
+
+                } catch (RuntimeException e) {
+                    // Nothing went through MyBatis yet, so without a transaction manager the session would skip the rollback
+                    // and closing it would commit the claims
+                    rollback(connection);
+                    throw e;
+                }
+            }
+
+        });
+    }
+
+    /**
+     * Deletes the history jobs and their byte arrays with JDBC batches on the connection of the command, and returns the
+     * jobs that were already gone.
+     */
+    protected List<PendingJob> claimJobs(Connection connection, List<PendingJob> jobs) {
+        List<PendingJob> alreadyHandled = new ArrayList<>();
+        if (jobs.isEmpty()) {
+            return alreadyHandled;
+        }
+        String tablePrefix = processEngineConfiguration.getDatabaseTablePrefix();
+        try {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + tablePrefix + "ACT_RU_HISTORY_JOB WHERE ID_ = ?")) {
+                for (PendingJob job : jobs) {
+                    statement.setString(1, job.id);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] == 0) {
+                        alreadyHandled.add(jobs.get(i));
+                    }
+                }
+            }
+            if (!alreadyHandled.isEmpty()) {
+                return alreadyHandled;
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + tablePrefix + "ACT_GE_BYTEARRAY WHERE ID_ = ?")) {
+                boolean byteArrays = false;
+                for (PendingJob job : jobs) {
+                    for (String byteArrayId : job.byteArrayIds) {
+                        statement.setString(1, byteArrayId);
+                        statement.addBatch();
+                        byteArrays = true;
+                    }
+                }
+                if (byteArrays) {
+                    statement.executeBatch();
+                }
+            }
+        } catch (SQLException e) {
+            throw new FlowableException("Could not claim " + jobs.size() + " history jobs", e);
+        }
+        return alreadyHandled;
+    }
+
+    protected void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Puts the job back for the next window, or gives it up when it was received 'giveUpAfterMillis' ago or the applier
+     * is stopping.
+     */
+    protected void retryLater(PendingJob job, RuntimeException failure) {
+        job.attempts++;
+        long waitedMillis = (System.nanoTime() - job.receivedNanos) / 1_000_000L;
+        if (waitedMillis >= giveUpAfterMillis || !running) {
+            metrics.recordFailed();
+            LOGGER.warn("Giving up on history job {} after {} attempts in {} ms, it stays in the history job table and its message is redelivered{}",
+                    job.id, job.attempts, waitedMillis, failure != null ? "" : " (an earlier event never arrived)", failure);
+            finish(Collections.singletonList(job), failure != null ? failure
+                    : new FlowableException("History job " + job.id + " was not applicable in " + waitedMillis + " ms"));
+            return;
+        }
+        if (failure != null) {
+            metrics.recordFailure();
+        }
+        requeue(job);
+    }
+
+    protected void requeue(PendingJob job) {
+        synchronized (lock) {
+            addPending(job);
+        }
+    }
+
+    /**
+     * The jobs taken from the buffer but not applied yet are not counted.
+     */
+    public int getPendingJobs() {
+        synchronized (lock) {
+            return pendingJobs.size();
+        }
+    }
+
+    public ProcessEngineConfigurationImpl getProcessEngineConfiguration() {
+        return processEngineConfiguration;
+    }
+
+    public void setProcessEngineConfiguration(ProcessEngineConfigurationImpl processEngineConfiguration) {
+        this.processEngineConfiguration = processEngineConfiguration;
+    }
+
+    public BatchHistoryJobHandler getHistoryJobHandler() {
+        return historyJobHandler;
+    }
+
+    public void setHistoryJobHandler(BatchHistoryJobHandler historyJobHandler) {
+        this.historyJobHandler = historyJobHandler;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public int getMaxPendingJobs() {
+        return maxPendingJobs;
+    }
+
+    public void setMaxPendingJobs(int maxPendingJobs) {
+        this.maxPendingJobs = maxPendingJobs;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public long getGiveUpAfterMillis() {
+        return giveUpAfterMillis;
+    }
+
+    public void setGiveUpAfterMillis(long giveUpAfterMillis) {
+        this.giveUpAfterMillis = giveUpAfterMillis;
+    }
+
+    public BulkHistoryJobApplierMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The engine's handler of the async history executor, with a public way to apply already decoded history data.
+     */
+    public static class BatchHistoryJobHandler extends AsyncHistoryJobHandler {
+
+        public BatchHistoryJobHandler() {
+            initDefaultTransformers();
+        }
+
+        public void apply(CommandContext commandContext, HistoryJobEntity historyJobEntity, JsonNode historyData) {
+            if (historyData.isArray()) {
+                for (JsonNode historyJsonNode : historyData) {
+                    processHistoryJson(commandContext, historyJobEntity, historyJsonNode);
+                }
+            } else {
+                processHistoryJson(commandContext, historyJobEntity, historyData);
+            }
+        }
+
+        /**
+         * Whether all transformers of the event can be applied now. A grouped job can have events that depend on each
+         * other, so that is only known while applying it.
+         */
+        public boolean isApplicable(CommandContext commandContext, JsonNode historyData) {
+            if (historyData.isArray()) {
+                return true;
+            }
+            List<HistoryJsonTransformer> transformers = historyJsonTransformers.get(historyData.get(HistoryJsonConstants.TYPE).asText());
+            if (transformers != null) {
+                ObjectNode data = (ObjectNode) historyData.get(HistoryJsonConstants.DATA);
+                for (HistoryJsonTransformer transformer : transformers) {
+                    if (!transformer.isApplicable(data, commandContext)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        public int countEvents(JsonNode historyData) {
+            return historyData.isArray() ? historyData.size() : 1;
+        }
+
+    }
+
+    protected static class PendingJob {
+
+        protected final String id;
+        protected final HistoryJobEntity historyJobEntity;
+        protected final JsonNode historyData;
+        protected final long createTime;
+        protected final List<String> byteArrayIds = new ArrayList<>(2);
+        protected final long receivedNanos = System.nanoTime();
+        protected int attempts;
+        // guarded by the lock of the applier
+        protected boolean finished;
+        protected RuntimeException failure;
+
+        protected PendingJob(HistoryJobEntity historyJobEntity, JsonNode historyData) {
+            this.id = historyJobEntity.getId();
+            this.historyJobEntity = historyJobEntity;
+            this.historyData = historyData;
+            Date created = historyJobEntity.getCreateTime();
+            this.createTime = created != null ? created.getTime() : 0L;
+            if (historyJobEntity.getAdvancedJobHandlerConfigurationByteArrayRef() != null
+                    && historyJobEntity.getAdvancedJobHandlerConfigurationByteArrayRef().getId() != null) {
+                byteArrayIds.add(historyJobEntity.getAdvancedJobHandlerConfigurationByteArrayRef().getId());
+            }
+            if (historyJobEntity.getExceptionByteArrayRef() != null && historyJobEntity.getExceptionByteArrayRef().getId() != null) {
+                byteArrayIds.add(historyJobEntity.getExceptionByteArrayRef().getId());
+            }
+        }
+
+    }
+
+    /**
+     * Create time, then id: numeric ids (the default id generator) by value, others as text.
+     */
+    protected static final Comparator<PendingJob> CREATION_ORDER = (a, b) -> {
+        int result = Long.compare(a.createTime, b.createTime);
+        if (result != 0) {
+            return result;
+        }
+        if (isNumeric(a.id) && isNumeric(b.id)) {
+            result = Integer.compare(a.id.length(), b.id.length());
+            if (result != 0) {
+                return result;
+            }
+        }
+        return a.id.compareTo(b.id);
+    };
+
+    protected static boolean isNumeric(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return !id.isEmpty();
+    }
+
+    protected static class BatchResult {
+
+        protected List<PendingJob> applied = new ArrayList<>();
+        protected int appliedEvents;
+        protected List<PendingJob> notApplicable = new ArrayList<>();
+
+    }
+
+    protected static class JobsAlreadyHandledException extends FlowableException {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final List<PendingJob> jobs;
+
+        protected JobsAlreadyHandledException(List<PendingJob> jobs) {
+            super(jobs.size() + " history jobs of the batch were already handled");
+            this.jobs = jobs;
+            setLogged(true);
+        }
+
+    }
+
+    protected static class JobNotApplicableException extends FlowableException {
+
+        private static final long serialVersionUID = 1L;
+
+        protected final int index;
+
+        protected JobNotApplicableException(int index) {
+            super("History job " + index + " of the batch is not applicable yet");
+            this.index = index;
+            // expected while the jobs of a process instance arrive out of order, nothing to log
+            setLogged(true);
+        }
+
+    }
+
+}
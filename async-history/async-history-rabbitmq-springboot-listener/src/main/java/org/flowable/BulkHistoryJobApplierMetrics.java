@@ -0,0 +1,198 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the {@link BulkHistoryJobApplier}: the jobs received, applied in batches or right away, the flushes and
+ * their size and time, and the jobs that had to wait for a next window (not applicable yet, or failed) or were given up.
+ */
+public class BulkHistoryJobApplierMetrics {
+
+    protected final AtomicLong received = new AtomicLong();
+    protected final AtomicLong duplicates = new AtomicLong();
+    protected final AtomicLong rejected = new AtomicLong();
+    protected final AtomicLong appliedJobs = new AtomicLong();
+    protected final AtomicLong appliedEvents = new AtomicLong();
+    protected final AtomicLong appliedDirectly = new AtomicLong();
+    protected final AtomicLong alreadyHandled = new AtomicLong();
+    protected final AtomicLong transactions = new AtomicLong();
+    protected final AtomicLong flushes = new AtomicLong();
+    protected final AtomicLong flushedJobs = new AtomicLong();
+    protected final AtomicLong flushNanos = new AtomicLong();
+    protected final AtomicLong maxFlushNanos = new AtomicLong();
+    protected final AtomicLong notApplicable = new AtomicLong();
+    protected final AtomicLong splits = new AtomicLong();
+    protected final AtomicLong failures = new AtomicLong();
+    protected final AtomicLong failed = new AtomicLong();
+
+    public void recordReceived() {
+        received.incrementAndGet();
+    }
+
+    public void recordDuplicate() {
+        duplicates.incrementAndGet();
+    }
+
+    public void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    public void recordApplied(int jobs, int events) {
+        transactions.incrementAndGet();
+        appliedJobs.addAndGet(jobs);
+        appliedEvents.addAndGet(events);
+    }
+
+    public void recordAppliedDirectly(int events) {
+        appliedDirectly.incrementAndGet();
+        appliedJobs.incrementAndGet();
+        appliedEvents.addAndGet(events);
+    }
+
+    public void recordAlreadyHandled(int jobs) {
+        alreadyHandled.addAndGet(jobs);
+    }
+
+    public void recordFlush(int jobs, long nanos) {
+        flushes.incrementAndGet();
+        flushedJobs.addAndGet(jobs);
+        flushNanos.addAndGet(nanos);
+        maxFlushNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void recordNotApplicable() {
+        notApplicable.incrementAndGet();
+    }
+
+    public void recordSplit() {
+        splits.incrementAndGet();
+    }
+
+    public void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public void recordFailed() {
+        failed.incrementAndGet();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Jobs received again while they were still buffered.
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * Jobs refused because the buffer stayed full, their messages are redelivered.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Jobs applied, in batches or right away.
+     */
+    public long getAppliedJobs() {
+        return appliedJobs.get();
+    }
+
+    /**
+     * History events applied, more than the jobs when the engine groups the events of a transaction in one job.
+     */
+    public long getAppliedEvents() {
+        return appliedEvents.get();
+    }
+
+    /**
+     * Jobs applied in the transaction of their message, because the applier wasn't started.
+     */
+    public long getAppliedDirectly() {
+        return appliedDirectly.get();
+    }
+
+    /**
+     * Jobs that were already deleted when their batch claimed them.
+     */
+    public long getAlreadyHandled() {
+        return alreadyHandled.get();
+    }
+
+    /**
+     * Committed batch transactions, one per flush when nothing needed a retry.
+     */
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    public double getAverageBatchSize() {
+        long currentFlushes = flushes.get();
+        return currentFlushes > 0 ? (double) flushedJobs.get() / currentFlushes : 0.0;
+    }
+
+    public double getAverageFlushMillis() {
+        long currentFlushes = flushes.get();
+        return currentFlushes > 0 ? flushNanos.get() / 1_000_000.0 / currentFlushes : 0.0;
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Jobs that were not applicable yet (an earlier event of the process instance was missing) and waited for a next
+     * window, with the jobs after them. Every one of them cost a rolled back transaction.
+     */
+    public long getNotApplicable() {
+        return notApplicable.get();
+    }
+
+    /**
+     * Failed batches that were split in halves to find the failing job.
+     */
+    public long getSplits() {
+        return splits.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Jobs given up because they still weren't applied after 'giveUpAfterMillis', left in the history job table. Their messages
+     * are redelivered.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d jobs received, %d applied (%d events, %d right away), %d flushes of %.1f jobs in %.2f ms (max %.2f ms), "
+                + "%d transactions, %d not applicable yet, %d splits, %d failures, %d given up, %d already handled, %d duplicates, %d rejected",
+                getReceived(), getAppliedJobs(), getAppliedEvents(), getAppliedDirectly(), getFlushes(), getAverageBatchSize(), getAverageFlushMillis(),
+                getMaxFlushMillis(), getTransactions(), getNotApplicable(), getSplits(), getFailures(), getFailed(), getAlreadyHandled(),
+                getDuplicates(), getRejected());
+    }
+
+}
@@ -0,0 +1,237 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.ProcessEngineConfiguration;
+import org.flowable.engine.impl.asyncexecutor.message.AbstractMessageBasedJobManager;
+import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.flowable.engine.impl.cfg.StandaloneProcessEngineConfiguration;
+import org.flowable.engine.impl.history.async.message.AsyncHistoryJobMessageReceiver;
+import org.flowable.engine.runtime.JobInfo;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.engine.task.Task;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Compares the rows per second written to the ACT_HI_* tables by the history jobs applied one by one, every job in the
+ * transaction of its own message (what the async history executor does, here a {@link BulkHistoryJobApplier} that isn't
+ * started), with the same jobs applied by the {@link BulkHistoryJobApplier}.
+ *
+ * An engine on an in-memory H2 database produces the history jobs of a number of process instances (start, a user task
+ * that is completed, end, with variables) and 'sends' their ids to an in-memory queue instead of a broker. Consumer
+ * threads take the ids from that queue and hand them to an {@link AsyncHistoryJobMessageReceiver}, like the listener
+ * container does. A job that fails (its process instance isn't far enough yet, because another consumer is still busy with
+ * an earlier job) goes back to the end of the queue, like a rejected message. A run ends when the history job table is
+ * empty. The history is then checked: every instance, activity and task must be ended.
+ *
+ * H2 has no network round trips, so the difference on a database server is larger. In memory, it doesn't write to disk
+ * either: a 'jdbc:h2:file:' url shows the cost of the commits.
+ *
+ * System properties: jdbcUrl (default an in-memory H2 database), instances (per run, default 2000), consumers (default
+ * 4), historyLevel (default audit), batchSize (default 500), windowMillis (default 0), runs (default
+ * perJob,bulk,perJob,bulk: the first two are a warm up).
+ */
+public class HistoryApplierBenchmark {
+
+    protected static final String PROCESS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" targetNamespace=\"http://flowable.org/benchmark\">"
+            + "<process id=\"historyBenchmark\" name=\"History benchmark\">"
+            + "<startEvent id=\"theStart\" />"
+            + "<sequenceFlow id=\"flow1\" sourceRef=\"theStart\" targetRef=\"userTask01\" />"
+            + "<userTask id=\"userTask01\" name=\"User Task 01\" />"
+            + "<sequenceFlow id=\"flow2\" sourceRef=\"userTask01\" targetRef=\"theEnd\" />"
+            + "<endEvent id=\"theEnd\" />"
+            + "</process>"
+            + "</definitions>";
+
+    protected static final String[] HISTORY_TABLES = { "ACT_HI_PROCINST", "ACT_HI_ACTINST", "ACT_HI_TASKINST", "ACT_HI_VARINST", "ACT_HI_DETAIL",
+            "ACT_HI_IDENTITYLINK" };
+
+    protected final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+
+    protected String jdbcUrl = System.getProperty("jdbcUrl", "jdbc:h2:mem:history-benchmark;DB_CLOSE_DELAY=-1");
+    protected int instances = Integer.getInteger("instances", 2000);
+    protected int consumers = Integer.getInteger("consumers", 4);
+    protected String historyLevel = System.getProperty("historyLevel", "audit");
+    protected int batchSize = Integer.getInteger("batchSize", 500);
+    protected long windowMillis = Long.getLong("windowMillis", 0L);
+
+    protected HikariDataSource dataSource;
+    protected ProcessEngineConfigurationImpl processEngineConfiguration;
+    protected ProcessEngine processEngine;
+
+    public static void main(String[] args) throws Exception {
+        HistoryApplierBenchmark benchmark = new HistoryApplierBenchmark();
+        benchmark.init();
+        try {
+            System.out.println(String.format("%d process instances per run, %d consumers, history level %s, %s", benchmark.instances,
+                    benchmark.consumers, benchmark.historyLevel, benchmark.jdbcUrl));
+            System.out.println(String.format("%-8s %8s %8s %10s %10s %10s %12s %8s", "handler", "jobs", "rows", "seconds", "jobs/s", "rows/s",
+                    "redelivered", "check"));
+            for (String run : System.getProperty("runs", "perJob,bulk,perJob,bulk").split(",")) {
+                benchmark.run(run.trim());
+            }
+        } finally {
+            benchmark.close();
+        }
+    }
+
+    protected void init() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(consumers + 2);
+
+        StandaloneProcessEngineConfiguration config = new StandaloneProcessEngineConfiguration();
+        config.setDataSource(dataSource);
+        config.setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_TRUE);
+        config.setHistory(historyLevel);
+        config.setDisableIdmEngine(true);
+        config.setAsyncHistoryEnabled(true);
+        config.setAsyncHistoryExecutorActivate(false);
+        config.setAsyncHistoryExecutorMessageQueueMode(true);
+        config.setJobManager(new AbstractMessageBasedJobManager() {
+
+            @Override
+            protected void sendMessage(JobInfo job) {
+                queue.add(job.getId());
+            }
+
+        });
+        processEngineConfiguration = config;
+        processEngine = config.buildProcessEngine();
+        processEngine.getRepositoryService().createDeployment().addString("historyBenchmark.bpmn20.xml", PROCESS).deploy();
+        queue.clear();
+    }
+
+    protected void close() {
+        processEngine.close();
+        dataSource.close();
+    }
+
+    protected void run(String handler) throws Exception {
+        BulkHistoryJobApplier applier = new BulkHistoryJobApplier(processEngineConfiguration);
+        applier.setMaxBatchSize(batchSize);
+        applier.setWindowMillis(windowMillis);
+        if ("bulk".equals(handler)) {
+            applier.start();
+        } else if (!"perJob".equals(handler)) {
+            throw new IllegalArgumentException("Unknown handler " + handler + ", use perJob or bulk");
+        }
+        AsyncHistoryJobMessageReceiver receiver = new AsyncHistoryJobMessageReceiver(processEngineConfiguration, applier);
+
+        produce();
+        long jobs = queue.size();
+        Map<String, Long> rowsBefore = countRows();
+
+        AtomicLong redelivered = new AtomicLong();
+        long start = System.nanoTime();
+        List<Thread> consumerThreads = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            Thread thread = new Thread(() -> {
+                String jobId;
+                while ((jobId = queue.poll()) != null) {
+                    try {
+                        receiver.messageForJobReceived(jobId);
+                    } catch (RuntimeException e) {
+                        redelivered.incrementAndGet();
+                        queue.add(jobId);
+                    }
+                }
+            }, "consumer-" + i);
+            consumerThreads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : consumerThreads) {
+            thread.join();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (count("SELECT COUNT(*) FROM ACT_RU_HISTORY_JOB") > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        applier.stop();
+
+        Map<String, Long> rowsAfter = countRows();
+        long rows = 0L;
+        for (String table : HISTORY_TABLES) {
+            rows += rowsAfter.get(table) - rowsBefore.get(table);
+        }
+        System.out.println(String.format("%-8s %8d %8d %10.2f %10.0f %10.0f %12d %8s", handler, jobs, rows, seconds, jobs / seconds, rows / seconds,
+                redelivered.get(), check(rowsAfter.get("ACT_HI_PROCINST") - rowsBefore.get("ACT_HI_PROCINST"))));
+        if ("bulk".equals(handler)) {
+            System.out.println("         " + applier.getMetrics());
+        }
+    }
+
+    protected void produce() {
+        for (int i = 0; i < instances; i++) {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("customer", "customer-" + i);
+            variables.put("amount", 100L + i);
+            variables.put("priority", i % 5);
+            variables.put("approved", Boolean.FALSE);
+            variables.put("region", "EMEA");
+            ProcessInstance processInstance = processEngine.getRuntimeService().startProcessInstanceByKey("historyBenchmark", variables);
+            Task task = processEngine.getTaskService().createTaskQuery().processInstanceId(processInstance.getId()).singleResult();
+            processEngine.getTaskService().setAssignee(task.getId(), "assignee-" + (i % 10));
+            processEngine.getTaskService().complete(task.getId(), Collections.singletonMap("approved", Boolean.TRUE));
+        }
+    }
+
+    /**
+     * Every history job applied, a historic process instance for every instance, and every instance, activity and task
+     * of the history ended.
+     */
+    protected String check(long historicProcessInstances) throws SQLException {
+        if (historicProcessInstances != instances) {
+            return historicProcessInstances + " instances";
+        }
+        long open = count("SELECT COUNT(*) FROM ACT_RU_HISTORY_JOB") + count("SELECT COUNT(*) FROM ACT_HI_PROCINST WHERE END_TIME_ IS NULL")
+                + count("SELECT COUNT(*) FROM ACT_HI_ACTINST WHERE END_TIME_ IS NULL") + count("SELECT COUNT(*) FROM ACT_HI_TASKINST WHERE END_TIME_ IS NULL");
+        return open == 0 ? "ok" : open + " open";
+    }
+
+    protected Map<String, Long> countRows() throws SQLException {
+        Map<String, Long> rows = new HashMap<>();
+        for (String table : HISTORY_TABLES) {
+            rows.put(table, count("SELECT COUNT(*) FROM " + table));
+        }
+        return rows;
+    }
+
+    protected long count(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+}
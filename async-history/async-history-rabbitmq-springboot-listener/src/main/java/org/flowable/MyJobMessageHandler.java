@@ -19,10 +19,23 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 public class MyJobMessageHandler implements AsyncHistoryJobMessageHandler {
 
+    protected boolean printData;
+
     @Override
     public boolean handleJob(HistoryJobEntity historyJobEntity, JsonNode historyData) {
-        System.out.println("Handling job " + historyJobEntity.getId() + ", data = " + historyData);
+        // Serializing the whole history data for every job costs more than the rest of the handling, only do it when asked for
+        if (printData) {
+            System.out.println("Handling job " + historyJobEntity.getId() + ", data = " + historyData);
+        }
         return true;
     }
 
+    public boolean isPrintData() {
+        return printData;
+    }
+
+    public void setPrintData(boolean printData) {
+        this.printData = printData;
+    }
+
 }
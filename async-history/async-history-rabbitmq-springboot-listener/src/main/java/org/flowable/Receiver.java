@@ -12,6 +12,8 @@
  */
 package org.flowable;
 
+import java.nio.charset.StandardCharsets;
+
 import org.flowable.engine.impl.history.async.message.AsyncHistoryJobMessageReceiver;
 
 public class Receiver {
@@ -19,7 +21,8 @@ public class Receiver {
     private AsyncHistoryJobMessageReceiver asyncHistoryJobMessageReceiver;
     
     public void receiveMessage(byte[] messageBytes) {
-        receiveMessage(new String(messageBytes));
+        // The message is the id of the history job (the history data itself stays in the job table), not an encoded history batch
+        receiveMessage(new String(messageBytes, StandardCharsets.UTF_8));
     }
 
     public void receiveMessage(String message) {
@@ -0,0 +1,192 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.engine.impl.history.async.message.AsyncHistoryJobMessageReceiver;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.listener.adapter.MessageListenerAdapter;
+
+/**
+ * Compares the overhead of the {@link Receiver} (behind a MessageListenerAdapter, as configured before) with the
+ * {@link StreamingReceiver}. Both get the same text/plain job id messages on a number of consumer threads, like the
+ * listener container delivers them, but the engine call is replaced by a no-op: this measures the receiver itself,
+ * not the history job handling.
+ *
+ * The output of the Receiver goes to a PrintStream that discards it, so its numbers are a lower bound: writing to a
+ * console or log file is slower.
+ *
+ * System properties: rates (messages per second over all threads, 0 is as fast as possible, default 10000,50000,0),
+ * threads (default 8), seconds (per run, default 5).
+ */
+public class ReceiverBenchmark {
+
+    protected static final AtomicLong blackhole = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        String[] rates = System.getProperty("rates", "10000,50000,0").split(",");
+        int threads = Integer.getInteger("threads", 8);
+        int seconds = Integer.getInteger("seconds", 5);
+
+        AsyncHistoryJobMessageReceiver noopReceiver = new AsyncHistoryJobMessageReceiver() {
+
+            @Override
+            public void messageForJobReceived(String jobId) {
+                blackhole.addAndGet(jobId.length());
+            }
+
+        };
+
+        Receiver receiver = new Receiver();
+        receiver.setAsyncHistoryJobMessageReceiver(noopReceiver);
+        MessageListenerAdapter listenerAdapter = new MessageListenerAdapter(receiver, "receiveMessage");
+
+        StreamingReceiver streamingReceiver = new StreamingReceiver();
+        streamingReceiver.setAsyncHistoryJobMessageReceiver(noopReceiver);
+
+        Message[] messages = createMessages(100000);
+
+        PrintStream console = System.out;
+        System.out.println(String.format("%-18s %8s %10s %10s %10s %10s %10s %12s", "receiver", "rate", "msg/s", "p50 us", "p99 us", "p99.9 us",
+                "max us", "bytes/msg"));
+        for (String rateString : rates) {
+            int rate = Integer.parseInt(rateString.trim());
+            for (int i = 0; i < 2; i++) {
+                String name = i == 0 ? "Receiver (adapter)" : "StreamingReceiver";
+                MessageListener listener = i == 0 ? listenerAdapter : streamingReceiver;
+
+                System.setOut(new PrintStream(new OutputStream() {
+
+                    @Override
+                    public void write(int b) {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                    }
+
+                }));
+                try {
+                    run(listener, messages, rate, threads, Math.max(1, seconds / 2)); // warm up
+                    RunResult result = run(listener, messages, rate, threads, seconds);
+                    console.println(String.format("%-18s %8s %10.0f %10.2f %10.2f %10.2f %10.2f %12.0f", name, rate > 0 ? String.valueOf(rate) : "max",
+                            result.messages / result.seconds, result.histogram.getValueAtPercentile(50.0) / 1000.0,
+                            result.histogram.getValueAtPercentile(99.0) / 1000.0, result.histogram.getValueAtPercentile(99.9) / 1000.0,
+                            result.histogram.getMaxValue() / 1000.0, result.allocatedBytes < 0 ? Double.NaN : (double) result.allocatedBytes / result.messages));
+                } finally {
+                    System.setOut(console);
+                }
+            }
+        }
+        System.out.println("StreamingReceiver metrics: " + streamingReceiver.getMetrics());
+    }
+
+    protected static Message[] createMessages(int count) {
+        // What RabbitTemplate.convertAndSend(exchange, routingKey, jobId) sends for the default (database) id generator
+        Message[] messages = new Message[count];
+        for (int i = 0; i < count; i++) {
+            MessageProperties messageProperties = new MessageProperties();
+            messageProperties.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+            messageProperties.setContentEncoding("UTF-8");
+            messages[i] = new Message(String.valueOf(100000 + i * 7L).getBytes(StandardCharsets.UTF_8), messageProperties);
+        }
+        return messages;
+    }
+
+    protected static RunResult run(final MessageListener listener, final Message[] messages, int rate, int threads, int seconds) throws Exception {
+        final long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * threads / rate : 0L;
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        final List<RunResult> threadResults = new ArrayList<>();
+        List<Thread> consumerThreads = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * (messages.length / threads);
+            Thread thread = new Thread(() -> {
+                RunResult threadResult = new RunResult();
+                long allocatedBefore = allocatedBytes();
+                long next = start;
+                int index = offset;
+                long now;
+                while ((now = System.nanoTime()) < end) {
+                    if (intervalNanos > 0) {
+                        if (now < next) {
+                            LockSupport.parkNanos(next - now);
+                            continue;
+                        }
+                        next += intervalNanos;
+                    }
+                    long before = System.nanoTime();
+                    listener.onMessage(messages[index]);
+                    threadResult.histogram.recordValue(System.nanoTime() - before);
+                    threadResult.messages++;
+                    if (++index == messages.length) {
+                        index = 0;
+                    }
+                }
+                long allocatedAfter = allocatedBytes();
+                threadResult.allocatedBytes = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+                synchronized (threadResults) {
+                    threadResults.add(threadResult);
+                }
+            }, "consumer-" + t);
+            consumerThreads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : consumerThreads) {
+            thread.join();
+        }
+
+        RunResult result = new RunResult();
+        result.seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        for (RunResult threadResult : threadResults) {
+            result.messages += threadResult.messages;
+            result.histogram.add(threadResult.histogram);
+            result.allocatedBytes = threadResult.allocatedBytes < 0 || result.allocatedBytes < 0 ? -1 : result.allocatedBytes + threadResult.allocatedBytes;
+        }
+        return result;
+    }
+
+    /**
+     * The bytes allocated by the current thread, -1 when the JVM can't tell.
+     */
+    protected static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    protected static class RunResult {
+
+        protected long messages;
+        protected double seconds;
+        protected long allocatedBytes;
+        protected Histogram histogram = new Histogram(3);
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Throughput counters and the processing time per message of the {@link StreamingReceiver}. Recording is lock-free; the
+ * optional report is printed by a thread of its own, so the consumers never wait on the console.
+ */
+public class ReceiverMetrics {
+
+    protected final AtomicLong messages = new AtomicLong();
+    protected final AtomicLong jobIds = new AtomicLong();
+    protected final AtomicLong bytes = new AtomicLong();
+    protected final AtomicLong failures = new AtomicLong();
+    protected final AtomicLong missingJobs = new AtomicLong();
+    protected final AtomicLong processingNanos = new AtomicLong();
+
+    protected final Recorder processingTimeRecorder = new Recorder(3);
+    protected final Histogram processingTime = new Histogram(3);
+
+    protected ScheduledExecutorService reporter;
+    protected long lastReportMessages;
+    protected long lastReportNanos;
+
+    public void recordMessage(int bodyLength, int messageJobIds, long messageProcessingNanos) {
+        messages.incrementAndGet();
+        jobIds.addAndGet(messageJobIds);
+        bytes.addAndGet(bodyLength);
+        processingNanos.addAndGet(messageProcessingNanos);
+        processingTimeRecorder.recordValue(messageProcessingNanos);
+    }
+
+    public void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public void recordMissingJob() {
+        missingJobs.incrementAndGet();
+    }
+
+    public long getMessages() {
+        return messages.get();
+    }
+
+    public long getJobIds() {
+        return jobIds.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Job ids of which the history job didn't exist (anymore), typically a message that was delivered twice.
+     */
+    public long getMissingJobs() {
+        return missingJobs.get();
+    }
+
+    /**
+     * The total processing time of all messages, in nanoseconds.
+     */
+    public long getProcessingNanos() {
+        return processingNanos.get();
+    }
+
+    /**
+     * The processing times (in nanoseconds) of all messages up to now.
+     */
+    public synchronized Histogram getProcessingTime() {
+        processingTime.add(processingTimeRecorder.getIntervalHistogram());
+        return processingTime.copy();
+    }
+
+    /**
+     * Prints the throughput and processing times of the last interval every 'intervalSeconds'.
+     */
+    public synchronized void startReporting(long intervalSeconds) {
+        if (reporter != null) {
+            return;
+        }
+        lastReportNanos = System.nanoTime();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "flowable-receiver-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdown();
+            reporter = null;
+        }
+    }
+
+    protected synchronized void report() {
+        Histogram interval = processingTimeRecorder.getIntervalHistogram();
+        processingTime.add(interval);
+        long now = System.nanoTime();
+        long currentMessages = messages.get();
+        double seconds = (now - lastReportNanos) / 1_000_000_000.0;
+        if (interval.getTotalCount() > 0) {
+            System.out.println(String.format("Received %.0f msg/s, processing p50 %d us, p99 %d us, max %d us (%d messages, %d failed, %d missing jobs)",
+                    (currentMessages - lastReportMessages) / seconds, interval.getValueAtPercentile(50.0) / 1000, interval.getValueAtPercentile(99.0) / 1000,
+                    interval.getMaxValue() / 1000, currentMessages, getFailures(), getMissingJobs()));
+        }
+        lastReportMessages = currentMessages;
+        lastReportNanos = now;
+    }
+
+    @Override
+    public String toString() {
+        Histogram histogram = getProcessingTime();
+        return String.format("%d messages, %d job ids, %d KB, %d failed, %d missing jobs, processing p50 %.2f us, p99 %.2f us, max %.2f us",
+                getMessages(), getJobIds(), getBytes() / 1024, getFailures(), getMissingJobs(), histogram.getValueAtPercentile(50.0) / 1000.0,
+                histogram.getValueAtPercentile(99.0) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+
+}
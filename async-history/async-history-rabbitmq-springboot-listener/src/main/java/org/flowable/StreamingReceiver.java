@@ -0,0 +1,101 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.nio.charset.StandardCharsets;
+
+import org.flowable.engine.common.api.FlowableException;
+import org.flowable.engine.impl.history.async.message.AsyncHistoryJobMessageReceiver;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageListener;
+
+/**
+ * A {@link MessageListener} for the history job messages, meant for production use instead of the {@link Receiver}.
+ *
+ * The job ids are read straight from the message body: no message converter, no reflective method invocation and no
+ * intermediate Strings; the only allocation per job id is the id String the engine API needs (a plain byte copy for ASCII
+ * ids). A body can hold more than one job id, separated by whitespace or commas. Nothing is logged per message: the
+ * processing time and counters go to the {@link ReceiverMetrics}, which can print a periodic report from its own thread.
+ *
+ * A message for a history job that no longer exists (it was delivered twice, the first one already handled it) is
+ * counted and acknowledged instead of being requeued forever.
+ */
+public class StreamingReceiver implements MessageListener {
+
+    protected static final String NO_HISTORY_JOB_FOUND = "No history job found";
+
+    protected AsyncHistoryJobMessageReceiver asyncHistoryJobMessageReceiver;
+
+    protected ReceiverMetrics metrics = new ReceiverMetrics();
+
+    @Override
+    public void onMessage(Message message) {
+        long start = System.nanoTime();
+        byte[] body = message.getBody();
+        int jobIds = 0;
+        int from = 0;
+        try {
+            while (true) {
+                while (from < body.length && isSeparator(body[from])) {
+                    from++;
+                }
+                if (from == body.length) {
+                    break;
+                }
+
+                int to = from;
+                boolean ascii = true;
+                while (to < body.length && !isSeparator(body[to])) {
+                    ascii &= body[to] >= 0;
+                    to++;
+                }
+
+                jobReceived(new String(body, from, to - from, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8));
+                jobIds++;
+                from = to;
+            }
+        } catch (RuntimeException e) {
+            metrics.recordFailure();
+            throw e;
+        }
+        metrics.recordMessage(body.length, jobIds, System.nanoTime() - start);
+    }
+
+    protected void jobReceived(String jobId) {
+        try {
+            asyncHistoryJobMessageReceiver.messageForJobReceived(jobId);
+        } catch (FlowableException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith(NO_HISTORY_JOB_FOUND)) {
+                throw e;
+            }
+            metrics.recordMissingJob();
+        }
+    }
+
+    protected static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == ',';
+    }
+
+    public AsyncHistoryJobMessageReceiver getAsyncHistoryJobMessageReceiver() {
+        return asyncHistoryJobMessageReceiver;
+    }
+
+    public void setAsyncHistoryJobMessageReceiver(AsyncHistoryJobMessageReceiver asyncHistoryJobMessageReceiver) {
+        this.asyncHistoryJobMessageReceiver = asyncHistoryJobMessageReceiver;
+    }
+
+    public ReceiverMetrics getMetrics() {
+        return metrics;
+    }
+
+}
@@ -0,0 +1,248 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.common.api.FlowableException;
+import org.flowable.engine.common.impl.interceptor.CommandContext;
+import org.flowable.engine.history.HistoricProcessInstance;
+import org.flowable.engine.impl.asyncexecutor.message.AbstractMessageBasedJobManager;
+import org.flowable.engine.impl.cfg.StandaloneInMemProcessEngineConfiguration;
+import org.flowable.engine.impl.history.async.message.AsyncHistoryJobMessageReceiver;
+import org.flowable.engine.impl.persistence.entity.HistoryJobEntity;
+import org.flowable.engine.runtime.JobInfo;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.engine.task.Task;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Hands the history jobs of a process instance to the {@link BulkHistoryJobApplier} through the receiver of the engine,
+ * every job on a consumer thread of its own, like the listener container does.
+ */
+public class BulkHistoryJobApplierTest {
+
+    protected static final String PROCESS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" targetNamespace=\"http://flowable.org/test\">"
+            + "<process id=\"bulkHistory\">"
+            + "<startEvent id=\"theStart\" />"
+            + "<sequenceFlow id=\"flow1\" sourceRef=\"theStart\" targetRef=\"userTask01\" />"
+            + "<userTask id=\"userTask01\" name=\"User Task 01\" />"
+            + "<sequenceFlow id=\"flow2\" sourceRef=\"userTask01\" targetRef=\"theEnd\" />"
+            + "<endEvent id=\"theEnd\" />"
+            + "</process>"
+            + "</definitions>";
+
+    protected List<String> sentJobIds = new CopyOnWriteArrayList<>();
+    protected ProcessEngine processEngine;
+    protected StandaloneInMemProcessEngineConfiguration processEngineConfiguration;
+    protected BulkHistoryJobApplier applier;
+    protected Map<String, RuntimeException> failures = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() {
+        processEngineConfiguration = new StandaloneInMemProcessEngineConfiguration();
+        processEngineConfiguration.setJdbcUrl("jdbc:h2:mem:bulk-history-" + System.nanoTime() + ";DB_CLOSE_DELAY=1000");
+        // every consumer waits with a connection of its own
+        processEngineConfiguration.setJdbcMaxActiveConnections(50);
+        processEngineConfiguration.setDisableIdmEngine(true);
+        processEngineConfiguration.setAsyncHistoryEnabled(true);
+        processEngineConfiguration.setAsyncHistoryExecutorActivate(false);
+        processEngineConfiguration.setAsyncHistoryExecutorMessageQueueMode(true);
+        processEngineConfiguration.setJobManager(new AbstractMessageBasedJobManager() {
+
+            @Override
+            protected void sendMessage(JobInfo job) {
+                sentJobIds.add(job.getId());
+            }
+
+        });
+        processEngine = processEngineConfiguration.buildProcessEngine();
+        processEngine.getRepositoryService().createDeployment().addString("bulkHistory.bpmn20.xml", PROCESS).deploy();
+
+        applier = new BulkHistoryJobApplier(processEngineConfiguration);
+    }
+
+    @After
+    public void tearDown() {
+        applier.stop();
+        processEngine.close();
+    }
+
+    @Test
+    public void testJobsReceivedInReverseAreAppliedInCreationOrder() throws Exception {
+        String processInstanceId = runProcessInstance();
+        List<String> jobIds = new ArrayList<>(sentJobIds);
+        Collections.reverse(jobIds);
+        // one window with all the jobs
+        applier.setMaxBatchSize(jobIds.size());
+        applier.setWindowMillis(10000L);
+        applier.start();
+
+        receiveAll(jobIds);
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        BulkHistoryJobApplierMetrics metrics = applier.getMetrics();
+        assertEquals(jobIds.size(), metrics.getAppliedJobs());
+        assertEquals(1L, metrics.getTransactions());
+        assertEquals(0L, metrics.getNotApplicable());
+        assertEquals(0L, processEngine.getManagementService().createHistoryJobQuery().count());
+        HistoricProcessInstance historicProcessInstance = processEngine.getHistoryService().createHistoricProcessInstanceQuery()
+                .processInstanceId(processInstanceId).singleResult();
+        assertNotNull(historicProcessInstance);
+        assertNotNull(historicProcessInstance.getEndTime());
+        assertEquals(0L, processEngine.getHistoryService().createHistoricActivityInstanceQuery().unfinished().count());
+    }
+
+    @Test
+    public void testFailingJobIsSplitOffAndGivenUp() throws Exception {
+        runProcessInstance();
+        List<String> jobIds = new ArrayList<>(sentJobIds);
+        // the last job: no other job of the process instance needs it
+        String failingJobId = lastCreated(jobIds);
+        applier.setHistoryJobHandler(new BulkHistoryJobApplier.BatchHistoryJobHandler() {
+
+            @Override
+            public void apply(CommandContext commandContext, HistoryJobEntity historyJobEntity, JsonNode historyData) {
+                if (failingJobId.equals(historyJobEntity.getId())) {
+                    throw new FlowableException("Failing history job " + failingJobId);
+                }
+                super.apply(commandContext, historyJobEntity, historyData);
+            }
+
+        });
+        applier.setMaxBatchSize(jobIds.size());
+        applier.setWindowMillis(50L);
+        applier.setGiveUpAfterMillis(500L);
+        applier.start();
+
+        receiveAll(jobIds);
+
+        // only the consumer of the failing job fails, so only its message is redelivered
+        assertEquals(Collections.singleton(failingJobId), failures.keySet());
+        BulkHistoryJobApplierMetrics metrics = applier.getMetrics();
+        assertTrue(metrics.getSplits() > 0);
+        assertTrue(metrics.getFailures() > 0);
+        assertEquals(1L, metrics.getFailed());
+        assertEquals(jobIds.size() - 1, metrics.getAppliedJobs());
+        assertEquals(1L, processEngine.getManagementService().createHistoryJobQuery().count());
+        assertEquals(failingJobId, processEngine.getManagementService().createHistoryJobQuery().singleResult().getId());
+    }
+
+    @Test
+    public void testJobHandledBySomeoneElseIsSkipped() throws Exception {
+        runProcessInstance();
+        List<String> jobIds = new ArrayList<>(sentJobIds);
+        String handledJobId = lastCreated(jobIds);
+        applier.setMaxBatchSize(jobIds.size() + 1);
+        applier.setWindowMillis(1000L);
+        applier.start();
+
+        List<Thread> consumers = startConsumers(jobIds);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (applier.getPendingJobs() < jobIds.size() && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertEquals(jobIds.size(), applier.getPendingJobs());
+        // handled somewhere else while it waits in the buffer
+        processEngine.getManagementService().deleteHistoryJob(handledJobId);
+        join(consumers);
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        BulkHistoryJobApplierMetrics metrics = applier.getMetrics();
+        assertEquals(1L, metrics.getAlreadyHandled());
+        assertEquals(jobIds.size() - 1, metrics.getAppliedJobs());
+        assertEquals(1L, metrics.getTransactions());
+        assertEquals(0L, processEngine.getManagementService().createHistoryJobQuery().count());
+    }
+
+    @Test
+    public void testJobsAreAppliedRightAwayWhenNotStarted() {
+        runProcessInstance();
+        AsyncHistoryJobMessageReceiver receiver = new AsyncHistoryJobMessageReceiver(processEngineConfiguration, applier);
+        for (String jobId : sentJobIds) {
+            receiver.messageForJobReceived(jobId);
+        }
+
+        assertEquals(sentJobIds.size(), applier.getMetrics().getAppliedDirectly());
+        assertEquals(0L, processEngine.getManagementService().createHistoryJobQuery().count());
+        assertNull(processEngine.getHistoryService().createHistoricProcessInstanceQuery().unfinished().singleResult());
+    }
+
+    protected String runProcessInstance() {
+        ProcessInstance processInstance = processEngine.getRuntimeService().startProcessInstanceByKey("bulkHistory",
+                Collections.singletonMap("customer", "customer-1"));
+        Task task = processEngine.getTaskService().createTaskQuery().processInstanceId(processInstance.getId()).singleResult();
+        processEngine.getTaskService().complete(task.getId(), Collections.singletonMap("approved", Boolean.TRUE));
+        return processInstance.getId();
+    }
+
+    protected String lastCreated(List<String> jobIds) {
+        String lastJobId = jobIds.get(0);
+        for (String jobId : jobIds) {
+            if (Long.parseLong(jobId) > Long.parseLong(lastJobId)) {
+                lastJobId = jobId;
+            }
+        }
+        return lastJobId;
+    }
+
+    protected void receiveAll(List<String> jobIds) throws InterruptedException {
+        join(startConsumers(jobIds));
+    }
+
+    /**
+     * A consumer thread for every job: the applier keeps a consumer waiting until its job is applied.
+     */
+    protected List<Thread> startConsumers(List<String> jobIds) {
+        AsyncHistoryJobMessageReceiver receiver = new AsyncHistoryJobMessageReceiver(processEngineConfiguration, applier);
+        List<Thread> consumers = new ArrayList<>();
+        for (String jobId : jobIds) {
+            Thread consumer = new Thread(() -> {
+                try {
+                    receiver.messageForJobReceived(jobId);
+                } catch (RuntimeException e) {
+                    failures.put(jobId, e);
+                }
+            }, "consumer-" + jobId);
+            consumers.add(consumer);
+            consumer.start();
+        }
+        return consumers;
+    }
+
+    protected void join(List<Thread> consumers) throws InterruptedException {
+        for (Thread consumer : consumers) {
+            consumer.join(TimeUnit.SECONDS.toMillis(30L));
+            assertFalse(consumer.getName() + " is still waiting", consumer.isAlive());
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.flowable.Benchmark;
+import org.flowable.common.engine.impl.history.HistoryLevel;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.TaskService;
+import org.flowable.engine.runtime.Execution;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.task.api.Task;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH counterpart of the operations timed by {@link Benchmark}: starting the 'testProcess' and each of the queries
+ * done in Benchmark#executeQueries.
+ *
+ * The query benchmarks pick a random process instance out of a set of instances that is started once per trial,
+ * so they don't measure the start cost too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 10, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ProcessEngineBenchmark {
+
+    /**
+     * h2 (embedded, default), jdbc or mongo. The jdbc and mongo modes take the same system properties
+     * (jdbcUrl, jdbcUser, jdbcPassword, serverUrls) as the Benchmark main class, passed through with -jvmArgsAppend.
+     */
+    @Param({ "h2" })
+    public String mode;
+
+    @Param({ "audit" })
+    public String historyLevel;
+
+    @Param({ "10" })
+    public int nrOfVariables;
+
+    @Param({ "1000" })
+    public int nrOfPrestartedProcessInstances;
+
+    protected ProcessEngine processEngine;
+    protected RuntimeService runtimeService;
+    protected TaskService taskService;
+
+    protected List<String> processInstanceIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        processEngine = Benchmark.createProcessEngine(mode, HistoryLevel.getHistoryLevelForKey(historyLevel));
+        runtimeService = processEngine.getRuntimeService();
+        taskService = processEngine.getTaskService();
+
+        processEngine.getRepositoryService().createDeployment().addClasspathResource("benchmark-process.bpmn20.xml").deploy();
+
+        processInstanceIds = new ArrayList<>(nrOfPrestartedProcessInstances);
+        for (int i = 0; i < nrOfPrestartedProcessInstances; i++) {
+            processInstanceIds.add(startProcessInstance().getId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        processEngine.close();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public ProcessInstance startProcessInstance() {
+        return runtimeService.createProcessInstanceBuilder()
+            .processDefinitionKey("testProcess")
+            .variables(Benchmark.generateRandomStartVariables(nrOfVariables))
+            .start();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public ProcessInstance processInstanceQuery() {
+        return runtimeService.createProcessInstanceQuery().processInstanceId(randomProcessInstanceId()).singleResult();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public List<Execution> executionListQuery() {
+        return runtimeService.createExecutionQuery().processInstanceId(randomProcessInstanceId()).list();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public long executionCountQuery() {
+        return runtimeService.createExecutionQuery().processInstanceId(randomProcessInstanceId()).count();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public List<Task> taskQuery() {
+        return taskService.createTaskQuery().processInstanceId(randomProcessInstanceId()).list();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Map<String, Object> getVariables() {
+        return runtimeService.getVariables(randomProcessInstanceId());
+    }
+
+    protected String randomProcessInstanceId() {
+        return processInstanceIds.get(ThreadLocalRandom.current().nextInt(processInstanceIds.size()));
+    }
+
+}
@@ -0,0 +1,75 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+/**
+ * JMH sets the thread count per run (-t) instead of through a @Param,
+ * so this runs {@link ProcessEngineBenchmark} once for every thread count in the 'threads' system property.
+ *
+ * The 'mode', 'historyLevel' and 'nrOfVariables' system properties are passed through as benchmark parameters,
+ * comma separated values are swept by JMH itself. The connection settings are handed to the forked JVMs.
+ */
+public class ThreadSweep {
+
+    public static void main(String[] args) throws Exception {
+        String[] threadCounts = System.getProperty("threads", "1,4,8,16").split(",");
+        String include = System.getProperty("include", ProcessEngineBenchmark.class.getSimpleName());
+
+        for (String threadCount : threadCounts) {
+            int nrOfThreads = Integer.valueOf(threadCount.trim());
+            System.out.println("Running " + include + " with " + nrOfThreads + " thread(s)");
+
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .threads(nrOfThreads)
+                .verbosity(VerboseMode.NORMAL)
+                .result("jmh-result-" + nrOfThreads + "-threads.json")
+                .resultFormat(ResultFormatType.JSON);
+
+            addParam(options, "mode");
+            addParam(options, "historyLevel");
+            addParam(options, "nrOfVariables");
+            options.jvmArgsAppend(connectionJvmArgs());
+
+            new Runner(options.build()).run();
+        }
+    }
+
+    protected static void addParam(ChainedOptionsBuilder options, String name) {
+        String value = System.getProperty(name);
+        if (value != null) {
+            options.param(name, value.split(","));
+        }
+    }
+
+    protected static String[] connectionJvmArgs() {
+        List<String> jvmArgs = new ArrayList<>();
+        for (String name : new String[] { "jdbcUrl", "jdbcUser", "jdbcPassword", "serverUrls" }) {
+            String value = System.getProperty(name);
+            if (value != null) {
+                jvmArgs.add("-D" + name + "=" + value);
+            }
+        }
+        return jvmArgs.toArray(new String[0]);
+    }
+
+}
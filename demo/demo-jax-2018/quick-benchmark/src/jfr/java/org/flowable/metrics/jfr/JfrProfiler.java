@@ -0,0 +1,72 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.metrics.jfr;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+
+import org.flowable.metrics.OperationContext;
+import org.flowable.metrics.OperationListener;
+import org.flowable.metrics.RecordingProfiler;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Starts a JFR recording with the 'profile' settings and emits an {@link OperationEvent} for every benchmark operation.
+ *
+ * Only compiled with the 'jfr' Maven profile and only loaded when 'jfr' is enabled:
+ * the jdk.jfr API requires a JDK 11+ (or 8u262+) runtime.
+ */
+public class JfrProfiler implements RecordingProfiler, OperationListener {
+
+    protected Recording recording;
+
+    @Override
+    public void start() {
+        try {
+            recording = new Recording(Configuration.getConfiguration(System.getProperty("jfrSettings", "profile")));
+        } catch (Exception e) {
+            throw new RuntimeException("Could not load the JFR settings", e);
+        }
+        recording.setName("flowable-benchmark");
+        recording.setMaxAge(Duration.ofHours(1));
+        recording.enable(OperationEvent.class);
+        recording.start();
+        OperationContext.addListener(this);
+    }
+
+    @Override
+    public Object operationStarted(String operation) {
+        OperationEvent event = new OperationEvent(operation);
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void operationEnded(String operation, Object state) {
+        ((OperationEvent) state).commit();
+    }
+
+    @Override
+    public void stop(File resultsDir, String runId) throws IOException {
+        recording.stop();
+        resultsDir.mkdirs();
+        File jfrFile = new File(resultsDir, "benchmark-" + runId + ".jfr");
+        recording.dump(jfrFile.toPath());
+        recording.close();
+        System.out.println("JFR recording written to " + jfrFile.getAbsolutePath());
+    }
+
+}
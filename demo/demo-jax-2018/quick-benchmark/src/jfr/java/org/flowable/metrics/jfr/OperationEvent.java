@@ -0,0 +1,38 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one benchmark operation, so allocation samples, GC pauses and lock contention
+ * in the recording can be correlated with the operations.
+ */
+@Name("org.flowable.benchmark.Operation")
+@Label("Benchmark Operation")
+@Category("Flowable Benchmark")
+@Description("A single benchmark operation, e.g. a process start or a query")
+public class OperationEvent extends Event {
+
+    @Label("Operation")
+    protected String operation;
+
+    public OperationEvent(String operation) {
+        this.operation = operation;
+    }
+
+}
@@ -12,17 +12,24 @@
  */
 package org.flowable;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
+import javax.sql.DataSource;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.cmd.BulkStartProcessInstancesCmd;
 import org.flowable.common.engine.impl.history.HistoryLevel;
+import org.flowable.delegate.SetVariablesDelegate;
+import org.flowable.engine.ManagementService;
 import org.flowable.engine.ProcessEngine;
 import org.flowable.engine.ProcessEngineConfiguration;
 import org.flowable.engine.RepositoryService;
@@ -31,15 +38,34 @@ import org.flowable.engine.TaskService;
 import org.flowable.engine.impl.cfg.StandaloneProcessEngineConfiguration;
 import org.flowable.engine.runtime.Execution;
 import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.metrics.AllocationProfiler;
+import org.flowable.metrics.GcMonitor;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.metrics.RecordingProfiler;
 import org.flowable.mongodb.cfg.MongoDbProcessEngineConfiguration;
+import org.flowable.results.RunResult;
+import org.flowable.scenario.Scenario;
+import org.flowable.scenario.ScenarioRunner;
+import org.flowable.sql.StatementAccountingDataSource;
+import org.flowable.sql.StatementStatistics;
 import org.flowable.task.api.Task;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.zaxxer.hikari.HikariDataSource;
 
 public class Benchmark {
 
     private static Random random = new Random();
 
+    private static OperationLatencies latencies = new OperationLatencies();
+
+    private static StatementStatistics statementStatistics;
+
+    private static AllocationProfiler allocationProfiler;
+    private static GcMonitor gcMonitor;
+    private static RecordingProfiler jfrProfiler;
+
     public static void main(String[] args) throws Exception {
 
         final ProcessEngine processEngine = createProcessEngine();
@@ -47,37 +73,241 @@ public class Benchmark {
         final RuntimeService runtimeService = processEngine.getRuntimeService();
         final TaskService taskService = processEngine.getTaskService();
 
+        String runId = System.getProperty("runId", new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+        File resultsDir = new File(System.getProperty("resultsDir", "results"));
+
+        RunResult runResult = new RunResult(runId);
+        runResult.captureEnvironment(processEngine);
+
+        if (Boolean.getBoolean("allocationProfile")) {
+            allocationProfiler = new AllocationProfiler();
+            allocationProfiler.start();
+            gcMonitor = new GcMonitor();
+            gcMonitor.start();
+        }
+        if (Boolean.getBoolean("jfr")) {
+            jfrProfiler = RecordingProfiler.createJfrProfiler();
+            jfrProfiler.start();
+        }
+
+        String scenarios = System.getProperty("scenario");
+        if (scenarios != null) {
+            for (String scenarioLocation : scenarios.split(",")) {
+                ScenarioRunner scenarioRunner = new ScenarioRunner(processEngine, Scenario.load(scenarioLocation.trim()), getThreadModel());
+                scenarioRunner.deploy();
+                scenarioRunner.run();
+                scenarioRunner.writeResults(resultsDir, runId);
+                scenarioRunner.addMetrics(runResult);
+            }
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
+        if (System.getProperty("nodes") != null) {
+            ClusterScaling clusterScaling = ClusterScaling.fromSystemProperties();
+            clusterScaling.run();
+            clusterScaling.writeResults(resultsDir, runId);
+            clusterScaling.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
+        if (Boolean.getBoolean("modelScaling")) {
+            ModelScaling modelScaling = ModelScaling.fromSystemProperties(getThreadModel(), resultsDir);
+            modelScaling.run(processEngine);
+            modelScaling.writeResults(resultsDir, runId);
+            modelScaling.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
+        if (Boolean.getBoolean("eventCorrelation")) {
+            EventCorrelation eventCorrelation = EventCorrelation.fromSystemProperties(getThreadModel());
+            eventCorrelation.run(processEngine);
+            eventCorrelation.writeResults(resultsDir, runId);
+            eventCorrelation.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
+        if (Boolean.getBoolean("historyMatrix")) {
+            HistoryMatrix historyMatrix = HistoryMatrix.fromSystemProperties(getThreadModel());
+            historyMatrix.run();
+            historyMatrix.writeResults(resultsDir, runId);
+            historyMatrix.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
         System.out.println("Deploying process definition");
         repositoryService.createDeployment().addClasspathResource("benchmark-process.bpmn20.xml").deploy();
 
-        List<String> processInstanceIds = startProcessInstances(runtimeService);
+        if (Boolean.getBoolean("payloadMatrix")) {
+            PayloadMatrix payloadMatrix = PayloadMatrix.fromSystemProperties(getThreadModel());
+            payloadMatrix.run(processEngine);
+            payloadMatrix.writeResults(resultsDir, runId);
+            payloadMatrix.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
+        if (Boolean.getBoolean("historyQueries")) {
+            HistoryQueries historyQueries = HistoryQueries.fromSystemProperties(getThreadModel());
+            historyQueries.run(processEngine);
+            historyQueries.writeResults(resultsDir, runId);
+            historyQueries.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
+        if (Boolean.getBoolean("soak")) {
+            SoakRun soakRun = SoakRun.fromSystemProperties(getThreadModel());
+            soakRun.run(processEngine);
+            soakRun.writeResults(resultsDir, runId);
+            soakRun.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            System.exit(soakRun.isFailed() ? 1 : 0);
+        }
+
+        if (Boolean.getBoolean("sweep")) {
+            ConcurrencySweep concurrencySweep = ConcurrencySweep.fromSystemProperties();
+            concurrencySweep.run(processEngine);
+            concurrencySweep.writeResults(resultsDir, runId);
+            concurrencySweep.addMetrics(runResult);
+            writeRunResult(runResult, resultsDir);
+            return;
+        }
+
+        List<String> processInstanceIds;
+        long startPhaseStart = System.nanoTime();
+        if ("open".equals(System.getProperty("loadModel"))) {
+            OpenLoopStarter openLoopStarter = OpenLoopStarter.fromSystemProperties();
+            processInstanceIds = openLoopStarter.run(() -> startProcessInstance(runtimeService));
+            openLoopStarter.writeResults(resultsDir, runId);
+            openLoopStarter.addMetrics(runResult);
+        } else if ("bulk".equals(System.getProperty("startMode"))) {
+            processInstanceIds = startProcessInstancesInBulk(processEngine.getManagementService());
+        } else {
+            processInstanceIds = startProcessInstances(runtimeService);
+        }
+        long startPhaseNanos = System.nanoTime() - startPhaseStart;
+        runResult.addThroughput("startedInstances", processInstanceIds.size() / (startPhaseNanos / 1_000_000_000.0));
+
+        long queryPhaseStart = System.nanoTime();
         executeQuerying(runtimeService, taskService, processInstanceIds);
+        long queryPhaseNanos = System.nanoTime() - queryPhaseStart;
+
+        latencies.printSummary();
+        latencies.writeResults(resultsDir, runId);
+        for (Map.Entry<String, Histogram> entry : latencies.getHistograms().entrySet()) {
+            boolean startOperation = "start".equals(entry.getKey()) || "bulkStart".equals(entry.getKey());
+            runResult.addMetric(entry.getKey(), entry.getValue(), startOperation ? startPhaseNanos : queryPhaseNanos);
+        }
+
+        if ("bulk".equals(System.getProperty("queryMode"))) {
+            BulkQuerying bulkQuerying = new BulkQuerying(processEngine, ConcurrencySweep.parseIntegers(System.getProperty("queryPageSizes", "10,100,500")),
+                Integer.valueOf(System.getProperty("nrOfThreads")), getThreadModel(), getExpectedNrOfVariables());
+            bulkQuerying.run(processInstanceIds, queryPhaseNanos);
+            bulkQuerying.writeResults(resultsDir, runId);
+            bulkQuerying.addMetrics(runResult);
+        }
+
+        if (Boolean.getBoolean("completeTasks")) {
+            completeTasks(processEngine, processInstanceIds.size(), resultsDir, runId, runResult);
+        }
+
+        writeRunResult(runResult, resultsDir);
+    }
 
+    /**
+     * Stores the run result (with the SQL statistics when 'sqlStats' is enabled and the allocation and GC profile
+     * when 'allocationProfile' is enabled) and, when 'saveBaseline' is set, also stores it as the baseline with that name.
+     */
+    private static void writeRunResult(RunResult runResult, File resultsDir) throws IOException {
+        if (statementStatistics != null) {
+            statementStatistics.printSummary();
+            statementStatistics.writeResults(resultsDir, runResult.getRunId());
+            statementStatistics.addMetrics(runResult);
+        }
+        if (allocationProfiler != null) {
+            allocationProfiler.stop();
+            gcMonitor.stop();
+            allocationProfiler.printSummary();
+            gcMonitor.printSummary();
+            writeAllocationProfile(resultsDir, runResult.getRunId());
+            allocationProfiler.addMetrics(runResult);
+            gcMonitor.addMetrics(runResult);
+        }
+        if (jfrProfiler != null) {
+            jfrProfiler.stop(resultsDir, runResult.getRunId());
+        }
+        runResult.write(resultsDir);
+        String baselineName = System.getProperty("saveBaseline");
+        if (baselineName != null) {
+            runResult.writeBaseline(resultsDir, baselineName);
+        }
         System.out.println("DONE");
     }
 
+    private static void writeAllocationProfile(File resultsDir, String runId) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.set("allocation", allocationProfiler.toJson());
+        resultNode.set("gc", gcMonitor.toJson());
+        resultsDir.mkdirs();
+        File jsonFile = new File(resultsDir, "allocation-profile-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Allocation profile written to " + jsonFile.getAbsolutePath());
+    }
+
+    /**
+     * Completes the tasks of the instances started above, and, unless 'asyncJoins' is false,
+     * does the same for a freshly started batch of the process variant with async joins.
+     */
+    private static void completeTasks(ProcessEngine processEngine, int nrOfProcessInstances, File resultsDir, String runId, RunResult runResult) throws Exception {
+        int nrOfThreads = Integer.valueOf(System.getProperty("nrOfThreads"));
+
+        TaskCompletionPhase taskCompletionPhase = new TaskCompletionPhase(processEngine, nrOfThreads, getThreadModel());
+        taskCompletionPhase.run("testProcess", nrOfProcessInstances, false);
+        taskCompletionPhase.writeResults(resultsDir, runId);
+        taskCompletionPhase.addMetrics(runResult);
+
+        if (Boolean.valueOf(System.getProperty("asyncJoins", "true"))) {
+            TaskCompletionPhase.deployAsyncJoinProcess(processEngine);
+            startProcessInstances(processEngine.getRuntimeService(), TaskCompletionPhase.ASYNC_JOIN_PROCESS_DEFINITION_KEY,
+                nrOfProcessInstances, nrOfThreads, getThreadModel());
+
+            TaskCompletionPhase asyncJoinPhase = new TaskCompletionPhase(processEngine, nrOfThreads, getThreadModel());
+            asyncJoinPhase.run(TaskCompletionPhase.ASYNC_JOIN_PROCESS_DEFINITION_KEY, nrOfProcessInstances, true);
+            asyncJoinPhase.writeResults(resultsDir, runId);
+            asyncJoinPhase.addMetrics(runResult);
+
+            System.out.println(String.format("Instance completion throughput: %.1f instances/sec with sync joins, %.1f instances/sec with async joins",
+                taskCompletionPhase.getThroughput(), asyncJoinPhase.getThroughput()));
+        }
+    }
+
     private static ProcessEngine createProcessEngine() {
         // Lazily getting all from system props
-        String mode = System.getProperty("mode");
-        if ("jdbc".equals(mode)) {
+        return createProcessEngine(System.getProperty("mode"), HistoryLevel.AUDIT);
+    }
 
-            System.out.println("JDBC mode");
-            String jdbcUrl = System.getProperty("jdbcUrl");
-            String jdbcUser = System.getProperty("jdbcUser");
-            String jdbcPassword = System.getProperty("jdbcPassword");
+    public static ProcessEngine createProcessEngine(String mode, HistoryLevel historyLevel) {
+        if ("jdbc".equals(mode) || "h2".equals(mode)) {
 
-            System.out.println("Jdbc url = " + jdbcUrl);
-            System.out.println("Jdbc user = " + jdbcUser);
+            HikariDataSource ds = createDataSource(mode, "flowable-benchmark");
 
-            HikariDataSource ds = new HikariDataSource();
-            ds.setJdbcUrl(jdbcUrl);
-            ds.setUsername(jdbcUser);
-            ds.setPassword(jdbcPassword);
-            ds.setMaximumPoolSize(50);
+            DataSource dataSource = ds;
+            if (Boolean.getBoolean("sqlStats") || Boolean.getBoolean("historyQueries")) {
+                System.out.println("Counting SQL statements");
+                statementStatistics = new StatementStatistics(Integer.getInteger("sqlStatsTopN", 10));
+                dataSource = new StatementAccountingDataSource(ds, statementStatistics);
+            }
 
             return new StandaloneProcessEngineConfiguration()
-                .setDataSource(ds)
-                .setHistoryLevel(HistoryLevel.AUDIT)
+                .setProcessDefinitionCacheLimit(Integer.getInteger("processDefinitionCacheLimit", -1))
+                .setDataSource(dataSource)
+                .setHistoryLevel(historyLevel)
                 .setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_TRUE)
                 .buildProcessEngine();
 
@@ -90,7 +320,7 @@ public class Benchmark {
             return new MongoDbProcessEngineConfiguration()
                 .setConnectionUrl(serverUrls)
                 .setDisableIdmEngine(true)
-                .setHistoryLevel(HistoryLevel.AUDIT)
+                .setHistoryLevel(historyLevel)
                 .setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_TRUE)
                 .buildProcessEngine();
 
@@ -99,53 +329,87 @@ public class Benchmark {
         }
     }
 
-    private static List<String> startProcessInstances(RuntimeService runtimeService) throws InterruptedException {
+    /**
+     * The 'jdbc' data source from the system properties. In 'h2' mode without a 'jdbcUrl', an in-memory database with the given name.
+     */
+    static HikariDataSource createDataSource(String mode, String h2DatabaseName) {
+        String jdbcUrl = System.getProperty("jdbcUrl");
+        String jdbcUser = System.getProperty("jdbcUser");
+        String jdbcPassword = System.getProperty("jdbcPassword");
+        String jdbcDriver = System.getProperty("jdbcDriver");
+
+        if ("h2".equals(mode)) {
+            System.out.println("H2 mode");
+            if (jdbcUrl == null) {
+                jdbcUrl = "jdbc:h2:mem:" + h2DatabaseName + ";DB_CLOSE_DELAY=-1";
+                jdbcDriver = "org.h2.Driver";
+                jdbcUser = "sa";
+                jdbcPassword = "";
+            }
+        } else {
+            System.out.println("JDBC mode");
+        }
+
+        System.out.println("Jdbc url = " + jdbcUrl);
+        System.out.println("Jdbc user = " + jdbcUser);
+
+        HikariDataSource ds = new HikariDataSource();
+        ds.setJdbcUrl(jdbcUrl);
+        if (jdbcDriver != null) {
+            ds.setDriverClassName(jdbcDriver);
+        }
+        ds.setUsername(jdbcUser);
+        ds.setPassword(jdbcPassword);
+        ds.setMaximumPoolSize(50);
+        return ds;
+    }
 
+    private static List<String> startProcessInstances(RuntimeService runtimeService) throws InterruptedException {
         int nrOfProcessInstances = Integer.valueOf(System.getProperty("nrOfProcessInstances"));
+        int nrOfThreads = Integer.valueOf(System.getProperty("nrOfThreads"));
+        return startProcessInstances(runtimeService, nrOfProcessInstances, nrOfThreads, getThreadModel());
+    }
+
+    static List<String> startProcessInstances(RuntimeService runtimeService, int nrOfProcessInstances, int nrOfThreads, String threadModel) throws InterruptedException {
+        return startProcessInstances(runtimeService, "testProcess", nrOfProcessInstances, nrOfThreads, threadModel);
+    }
+
+    static List<String> startProcessInstances(RuntimeService runtimeService, String processDefinitionKey,
+            int nrOfProcessInstances, int nrOfThreads, String threadModel) throws InterruptedException {
+        return startProcessInstances(runtimeService, processDefinitionKey, null, nrOfProcessInstances, nrOfThreads, threadModel);
+    }
+
+    /**
+     * @param businessKey the business key of all started process instances, or null for none
+     */
+    static List<String> startProcessInstances(RuntimeService runtimeService, String processDefinitionKey, String businessKey,
+            int nrOfProcessInstances, int nrOfThreads, String threadModel) throws InterruptedException {
+
         System.out.println("Number of process instances = " + nrOfProcessInstances);
 
         List<String> processInstanceIds = Collections.synchronizedList(new ArrayList<>(nrOfProcessInstances));
 
-        int nrOfThreads = Integer.valueOf(System.getProperty("nrOfThreads"));
-        System.out.println("Number of threads = " + nrOfThreads);
+        System.out.println("Number of threads = " + nrOfThreads + " (" + threadModel + ")");
 
         System.out.println("Starting process instances");
         long start = System.currentTimeMillis();
-        if (nrOfThreads == 1) {
+        // Only a single platform thread runs on the main thread, a single virtual thread goes through the worker pool
+        if (nrOfThreads == 1 && WorkerPool.PLATFORM.equals(threadModel)) {
 
             for (int i = 0; i < nrOfProcessInstances; i++) {
-                try {
-                    ProcessInstance processInstance = runtimeService.createProcessInstanceBuilder()
-                        .processDefinitionKey("testProcess")
-                        .variables(generateRandomStartVariables(10))
-                        .start();
-                    processInstanceIds.add(processInstance.getId());
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                startProcessInstance(runtimeService, processDefinitionKey, businessKey, processInstanceIds);
             }
 
         } else {
 
-            ExecutorService executorService = Executors.newFixedThreadPool(nrOfThreads);
+            WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
 
             for (int i = 0; i < nrOfProcessInstances; i++) {
-                executorService.submit(() -> {
-                    try {
-                        ProcessInstance processInstance = runtimeService.createProcessInstanceBuilder()
-                            .processDefinitionKey("testProcess")
-                            .variables(generateRandomStartVariables(10))
-                            .start();
-                        processInstanceIds.add(processInstance.getId());
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+                workerPool.submit(() -> startProcessInstance(runtimeService, processDefinitionKey, businessKey, processInstanceIds));
             }
 
             System.out.println("All tasks submitted. Waiting for termination");
-            executorService.shutdown();
-            executorService.awaitTermination(1, TimeUnit.DAYS);
+            workerPool.shutdownAndWait();
 
         }
 
@@ -157,25 +421,102 @@ public class Benchmark {
         return processInstanceIds;
     }
 
+    private static List<String> startProcessInstancesInBulk(ManagementService managementService) throws InterruptedException {
+        int nrOfProcessInstances = Integer.valueOf(System.getProperty("nrOfProcessInstances"));
+        int nrOfThreads = Integer.valueOf(System.getProperty("nrOfThreads"));
+        int batchSize = Integer.valueOf(System.getProperty("bulkBatchSize", "100"));
+        return startProcessInstancesInBulk(managementService, "testProcess", nrOfProcessInstances, batchSize, nrOfThreads, getThreadModel());
+    }
+
+    /**
+     * Starts the process instances in batches of 'batchSize', every batch in one command (and transaction),
+     * see {@link BulkStartProcessInstancesCmd}. The 'bulkStart' latency is the time of a whole batch.
+     */
+    static List<String> startProcessInstancesInBulk(ManagementService managementService, String processDefinitionKey,
+            int nrOfProcessInstances, int batchSize, int nrOfThreads, String threadModel) throws InterruptedException {
+
+        System.out.println("Number of process instances = " + nrOfProcessInstances + ", in batches of " + batchSize);
+        System.out.println("Number of threads = " + nrOfThreads + " (" + threadModel + ")");
+
+        List<String> processInstanceIds = Collections.synchronizedList(new ArrayList<>(nrOfProcessInstances));
+
+        System.out.println("Starting process instances in bulk");
+        long start = System.currentTimeMillis();
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+        for (int batchStart = 0; batchStart < nrOfProcessInstances; batchStart += batchSize) {
+            int size = Math.min(batchSize, nrOfProcessInstances - batchStart);
+            workerPool.submit(() -> {
+                try {
+                    List<Map<String, Object>> variablesPerInstance = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        variablesPerInstance.add(generateRandomStartVariables(getNrOfStartVariables()));
+                    }
+                    processInstanceIds.addAll(latencies.time("bulkStart",
+                        () -> managementService.executeCommand(new BulkStartProcessInstancesCmd(processDefinitionKey, variablesPerInstance))));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        workerPool.shutdownAndWait();
+
+        long totalTime = System.currentTimeMillis() - start;
+        double avg = (double) totalTime / (double) nrOfProcessInstances;
+        System.out.println("Took " + totalTime + " ms. (avg = " + avg + " ms per instance)");
+
+        return processInstanceIds;
+    }
+
+    private static void startProcessInstance(RuntimeService runtimeService, String processDefinitionKey, String businessKey, List<String> processInstanceIds) {
+        try {
+            processInstanceIds.add(startProcessInstance(runtimeService, processDefinitionKey, businessKey));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String startProcessInstance(RuntimeService runtimeService) {
+        return startProcessInstance(runtimeService, "testProcess");
+    }
+
+    private static String startProcessInstance(RuntimeService runtimeService, String processDefinitionKey) {
+        return startProcessInstance(runtimeService, processDefinitionKey, null);
+    }
+
+    private static String startProcessInstance(RuntimeService runtimeService, String processDefinitionKey, String businessKey) {
+        ProcessInstance processInstance = latencies.time("start", () -> runtimeService.createProcessInstanceBuilder()
+            .processDefinitionKey(processDefinitionKey)
+            .businessKey(businessKey)
+            .variables(generateRandomStartVariables(getNrOfStartVariables()))
+            .start());
+        return processInstance.getId();
+    }
+
     private static void executeQuerying(RuntimeService runtimeService, TaskService taskService, List<String> processInstanceIds) throws InterruptedException {
+        int nrOfThreads = Integer.valueOf(System.getProperty("nrOfThreads"));
+        executeQuerying(runtimeService, taskService, processInstanceIds, nrOfThreads, getThreadModel());
+    }
+
+    static void executeQuerying(RuntimeService runtimeService, TaskService taskService, List<String> processInstanceIds,
+            int nrOfThreads, String threadModel) throws InterruptedException {
 
         System.out.println("List of process instance ids contains " + processInstanceIds.size() + " elements");
 
-        int nrOfThreads = Integer.valueOf(System.getProperty("nrOfThreads"));
-        System.out.println("Number of threads = " + nrOfThreads);
+        System.out.println("Number of threads = " + nrOfThreads + " (" + threadModel + ")");
 
         System.out.println("Querying process instances");
         long start = System.currentTimeMillis();
-        if (nrOfThreads == 1) {
+        // Only a single platform thread runs on the main thread, a single virtual thread goes through the worker pool
+        if (nrOfThreads == 1 && WorkerPool.PLATFORM.equals(threadModel)) {
 
             processInstanceIds.forEach(processInstanceId -> executeQueries(runtimeService, taskService, processInstanceId));
 
         } else {
 
-            ExecutorService executorService = Executors.newFixedThreadPool(nrOfThreads);
+            WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
 
             for (String processInstanceId : processInstanceIds) {
-                executorService.submit(() -> {
+                workerPool.submit(() -> {
                     try {
                         executeQueries(runtimeService, taskService, processInstanceId);
                     } catch (Exception e) {
@@ -185,8 +526,7 @@ public class Benchmark {
             }
 
             System.out.println("All querying tasks submitted. Waiting for termination");
-            executorService.shutdown();
-            executorService.awaitTermination(1, TimeUnit.DAYS);
+            workerPool.shutdownAndWait();
 
         }
 
@@ -197,33 +537,61 @@ public class Benchmark {
     }
 
     private static void executeQueries(RuntimeService runtimeService, TaskService taskService, String processInstanceId) {
-        ProcessInstance processInstance = runtimeService.createProcessInstanceQuery().processInstanceId(processInstanceId).singleResult();
+        ProcessInstance processInstance = latencies.time("processInstanceQuery",
+            () -> runtimeService.createProcessInstanceQuery().processInstanceId(processInstanceId).singleResult());
         if (processInstance == null) {
             throw new RuntimeException("Null process instance for id " + processInstanceId);
         }
 
-        List<Execution> executions = runtimeService.createExecutionQuery().processInstanceId(processInstanceId).list();
+        List<Execution> executions = latencies.time("executionListQuery",
+            () -> runtimeService.createExecutionQuery().processInstanceId(processInstanceId).list());
         if (executions.size() != 6) {
             throw new RuntimeException("Wrong number of executions, found  " + executions.size());
         }
 
-        long count = runtimeService.createExecutionQuery().processInstanceId(processInstanceId).count();
+        long count = latencies.time("executionCountQuery",
+            () -> runtimeService.createExecutionQuery().processInstanceId(processInstanceId).count());
         if (count != 6) {
             throw new RuntimeException("Wrong number of taskCount : " + count);
         }
 
-        List<Task> tasks = taskService.createTaskQuery().processInstanceId(processInstanceId).list();
+        List<Task> tasks = latencies.time("taskQuery",
+            () -> taskService.createTaskQuery().processInstanceId(processInstanceId).list());
         if (tasks.size() != 2) {
             throw new RuntimeException("Wrong number of tasks : " + tasks.size());
         }
 
-        Map<String, Object> variables = runtimeService.getVariables(processInstanceId);
-        if (variables.size() != 31) {
+        Map<String, Object> variables = latencies.time("getVariables",
+            () -> runtimeService.getVariables(processInstanceId));
+        if (variables.size() != getExpectedNrOfVariables()) {
             throw new RuntimeException("Wrong number of variables " + variables.size());
         }
     }
 
-    private static Map<String, Object> generateRandomStartVariables(int nrOfVariables) {
+    static int getNrOfStartVariables() {
+        return Integer.getInteger("nrOfStartVariables", 10);
+    }
+
+    /**
+     * The start variables, 'inputValid' and the variables of the two 'SetVariables' service tasks.
+     */
+    private static int getExpectedNrOfVariables() {
+        return getNrOfStartVariables() + 1 + 2 * SetVariablesDelegate.getNrOfVariables();
+    }
+
+    static String getThreadModel() {
+        return System.getProperty("threadModel", WorkerPool.PLATFORM);
+    }
+
+    static OperationLatencies getLatencies() {
+        return latencies;
+    }
+
+    static void resetLatencies() {
+        latencies = new OperationLatencies();
+    }
+
+    public static Map<String, Object> generateRandomStartVariables(int nrOfVariables) {
         Map<String, Object> variables = new HashMap<>();
         for (int i = 0; i < nrOfVariables; i++) {
             if (random.nextBoolean()) {
@@ -0,0 +1,206 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.impl.persistence.entity.ExecutionEntity;
+import org.flowable.engine.runtime.Execution;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+import org.flowable.task.api.Task;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Reads the same data as the per instance querying of {@link Benchmark} (instance, executions, tasks and variables),
+ * but for a page of process instances at a time, in three queries per page instead of five per instance:
+ *
+ * <ul>
+ * <li>the process instances of the page, with their variables (processInstanceIds + includeProcessVariables)</li>
+ * <li>the executions of the page (a native query with an IN clause, the execution query has no set based filter)</li>
+ * <li>the tasks of the page (processInstanceIdIn)</li>
+ * </ul>
+ *
+ * The same checks as the per instance mode are done on the result. Every page size of 'queryPageSizes' is run once
+ * and its throughput is compared with the per instance mode.
+ */
+public class BulkQuerying {
+
+    protected final ProcessEngine processEngine;
+    protected final List<Integer> pageSizes;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+    protected final int expectedNrOfVariables;
+
+    protected final Map<Integer, OperationLatencies> latenciesPerPageSize = new LinkedHashMap<>();
+    protected final Map<Integer, Long> durationsPerPageSize = new LinkedHashMap<>();
+    protected int nrOfProcessInstances;
+    protected long perInstanceDurationNanos;
+
+    public BulkQuerying(ProcessEngine processEngine, List<Integer> pageSizes, int nrOfThreads, String threadModel, int expectedNrOfVariables) {
+        this.processEngine = processEngine;
+        this.pageSizes = pageSizes;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+        this.expectedNrOfVariables = expectedNrOfVariables;
+    }
+
+    /**
+     * @param perInstanceDurationNanos how long the per instance querying took for the same process instances
+     */
+    public void run(List<String> processInstanceIds, long perInstanceDurationNanos) throws InterruptedException {
+        this.nrOfProcessInstances = processInstanceIds.size();
+        this.perInstanceDurationNanos = perInstanceDurationNanos;
+
+        for (int pageSize : pageSizes) {
+            System.out.println("Bulk querying " + processInstanceIds.size() + " process instances in pages of " + pageSize);
+            OperationLatencies latencies = new OperationLatencies();
+            latenciesPerPageSize.put(pageSize, latencies);
+
+            long start = System.nanoTime();
+            WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+            for (int pageStart = 0; pageStart < processInstanceIds.size(); pageStart += pageSize) {
+                List<String> page = new ArrayList<>(processInstanceIds.subList(pageStart, Math.min(pageStart + pageSize, processInstanceIds.size())));
+                workerPool.submit(() -> {
+                    try {
+                        executeQueries(page, latencies);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+            workerPool.shutdownAndWait();
+            durationsPerPageSize.put(pageSize, System.nanoTime() - start);
+        }
+
+        printSummary();
+    }
+
+    protected void executeQueries(List<String> processInstanceIds, OperationLatencies latencies) {
+        RuntimeService runtimeService = processEngine.getRuntimeService();
+
+        List<ProcessInstance> processInstances = latencies.time("processInstancesWithVariables", () -> runtimeService.createProcessInstanceQuery()
+            .processInstanceIds(new HashSet<>(processInstanceIds))
+            .includeProcessVariables()
+            .limitProcessInstanceVariables(processInstanceIds.size() * expectedNrOfVariables)
+            .list());
+        if (processInstances.size() != processInstanceIds.size()) {
+            throw new RuntimeException("Wrong number of process instances, found " + processInstances.size() + " instead of " + processInstanceIds.size());
+        }
+        for (ProcessInstance processInstance : processInstances) {
+            if (processInstance.getProcessVariables().size() != expectedNrOfVariables) {
+                throw new RuntimeException("Wrong number of variables " + processInstance.getProcessVariables().size() + " for " + processInstance.getId());
+            }
+        }
+
+        List<Execution> executions = latencies.time("executions", () -> runtimeService.createNativeExecutionQuery()
+            .sql("SELECT * FROM " + processEngine.getManagementService().getTableName(ExecutionEntity.class)
+                + " WHERE PROC_INST_ID_ IN (" + toInClause(processInstanceIds) + ")")
+            .list());
+        checkCountPerProcessInstance(processInstanceIds, executions, Execution::getProcessInstanceId, 6, "executions");
+
+        List<Task> tasks = latencies.time("tasks", () -> processEngine.getTaskService().createTaskQuery()
+            .processInstanceIdIn(processInstanceIds)
+            .list());
+        checkCountPerProcessInstance(processInstanceIds, tasks, Task::getProcessInstanceId, 2, "tasks");
+    }
+
+    protected <T> void checkCountPerProcessInstance(List<String> processInstanceIds, List<T> elements,
+            Function<T, String> processInstanceIdFunction, int expectedCount, String description) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (T element : elements) {
+            counts.merge(processInstanceIdFunction.apply(element), 1, Integer::sum);
+        }
+        for (String processInstanceId : processInstanceIds) {
+            int count = counts.getOrDefault(processInstanceId, 0);
+            if (count != expectedCount) {
+                throw new RuntimeException("Wrong number of " + description + " for " + processInstanceId + ", found " + count);
+            }
+        }
+    }
+
+    protected String toInClause(List<String> ids) {
+        StringBuilder strb = new StringBuilder();
+        for (String id : ids) {
+            if (strb.length() > 0) {
+                strb.append(", ");
+            }
+            strb.append('\'').append(id.replace("'", "''")).append('\'');
+        }
+        return strb.toString();
+    }
+
+    public double getThroughput(long durationNanos) {
+        return durationNanos > 0 ? nrOfProcessInstances / (durationNanos / 1_000_000_000.0) : 0.0;
+    }
+
+    public void printSummary() {
+        System.out.println(String.format("%10s %12s %14s %8s %12s", "page size", "time (ms)", "instances/s", "speedup", "queries"));
+        System.out.println(String.format("%10s %12d %14.1f %8.2f %12d", "-", perInstanceDurationNanos / 1_000_000,
+            getThroughput(perInstanceDurationNanos), 1.0, nrOfProcessInstances * 5L));
+        for (Map.Entry<Integer, Long> entry : durationsPerPageSize.entrySet()) {
+            long durationNanos = entry.getValue();
+            long nrOfPages = (nrOfProcessInstances + entry.getKey() - 1) / entry.getKey();
+            System.out.println(String.format("%10d %12d %14.1f %8.2f %12d", entry.getKey(), durationNanos / 1_000_000, getThroughput(durationNanos),
+                (double) perInstanceDurationNanos / durationNanos, nrOfPages * 3));
+        }
+        System.out.println("(page size '-' is the per instance mode)");
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (Map.Entry<Integer, OperationLatencies> entry : latenciesPerPageSize.entrySet()) {
+            String prefix = "bulkQuery.page" + entry.getKey() + ".";
+            long durationNanos = durationsPerPageSize.get(entry.getKey());
+            runResult.addMetrics(prefix, entry.getValue(), durationNanos);
+            runResult.addThroughput(prefix + "instances", getThroughput(durationNanos));
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("nrOfProcessInstances", nrOfProcessInstances);
+        resultNode.put("nrOfThreads", nrOfThreads);
+        resultNode.put("perInstanceDurationNanos", perInstanceDurationNanos);
+        ArrayNode pageSizesNode = resultNode.putArray("pageSizes");
+        for (Map.Entry<Integer, OperationLatencies> entry : latenciesPerPageSize.entrySet()) {
+            long durationNanos = durationsPerPageSize.get(entry.getKey());
+            ObjectNode pageSizeNode = pageSizesNode.addObject();
+            pageSizeNode.put("pageSize", entry.getKey());
+            pageSizeNode.put("durationNanos", durationNanos);
+            pageSizeNode.put("instancesPerSecond", getThroughput(durationNanos));
+            pageSizeNode.put("speedup", (double) perInstanceDurationNanos / durationNanos);
+            pageSizeNode.set("latencies", entry.getValue().toJson());
+        }
+
+        File jsonFile = new File(resultsDir, "bulk-query-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Bulk query results written to " + jsonFile.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,187 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flowable.cmd.ConflictCountingInterceptor;
+import org.flowable.common.engine.api.delegate.event.FlowableEngineEventType;
+import org.flowable.common.engine.api.delegate.event.FlowableEvent;
+import org.flowable.common.engine.api.delegate.event.FlowableEventListener;
+import org.flowable.common.engine.impl.history.HistoryLevel;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.ProcessEngineConfiguration;
+import org.flowable.engine.impl.cfg.StandaloneProcessEngineConfiguration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * One node of the {@link ClusterScaling} benchmark, running in its own JVM against the shared database ('jdbcUrl'),
+ * with the async executor enabled. The schema and the process definitions are created by the coordinator.
+ *
+ * The node starts 'nodeInstances' process instances and completes their tasks, every phase after a 'GO' line
+ * on stdin, and reports its progress and the final result (as JSON) on stdout, see the NODE_ constants.
+ */
+public class ClusterNode {
+
+    public static final String NODE_READY = "NODE READY";
+    public static final String NODE_STARTED = "NODE STARTED";
+    public static final String NODE_RESULT = "NODE RESULT ";
+    public static final String GO = "GO";
+
+    protected final String nodeId;
+    protected final String processDefinitionKey;
+    protected final int nrOfProcessInstances;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+
+    protected final ConflictCountingInterceptor conflictCountingInterceptor = new ConflictCountingInterceptor();
+    protected final AtomicLong executedJobs = new AtomicLong();
+
+    protected ProcessEngine processEngine;
+    protected HikariDataSource dataSource;
+
+    public ClusterNode(String nodeId, String processDefinitionKey, int nrOfProcessInstances, int nrOfThreads, String threadModel) {
+        this.nodeId = nodeId;
+        this.processDefinitionKey = processDefinitionKey;
+        this.nrOfProcessInstances = nrOfProcessInstances;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+    }
+
+    public static void main(String[] args) throws Exception {
+        ClusterNode clusterNode = new ClusterNode(System.getProperty("nodeId"),
+            System.getProperty("clusterProcess", TaskCompletionPhase.ASYNC_JOIN_PROCESS_DEFINITION_KEY),
+            Integer.valueOf(System.getProperty("nodeInstances")),
+            Integer.valueOf(System.getProperty("nrOfThreads")),
+            Benchmark.getThreadModel());
+        try {
+            clusterNode.run(new BufferedReader(new InputStreamReader(System.in)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            clusterNode.close();
+        }
+        System.exit(0);
+    }
+
+    public void run(BufferedReader commands) throws Exception {
+        dataSource = Benchmark.createDataSource("jdbc", null);
+        if (System.getProperty("nodePoolSize") != null) {
+            dataSource.setMaximumPoolSize(Integer.getInteger("nodePoolSize"));
+        }
+
+        StandaloneProcessEngineConfiguration engineConfiguration = new StandaloneProcessEngineConfiguration();
+        engineConfiguration.setDataSource(dataSource)
+            .setHistoryLevel(HistoryLevel.AUDIT)
+            .setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_FALSE)
+            .setAsyncExecutorActivate(true);
+        engineConfiguration.setAsyncExecutorLockOwner(nodeId);
+        engineConfiguration.setCustomPreCommandInterceptors(Collections.singletonList(conflictCountingInterceptor));
+        processEngine = engineConfiguration.buildProcessEngine();
+        processEngine.getRuntimeService().addEventListener(new JobSuccessListener(), FlowableEngineEventType.JOB_EXECUTION_SUCCESS);
+
+        System.out.println(NODE_READY);
+        awaitGo(commands);
+
+        long startPhaseStart = System.nanoTime();
+        List<String> processInstanceIds = Benchmark.startProcessInstances(processEngine.getRuntimeService(), processDefinitionKey,
+            getBusinessKey(), nrOfProcessInstances, nrOfThreads, threadModel);
+        long startPhaseNanos = System.nanoTime() - startPhaseStart;
+
+        System.out.println(NODE_STARTED);
+        awaitGo(commands);
+
+        TaskCompletionPhase taskCompletionPhase = new TaskCompletionPhase(processEngine, nrOfThreads, threadModel);
+        taskCompletionPhase.setBusinessKey(getBusinessKey());
+        taskCompletionPhase.run(processDefinitionKey, processInstanceIds.size(),
+            TaskCompletionPhase.ASYNC_JOIN_PROCESS_DEFINITION_KEY.equals(processDefinitionKey));
+
+        ObjectNode resultNode = new ObjectMapper().createObjectNode();
+        resultNode.put("nodeId", nodeId);
+        resultNode.put("started", processInstanceIds.size());
+        resultNode.put("startMillis", startPhaseNanos / 1_000_000);
+        resultNode.put("startP99", Benchmark.getLatencies().getHistogram("start").getValueAtPercentile(99.0));
+        resultNode.put("completeMillis", taskCompletionPhase.getTotalTime());
+        resultNode.put("completeP99", taskCompletionPhase.getLatencies().getHistogram("complete").getValueAtPercentile(99.0));
+        resultNode.put("executedJobs", executedJobs.get());
+        resultNode.put("failedJobs", taskCompletionPhase.getFailedJobs());
+        long completionRetries = 0;
+        for (AtomicLong retries : taskCompletionPhase.getOptimisticLockingRetries().values()) {
+            completionRetries += retries.get();
+        }
+        resultNode.put("completionRetries", completionRetries);
+        resultNode.put("conflicts", conflictCountingInterceptor.getTotalConflicts());
+        resultNode.put("jobAcquisitionConflicts", conflictCountingInterceptor.getJobAcquisitionConflicts());
+        ObjectNode conflictsNode = resultNode.putObject("conflictsPerCommand");
+        conflictCountingInterceptor.getConflicts().forEach(conflictsNode::put);
+        System.out.println(NODE_RESULT + resultNode.toString());
+    }
+
+    /**
+     * The business key of all process instances started by this node, so the node can find its own instances
+     * without sending all their ids to the database.
+     */
+    protected String getBusinessKey() {
+        return "clusterNode-" + nodeId;
+    }
+
+    protected void awaitGo(BufferedReader commands) throws IOException {
+        String line = commands.readLine();
+        if (!GO.equals(line)) {
+            throw new RuntimeException("Node " + nodeId + " expected " + GO + " but got " + line);
+        }
+    }
+
+    public void close() {
+        if (processEngine != null) {
+            processEngine.close();
+        }
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    protected class JobSuccessListener implements FlowableEventListener {
+
+        @Override
+        public void onEvent(FlowableEvent event) {
+            executedJobs.incrementAndGet();
+        }
+
+        @Override
+        public boolean isFailOnException() {
+            return false;
+        }
+
+        @Override
+        public boolean isFireOnTransactionLifecycleEvent() {
+            return false;
+        }
+
+        @Override
+        public String getOnTransaction() {
+            return null;
+        }
+
+    }
+
+}
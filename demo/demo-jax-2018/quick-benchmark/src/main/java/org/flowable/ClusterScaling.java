@@ -0,0 +1,348 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.flowable.common.engine.impl.history.HistoryLevel;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.ProcessEngineConfiguration;
+import org.flowable.engine.impl.cfg.StandaloneProcessEngineConfiguration;
+import org.flowable.results.RunResult;
+import org.h2.tools.Server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Measures horizontal scaling: for every node count in 'nodes' (default 1,2,4,8), launches that many {@link ClusterNode} JVMs
+ * against the same database, splits 'nrOfProcessInstances' over them and lets them start and complete their instances.
+ * The phases are started on all nodes at the same time, the throughput is the total work divided by the time until the
+ * last node finished.
+ *
+ * The reported conflicts are optimistic locking exceptions, per command class: job acquisition conflicts come from the
+ * async executors of the nodes competing for the same jobs.
+ *
+ * In 'jdbc' mode the nodes use the 'jdbcUrl', in 'h2' mode (without a 'jdbcUrl') an H2 TCP server is started in this JVM.
+ * The H2 numbers only show the overhead of the nodes, not how a real database scales. Extra JVM options for the nodes
+ * can be passed in 'nodeJvmArgs'.
+ */
+public class ClusterScaling {
+
+    protected final String mode;
+    protected final List<Integer> nodeCounts;
+    protected final int nrOfProcessInstances;
+    protected final String processDefinitionKey;
+    protected final long phaseTimeoutMillis;
+
+    protected final List<ObjectNode> rows = new ArrayList<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    protected String jdbcUrl;
+    protected String jdbcUser;
+    protected String jdbcPassword;
+    protected String jdbcDriver;
+    protected Server h2Server;
+
+    public ClusterScaling(String mode, List<Integer> nodeCounts, int nrOfProcessInstances, String processDefinitionKey, long phaseTimeoutMillis) {
+        this.mode = mode;
+        this.nodeCounts = nodeCounts;
+        this.nrOfProcessInstances = nrOfProcessInstances;
+        this.processDefinitionKey = processDefinitionKey;
+        this.phaseTimeoutMillis = phaseTimeoutMillis;
+    }
+
+    public static ClusterScaling fromSystemProperties() {
+        return new ClusterScaling(System.getProperty("mode"),
+            ConcurrencySweep.parseIntegers(System.getProperty("nodes", "1,2,4,8")),
+            Integer.valueOf(System.getProperty("nrOfProcessInstances")),
+            System.getProperty("clusterProcess", TaskCompletionPhase.ASYNC_JOIN_PROCESS_DEFINITION_KEY),
+            Long.getLong("nodePhaseTimeout", 600) * 1000);
+    }
+
+    public void run() throws Exception {
+        jdbcUrl = System.getProperty("jdbcUrl");
+        jdbcUser = System.getProperty("jdbcUser");
+        jdbcPassword = System.getProperty("jdbcPassword");
+        jdbcDriver = System.getProperty("jdbcDriver");
+        if ("h2".equals(mode) && jdbcUrl == null) {
+            h2Server = Server.createTcpServer("-tcpPort", "0").start();
+            jdbcUrl = "jdbc:h2:tcp://localhost:" + h2Server.getPort() + "/mem:flowable-cluster;DB_CLOSE_DELAY=-1";
+            jdbcDriver = "org.h2.Driver";
+            jdbcUser = "sa";
+            jdbcPassword = "";
+        } else if (!"jdbc".equals(mode)) {
+            throw new RuntimeException("The cluster benchmark needs a shared relational database, invalid mode " + mode);
+        }
+
+        try {
+            prepareDatabase();
+            for (int nrOfNodes : nodeCounts) {
+                System.out.println("Cluster: " + nrOfNodes + " node(s)");
+                runNodes(nrOfNodes);
+            }
+        } finally {
+            if (h2Server != null) {
+                h2Server.stop();
+            }
+        }
+        printTable();
+    }
+
+    /**
+     * Creates the schema and deploys the process definitions once, so the nodes don't race for it.
+     */
+    protected void prepareDatabase() throws Exception {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(jdbcUrl);
+        if (jdbcDriver != null) {
+            dataSource.setDriverClassName(jdbcDriver);
+        }
+        dataSource.setUsername(jdbcUser);
+        dataSource.setPassword(jdbcPassword);
+
+        ProcessEngine processEngine = new StandaloneProcessEngineConfiguration()
+            .setDataSource(dataSource)
+            .setHistoryLevel(HistoryLevel.AUDIT)
+            .setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_TRUE)
+            .buildProcessEngine();
+        try {
+            processEngine.getRepositoryService().createDeployment().addClasspathResource("benchmark-process.bpmn20.xml").deploy();
+            TaskCompletionPhase.deployAsyncJoinProcess(processEngine);
+        } finally {
+            processEngine.close();
+            dataSource.close();
+        }
+    }
+
+    protected void runNodes(int nrOfNodes) throws Exception {
+        List<NodeProcess> nodes = new ArrayList<>();
+        try {
+            for (int i = 0; i < nrOfNodes; i++) {
+                int nodeInstances = nrOfProcessInstances / nrOfNodes + (i < nrOfProcessInstances % nrOfNodes ? 1 : 0);
+                nodes.add(new NodeProcess("node-" + nrOfNodes + "-" + i, launch("node-" + nrOfNodes + "-" + i, nodeInstances)));
+            }
+            awaitAll(nodes, ClusterNode.NODE_READY);
+
+            long start = System.nanoTime();
+            sendGo(nodes);
+            awaitAll(nodes, ClusterNode.NODE_STARTED);
+            long startNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sendGo(nodes);
+            List<JsonNode> nodeResults = awaitAll(nodes, ClusterNode.NODE_RESULT);
+            long completeNanos = System.nanoTime() - start;
+
+            addRow(nrOfNodes, startNanos, completeNanos, nodeResults);
+
+        } finally {
+            for (NodeProcess node : nodes) {
+                // A node still waiting for a 'GO' (e.g. after a failure of another node) stops when its stdin is closed
+                node.commands.close();
+                if (!node.process.waitFor(30, TimeUnit.SECONDS)) {
+                    node.process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    protected Process launch(String nodeId, int nodeInstances) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        String nodeJvmArgs = System.getProperty("nodeJvmArgs");
+        if (nodeJvmArgs != null) {
+            for (String jvmArg : nodeJvmArgs.trim().split("\\s+")) {
+                command.add(jvmArg);
+            }
+        }
+        command.add("-DnodeId=" + nodeId);
+        command.add("-DnodeInstances=" + nodeInstances);
+        command.add("-DclusterProcess=" + processDefinitionKey);
+        command.add("-DjdbcUrl=" + jdbcUrl);
+        addProperty(command, "jdbcUser", jdbcUser);
+        addProperty(command, "jdbcPassword", jdbcPassword);
+        addProperty(command, "jdbcDriver", jdbcDriver);
+        for (String propertyName : new String[] { "nrOfThreads", "threadModel", "nrOfStartVariables", "nrOfDelegateVariables", "nodePoolSize" }) {
+            addProperty(command, propertyName, System.getProperty(propertyName));
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ClusterNode.class.getName());
+
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    protected void addProperty(List<String> command, String name, String value) {
+        if (value != null) {
+            command.add("-D" + name + "=" + value);
+        }
+    }
+
+    protected void sendGo(List<NodeProcess> nodes) {
+        for (NodeProcess node : nodes) {
+            node.commands.println(ClusterNode.GO);
+            node.commands.flush();
+        }
+    }
+
+    /**
+     * Waits until every node printed the given line, the node results are parsed when waiting for {@link ClusterNode#NODE_RESULT}.
+     */
+    protected List<JsonNode> awaitAll(List<NodeProcess> nodes, String expectedLine) throws Exception {
+        List<JsonNode> results = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + phaseTimeoutMillis;
+        for (NodeProcess node : nodes) {
+            String line = node.lines.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            if (line == null || !line.startsWith(expectedLine)) {
+                throw new RuntimeException("Node " + node.nodeId + " did not report '" + expectedLine.trim() + "' (got " + line + ")");
+            }
+            if (ClusterNode.NODE_RESULT.equals(expectedLine)) {
+                results.add(objectMapper.readTree(line.substring(ClusterNode.NODE_RESULT.length())));
+            }
+        }
+        return results;
+    }
+
+    protected void addRow(int nrOfNodes, long startNanos, long completeNanos, List<JsonNode> nodeResults) {
+        ObjectNode row = objectMapper.createObjectNode();
+        row.put("nodes", nrOfNodes);
+        long started = 0;
+        long startP99 = 0;
+        long completeP99 = 0;
+        long conflicts = 0;
+        long jobAcquisitionConflicts = 0;
+        long completionRetries = 0;
+        long failedJobs = 0;
+        long minExecutedJobs = Long.MAX_VALUE;
+        long maxExecutedJobs = 0;
+        ArrayNode nodesNode = objectMapper.createArrayNode();
+        for (JsonNode nodeResult : nodeResults) {
+            started += nodeResult.get("started").asLong();
+            startP99 = Math.max(startP99, nodeResult.get("startP99").asLong());
+            completeP99 = Math.max(completeP99, nodeResult.get("completeP99").asLong());
+            conflicts += nodeResult.get("conflicts").asLong();
+            jobAcquisitionConflicts += nodeResult.get("jobAcquisitionConflicts").asLong();
+            completionRetries += nodeResult.get("completionRetries").asLong();
+            failedJobs += nodeResult.get("failedJobs").asLong();
+            minExecutedJobs = Math.min(minExecutedJobs, nodeResult.get("executedJobs").asLong());
+            maxExecutedJobs = Math.max(maxExecutedJobs, nodeResult.get("executedJobs").asLong());
+            nodesNode.add(nodeResult);
+        }
+        row.put("started", started);
+        row.put("startsPerSecond", started / (startNanos / 1_000_000_000.0));
+        row.put("completedPerSecond", started / (completeNanos / 1_000_000_000.0));
+        row.put("maxStartP99", startP99);
+        row.put("maxCompleteP99", completeP99);
+        row.put("conflicts", conflicts);
+        row.put("jobAcquisitionConflicts", jobAcquisitionConflicts);
+        row.put("completionRetries", completionRetries);
+        row.put("failedJobs", failedJobs);
+        row.put("minExecutedJobsPerNode", minExecutedJobs);
+        row.put("maxExecutedJobsPerNode", maxExecutedJobs);
+        if (!rows.isEmpty() && rows.get(0).get("nodes").asInt() == 1) {
+            ObjectNode singleNode = rows.get(0);
+            row.put("completionScalingEfficiency", row.get("completedPerSecond").asDouble() / (nrOfNodes * singleNode.get("completedPerSecond").asDouble()));
+        } else if (nrOfNodes == 1) {
+            row.put("completionScalingEfficiency", 1.0);
+        }
+        row.set("nodeResults", nodesNode);
+        rows.add(row);
+    }
+
+    public void printTable() {
+        System.out.println(String.format("%6s %10s %12s %10s %12s %11s %11s %12s %10s %12s", "nodes", "starts/s", "completed/s", "efficiency",
+            "complete p99", "conflicts", "job acq.", "task retries", "failed jobs", "jobs/node"));
+        for (ObjectNode row : rows) {
+            System.out.println(String.format("%6d %10.1f %12.1f %10s %12d %11d %11d %12d %10d %12s", row.get("nodes").asInt(),
+                row.get("startsPerSecond").asDouble(), row.get("completedPerSecond").asDouble(),
+                row.has("completionScalingEfficiency") ? String.format("%.2f", row.get("completionScalingEfficiency").asDouble()) : "-",
+                row.get("maxCompleteP99").asLong(), row.get("conflicts").asLong(), row.get("jobAcquisitionConflicts").asLong(),
+                row.get("completionRetries").asLong(), row.get("failedJobs").asLong(),
+                row.get("minExecutedJobsPerNode").asLong() + "-" + row.get("maxExecutedJobsPerNode").asLong()));
+        }
+        System.out.println("(latencies in microseconds, the highest p99 of all nodes; efficiency = completed/s relative to nodes x the single node run)");
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (ObjectNode row : rows) {
+            String name = "cluster." + row.get("nodes").asInt() + "nodes";
+            runResult.addThroughput(name + ".started", row.get("startsPerSecond").asDouble());
+            runResult.addThroughput(name + ".completed", row.get("completedPerSecond").asDouble());
+            runResult.addValue(name, "conflicts", row.get("conflicts").asLong());
+            runResult.addValue(name, "jobAcquisitionConflicts", row.get("jobAcquisitionConflicts").asLong());
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("nrOfProcessInstances", nrOfProcessInstances);
+        resultNode.put("processDefinitionKey", processDefinitionKey);
+        ArrayNode rowsNode = resultNode.putArray("nodeCounts");
+        rows.forEach(rowsNode::add);
+
+        File jsonFile = new File(resultsDir, "cluster-scaling-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Cluster scaling results written to " + jsonFile.getAbsolutePath());
+    }
+
+    /**
+     * A launched node: its output is copied to stdout (prefixed with the node id), the protocol lines are queued.
+     */
+    protected static class NodeProcess {
+
+        protected final String nodeId;
+        protected final Process process;
+        protected final PrintWriter commands;
+        protected final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+        public NodeProcess(String nodeId, Process process) {
+            this.nodeId = nodeId;
+            this.process = process;
+            this.commands = new PrintWriter(process.getOutputStream());
+
+            Thread outputReader = new Thread(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith("NODE ")) {
+                            lines.add(line);
+                        } else {
+                            System.out.println("[" + nodeId + "] " + line);
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                lines.add("NODE EXITED");
+            }, nodeId + "-output");
+            outputReader.setDaemon(true);
+            outputReader.start();
+        }
+
+    }
+
+}
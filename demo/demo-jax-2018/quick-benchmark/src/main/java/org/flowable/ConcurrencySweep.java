@@ -0,0 +1,245 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.engine.HistoryService;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Runs the start and query phases of the benchmark for every combination of thread model,
+ * Hikari maximumPoolSize and concurrency level, to see where platform threads, virtual threads and
+ * the connection pool limit cross over.
+ *
+ * The pool size is changed on the running pool through the Hikari config MXBean, so all configurations share
+ * the same engine. To keep the configurations comparable:
+ * <ul>
+ * <li>every configuration first runs a warmup pass of 'sweepWarmupInstances' starts and queries that isn't measured,</li>
+ * <li>the process instances (and their history) of a configuration are deleted before the next one runs,</li>
+ * <li>the configurations run in a random order ('sweepOrder' = 'shuffled', seeded with 'sweepSeed'),
+ * unless 'sweepOrder' is 'fixed'.</li>
+ * </ul>
+ */
+public class ConcurrencySweep {
+
+    protected final List<String> threadModels;
+    protected final List<Integer> poolSizes;
+    protected final List<Integer> threadCounts;
+    protected final int nrOfProcessInstances;
+    protected int nrOfWarmupInstances;
+    protected boolean shuffled = true;
+    protected long seed = System.nanoTime();
+
+    protected final List<ObjectNode> rows = new ArrayList<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ConcurrencySweep(List<String> threadModels, List<Integer> poolSizes, List<Integer> threadCounts, int nrOfProcessInstances) {
+        this.threadModels = threadModels;
+        this.poolSizes = poolSizes;
+        this.threadCounts = threadCounts;
+        this.nrOfProcessInstances = nrOfProcessInstances;
+    }
+
+    public static ConcurrencySweep fromSystemProperties() {
+        List<String> threadModels = new ArrayList<>();
+        for (String threadModel : System.getProperty("sweepThreadModels", "platform,virtual").split(",")) {
+            threadModels.add(threadModel.trim());
+        }
+        int nrOfProcessInstances = Integer.valueOf(System.getProperty("nrOfProcessInstances"));
+        ConcurrencySweep concurrencySweep = new ConcurrencySweep(threadModels,
+            parseIntegers(System.getProperty("sweepPoolSizes", "10,25,50")),
+            parseIntegers(System.getProperty("sweepThreads", "1,8,32,128")),
+            nrOfProcessInstances);
+        concurrencySweep.setNrOfWarmupInstances(Integer.getInteger("sweepWarmupInstances", Math.max(1, nrOfProcessInstances / 10)));
+        concurrencySweep.setShuffled(!"fixed".equals(System.getProperty("sweepOrder", "shuffled")));
+        concurrencySweep.setSeed(Long.getLong("sweepSeed", System.nanoTime()));
+        return concurrencySweep;
+    }
+
+    public void run(ProcessEngine processEngine) throws InterruptedException, SQLException {
+        DataSource dataSource = processEngine.getProcessEngineConfiguration().getDataSource();
+        HikariDataSource hikariDataSource = dataSource != null && dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+
+        List<Object[]> configurations = new ArrayList<>();
+        for (String threadModel : threadModels) {
+            for (int poolSize : poolSizes) {
+                for (int nrOfThreads : threadCounts) {
+                    configurations.add(new Object[] { threadModel, poolSize, nrOfThreads });
+                }
+            }
+        }
+        if (shuffled) {
+            System.out.println("Sweep: running " + configurations.size() + " configurations in random order (sweepSeed " + seed + ")");
+            Collections.shuffle(configurations, new Random(seed));
+        }
+
+        for (Object[] configuration : configurations) {
+            String threadModel = (String) configuration[0];
+            int poolSize = (Integer) configuration[1];
+            int nrOfThreads = (Integer) configuration[2];
+            if (hikariDataSource != null) {
+                hikariDataSource.getHikariConfigMXBean().setMaximumPoolSize(poolSize);
+            }
+            System.out.println("Sweep: " + threadModel + " threads, pool size " + poolSize + ", concurrency " + nrOfThreads);
+            runConfiguration(processEngine, hikariDataSource != null ? poolSize : -1, threadModel, nrOfThreads);
+        }
+
+        // Back in configuration order for the table and the results
+        rows.sort(Comparator.comparing((ObjectNode row) -> row.get("threadModel").asText())
+            .thenComparingInt(row -> row.get("poolSize").asInt())
+            .thenComparingInt(row -> row.get("threads").asInt()));
+        printTable();
+    }
+
+    protected void runConfiguration(ProcessEngine processEngine, int poolSize, String threadModel, int nrOfThreads) throws InterruptedException {
+        if (nrOfWarmupInstances > 0) {
+            System.out.println("Sweep: warmup with " + nrOfWarmupInstances + " process instances");
+            List<String> warmupProcessInstanceIds = Benchmark.startProcessInstances(processEngine.getRuntimeService(), nrOfWarmupInstances, nrOfThreads, threadModel);
+            Benchmark.executeQuerying(processEngine.getRuntimeService(), processEngine.getTaskService(), warmupProcessInstanceIds, nrOfThreads, threadModel);
+            deleteProcessInstances(processEngine, warmupProcessInstanceIds);
+        }
+        Benchmark.resetLatencies();
+
+        long startPhaseStart = System.nanoTime();
+        List<String> processInstanceIds = Benchmark.startProcessInstances(processEngine.getRuntimeService(), nrOfProcessInstances, nrOfThreads, threadModel);
+        long startPhaseNanos = System.nanoTime() - startPhaseStart;
+
+        long queryPhaseStart = System.nanoTime();
+        Benchmark.executeQuerying(processEngine.getRuntimeService(), processEngine.getTaskService(), processInstanceIds, nrOfThreads, threadModel);
+        long queryPhaseNanos = System.nanoTime() - queryPhaseStart;
+
+        OperationLatencies latencies = Benchmark.getLatencies();
+        Histogram startHistogram = latencies.getHistogram("start");
+        Histogram queryHistogram = new Histogram(3);
+        for (String operation : new String[] { "processInstanceQuery", "executionListQuery", "executionCountQuery", "taskQuery", "getVariables" }) {
+            queryHistogram.add(latencies.getHistogram(operation));
+        }
+
+        ObjectNode row = objectMapper.createObjectNode();
+        row.put("threadModel", threadModel);
+        row.put("poolSize", poolSize);
+        row.put("threads", nrOfThreads);
+        row.put("startsPerSecond", processInstanceIds.size() / (startPhaseNanos / 1_000_000_000.0));
+        row.put("startP50", startHistogram.getValueAtPercentile(50.0));
+        row.put("startP99", startHistogram.getValueAtPercentile(99.0));
+        row.put("queriesPerSecond", queryHistogram.getTotalCount() / (queryPhaseNanos / 1_000_000_000.0));
+        row.put("queryP50", queryHistogram.getValueAtPercentile(50.0));
+        row.put("queryP99", queryHistogram.getValueAtPercentile(99.0));
+        rows.add(row);
+
+        deleteProcessInstances(processEngine, processInstanceIds);
+    }
+
+    /**
+     * Deletes the process instances and their history, so the next configuration starts from the same database content.
+     */
+    protected void deleteProcessInstances(ProcessEngine processEngine, List<String> processInstanceIds) {
+        RuntimeService runtimeService = processEngine.getRuntimeService();
+        HistoryService historyService = processEngine.getHistoryService();
+        long start = System.currentTimeMillis();
+        for (String processInstanceId : processInstanceIds) {
+            runtimeService.deleteProcessInstance(processInstanceId, "concurrency sweep");
+            historyService.deleteHistoricProcessInstance(processInstanceId);
+        }
+        System.out.println("Deleted " + processInstanceIds.size() + " process instances in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public void printTable() {
+        System.out.println(String.format("%-9s %6s %8s %10s %10s %10s %10s %10s %10s", "model", "pool", "threads",
+            "starts/s", "start p50", "start p99", "queries/s", "query p50", "query p99"));
+        for (ObjectNode row : rows) {
+            System.out.println(String.format("%-9s %6d %8d %10.1f %10d %10d %10.1f %10d %10d", row.get("threadModel").asText(),
+                row.get("poolSize").asInt(), row.get("threads").asInt(), row.get("startsPerSecond").asDouble(),
+                row.get("startP50").asLong(), row.get("startP99").asLong(), row.get("queriesPerSecond").asDouble(),
+                row.get("queryP50").asLong(), row.get("queryP99").asLong()));
+        }
+        System.out.println("(latencies in microseconds, pool -1 = not a Hikari pool)");
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (ObjectNode row : rows) {
+            String prefix = "sweep." + row.get("threadModel").asText() + ".pool" + row.get("poolSize").asInt() + ".threads" + row.get("threads").asInt();
+            runResult.addThroughput(prefix + ".start", row.get("startsPerSecond").asDouble());
+            runResult.addValue(prefix + ".start", "p99", row.get("startP99").asDouble());
+            runResult.addThroughput(prefix + ".query", row.get("queriesPerSecond").asDouble());
+            runResult.addValue(prefix + ".query", "p99", row.get("queryP99").asDouble());
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("nrOfProcessInstances", nrOfProcessInstances);
+        resultNode.put("nrOfWarmupInstances", nrOfWarmupInstances);
+        resultNode.put("order", shuffled ? "shuffled" : "fixed");
+        resultNode.put("seed", seed);
+        ArrayNode rowsNode = resultNode.putArray("configurations");
+        rows.forEach(rowsNode::add);
+
+        File jsonFile = new File(resultsDir, "concurrency-sweep-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Sweep results written to " + jsonFile.getAbsolutePath());
+    }
+
+    public int getNrOfWarmupInstances() {
+        return nrOfWarmupInstances;
+    }
+
+    public void setNrOfWarmupInstances(int nrOfWarmupInstances) {
+        this.nrOfWarmupInstances = nrOfWarmupInstances;
+    }
+
+    public boolean isShuffled() {
+        return shuffled;
+    }
+
+    public void setShuffled(boolean shuffled) {
+        this.shuffled = shuffled;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    protected static List<Integer> parseIntegers(String value) {
+        List<Integer> integers = new ArrayList<>();
+        for (String element : value.split(",")) {
+            integers.add(Integer.valueOf(element.trim()));
+        }
+        return integers;
+    }
+
+}
@@ -0,0 +1,248 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.cmd.BulkStartProcessInstancesCmd;
+import org.flowable.engine.ManagementService;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.runtime.Execution;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Parks process instances at a message catch event, a signal catch event and a receive task until ACT_RU_EVENT_SUBSCR
+ * holds every row count in 'subscriptionCounts' (two subscriptions per instance), and at every level correlates
+ * 'correlationsPerLevel' random parked instances by business key: looking up the waiting execution and
+ * calling messageEventReceived, signalEventReceived and trigger on it.
+ *
+ * The lookup (the execution query on the subscription name and the business key of the process instance, which joins
+ * the child executions with their process instance) and the delivery are timed separately,
+ * as usually it's the lookup that degrades. The instances are parked in bulk ('bulkBatchSize' per transaction).
+ * Millions of waiting instances need a real database ('jdbc' mode) and take a while to create.
+ */
+public class EventCorrelation {
+
+    public static final String PROCESS_DEFINITION_KEY = "eventCorrelationProcess";
+    public static final String MESSAGE_NAME = "correlationMessage";
+    public static final String SIGNAL_NAME = "correlationSignal";
+    public static final String RECEIVE_TASK_ID = "receiveTask";
+
+    protected static final String BUSINESS_KEY_PREFIX = "correlation-";
+
+    protected final List<Integer> subscriptionCounts;
+    protected final int correlationsPerLevel;
+    protected final int batchSize;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+
+    protected final AtomicLong parkedInstances = new AtomicLong();
+    protected final Set<Long> correlatedInstances = Collections.synchronizedSet(new HashSet<>());
+
+    protected final List<ObjectNode> rows = new ArrayList<>();
+    protected final List<OperationLatencies> latenciesPerLevel = new ArrayList<>();
+    protected final List<Long> durationsPerLevel = new ArrayList<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    public EventCorrelation(List<Integer> subscriptionCounts, int correlationsPerLevel, int batchSize, int nrOfThreads, String threadModel) {
+        this.subscriptionCounts = subscriptionCounts;
+        this.correlationsPerLevel = correlationsPerLevel;
+        this.batchSize = batchSize;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+    }
+
+    public static EventCorrelation fromSystemProperties(String threadModel) {
+        return new EventCorrelation(ConcurrencySweep.parseIntegers(System.getProperty("subscriptionCounts", "10000,100000,1000000")),
+            Integer.getInteger("correlationsPerLevel", 1000),
+            Integer.getInteger("bulkBatchSize", 100),
+            Integer.valueOf(System.getProperty("nrOfThreads")),
+            threadModel);
+    }
+
+    public void run(ProcessEngine processEngine) throws InterruptedException {
+        processEngine.getRepositoryService().createDeployment().addClasspathResource("event-correlation-process.bpmn20.xml").deploy();
+
+        for (int subscriptionCount : subscriptionCounts) {
+            long parkNanos = parkInstances(processEngine, subscriptionCount);
+            long subscriptions = processEngine.getRuntimeService().createEventSubscriptionQuery().count();
+            System.out.println("Correlation: " + subscriptions + " event subscriptions");
+            correlate(processEngine.getRuntimeService(), subscriptions, parkNanos);
+        }
+        printTable();
+    }
+
+    /**
+     * Starts instances until the event subscription table holds the given number of rows.
+     *
+     * @return the time it took per parked instance, in nanos
+     */
+    protected long parkInstances(ProcessEngine processEngine, int subscriptionCount) throws InterruptedException {
+        long missingInstances = (subscriptionCount - processEngine.getRuntimeService().createEventSubscriptionQuery().count()) / 2;
+        if (missingInstances <= 0) {
+            return 0L;
+        }
+
+        System.out.println("Parking " + missingInstances + " process instances");
+        ManagementService managementService = processEngine.getManagementService();
+        long start = System.nanoTime();
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+        for (long batchStart = 0; batchStart < missingInstances; batchStart += batchSize) {
+            int size = (int) Math.min(batchSize, missingInstances - batchStart);
+            long firstIndex = parkedInstances.getAndAdd(size);
+            workerPool.submit(() -> {
+                try {
+                    List<Map<String, Object>> variablesPerInstance = new ArrayList<>(size);
+                    List<String> businessKeys = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        variablesPerInstance.add(Collections.emptyMap());
+                        businessKeys.add(BUSINESS_KEY_PREFIX + (firstIndex + i));
+                    }
+                    managementService.executeCommand(new BulkStartProcessInstancesCmd(PROCESS_DEFINITION_KEY, variablesPerInstance, businessKeys));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        workerPool.shutdownAndWait();
+        long durationNanos = System.nanoTime() - start;
+        System.out.println(String.format("Parking took %d ms (%.1f instances/sec)", durationNanos / 1_000_000, missingInstances / (durationNanos / 1_000_000_000.0)));
+        return durationNanos / missingInstances;
+    }
+
+    protected void correlate(RuntimeService runtimeService, long subscriptions, long parkNanosPerInstance) throws InterruptedException {
+        OperationLatencies latencies = new OperationLatencies();
+        AtomicLong misses = new AtomicLong();
+        long start = System.nanoTime();
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+        for (int i = 0; i < correlationsPerLevel; i++) {
+            String businessKey = BUSINESS_KEY_PREFIX + pickUncorrelatedInstance();
+            workerPool.submit(() -> {
+                try {
+                    Execution messageExecution = latencies.time("messageLookup", () -> runtimeService.createExecutionQuery()
+                        .messageEventSubscriptionName(MESSAGE_NAME).processInstanceBusinessKey(businessKey, true).singleResult());
+                    Execution signalExecution = latencies.time("signalLookup", () -> runtimeService.createExecutionQuery()
+                        .signalEventSubscriptionName(SIGNAL_NAME).processInstanceBusinessKey(businessKey, true).singleResult());
+                    Execution receiveTaskExecution = latencies.time("triggerLookup", () -> runtimeService.createExecutionQuery()
+                        .activityId(RECEIVE_TASK_ID).processInstanceBusinessKey(businessKey, true).singleResult());
+                    if (messageExecution == null || signalExecution == null || receiveTaskExecution == null) {
+                        misses.incrementAndGet();
+                        return;
+                    }
+
+                    latencies.time("messageEventReceived", () -> {
+                        runtimeService.messageEventReceived(MESSAGE_NAME, messageExecution.getId());
+                        return null;
+                    });
+                    latencies.time("signalEventReceived", () -> {
+                        runtimeService.signalEventReceived(SIGNAL_NAME, signalExecution.getId());
+                        return null;
+                    });
+                    latencies.time("trigger", () -> {
+                        runtimeService.trigger(receiveTaskExecution.getId());
+                        return null;
+                    });
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        workerPool.shutdownAndWait();
+        long durationNanos = System.nanoTime() - start;
+        if (misses.get() > 0) {
+            System.out.println(misses.get() + " parked instances were not found");
+        }
+
+        ObjectNode row = objectMapper.createObjectNode();
+        row.put("subscriptions", subscriptions);
+        row.put("parkedInstances", parkedInstances.get());
+        row.put("parkMicrosPerInstance", parkNanosPerInstance / 1000.0);
+        row.put("correlationsPerSecond", latencies.getHistogram("trigger").getTotalCount() / (durationNanos / 1_000_000_000.0));
+        row.put("misses", misses.get());
+        for (Map.Entry<String, Histogram> entry : latencies.getHistograms().entrySet()) {
+            row.put(entry.getKey() + "P50", entry.getValue().getValueAtPercentile(50.0));
+            row.put(entry.getKey() + "P99", entry.getValue().getValueAtPercentile(99.0));
+        }
+        rows.add(row);
+        latenciesPerLevel.add(latencies);
+        durationsPerLevel.add(durationNanos);
+    }
+
+    protected long pickUncorrelatedInstance() {
+        long parked = parkedInstances.get();
+        if (correlatedInstances.size() >= parked) {
+            throw new RuntimeException("All " + parked + " parked instances are correlated already");
+        }
+        while (true) {
+            long index = ThreadLocalRandom.current().nextLong(parked);
+            if (correlatedInstances.add(index)) {
+                return index;
+            }
+        }
+    }
+
+    public void printTable() {
+        String[] operations = { "messageLookup", "messageEventReceived", "signalLookup", "signalEventReceived", "triggerLookup", "trigger" };
+        StringBuilder header = new StringBuilder(String.format("%12s %10s %12s", "subscr.", "park us", "correl./s"));
+        for (String operation : operations) {
+            header.append(String.format(" %22s", operation + " p50/p99"));
+        }
+        System.out.println(header);
+        for (ObjectNode row : rows) {
+            StringBuilder line = new StringBuilder(String.format("%12d %10.1f %12.1f", row.get("subscriptions").asLong(),
+                row.get("parkMicrosPerInstance").asDouble(), row.get("correlationsPerSecond").asDouble()));
+            for (String operation : operations) {
+                line.append(String.format(" %22s", row.path(operation + "P50").asLong() + " / " + row.path(operation + "P99").asLong()));
+            }
+            System.out.println(line);
+        }
+        System.out.println("(latencies in microseconds, park us is the bulk start time per parked instance)");
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (int i = 0; i < rows.size(); i++) {
+            String prefix = "correlation." + rows.get(i).get("subscriptions").asLong() + ".";
+            runResult.addMetrics(prefix, latenciesPerLevel.get(i), durationsPerLevel.get(i));
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("correlationsPerLevel", correlationsPerLevel);
+        resultNode.put("nrOfThreads", nrOfThreads);
+        ArrayNode rowsNode = resultNode.putArray("levels");
+        rows.forEach(rowsNode::add);
+
+        File jsonFile = new File(resultsDir, "event-correlation-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Event correlation results written to " + jsonFile.getAbsolutePath());
+    }
+
+}
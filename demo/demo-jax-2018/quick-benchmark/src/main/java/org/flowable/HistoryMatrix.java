@@ -0,0 +1,231 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.common.engine.impl.history.HistoryLevel;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.ProcessEngineConfiguration;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.impl.cfg.StandaloneProcessEngineConfiguration;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+import org.flowable.sql.StatementAccountingDataSource;
+import org.flowable.sql.StatementStatistics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Starts the same number of process instances under every combination of history level ('historyLevels') and
+ * history mode ('historyModes'): sync, or async history with or without JSON grouping and gzip compression
+ * (async, async-grouped, async-gzip, async-grouped-gzip).
+ *
+ * Every configuration gets its own engine, and in 'h2' mode (without a 'jdbcUrl') its own in-memory database.
+ * The rows written are counted on the JDBC level, including the history jobs and the work of the async history executor.
+ * With async history, the history jobs are drained after the starts: the 'complete' throughput includes that time.
+ * Level 'none' writes no history, so it only runs in sync mode.
+ */
+public class HistoryMatrix {
+
+    public static final String SYNC = "sync";
+
+    protected final String mode;
+    protected final List<String> historyLevels;
+    protected final List<String> historyModes;
+    protected final int nrOfProcessInstances;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+    protected final long drainTimeoutMillis;
+
+    protected final List<ObjectNode> rows = new ArrayList<>();
+    protected final Map<String, Histogram> startHistograms = new HashMap<>();
+    protected final Map<String, Long> durations = new HashMap<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    public HistoryMatrix(String mode, List<String> historyLevels, List<String> historyModes, int nrOfProcessInstances,
+            int nrOfThreads, String threadModel, long drainTimeoutMillis) {
+        this.mode = mode;
+        this.historyLevels = historyLevels;
+        this.historyModes = historyModes;
+        this.nrOfProcessInstances = nrOfProcessInstances;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    public static HistoryMatrix fromSystemProperties(String threadModel) {
+        return new HistoryMatrix(System.getProperty("mode"),
+            parseList(System.getProperty("historyLevels", "none,activity,audit,full")),
+            parseList(System.getProperty("historyModes", "sync,async,async-grouped,async-gzip,async-grouped-gzip")),
+            Integer.valueOf(System.getProperty("nrOfProcessInstances")),
+            Integer.valueOf(System.getProperty("nrOfThreads")),
+            threadModel,
+            Long.getLong("historyDrainTimeout", 300) * 1000);
+    }
+
+    protected static List<String> parseList(String value) {
+        List<String> values = new ArrayList<>();
+        for (String element : value.split(",")) {
+            values.add(element.trim());
+        }
+        return values;
+    }
+
+    public void run() throws InterruptedException {
+        if (!"jdbc".equals(mode) && !"h2".equals(mode)) {
+            throw new RuntimeException("The history matrix needs a relational database, invalid mode " + mode);
+        }
+
+        int configurationIndex = 0;
+        for (String historyLevel : historyLevels) {
+            for (String historyMode : historyModes) {
+                if (HistoryLevel.NONE.getKey().equals(historyLevel) && !SYNC.equals(historyMode)) {
+                    continue;
+                }
+                System.out.println("History: level " + historyLevel + ", " + historyMode);
+                runConfiguration(HistoryLevel.getHistoryLevelForKey(historyLevel), historyMode, configurationIndex++);
+            }
+        }
+        printTable();
+    }
+
+    protected void runConfiguration(HistoryLevel historyLevel, String historyMode, int configurationIndex) throws InterruptedException {
+        String name = historyLevel.getKey() + "." + historyMode;
+        boolean asyncHistory = historyMode.startsWith("async");
+
+        HikariDataSource hikariDataSource = Benchmark.createDataSource(mode, "flowable-history-matrix-" + configurationIndex);
+        StatementStatistics statementStatistics = new StatementStatistics(1);
+        StandaloneProcessEngineConfiguration engineConfiguration = new StandaloneProcessEngineConfiguration();
+        engineConfiguration.setDataSource(new StatementAccountingDataSource(hikariDataSource, statementStatistics))
+            .setHistoryLevel(historyLevel)
+            .setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_TRUE)
+            .setAsyncHistoryExecutorActivate(asyncHistory);
+        engineConfiguration.setAsyncHistoryEnabled(asyncHistory)
+            .setAsyncHistoryJsonGroupingEnabled(historyMode.contains("grouped"))
+            .setAsyncHistoryJsonGzipCompressionEnabled(historyMode.contains("gzip"));
+        ProcessEngine processEngine = engineConfiguration.buildProcessEngine();
+
+        try {
+            processEngine.getRepositoryService().createDeployment().addClasspathResource("benchmark-process.bpmn20.xml").deploy();
+            // Only count the work of the starts, not the schema creation and the deployment
+            long rowsWrittenBefore = statementStatistics.getRowsWritten(null);
+            long historyRowsWrittenBefore = statementStatistics.getRowsWritten("ACT_HI_");
+
+            RuntimeService runtimeService = processEngine.getRuntimeService();
+            OperationLatencies latencies = new OperationLatencies();
+            long start = System.nanoTime();
+            WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+            for (int i = 0; i < nrOfProcessInstances; i++) {
+                workerPool.submit(() -> {
+                    try {
+                        latencies.time("start", () -> runtimeService.createProcessInstanceBuilder()
+                            .processDefinitionKey("testProcess")
+                            .variables(Benchmark.generateRandomStartVariables(Benchmark.getNrOfStartVariables()))
+                            .start());
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+            workerPool.shutdownAndWait();
+            long startNanos = System.nanoTime() - start;
+            long remainingHistoryJobs = asyncHistory ? drainHistoryJobs(processEngine) : 0L;
+            long completeNanos = System.nanoTime() - start;
+
+            Histogram startHistogram = latencies.getHistogram("start");
+            startHistograms.put(name, startHistogram);
+            durations.put(name, startNanos);
+            long started = Math.max(1, startHistogram.getTotalCount());
+
+            ObjectNode row = objectMapper.createObjectNode();
+            row.put("name", name);
+            row.put("historyLevel", historyLevel.getKey());
+            row.put("historyMode", historyMode);
+            row.put("started", startHistogram.getTotalCount());
+            row.put("startsPerSecond", startHistogram.getTotalCount() / (startNanos / 1_000_000_000.0));
+            row.put("completePerSecond", startHistogram.getTotalCount() / (completeNanos / 1_000_000_000.0));
+            row.put("startP50", startHistogram.getValueAtPercentile(50.0));
+            row.put("startP99", startHistogram.getValueAtPercentile(99.0));
+            row.put("rowsWrittenPerStart", (double) (statementStatistics.getRowsWritten(null) - rowsWrittenBefore) / started);
+            row.put("historyRowsWrittenPerStart", (double) (statementStatistics.getRowsWritten("ACT_HI_") - historyRowsWrittenBefore) / started);
+            row.put("remainingHistoryJobs", remainingHistoryJobs);
+            rows.add(row);
+
+        } finally {
+            processEngine.close();
+            hikariDataSource.close();
+        }
+    }
+
+    /**
+     * Waits until the async history executor has processed all history jobs, or until the drain timeout.
+     *
+     * @return the number of history jobs left
+     */
+    protected long drainHistoryJobs(ProcessEngine processEngine) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + drainTimeoutMillis;
+        long remaining = processEngine.getManagementService().createHistoryJobQuery().count();
+        while (remaining > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100L);
+            remaining = processEngine.getManagementService().createHistoryJobQuery().count();
+        }
+        if (remaining > 0) {
+            System.out.println(remaining + " history jobs left after the drain timeout");
+        }
+        return remaining;
+    }
+
+    public void printTable() {
+        System.out.println(String.format("%-10s %-20s %10s %12s %10s %10s %12s %12s", "level", "mode", "starts/s", "complete/s",
+            "start p50", "start p99", "rows", "hi rows"));
+        for (ObjectNode row : rows) {
+            System.out.println(String.format("%-10s %-20s %10.1f %12.1f %10d %10d %12.1f %12.1f", row.get("historyLevel").asText(),
+                row.get("historyMode").asText(), row.get("startsPerSecond").asDouble(), row.get("completePerSecond").asDouble(),
+                row.get("startP50").asLong(), row.get("startP99").asLong(), row.get("rowsWrittenPerStart").asDouble(),
+                row.get("historyRowsWrittenPerStart").asDouble()));
+        }
+        System.out.println("(latencies in microseconds, rows written per started process instance, complete/s includes draining the async history)");
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (ObjectNode row : rows) {
+            String name = row.get("name").asText();
+            runResult.addMetric("history." + name, startHistograms.get(name), durations.get(name));
+            runResult.addValue("history." + name, "rowsWrittenPerStart", row.get("rowsWrittenPerStart").asDouble());
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("nrOfProcessInstances", nrOfProcessInstances);
+        resultNode.put("nrOfThreads", nrOfThreads);
+        ArrayNode rowsNode = resultNode.putArray("configurations");
+        rows.forEach(rowsNode::add);
+
+        File jsonFile = new File(resultsDir, "history-matrix-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("History matrix results written to " + jsonFile.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,406 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.engine.HistoryService;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+import org.flowable.sql.QueryPlanAdvisor;
+import org.flowable.sql.QueryPlanAdvisor.IndexSuggestion;
+import org.flowable.sql.QueryPlanAdvisor.QueryPlan;
+import org.flowable.sql.StatementAccountingDataSource;
+import org.flowable.sql.StatementStatistics;
+import org.flowable.sql.StatementStatistics.StatementCounter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Loads 'historyInstances' finished (95%) and running historic process instances, with 'historyTasksPerInstance' tasks and
+ * 'historyVariablesPerInstance' variables each, spread over 'historyYears', and times common {@link HistoryService} queries on them,
+ * 'historyQueryRepeats' times each with random parameters. Every query is then explained by the database and checked for
+ * missing indexes ({@link QueryPlanAdvisor}).
+ *
+ * The rows are inserted directly with JDBC batches ('historyBatchSize' instances per transaction), as creating them through the engine
+ * would take days for tens of millions of rows; those need a real database ('jdbc' mode). Rows of a previous run are reused,
+ * only the missing instances are added.
+ */
+public class HistoryQueries {
+
+    protected static final String ID_PREFIX = "hist-";
+    protected static final String BUSINESS_KEY_PREFIX = "order-";
+    protected static final int NR_OF_ASSIGNEES = 1000;
+    protected static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    protected final int nrOfInstances;
+    protected final int tasksPerInstance;
+    protected final int variablesPerInstance;
+    protected final int years;
+    protected final int queryRepeats;
+    protected final int batchSize;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+
+    protected final long endMillis = System.currentTimeMillis();
+    protected final long startMillis;
+    protected final OperationLatencies latencies = new OperationLatencies();
+    protected final Map<String, List<QueryPlan>> plansPerQuery = new LinkedHashMap<>();
+    protected final List<ObjectNode> rows = new ArrayList<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    protected long loadedInstances;
+    protected long insertedInstances;
+    protected long loadNanos;
+
+    public HistoryQueries(int nrOfInstances, int tasksPerInstance, int variablesPerInstance, int years, int queryRepeats, int batchSize,
+            int nrOfThreads, String threadModel) {
+        this.nrOfInstances = nrOfInstances;
+        this.tasksPerInstance = tasksPerInstance;
+        this.variablesPerInstance = variablesPerInstance;
+        this.years = years;
+        this.queryRepeats = queryRepeats;
+        this.batchSize = batchSize;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+        this.startMillis = endMillis - years * 365L * DAY_MILLIS;
+    }
+
+    public static HistoryQueries fromSystemProperties(String threadModel) {
+        return new HistoryQueries(Integer.getInteger("historyInstances", 100000),
+            Integer.getInteger("historyTasksPerInstance", 3),
+            Integer.getInteger("historyVariablesPerInstance", 5),
+            Integer.getInteger("historyYears", 3),
+            Integer.getInteger("historyQueryRepeats", 20),
+            Integer.getInteger("historyBatchSize", 1000),
+            Integer.valueOf(System.getProperty("nrOfThreads")),
+            threadModel);
+    }
+
+    public void run(ProcessEngine processEngine) throws Exception {
+        DataSource dataSource = ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getDataSource();
+        if (!(dataSource instanceof StatementAccountingDataSource)) {
+            throw new RuntimeException("The history queries need the statement accounting data source ('jdbc' or 'h2' mode)");
+        }
+        StatementAccountingDataSource accountingDataSource = (StatementAccountingDataSource) dataSource;
+        String processDefinitionId = processEngine.getRepositoryService().createProcessDefinitionQuery()
+            .processDefinitionKey("testProcess").latestVersion().singleResult().getId();
+
+        load(accountingDataSource.getDelegate(), processDefinitionId);
+
+        StatementStatistics statistics = accountingDataSource.getStatistics();
+        statistics.setCaptureParameters(true);
+        executeQueries(processEngine.getHistoryService());
+        statistics.setCaptureParameters(false);
+
+        QueryPlanAdvisor advisor = new QueryPlanAdvisor(accountingDataSource.getDelegate());
+        for (String query : latencies.getHistograms().keySet()) {
+            List<QueryPlan> plans = new ArrayList<>();
+            for (StatementCounter counter : statistics.getCounters(query)) {
+                if ("SELECT".equals(counter.getType())) {
+                    plans.add(advisor.explain(counter.getSql(), counter.getLastParameters()));
+                }
+            }
+            plansPerQuery.put(query, plans);
+
+            Histogram histogram = latencies.getHistogram(query);
+            ObjectNode row = objectMapper.createObjectNode();
+            row.put("query", query);
+            row.put("p50", histogram.getValueAtPercentile(50.0));
+            row.put("p99", histogram.getValueAtPercentile(99.0));
+            row.put("max", histogram.getMaxValue());
+            row.put("tableScans", plans.stream().mapToInt(plan -> plan.getScannedTables().size()).sum());
+            row.put("suggestions", plans.stream().mapToInt(plan -> plan.getSuggestions().size()).sum());
+            rows.add(row);
+        }
+        printTable();
+    }
+
+    protected void load(DataSource dataSource, String processDefinitionId) throws Exception {
+        long existingInstances = countLoadedInstances(dataSource);
+        if (existingInstances >= nrOfInstances) {
+            loadedInstances = existingInstances;
+            System.out.println("Reusing " + existingInstances + " historic process instances");
+            return;
+        }
+
+        long missingInstances = nrOfInstances - existingInstances;
+        System.out.println("Loading " + missingInstances + " historic process instances ("
+            + missingInstances * (1 + tasksPerInstance + variablesPerInstance) + " rows)");
+        long start = System.nanoTime();
+        AtomicLong failedBatches = new AtomicLong();
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+        for (long batchStart = existingInstances; batchStart < nrOfInstances; batchStart += batchSize) {
+            long firstIndex = batchStart;
+            long lastIndex = Math.min(batchStart + batchSize, nrOfInstances);
+            workerPool.submit(() -> {
+                try {
+                    insertBatch(dataSource, processDefinitionId, firstIndex, lastIndex);
+                } catch (Exception e) {
+                    failedBatches.incrementAndGet();
+                    e.printStackTrace();
+                }
+            });
+        }
+        workerPool.shutdownAndWait();
+        loadNanos = System.nanoTime() - start;
+
+        // The queries draw their parameters from the indexes [0, loadedInstances), so only count what is actually there
+        loadedInstances = countLoadedInstances(dataSource);
+        insertedInstances = loadedInstances - existingInstances;
+        if (failedBatches.get() > 0 || loadedInstances != nrOfInstances) {
+            throw new RuntimeException("Loading the historic process instances failed: " + failedBatches.get() + " batches failed, "
+                + loadedInstances + " of " + nrOfInstances + " instances loaded");
+        }
+        System.out.println(String.format("Loading took %d ms (%.1f instances/sec)", loadNanos / 1_000_000,
+            insertedInstances / (loadNanos / 1_000_000_000.0)));
+    }
+
+    protected long countLoadedInstances(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("select count(*) from ACT_HI_PROCINST where ID_ like ?")) {
+            statement.setString(1, ID_PREFIX + "%");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Inserts the instances [firstIndex, lastIndex) with their tasks and variables in one transaction.
+     * The data is derived from the index, so that the queries can pick parameters that match.
+     */
+    protected void insertBatch(DataSource dataSource, String processDefinitionId, long firstIndex, long lastIndex) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement instanceStatement = connection.prepareStatement("insert into ACT_HI_PROCINST (ID_, REV_, PROC_INST_ID_, BUSINESS_KEY_, "
+                    + "PROC_DEF_ID_, START_TIME_, END_TIME_, DURATION_, START_ACT_ID_, END_ACT_ID_, TENANT_ID_) values (?, 1, ?, ?, ?, ?, ?, ?, ?, ?, '')");
+                    PreparedStatement taskStatement = connection.prepareStatement("insert into ACT_HI_TASKINST (ID_, REV_, PROC_DEF_ID_, TASK_DEF_KEY_, "
+                        + "PROC_INST_ID_, EXECUTION_ID_, NAME_, ASSIGNEE_, START_TIME_, END_TIME_, DURATION_, PRIORITY_, TENANT_ID_, LAST_UPDATED_TIME_) "
+                        + "values (?, 1, ?, ?, ?, ?, ?, ?, ?, ?, ?, 50, '', ?)");
+                    PreparedStatement variableStatement = connection.prepareStatement("insert into ACT_HI_VARINST (ID_, REV_, PROC_INST_ID_, EXECUTION_ID_, "
+                        + "NAME_, VAR_TYPE_, LONG_, TEXT_, CREATE_TIME_, LAST_UPDATED_TIME_) values (?, 0, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+
+                Random random = ThreadLocalRandom.current();
+                for (long index = firstIndex; index < lastIndex; index++) {
+                    String id = ID_PREFIX + index;
+                    long instanceStart = getStartMillis(index) + random.nextInt((int) TimeUnit.HOURS.toMillis(1));
+                    Long instanceEnd = isFinished(index) ? instanceStart + TimeUnit.MINUTES.toMillis(1) + (long) (random.nextDouble() * 7 * DAY_MILLIS) : null;
+
+                    instanceStatement.setString(1, id);
+                    instanceStatement.setString(2, id);
+                    instanceStatement.setString(3, BUSINESS_KEY_PREFIX + index);
+                    instanceStatement.setString(4, processDefinitionId);
+                    instanceStatement.setTimestamp(5, new Timestamp(instanceStart));
+                    instanceStatement.setTimestamp(6, instanceEnd != null ? new Timestamp(instanceEnd) : null);
+                    instanceStatement.setObject(7, instanceEnd != null ? instanceEnd - instanceStart : null, java.sql.Types.BIGINT);
+                    instanceStatement.setString(8, "startEvent1");
+                    instanceStatement.setString(9, instanceEnd != null ? "end" : null);
+                    instanceStatement.addBatch();
+
+                    long taskStart = instanceStart;
+                    for (int task = 0; task < tasksPerInstance; task++) {
+                        boolean lastTask = task == tasksPerInstance - 1;
+                        Long taskEnd = !lastTask || instanceEnd != null
+                            ? Math.min(taskStart + (long) (random.nextDouble() * DAY_MILLIS), instanceEnd != null ? instanceEnd : Long.MAX_VALUE) : null;
+                        taskStatement.setString(1, id + "-t" + task);
+                        taskStatement.setString(2, processDefinitionId);
+                        taskStatement.setString(3, "userTask" + task);
+                        taskStatement.setString(4, id);
+                        taskStatement.setString(5, id);
+                        taskStatement.setString(6, "Task " + task);
+                        taskStatement.setString(7, "user" + random.nextInt(NR_OF_ASSIGNEES));
+                        taskStatement.setTimestamp(8, new Timestamp(taskStart));
+                        taskStatement.setTimestamp(9, taskEnd != null ? new Timestamp(taskEnd) : null);
+                        taskStatement.setObject(10, taskEnd != null ? taskEnd - taskStart : null, java.sql.Types.BIGINT);
+                        taskStatement.setTimestamp(11, new Timestamp(taskEnd != null ? taskEnd : taskStart));
+                        taskStatement.addBatch();
+                        if (taskEnd != null) {
+                            taskStart = taskEnd;
+                        }
+                    }
+
+                    for (int variable = 0; variable < variablesPerInstance; variable++) {
+                        variableStatement.setString(1, id + "-v" + variable);
+                        variableStatement.setString(2, id);
+                        variableStatement.setString(3, id);
+                        String name;
+                        Long longValue = null;
+                        String textValue = null;
+                        switch (variable) {
+                            case 0:
+                                name = "customerId";
+                                textValue = getCustomerId(index);
+                                break;
+                            case 1:
+                                name = "amount";
+                                longValue = (long) random.nextInt(100000);
+                                break;
+                            case 2:
+                                name = "status";
+                                textValue = instanceEnd != null ? "closed" : "open";
+                                break;
+                            default:
+                                name = "var" + variable;
+                                textValue = Long.toHexString(random.nextLong());
+                        }
+                        variableStatement.setString(4, name);
+                        variableStatement.setString(5, longValue != null ? "long" : "string");
+                        variableStatement.setObject(6, longValue, java.sql.Types.BIGINT);
+                        variableStatement.setString(7, textValue);
+                        variableStatement.setTimestamp(8, new Timestamp(instanceStart));
+                        variableStatement.setTimestamp(9, new Timestamp(instanceStart));
+                        variableStatement.addBatch();
+                    }
+                }
+
+                instanceStatement.executeBatch();
+                taskStatement.executeBatch();
+                variableStatement.executeBatch();
+                connection.commit();
+
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    protected void executeQueries(HistoryService historyService) {
+        Random random = new Random();
+        for (int i = 0; i < queryRepeats; i++) {
+            long index = (long) (random.nextDouble() * loadedInstances);
+            long windowStart = startMillis + (long) (random.nextDouble() * (endMillis - startMillis - DAY_MILLIS));
+            String assignee = "user" + random.nextInt(NR_OF_ASSIGNEES);
+            String customerId = getCustomerId(index);
+
+            time("byBusinessKey", () -> historyService.createHistoricProcessInstanceQuery()
+                .processInstanceBusinessKey(BUSINESS_KEY_PREFIX + index).list());
+            time("byVariableValue", () -> historyService.createHistoricProcessInstanceQuery()
+                .variableValueEquals("customerId", customerId).listPage(0, 100));
+            time("finishedBetween", () -> historyService.createHistoricProcessInstanceQuery()
+                .finishedAfter(new Date(windowStart)).finishedBefore(new Date(windowStart + DAY_MILLIS)).listPage(0, 100));
+            time("orderedByEndTime", () -> historyService.createHistoricProcessInstanceQuery()
+                .finished().orderByProcessInstanceEndTime().desc().listPage(0, 100));
+            time("tasksByAssignee", () -> historyService.createHistoricTaskInstanceQuery()
+                .taskAssignee(assignee).finished().orderByHistoricTaskInstanceEndTime().desc().listPage(0, 100));
+            time("variablesByInstance", () -> historyService.createHistoricVariableInstanceQuery()
+                .processInstanceId(ID_PREFIX + index).list());
+        }
+    }
+
+    protected void time(String query, Supplier<List<?>> supplier) {
+        List<?> result = latencies.time(query, supplier);
+        if (result.isEmpty() && !"finishedBetween".equals(query)) {
+            System.out.println("Query " + query + " returned no results, was the data loaded?");
+        }
+    }
+
+    /**
+     * Start times grow with the index and cover the whole period.
+     */
+    protected long getStartMillis(long index) {
+        return startMillis + (long) ((double) index / nrOfInstances * (endMillis - startMillis - 8 * DAY_MILLIS));
+    }
+
+    protected boolean isFinished(long index) {
+        return index % 20 != 0;
+    }
+
+    /**
+     * About 10 instances per customer.
+     */
+    protected String getCustomerId(long index) {
+        return "customer-" + index % Math.max(1, nrOfInstances / 10);
+    }
+
+    public void printTable() {
+        System.out.println(String.format("%-22s %10s %10s %10s %8s %12s", "query", "p50 us", "p99 us", "max us", "scans", "suggestions"));
+        for (ObjectNode row : rows) {
+            System.out.println(String.format("%-22s %10d %10d %10d %8d %12d", row.get("query").asText(), row.get("p50").asLong(),
+                row.get("p99").asLong(), row.get("max").asLong(), row.get("tableScans").asInt(), row.get("suggestions").asInt()));
+        }
+        System.out.println("(" + loadedInstances + " historic process instances)");
+
+        for (Map.Entry<String, List<QueryPlan>> entry : plansPerQuery.entrySet()) {
+            for (QueryPlan plan : entry.getValue()) {
+                System.out.println();
+                System.out.println(entry.getKey() + ": " + plan.getSql().replaceAll("\\s+", " ").trim());
+                System.out.println(plan.getPlan());
+                for (String note : plan.getNotes()) {
+                    System.out.println("  note: " + note);
+                }
+                for (IndexSuggestion suggestion : plan.getSuggestions()) {
+                    System.out.println("  suggestion (" + suggestion.getReason() + "): " + suggestion.getDdl());
+                }
+            }
+        }
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (Map.Entry<String, Histogram> entry : latencies.getHistograms().entrySet()) {
+            runResult.addMetric("historyQuery." + entry.getKey(), entry.getValue(), 0L);
+        }
+        if (loadNanos > 0) {
+            runResult.addValue("historyQuery.load", "instancesPerSecond", insertedInstances / (loadNanos / 1_000_000_000.0));
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("historicProcessInstances", loadedInstances);
+        resultNode.put("tasksPerInstance", tasksPerInstance);
+        resultNode.put("variablesPerInstance", variablesPerInstance);
+        resultNode.put("queryRepeats", queryRepeats);
+        resultNode.put("loadMillis", loadNanos / 1_000_000);
+        ArrayNode queriesNode = resultNode.putArray("queries");
+        for (ObjectNode row : rows) {
+            ObjectNode queryNode = row.deepCopy();
+            ArrayNode plansNode = queryNode.putArray("plans");
+            for (QueryPlan plan : plansPerQuery.get(row.get("query").asText())) {
+                plansNode.add(plan.toJson());
+            }
+            queriesNode.add(queryNode);
+        }
+
+        File jsonFile = new File(resultsDir, "history-queries-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("History query results written to " + jsonFile.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,310 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.bpmn.converter.BpmnXMLConverter;
+import org.flowable.bpmn.model.BpmnModel;
+import org.flowable.common.engine.impl.util.io.BytesStreamSource;
+import org.flowable.engine.ManagementService;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.TaskService;
+import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.flowable.engine.repository.Deployment;
+import org.flowable.engine.repository.ProcessDefinition;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.model.ModelGenerator;
+import org.flowable.results.RunResult;
+import org.flowable.task.api.Task;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates models of every size in 'modelSizes' with the {@link ModelGenerator} ('modelFanOut', 'modelDepth', 'modelBoundaryEvents')
+ * and measures, per size:
+ * the XML parse time, the deployment time, the time to load the definition into the (cleared) definition cache,
+ * the heap used by the cache entry, and the start and task completion latencies of 'modelInstances' instances.
+ *
+ * The cache footprint is the used heap after a System.gc() with and without the entry: approximate, repeated 'modelMemoryRepeats' times
+ * and the median is used. Small models are deployed as several copies (together about 'modelMemoryNodes' flow nodes) for this measurement. The 'per node' columns make super-linear growth visible. With 'writeModels', the generated XML is stored
+ * in the results directory.
+ */
+public class ModelScaling {
+
+    protected static final String PROCESS_DEFINITION_KEY_PREFIX = "generatedModel";
+
+    protected final List<Integer> modelSizes;
+    protected final int fanOut;
+    protected final int subProcessDepth;
+    protected final boolean boundaryEvents;
+    protected final int nrOfProcessInstances;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+    protected final int memoryRepeats;
+    protected final int memoryNodes;
+    protected final File modelsDir;
+
+    protected final List<ObjectNode> rows = new ArrayList<>();
+    protected final List<OperationLatencies> latenciesPerSize = new ArrayList<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ModelScaling(List<Integer> modelSizes, int fanOut, int subProcessDepth, boolean boundaryEvents, int nrOfProcessInstances,
+            int nrOfThreads, String threadModel, int memoryRepeats, int memoryNodes, File modelsDir) {
+        this.modelSizes = modelSizes;
+        this.fanOut = fanOut;
+        this.subProcessDepth = subProcessDepth;
+        this.boundaryEvents = boundaryEvents;
+        this.nrOfProcessInstances = nrOfProcessInstances;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+        this.memoryRepeats = memoryRepeats;
+        this.memoryNodes = memoryNodes;
+        this.modelsDir = modelsDir;
+    }
+
+    public static ModelScaling fromSystemProperties(String threadModel, File resultsDir) {
+        return new ModelScaling(ConcurrencySweep.parseIntegers(System.getProperty("modelSizes", "10,100,500,1000,5000")),
+            Integer.getInteger("modelFanOut", 4),
+            Integer.getInteger("modelDepth", 2),
+            Boolean.valueOf(System.getProperty("modelBoundaryEvents", "true")),
+            Integer.getInteger("modelInstances", 100),
+            Integer.valueOf(System.getProperty("nrOfThreads")),
+            threadModel,
+            Integer.getInteger("modelMemoryRepeats", 3),
+            Integer.getInteger("modelMemoryNodes", 20000),
+            Boolean.getBoolean("writeModels") ? new File(resultsDir, "models") : null);
+    }
+
+    public void run(ProcessEngine processEngine) throws Exception {
+        // Warm up the XML parsing and deployment code paths, otherwise the first size pays for the class loading
+        byte[] warmUpXml = new BpmnXMLConverter().convertToXML(new ModelGenerator(10, fanOut, subProcessDepth, boundaryEvents)
+            .generate(PROCESS_DEFINITION_KEY_PREFIX + "WarmUp"));
+        for (int i = 0; i < 5; i++) {
+            new BpmnXMLConverter().convertToBpmnModel(new BytesStreamSource(warmUpXml), true, false);
+            processEngine.getRepositoryService().createDeployment().addBytes("warmUp.bpmn20.xml", warmUpXml).deploy();
+        }
+
+        for (int modelSize : modelSizes) {
+            runModel(processEngine, modelSize);
+        }
+        printTable();
+    }
+
+    protected void runModel(ProcessEngine processEngine, int modelSize) throws Exception {
+        String processDefinitionKey = PROCESS_DEFINITION_KEY_PREFIX + modelSize;
+        ModelGenerator modelGenerator = new ModelGenerator(modelSize, fanOut, subProcessDepth, boundaryEvents);
+        BpmnModel bpmnModel = modelGenerator.generate(processDefinitionKey);
+        byte[] xml = new BpmnXMLConverter().convertToXML(bpmnModel);
+        System.out.println("Model: " + modelGenerator.getNrOfFlowNodes() + " flow nodes, " + xml.length / 1024 + " KB of XML");
+        if (modelsDir != null) {
+            modelsDir.mkdirs();
+            Files.write(new File(modelsDir, processDefinitionKey + ".bpmn20.xml").toPath(), xml);
+        }
+
+        long parseNanos = medianNanos(() -> new BpmnXMLConverter().convertToBpmnModel(new BytesStreamSource(xml), true, false));
+
+        long deployStart = System.nanoTime();
+        Deployment deployment = processEngine.getRepositoryService().createDeployment()
+            .name(processDefinitionKey)
+            .addBytes(processDefinitionKey + ".bpmn20.xml", xml)
+            .deploy();
+        long deployNanos = System.nanoTime() - deployStart;
+
+        List<String> processDefinitionIds = new ArrayList<>();
+        processDefinitionIds.add(getProcessDefinitionId(processEngine, deployment));
+        int copies = Math.max(1, memoryNodes / modelGenerator.getNrOfFlowNodes());
+        for (int i = 1; i < copies; i++) {
+            processDefinitionIds.add(getProcessDefinitionId(processEngine, processEngine.getRepositoryService().createDeployment()
+                .name(processDefinitionKey + "-copy" + i)
+                .addBytes(processDefinitionKey + ".bpmn20.xml", xml)
+                .deploy()));
+        }
+        long[] cacheLoad = measureCacheEntry(processEngine, processDefinitionIds);
+
+        OperationLatencies latencies = new OperationLatencies();
+        List<String> processInstanceIds = startProcessInstances(processEngine.getRuntimeService(), processDefinitionKey, latencies);
+        completeTasks(processEngine.getTaskService(), processInstanceIds, modelGenerator.getNrOfUserTasksPerInstance(), latencies);
+        latenciesPerSize.add(latencies);
+
+        int nrOfFlowNodes = modelGenerator.getNrOfFlowNodes();
+        Histogram startHistogram = latencies.getHistogram("start");
+        Histogram completeHistogram = latencies.getHistogram("complete");
+        ObjectNode row = objectMapper.createObjectNode();
+        row.put("modelSize", modelSize);
+        row.put("flowNodes", nrOfFlowNodes);
+        row.put("xmlBytes", xml.length);
+        row.put("parseMicros", parseNanos / 1000);
+        row.put("deployMicros", deployNanos / 1000);
+        row.put("cacheLoadMicros", cacheLoad[0] / 1000);
+        row.put("cacheEntryBytes", cacheLoad[1]);
+        row.put("startP50", startHistogram.getValueAtPercentile(50.0));
+        row.put("startP99", startHistogram.getValueAtPercentile(99.0));
+        row.put("completeP50", completeHistogram.getValueAtPercentile(50.0));
+        row.put("completeP99", completeHistogram.getValueAtPercentile(99.0));
+        row.put("deployMicrosPerNode", (double) deployNanos / 1000 / nrOfFlowNodes);
+        row.put("cacheEntryBytesPerNode", (double) cacheLoad[1] / nrOfFlowNodes);
+        row.put("startMeanMicrosPerNode", startHistogram.getMean() / nrOfFlowNodes);
+        rows.add(row);
+    }
+
+    /**
+     * Removes the definitions from the cache and loads them again, in a command like the engine does on a cache miss.
+     * Small models are below the noise of the heap measurement, so the given definitions are copies of the same model
+     * and the result is the average per copy.
+     *
+     * @return the median load time in nanos and the median heap growth in bytes, per definition
+     */
+    protected long[] measureCacheEntry(ProcessEngine processEngine, List<String> processDefinitionIds) {
+        ProcessEngineConfigurationImpl engineConfiguration = (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
+        ManagementService managementService = processEngine.getManagementService();
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+
+        long[] loadNanos = new long[memoryRepeats];
+        long[] entryBytes = new long[memoryRepeats];
+        for (int i = 0; i < memoryRepeats; i++) {
+            for (String processDefinitionId : processDefinitionIds) {
+                engineConfiguration.getProcessDefinitionCache().remove(processDefinitionId);
+            }
+            long usedBefore = usedHeapAfterGc(memoryMXBean);
+
+            long start = System.nanoTime();
+            for (String processDefinitionId : processDefinitionIds) {
+                managementService.executeCommand(commandContext -> engineConfiguration.getDeploymentManager().findDeployedProcessDefinitionById(processDefinitionId));
+            }
+            loadNanos[i] = (System.nanoTime() - start) / processDefinitionIds.size();
+
+            entryBytes[i] = Math.max(0, usedHeapAfterGc(memoryMXBean) - usedBefore) / processDefinitionIds.size();
+        }
+        Arrays.sort(loadNanos);
+        Arrays.sort(entryBytes);
+        return new long[] { loadNanos[memoryRepeats / 2], entryBytes[memoryRepeats / 2] };
+    }
+
+    protected String getProcessDefinitionId(ProcessEngine processEngine, Deployment deployment) {
+        ProcessDefinition processDefinition = processEngine.getRepositoryService().createProcessDefinitionQuery()
+            .deploymentId(deployment.getId()).singleResult();
+        return processDefinition.getId();
+    }
+
+    protected long usedHeapAfterGc(MemoryMXBean memoryMXBean) {
+        System.gc();
+        System.gc();
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+
+    protected long medianNanos(Runnable runnable) {
+        long[] durations = new long[5];
+        for (int i = 0; i < durations.length; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            durations[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(durations);
+        return durations[durations.length / 2];
+    }
+
+    protected List<String> startProcessInstances(RuntimeService runtimeService, String processDefinitionKey, OperationLatencies latencies)
+            throws InterruptedException {
+        List<String> processInstanceIds = Collections.synchronizedList(new ArrayList<>(nrOfProcessInstances));
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+        for (int i = 0; i < nrOfProcessInstances; i++) {
+            workerPool.submit(() -> {
+                try {
+                    processInstanceIds.add(latencies.time("start", () -> runtimeService.startProcessInstanceByKey(processDefinitionKey)).getId());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        workerPool.shutdownAndWait();
+        return processInstanceIds;
+    }
+
+    /**
+     * Completes the active user tasks of the instances level by level, from the deepest subprocess up to the main process.
+     */
+    protected void completeTasks(TaskService taskService, List<String> processInstanceIds, int nrOfUserTasksPerInstance,
+            OperationLatencies latencies) throws InterruptedException {
+        for (int level = 0; level < nrOfUserTasksPerInstance && !processInstanceIds.isEmpty(); level++) {
+            List<Task> tasks = taskService.createTaskQuery().processInstanceIdIn(new ArrayList<>(processInstanceIds)).list();
+            WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+            for (Task task : tasks) {
+                workerPool.submit(() -> {
+                    try {
+                        latencies.time("complete", () -> {
+                            taskService.complete(task.getId());
+                            return null;
+                        });
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+            workerPool.shutdownAndWait();
+        }
+    }
+
+    public void printTable() {
+        System.out.println(String.format("%8s %8s %10s %10s %12s %12s %12s %10s %10s %11s %11s %12s %12s", "nodes", "XML KB", "parse ms",
+            "deploy ms", "cache load", "cache KB", "start p50", "start p99", "compl. p50", "compl. p99", "deploy/node", "cache B/node", "start/node"));
+        for (ObjectNode row : rows) {
+            System.out.println(String.format("%8d %8d %10.1f %10.1f %12.1f %12d %12d %10d %10d %11d %11.1f %12.0f %12.1f", row.get("flowNodes").asInt(),
+                row.get("xmlBytes").asLong() / 1024, row.get("parseMicros").asLong() / 1000.0, row.get("deployMicros").asLong() / 1000.0,
+                row.get("cacheLoadMicros").asLong() / 1000.0, row.get("cacheEntryBytes").asLong() / 1024,
+                row.get("startP50").asLong(), row.get("startP99").asLong(), row.get("completeP50").asLong(), row.get("completeP99").asLong(),
+                row.get("deployMicrosPerNode").asDouble(), row.get("cacheEntryBytesPerNode").asDouble(), row.get("startMeanMicrosPerNode").asDouble()));
+        }
+        System.out.println("(start/complete latencies in microseconds, cache load in ms, per node values in microseconds and bytes)");
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (int i = 0; i < rows.size(); i++) {
+            ObjectNode row = rows.get(i);
+            String name = "model." + row.get("modelSize").asInt();
+            for (String operation : latenciesPerSize.get(i).getHistograms().keySet()) {
+                runResult.addMetric(name + "." + operation, latenciesPerSize.get(i).getHistogram(operation), 0L);
+            }
+            runResult.addValue(name, "deployMicros", row.get("deployMicros").asLong());
+            runResult.addValue(name, "cacheEntryBytes", row.get("cacheEntryBytes").asLong());
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("fanOut", fanOut);
+        resultNode.put("subProcessDepth", subProcessDepth);
+        resultNode.put("boundaryEvents", boundaryEvents);
+        resultNode.put("nrOfProcessInstances", nrOfProcessInstances);
+        ArrayNode rowsNode = resultNode.putArray("models");
+        rows.forEach(rowsNode::add);
+
+        File jsonFile = new File(resultsDir, "model-scaling-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Model scaling results written to " + jsonFile.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,211 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Starts process instances at a fixed arrival rate (open loop), independent of how fast the engine handles them.
+ *
+ * The rates are given as steps ('targetRates', in starts/sec, each held for 'stepDuration' seconds).
+ * With 'ramp' enabled, the rate goes linearly from the previous step's rate to the rate of the current step
+ * (the first step is held at its own rate).
+ *
+ * Per step, three latencies are recorded relative to the moment a start was scheduled:
+ * 'queueing' (until a worker thread picked it up), 'service' (the start call itself) and 'response' (queueing + service).
+ * When the engine can't keep up with the rate, the queueing delay keeps growing and the achieved rate stays below the target.
+ */
+public class OpenLoopStarter {
+
+    protected final int nrOfThreads;
+    protected final List<Double> targetRates;
+    protected final long stepDurationNanos;
+    protected final boolean ramp;
+
+    protected final List<StepResult> stepResults = new ArrayList<>();
+
+    public OpenLoopStarter(int nrOfThreads, List<Double> targetRates, long stepDurationSeconds, boolean ramp) {
+        this.nrOfThreads = nrOfThreads;
+        this.targetRates = targetRates;
+        this.stepDurationNanos = TimeUnit.SECONDS.toNanos(stepDurationSeconds);
+        this.ramp = ramp;
+    }
+
+    public static OpenLoopStarter fromSystemProperties() {
+        List<Double> targetRates = new ArrayList<>();
+        for (String rate : System.getProperty("targetRates", "10,20,50,100").split(",")) {
+            targetRates.add(Double.valueOf(rate.trim()));
+        }
+        int nrOfThreads = Integer.valueOf(System.getProperty("nrOfThreads"));
+        long stepDuration = Long.valueOf(System.getProperty("stepDuration", "30"));
+        boolean ramp = Boolean.valueOf(System.getProperty("ramp", "false"));
+        return new OpenLoopStarter(nrOfThreads, targetRates, stepDuration, ramp);
+    }
+
+    /**
+     * @param startAction starts one process instance and returns its id
+     */
+    public List<String> run(Supplier<String> startAction) throws InterruptedException {
+        System.out.println("Open loop: rates " + targetRates + " starts/sec, " + TimeUnit.NANOSECONDS.toSeconds(stepDurationNanos)
+            + " s per step, ramp = " + ramp + ", " + nrOfThreads + " threads");
+
+        List<String> processInstanceIds = Collections.synchronizedList(new ArrayList<>());
+        ThreadPoolExecutor executorService = (ThreadPoolExecutor) Executors.newFixedThreadPool(nrOfThreads);
+        AtomicLong completed = new AtomicLong();
+
+        double previousRate = targetRates.get(0);
+        for (double targetRate : targetRates) {
+            StepResult stepResult = new StepResult(targetRate);
+            stepResults.add(stepResult);
+
+            long stepStart = System.nanoTime();
+            long stepEnd = stepStart + stepDurationNanos;
+            long completedAtStepStart = completed.get();
+            long intendedStart = stepStart;
+
+            while (intendedStart < stepEnd) {
+                long now = System.nanoTime();
+                if (intendedStart > now) {
+                    LockSupport.parkNanos(intendedStart - now);
+                }
+
+                final long scheduledAt = intendedStart;
+                stepResult.scheduled++;
+                executorService.execute(() -> {
+                    long serviceStart = System.nanoTime();
+                    try {
+                        processInstanceIds.add(startAction.get());
+                    } catch (Exception e) {
+                        stepResult.failed.incrementAndGet();
+                        e.printStackTrace();
+                    }
+                    long serviceEnd = System.nanoTime();
+                    stepResult.latencies.record("queueing", serviceStart - scheduledAt);
+                    stepResult.latencies.record("service", serviceEnd - serviceStart);
+                    stepResult.latencies.record("response", serviceEnd - scheduledAt);
+                    completed.incrementAndGet();
+                });
+
+                double rate = targetRate;
+                if (ramp) {
+                    double progress = (double) (intendedStart - stepStart) / stepDurationNanos;
+                    rate = previousRate + (targetRate - previousRate) * progress;
+                }
+                intendedStart += (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(rate, 0.1));
+            }
+
+            stepResult.completedInStep = completed.get() - completedAtStepStart;
+            stepResult.durationNanos = System.nanoTime() - stepStart;
+            stepResult.backlog = executorService.getQueue().size();
+            previousRate = targetRate;
+
+            System.out.println(String.format("Step %.1f starts/sec done: achieved %.1f starts/sec, backlog %d", targetRate,
+                stepResult.getAchievedRate(), stepResult.backlog));
+        }
+
+        System.out.println("All starts scheduled. Waiting for termination");
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.DAYS);
+
+        printSummary();
+        return processInstanceIds;
+    }
+
+    public void printSummary() {
+        System.out.println(String.format("%10s %10s %8s %12s %12s %12s %12s %12s", "target/s", "achieved/s", "failed",
+            "queue p50", "queue p99", "resp p50", "resp p99", "resp p99.9"));
+        for (StepResult stepResult : stepResults) {
+            System.out.println(String.format("%10.1f %10.1f %8d %12d %12d %12d %12d %12d", stepResult.targetRate, stepResult.getAchievedRate(),
+                stepResult.failed.get(),
+                stepResult.latencies.getHistogram("queueing").getValueAtPercentile(50.0),
+                stepResult.latencies.getHistogram("queueing").getValueAtPercentile(99.0),
+                stepResult.latencies.getHistogram("response").getValueAtPercentile(50.0),
+                stepResult.latencies.getHistogram("response").getValueAtPercentile(99.0),
+                stepResult.latencies.getHistogram("response").getValueAtPercentile(99.9)));
+        }
+        System.out.println("(latencies in microseconds)");
+    }
+
+    public ObjectNode toJson() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("nrOfThreads", nrOfThreads);
+        resultNode.put("stepDurationSeconds", TimeUnit.NANOSECONDS.toSeconds(stepDurationNanos));
+        resultNode.put("ramp", ramp);
+        ArrayNode stepsNode = resultNode.putArray("steps");
+        for (StepResult stepResult : stepResults) {
+            ObjectNode stepNode = stepsNode.addObject();
+            stepNode.put("targetRate", stepResult.targetRate);
+            stepNode.put("achievedRate", stepResult.getAchievedRate());
+            stepNode.put("scheduled", stepResult.scheduled);
+            stepNode.put("failed", stepResult.failed.get());
+            stepNode.put("backlog", stepResult.backlog);
+            stepNode.set("latencies", stepResult.latencies.toJson());
+        }
+        return resultNode;
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (StepResult stepResult : stepResults) {
+            String name = String.format(Locale.ROOT, "openLoop.%.1f.response", stepResult.targetRate);
+            runResult.addMetric(name, stepResult.latencies.getHistogram("response"), 0L);
+            runResult.addThroughput(name, stepResult.getAchievedRate());
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        File jsonFile = new File(resultsDir, "open-loop-" + runId + ".json");
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(jsonFile, toJson());
+        System.out.println("Open loop results written to " + jsonFile.getAbsolutePath());
+    }
+
+    protected static class StepResult {
+
+        protected final double targetRate;
+        protected final OperationLatencies latencies = new OperationLatencies();
+        protected final AtomicLong failed = new AtomicLong();
+        protected long scheduled;
+        protected long completedInStep;
+        protected long durationNanos;
+        protected long backlog;
+
+        public StepResult(double targetRate) {
+            this.targetRate = targetRate;
+        }
+
+        public double getAchievedRate() {
+            return durationNanos > 0 ? completedInStep / (durationNanos / 1_000_000_000.0) : 0.0;
+        }
+
+    }
+
+}
@@ -0,0 +1,240 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+import org.flowable.scenario.VariableGenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Starts process instances with every combination of variable type, variable count and variable size
+ * ('payloadTypes', 'payloadCounts' and 'payloadSizes') and reports the cost of a start next to what the engine wrote for it:
+ * the rows added to ACT_RU_VARIABLE, ACT_HI_VARINST and ACT_GE_BYTEARRAY and the bytes added to the byte arrays and the
+ * variable text columns. The write amplification is the bytes written divided by the size of the variables that were passed in.
+ *
+ * Sizes are in characters for string, json and serializable and in bytes for bytes; they don't apply to long.
+ * With a 'payloadSizeSpread' above 1, every value gets a size picked uniformly between size and size * spread.
+ */
+public class PayloadMatrix {
+
+    protected final List<String> types;
+    protected final List<Integer> counts;
+    protected final List<Integer> sizes;
+    protected final double sizeSpread;
+    protected final int nrOfProcessInstances;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+
+    protected final List<ObjectNode> rows = new ArrayList<>();
+    protected final Map<String, Histogram> startHistograms = new HashMap<>();
+    protected final Map<String, Long> durations = new HashMap<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    public PayloadMatrix(List<String> types, List<Integer> counts, List<Integer> sizes, double sizeSpread,
+            int nrOfProcessInstances, int nrOfThreads, String threadModel) {
+        this.types = types;
+        this.counts = counts;
+        this.sizes = sizes;
+        this.sizeSpread = sizeSpread;
+        this.nrOfProcessInstances = nrOfProcessInstances;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+    }
+
+    public static PayloadMatrix fromSystemProperties(String threadModel) {
+        List<String> types = new ArrayList<>();
+        for (String type : System.getProperty("payloadTypes", "string,long,json,serializable,bytes").split(",")) {
+            types.add(type.trim());
+        }
+        return new PayloadMatrix(types,
+            ConcurrencySweep.parseIntegers(System.getProperty("payloadCounts", "1,10,50")),
+            ConcurrencySweep.parseIntegers(System.getProperty("payloadSizes", "10,1000,100000")),
+            Double.valueOf(System.getProperty("payloadSizeSpread", "1")),
+            Integer.valueOf(System.getProperty("nrOfProcessInstances")),
+            Integer.valueOf(System.getProperty("nrOfThreads")),
+            threadModel);
+    }
+
+    public void run(ProcessEngine processEngine) throws InterruptedException {
+        for (String type : types) {
+            // The size of a long is fixed, no need to repeat it for every size
+            List<Integer> typeSizes = "long".equals(type) ? Collections.singletonList(sizes.get(0)) : sizes;
+            for (int count : counts) {
+                for (int size : typeSizes) {
+                    runCell(processEngine, type, count, size);
+                }
+            }
+        }
+        printTable();
+    }
+
+    protected void runCell(ProcessEngine processEngine, String type, int count, int size) throws InterruptedException {
+        String cellName = type + "." + count + "x" + size;
+        System.out.println("Payload: " + count + " " + type + " variable(s) of size " + size);
+
+        VariableGenerator variableGenerator = new VariableGenerator("payload", type, count, size, (int) (size * sizeSpread), Collections.emptyList());
+        RuntimeService runtimeService = processEngine.getRuntimeService();
+        OperationLatencies latencies = new OperationLatencies();
+        AtomicLong payloadBytes = new AtomicLong();
+
+        Map<String, Long> before = readStorageStatistics(processEngine);
+        long start = System.nanoTime();
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+        for (int i = 0; i < nrOfProcessInstances; i++) {
+            workerPool.submit(() -> {
+                try {
+                    Map<String, Object> variables = new HashMap<>();
+                    variableGenerator.generate(variables);
+                    for (Object value : variables.values()) {
+                        payloadBytes.addAndGet(VariableGenerator.sizeOf(value));
+                    }
+                    latencies.time("start", () -> runtimeService.createProcessInstanceBuilder()
+                        .processDefinitionKey("testProcess")
+                        .variables(variables)
+                        .start());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+        workerPool.shutdownAndWait();
+        long durationNanos = System.nanoTime() - start;
+        Map<String, Long> after = readStorageStatistics(processEngine);
+
+        Histogram startHistogram = latencies.getHistogram("start");
+        long started = Math.max(1, startHistogram.getTotalCount());
+        startHistograms.put(cellName, startHistogram);
+        durations.put(cellName, durationNanos);
+
+        ObjectNode row = objectMapper.createObjectNode();
+        row.put("name", cellName);
+        row.put("type", type);
+        row.put("count", count);
+        row.put("size", size);
+        row.put("started", startHistogram.getTotalCount());
+        row.put("startMean", startHistogram.getMean());
+        row.put("startP50", startHistogram.getValueAtPercentile(50.0));
+        row.put("startP99", startHistogram.getValueAtPercentile(99.0));
+        row.put("startsPerSecond", startHistogram.getTotalCount() / (durationNanos / 1_000_000_000.0));
+        row.put("payloadBytesPerStart", (double) payloadBytes.get() / started);
+        for (String key : after.keySet()) {
+            if (before.containsKey(key)) {
+                row.put(key + "PerStart", (double) (after.get(key) - before.get(key)) / started);
+            }
+        }
+        if (row.has("byteArrayBytesPerStart") && row.has("variableTextBytesPerStart")) {
+            double bytesWritten = row.get("byteArrayBytesPerStart").asDouble() + row.get("variableTextBytesPerStart").asDouble()
+                + row.path("historicVariableTextBytesPerStart").asDouble();
+            row.put("bytesWrittenPerStart", bytesWritten);
+            row.put("writeAmplification", bytesWritten / Math.max(1.0, row.get("payloadBytesPerStart").asDouble()));
+        }
+        rows.add(row);
+    }
+
+    /**
+     * Row counts of the variable related tables, and the total size of the byte arrays and the variable text columns.
+     * Returns an empty map when the engine doesn't run on a relational database.
+     */
+    protected Map<String, Long> readStorageStatistics(ProcessEngine processEngine) {
+        Map<String, Long> statistics = new HashMap<>();
+        DataSource dataSource = processEngine.getProcessEngineConfiguration().getDataSource();
+        if (dataSource == null) {
+            return statistics;
+        }
+
+        String prefix = processEngine.getProcessEngineConfiguration().getDatabaseTablePrefix();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            readValue(statement, "select count(*) from " + prefix + "ACT_RU_VARIABLE", "runtimeVariableRows", statistics);
+            readValue(statement, "select count(*) from " + prefix + "ACT_HI_VARINST", "historicVariableRows", statistics);
+            readValue(statement, "select count(*) from " + prefix + "ACT_GE_BYTEARRAY", "byteArrayRows", statistics);
+            readValue(statement, "select coalesce(sum(length(BYTES_)), 0) from " + prefix + "ACT_GE_BYTEARRAY", "byteArrayBytes", statistics);
+            readValue(statement, "select coalesce(sum(length(TEXT_)), 0) + coalesce(sum(length(TEXT2_)), 0) from " + prefix + "ACT_RU_VARIABLE",
+                "variableTextBytes", statistics);
+            readValue(statement, "select coalesce(sum(length(TEXT_)), 0) + coalesce(sum(length(TEXT2_)), 0) from " + prefix + "ACT_HI_VARINST",
+                "historicVariableTextBytes", statistics);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return statistics;
+    }
+
+    protected void readValue(Statement statement, String sql, String key, Map<String, Long> statistics) {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            if (resultSet.next()) {
+                statistics.put(key, resultSet.getLong(1));
+            }
+        } catch (Exception e) {
+            System.out.println("Could not read " + key + ": " + e.getMessage());
+        }
+    }
+
+    public void printTable() {
+        System.out.println(String.format("%-13s %6s %8s %10s %10s %10s %12s %9s %9s %9s %12s %8s", "type", "count", "size", "starts/s",
+            "start p50", "start p99", "payload B", "ru rows", "hi rows", "ba rows", "written B", "ampl."));
+        for (ObjectNode row : rows) {
+            System.out.println(String.format("%-13s %6d %8d %10.1f %10d %10d %12.0f %9.1f %9.1f %9.1f %12.0f %8.2f", row.get("type").asText(),
+                row.get("count").asInt(), row.get("size").asInt(), row.get("startsPerSecond").asDouble(),
+                row.get("startP50").asLong(), row.get("startP99").asLong(), row.get("payloadBytesPerStart").asDouble(),
+                row.path("runtimeVariableRowsPerStart").asDouble(), row.path("historicVariableRowsPerStart").asDouble(),
+                row.path("byteArrayRowsPerStart").asDouble(), row.path("bytesWrittenPerStart").asDouble(),
+                row.path("writeAmplification").asDouble()));
+        }
+        System.out.println("(latencies in microseconds, rows and bytes per started process instance)");
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (ObjectNode row : rows) {
+            String name = "payload." + row.get("name").asText();
+            runResult.addMetric(name, startHistograms.get(row.get("name").asText()), durations.get(row.get("name").asText()));
+            if (row.has("bytesWrittenPerStart")) {
+                runResult.addValue(name, "bytesWrittenPerStart", row.get("bytesWrittenPerStart").asDouble());
+            }
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("nrOfProcessInstances", nrOfProcessInstances);
+        resultNode.put("nrOfThreads", nrOfThreads);
+        resultNode.put("sizeSpread", sizeSpread);
+        ArrayNode rowsNode = resultNode.putArray("cells");
+        rows.forEach(rowsNode::add);
+
+        File jsonFile = new File(resultsDir, "payload-matrix-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Payload matrix results written to " + jsonFile.getAbsolutePath());
+    }
+
+}
@@ -0,0 +1,403 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+import javax.sql.DataSource;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.flowable.common.engine.api.FlowableObjectNotFoundException;
+import org.flowable.common.engine.api.FlowableOptimisticLockingException;
+import org.flowable.common.engine.impl.persistence.deploy.DefaultDeploymentCache;
+import org.flowable.common.engine.impl.persistence.deploy.DeploymentCache;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RepositoryService;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.TaskService;
+import org.flowable.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+import org.flowable.task.api.Task;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+/**
+ * Runs a mixed workload for 'soakMinutes': every worker starts a testProcess instance, queries it and completes its tasks until it ends.
+ * Every 'soakInterval' seconds it samples the heap after GC, the thread count, the Hikari pool, the throughput and latency of the
+ * interval and the size of the process definition cache.
+ *
+ * After 'soakWarmupIntervals', the mean of the first 'soakWindow' samples is the baseline and the mean of the latest 'soakWindow'
+ * samples is compared with it. The run fails (as soon as it happens, unless 'soakFailFast' is false) when the heap after GC grows
+ * more than 'soakMaxHeapGrowth' percent, the throughput drops more than 'soakMaxThroughputDrop' percent, the p99 latency
+ * grows more than 'soakMaxLatencyGrowth' percent, the thread count grows by more than 'soakMaxThreadGrowth' or the deployment cache
+ * by more than 'soakMaxCacheGrowth' entries.
+ *
+ * With 'soakGcBeforeSample' (default true) a full GC runs before every sample, so the heap after GC is the live set.
+ * With 'soakRedeployIntervals' above 0, testProcess is redeployed every that many intervals, which grows the deployment cache
+ * unless 'processDefinitionCacheLimit' bounds it. The thread count only includes platform threads.
+ */
+public class SoakRun {
+
+    protected final long durationMillis;
+    protected final long intervalMillis;
+    protected final int warmupIntervals;
+    protected final int window;
+    protected final double maxHeapGrowth;
+    protected final double maxThroughputDrop;
+    protected final double maxLatencyGrowth;
+    protected final int maxThreadGrowth;
+    protected final int maxCacheGrowth;
+    protected final boolean gcBeforeSample;
+    protected final boolean failFast;
+    protected final int redeployIntervals;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+
+    protected final OperationLatencies latencies = new OperationLatencies();
+    protected final Recorder iterationRecorder = new Recorder(3);
+    protected final AtomicLong completedInstances = new AtomicLong();
+    protected final AtomicLong failedIterations = new AtomicLong();
+    protected final List<ObjectNode> samples = new ArrayList<>();
+    protected final List<String> violations = new ArrayList<>();
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    protected volatile boolean stopped;
+    protected boolean failed;
+    protected long runNanos;
+
+    public SoakRun(long durationMillis, long intervalMillis, int warmupIntervals, int window, double maxHeapGrowth, double maxThroughputDrop,
+            double maxLatencyGrowth, int maxThreadGrowth, int maxCacheGrowth, boolean gcBeforeSample, boolean failFast, int redeployIntervals,
+            int nrOfThreads, String threadModel) {
+        this.durationMillis = durationMillis;
+        this.intervalMillis = intervalMillis;
+        this.warmupIntervals = warmupIntervals;
+        this.window = window;
+        this.maxHeapGrowth = maxHeapGrowth;
+        this.maxThroughputDrop = maxThroughputDrop;
+        this.maxLatencyGrowth = maxLatencyGrowth;
+        this.maxThreadGrowth = maxThreadGrowth;
+        this.maxCacheGrowth = maxCacheGrowth;
+        this.gcBeforeSample = gcBeforeSample;
+        this.failFast = failFast;
+        this.redeployIntervals = redeployIntervals;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+    }
+
+    public static SoakRun fromSystemProperties(String threadModel) {
+        return new SoakRun(TimeUnit.MINUTES.toMillis(Integer.getInteger("soakMinutes", 60)),
+            TimeUnit.SECONDS.toMillis(Integer.getInteger("soakInterval", 60)),
+            Integer.getInteger("soakWarmupIntervals", 3),
+            Integer.getInteger("soakWindow", 3),
+            Double.parseDouble(System.getProperty("soakMaxHeapGrowth", "25")),
+            Double.parseDouble(System.getProperty("soakMaxThroughputDrop", "20")),
+            Double.parseDouble(System.getProperty("soakMaxLatencyGrowth", "50")),
+            Integer.getInteger("soakMaxThreadGrowth", 20),
+            Integer.getInteger("soakMaxCacheGrowth", 10),
+            Boolean.parseBoolean(System.getProperty("soakGcBeforeSample", "true")),
+            Boolean.parseBoolean(System.getProperty("soakFailFast", "true")),
+            Integer.getInteger("soakRedeployIntervals", 0),
+            Integer.valueOf(System.getProperty("nrOfThreads")),
+            threadModel);
+    }
+
+    public void run(ProcessEngine processEngine) throws InterruptedException {
+        ProcessEngineConfigurationImpl configuration = (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
+        HikariPoolMXBean pool = getHikariPool(configuration.getDataSource());
+
+        System.out.println("Soaking for " + TimeUnit.MILLISECONDS.toMinutes(durationMillis) + " minutes with " + nrOfThreads + " threads ("
+            + threadModel + "), sampling every " + TimeUnit.MILLISECONDS.toSeconds(intervalMillis) + " seconds");
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+        for (int i = 0; i < nrOfThreads; i++) {
+            workerPool.submit(() -> {
+                while (!stopped) {
+                    executeIteration(processEngine.getRuntimeService(), processEngine.getTaskService());
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        long lastCompleted = 0;
+        long lastGcCount = getGcCount();
+        for (int interval = 1; TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < durationMillis; interval++) {
+            long sleepMillis = interval * intervalMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (sleepMillis > 0) {
+                Thread.sleep(sleepMillis);
+            }
+
+            if (redeployIntervals > 0 && interval % redeployIntervals == 0) {
+                redeploy(processEngine.getRepositoryService());
+            }
+
+            long completed = completedInstances.get();
+            long gcCount = getGcCount();
+            ObjectNode sample = sample(interval, configuration, pool, completed - lastCompleted, gcCount - lastGcCount);
+            lastCompleted = completed;
+            lastGcCount = gcCount;
+            samples.add(sample);
+            printSample(sample);
+
+            List<String> intervalViolations = checkDrift();
+            if (!intervalViolations.isEmpty()) {
+                for (String violation : intervalViolations) {
+                    System.out.println("DRIFT after " + sample.get("elapsedSeconds").asLong() + " s: " + violation);
+                }
+                failed = true;
+                violations.clear();
+                violations.addAll(intervalViolations);
+                if (failFast) {
+                    break;
+                }
+            }
+        }
+        stopped = true;
+        workerPool.shutdownAndWait();
+        runNanos = System.nanoTime() - start;
+
+        printSummary();
+    }
+
+    protected void executeIteration(RuntimeService runtimeService, TaskService taskService) {
+        long start = System.nanoTime();
+        try {
+            ProcessInstance processInstance = latencies.time("start", () -> runtimeService.createProcessInstanceBuilder()
+                .processDefinitionKey("testProcess")
+                .variables(Benchmark.generateRandomStartVariables(Benchmark.getNrOfStartVariables()))
+                .start());
+            String processInstanceId = processInstance.getId();
+
+            latencies.time("getVariables", () -> runtimeService.getVariables(processInstanceId));
+            while (true) {
+                List<Task> tasks = latencies.time("taskQuery", () -> taskService.createTaskQuery().processInstanceId(processInstanceId).list());
+                if (tasks.isEmpty()) {
+                    break;
+                }
+                for (Task task : tasks) {
+                    try {
+                        latencies.time("complete", () -> {
+                            taskService.complete(task.getId(), Collections.singletonMap("goUp", ThreadLocalRandom.current().nextBoolean()));
+                            return null;
+                        });
+                    } catch (FlowableObjectNotFoundException | FlowableOptimisticLockingException e) {
+                        // Removed by a boundary event or changed by the completion of a sibling, the next query sorts it out
+                    }
+                }
+            }
+            completedInstances.incrementAndGet();
+            iterationRecorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+        } catch (Exception e) {
+            failedIterations.incrementAndGet();
+            e.printStackTrace();
+        }
+    }
+
+    protected void redeploy(RepositoryService repositoryService) {
+        try {
+            repositoryService.createDeployment().addClasspathResource("benchmark-process.bpmn20.xml").deploy();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    protected ObjectNode sample(int interval, ProcessEngineConfigurationImpl configuration, HikariPoolMXBean pool, long completed, long gcCount) {
+        if (gcBeforeSample) {
+            System.gc();
+        }
+
+        ObjectNode sample = objectMapper.createObjectNode();
+        sample.put("interval", interval);
+        sample.put("elapsedSeconds", (long) interval * TimeUnit.MILLISECONDS.toSeconds(intervalMillis));
+        sample.put("heapAfterGcBytes", getHeapAfterGc());
+        sample.put("heapUsedBytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        sample.put("gcCount", gcCount);
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        sample.put("threads", threadMXBean.getThreadCount());
+        sample.put("peakThreads", threadMXBean.getPeakThreadCount());
+
+        if (pool != null) {
+            sample.put("poolActive", pool.getActiveConnections());
+            sample.put("poolIdle", pool.getIdleConnections());
+            sample.put("poolTotal", pool.getTotalConnections());
+            sample.put("poolWaiting", pool.getThreadsAwaitingConnection());
+        }
+
+        Histogram iterations = iterationRecorder.getIntervalHistogram();
+        sample.put("instancesPerSecond", completed / (intervalMillis / 1000.0));
+        sample.put("iterationP50", iterations.getValueAtPercentile(50.0));
+        sample.put("iterationP99", iterations.getValueAtPercentile(99.0));
+        sample.put("failedIterations", failedIterations.get());
+
+        sample.put("processDefinitionCache", getCacheSize(configuration.getProcessDefinitionCache()));
+        return sample;
+    }
+
+    /**
+     * Compares the latest window of samples with the first one after the warm up.
+     */
+    protected List<String> checkDrift() {
+        List<String> intervalViolations = new ArrayList<>();
+        if (samples.size() < warmupIntervals + window + 1) {
+            return intervalViolations;
+        }
+        List<ObjectNode> baseline = samples.subList(warmupIntervals, warmupIntervals + window);
+        List<ObjectNode> latest = samples.subList(samples.size() - window, samples.size());
+
+        double heapGrowth = growthPercent(baseline, latest, sample -> sample.get("heapAfterGcBytes").asDouble());
+        if (heapGrowth > maxHeapGrowth) {
+            intervalViolations.add(String.format("heap after GC grew %.1f%% (max %.1f%%)", heapGrowth, maxHeapGrowth));
+        }
+        double throughputDrop = -growthPercent(baseline, latest, sample -> sample.get("instancesPerSecond").asDouble());
+        if (throughputDrop > maxThroughputDrop) {
+            intervalViolations.add(String.format("throughput dropped %.1f%% (max %.1f%%)", throughputDrop, maxThroughputDrop));
+        }
+        double latencyGrowth = growthPercent(baseline, latest, sample -> sample.get("iterationP99").asDouble());
+        if (latencyGrowth > maxLatencyGrowth) {
+            intervalViolations.add(String.format("p99 iteration latency grew %.1f%% (max %.1f%%)", latencyGrowth, maxLatencyGrowth));
+        }
+        double threadGrowth = mean(latest, sample -> sample.get("threads").asDouble()) - mean(baseline, sample -> sample.get("threads").asDouble());
+        if (threadGrowth > maxThreadGrowth) {
+            intervalViolations.add(String.format("thread count grew by %.1f (max %d)", threadGrowth, maxThreadGrowth));
+        }
+        double cacheGrowth = mean(latest, sample -> sample.get("processDefinitionCache").asDouble())
+            - mean(baseline, sample -> sample.get("processDefinitionCache").asDouble());
+        if (cacheGrowth > maxCacheGrowth) {
+            intervalViolations.add(String.format("process definition cache grew by %.1f entries (max %d)", cacheGrowth, maxCacheGrowth));
+        }
+        return intervalViolations;
+    }
+
+    protected static double growthPercent(List<ObjectNode> baseline, List<ObjectNode> latest, ToDoubleFunction<ObjectNode> value) {
+        double baselineMean = mean(baseline, value);
+        return baselineMean > 0 ? (mean(latest, value) - baselineMean) / baselineMean * 100 : 0.0;
+    }
+
+    protected static double mean(List<ObjectNode> samples, ToDoubleFunction<ObjectNode> value) {
+        return samples.stream().mapToDouble(value).average().orElse(0.0);
+    }
+
+    /**
+     * The heap usage after the last collection of every heap pool.
+     */
+    protected static long getHeapAfterGc() {
+        long bytes = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage collectionUsage = memoryPool.getCollectionUsage();
+            if (memoryPool.getType() == MemoryType.HEAP && collectionUsage != null) {
+                bytes += collectionUsage.getUsed();
+            }
+        }
+        return bytes;
+    }
+
+    protected static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(garbageCollector.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    protected static int getCacheSize(DeploymentCache<?> cache) {
+        return cache instanceof DefaultDeploymentCache ? ((DefaultDeploymentCache<?>) cache).size() : -1;
+    }
+
+    protected static HikariPoolMXBean getHikariPool(DataSource dataSource) {
+        try {
+            return dataSource != null && dataSource.isWrapperFor(HikariDataSource.class)
+                ? dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean() : null;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    protected void printSample(ObjectNode sample) {
+        System.out.println(String.format("%6d s  heap after GC %6.1f MB  threads %4d  pool %3s/%3s waiting %3s  %8.1f inst/s  p99 %8d us  cache %5d",
+            sample.get("elapsedSeconds").asLong(), sample.get("heapAfterGcBytes").asLong() / (1024.0 * 1024.0), sample.get("threads").asInt(),
+            sample.path("poolActive").asText("-"), sample.path("poolTotal").asText("-"), sample.path("poolWaiting").asText("-"),
+            sample.get("instancesPerSecond").asDouble(), sample.get("iterationP99").asLong(), sample.get("processDefinitionCache").asInt()));
+    }
+
+    public void printSummary() {
+        System.out.println(String.format("Soak ran %d s, %d process instances completed, %d failed iterations", TimeUnit.NANOSECONDS.toSeconds(runNanos),
+            completedInstances.get(), failedIterations.get()));
+        if (!failed) {
+            System.out.println("No drift beyond the bounds");
+        } else {
+            System.out.println("Soak FAILED: " + String.join(", ", violations));
+        }
+    }
+
+    /**
+     * Whether any interval drifted beyond the bounds, {@link #printSummary()} shows the violations of the last one that did.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void addMetrics(RunResult runResult) {
+        runResult.addMetrics("soak.", latencies, runNanos);
+        runResult.addThroughput("soak.completedInstances", completedInstances.get() / (runNanos / 1_000_000_000.0));
+        if (samples.size() > warmupIntervals + window) {
+            List<ObjectNode> baseline = samples.subList(warmupIntervals, warmupIntervals + window);
+            List<ObjectNode> latest = samples.subList(samples.size() - window, samples.size());
+            runResult.addValue("soak.drift", "heapAfterGcPercent", growthPercent(baseline, latest, sample -> sample.get("heapAfterGcBytes").asDouble()));
+            runResult.addValue("soak.drift", "throughputPercent", growthPercent(baseline, latest, sample -> sample.get("instancesPerSecond").asDouble()));
+            runResult.addValue("soak.drift", "iterationP99Percent", growthPercent(baseline, latest, sample -> sample.get("iterationP99").asDouble()));
+        }
+        runResult.addValue("soak", "failed", isFailed() ? 1 : 0);
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("intervalSeconds", TimeUnit.MILLISECONDS.toSeconds(intervalMillis));
+        resultNode.put("nrOfThreads", nrOfThreads);
+        resultNode.put("completedInstances", completedInstances.get());
+        resultNode.put("failedIterations", failedIterations.get());
+        resultNode.put("failed", isFailed());
+        ArrayNode violationsNode = resultNode.putArray("violations");
+        violations.forEach(violationsNode::add);
+        ArrayNode samplesNode = resultNode.putArray("samples");
+        samples.forEach(samplesNode::add);
+
+        File jsonFile = new File(resultsDir, "soak-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Soak results written to " + jsonFile.getAbsolutePath());
+    }
+
+}
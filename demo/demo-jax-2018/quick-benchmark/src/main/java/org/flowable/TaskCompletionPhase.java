@@ -0,0 +1,364 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flowable.bpmn.converter.BpmnXMLConverter;
+import org.flowable.bpmn.model.BpmnModel;
+import org.flowable.bpmn.model.FlowElement;
+import org.flowable.bpmn.model.FlowElementsContainer;
+import org.flowable.bpmn.model.Gateway;
+import org.flowable.bpmn.model.Process;
+import org.flowable.bpmn.model.SubProcess;
+import org.flowable.common.engine.api.FlowableObjectNotFoundException;
+import org.flowable.common.engine.api.FlowableOptimisticLockingException;
+import org.flowable.common.engine.api.delegate.event.FlowableEngineEventType;
+import org.flowable.common.engine.api.delegate.event.FlowableEvent;
+import org.flowable.common.engine.api.delegate.event.FlowableEventListener;
+import org.flowable.common.engine.api.delegate.event.FlowableExceptionEvent;
+import org.flowable.common.engine.impl.util.io.InputStreamSource;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.TaskService;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.engine.runtime.ProcessInstanceQuery;
+import org.flowable.job.service.impl.asyncexecutor.AsyncExecutor;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+import org.flowable.task.api.Task;
+import org.flowable.task.api.TaskQuery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Completes all user tasks of the started process instances concurrently until every instance has ended.
+ *
+ * One poller thread hands out the open tasks to the worker threads, so the branches of one process instance
+ * (e.g. 'User task A' and 'User task C' that meet in the parallel join of the subprocess) regularly get completed
+ * at the same time. A {@link FlowableOptimisticLockingException} is counted per task name and the completion is retried.
+ *
+ * The async join variant of the process has all joining gateways marked async, so the join itself happens in an
+ * (exclusive) job on the async executor instead of in the transaction of the task completion.
+ *
+ * When {@link #setBusinessKey} is used, only the tasks of the process instances with that business key are completed
+ * (e.g. the share of one node when several engines run against the same database).
+ *
+ * The phase fails when the instances haven't all ended after 'taskCompletionTimeout' seconds (default 600), or when
+ * no instance ended for 'taskCompletionStallTimeout' seconds (default 60), e.g. because of a failed job.
+ */
+public class TaskCompletionPhase {
+
+    public static final String ASYNC_JOIN_PROCESS_DEFINITION_KEY = "testProcessAsyncJoin";
+
+    protected static final int MAX_RETRIES = 20;
+
+    protected final ProcessEngine processEngine;
+    protected final int nrOfThreads;
+    protected final String threadModel;
+
+    protected final OperationLatencies latencies = new OperationLatencies();
+    protected final Map<String, AtomicLong> optimisticLockingRetries = new ConcurrentHashMap<>();
+    protected final AtomicLong failedJobs = new AtomicLong();
+
+    protected long timeoutMillis = Long.getLong("taskCompletionTimeout", 600) * 1000;
+    protected long stallTimeoutMillis = Long.getLong("taskCompletionStallTimeout", 60) * 1000;
+
+    protected String businessKey;
+    protected String processDefinitionKey;
+    protected boolean asyncJoins;
+    protected int nrOfProcessInstances;
+    protected long totalTime;
+
+    public TaskCompletionPhase(ProcessEngine processEngine, int nrOfThreads, String threadModel) {
+        this.processEngine = processEngine;
+        this.nrOfThreads = nrOfThreads;
+        this.threadModel = threadModel;
+    }
+
+    /**
+     * Deploys a copy of the benchmark process where every gateway with more than one incoming sequence flow is async.
+     */
+    public static void deployAsyncJoinProcess(ProcessEngine processEngine) throws Exception {
+        BpmnModel bpmnModel;
+        try (InputStream inputStream = TaskCompletionPhase.class.getClassLoader().getResourceAsStream("benchmark-process.bpmn20.xml")) {
+            bpmnModel = new BpmnXMLConverter().convertToBpmnModel(new InputStreamSource(inputStream), false, false);
+        }
+
+        Process process = bpmnModel.getMainProcess();
+        process.setId(ASYNC_JOIN_PROCESS_DEFINITION_KEY);
+        process.setName(ASYNC_JOIN_PROCESS_DEFINITION_KEY);
+        makeJoinsAsync(process);
+
+        processEngine.getRepositoryService().createDeployment()
+            .addBpmnModel("benchmark-process-async-join.bpmn20.xml", bpmnModel)
+            .deploy();
+    }
+
+    protected static void makeJoinsAsync(FlowElementsContainer container) {
+        for (FlowElement flowElement : container.getFlowElements()) {
+            if (flowElement instanceof Gateway && ((Gateway) flowElement).getIncomingFlows().size() > 1) {
+                ((Gateway) flowElement).setAsynchronous(true);
+            } else if (flowElement instanceof SubProcess) {
+                makeJoinsAsync((SubProcess) flowElement);
+            }
+        }
+    }
+
+    public void run(String processDefinitionKey, int nrOfProcessInstances, boolean asyncJoins) throws InterruptedException {
+        this.processDefinitionKey = processDefinitionKey;
+        this.asyncJoins = asyncJoins;
+        this.nrOfProcessInstances = nrOfProcessInstances;
+
+        RuntimeService runtimeService = processEngine.getRuntimeService();
+        TaskService taskService = processEngine.getTaskService();
+
+        System.out.println("Completing tasks of " + nrOfProcessInstances + " process instances of " + processDefinitionKey
+            + " (async joins = " + asyncJoins + ")");
+
+        AsyncExecutor asyncExecutor = processEngine.getProcessEngineConfiguration().getAsyncExecutor();
+        boolean startedAsyncExecutor = asyncJoins && !asyncExecutor.isActive();
+        if (startedAsyncExecutor) {
+            asyncExecutor.start();
+        }
+
+        FlowableEventListener jobFailureListener = new JobFailureListener();
+        runtimeService.addEventListener(jobFailureListener, FlowableEngineEventType.JOB_EXECUTION_FAILURE);
+
+        int pageSize = Math.max(1000, nrOfThreads * 10);
+        Set<String> inFlightTaskIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        WorkerPool workerPool = new WorkerPool(threadModel, nrOfThreads);
+
+        long start = System.currentTimeMillis();
+        long deadline = start + timeoutMillis;
+        long lastProgress = start;
+        long openInstances = countProcessInstances(runtimeService);
+        String failure = null;
+        while (openInstances > 0) {
+            long now = System.currentTimeMillis();
+            if (now > deadline) {
+                failure = openInstances + " process instances still open after " + timeoutMillis + " ms";
+                break;
+            } else if (now - lastProgress > stallTimeoutMillis) {
+                failure = openInstances + " process instances still open, none ended in the last " + stallTimeoutMillis + " ms";
+                break;
+            }
+
+            boolean submitted = false;
+            TaskQuery taskQuery = taskService.createTaskQuery().processDefinitionKey(processDefinitionKey);
+            if (businessKey != null) {
+                taskQuery.processInstanceBusinessKey(businessKey);
+            }
+            List<Task> tasks = taskQuery.listPage(0, pageSize);
+            Collections.shuffle(tasks);
+            for (Task task : tasks) {
+                if (inFlightTaskIds.size() < pageSize / 2 && inFlightTaskIds.add(task.getId())) {
+                    submitted = true;
+                    workerPool.submit(() -> {
+                        try {
+                            completeTask(taskService, task);
+                        } finally {
+                            inFlightTaskIds.remove(task.getId());
+                        }
+                    });
+                }
+            }
+
+            if (!submitted) {
+                Thread.sleep(20L);
+            }
+
+            long previousOpenInstances = openInstances;
+            openInstances = countProcessInstances(runtimeService);
+            if (openInstances < previousOpenInstances) {
+                lastProgress = System.currentTimeMillis();
+            }
+        }
+        totalTime = System.currentTimeMillis() - start;
+
+        workerPool.shutdownAndWait();
+        runtimeService.removeEventListener(jobFailureListener);
+        if (startedAsyncExecutor) {
+            asyncExecutor.shutdown();
+        }
+
+        if (failure != null) {
+            printOpenProcessInstances(runtimeService, taskService);
+            throw new RuntimeException("Task completion of " + processDefinitionKey + " failed: " + failure);
+        }
+
+        printSummary();
+    }
+
+    protected void printOpenProcessInstances(RuntimeService runtimeService, TaskService taskService) {
+        List<ProcessInstance> openProcessInstances = createProcessInstanceQuery(runtimeService).listPage(0, 20);
+        System.out.println("Open process instances (at most 20):");
+        for (ProcessInstance processInstance : openProcessInstances) {
+            List<String> taskNames = new ArrayList<>();
+            for (Task task : taskService.createTaskQuery().processInstanceId(processInstance.getId()).list()) {
+                taskNames.add(task.getName());
+            }
+            long jobs = processEngine.getManagementService().createJobQuery().processInstanceId(processInstance.getId()).count();
+            long deadLetterJobs = processEngine.getManagementService().createDeadLetterJobQuery().processInstanceId(processInstance.getId()).count();
+            System.out.println("  " + processInstance.getId() + " : tasks " + taskNames + ", " + jobs + " jobs, " + deadLetterJobs + " dead letter jobs");
+        }
+    }
+
+    protected long countProcessInstances(RuntimeService runtimeService) {
+        return createProcessInstanceQuery(runtimeService).count();
+    }
+
+    protected ProcessInstanceQuery createProcessInstanceQuery(RuntimeService runtimeService) {
+        ProcessInstanceQuery query = runtimeService.createProcessInstanceQuery().processDefinitionKey(processDefinitionKey);
+        if (businessKey != null) {
+            query.processInstanceBusinessKey(businessKey);
+        }
+        return query;
+    }
+
+    protected void completeTask(TaskService taskService, Task task) {
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            try {
+                latencies.time("complete", () -> {
+                    taskService.complete(task.getId(), Collections.singletonMap("goUp", ThreadLocalRandom.current().nextBoolean()));
+                    return null;
+                });
+                return;
+
+            } catch (FlowableOptimisticLockingException e) {
+                optimisticLockingRetries.computeIfAbsent(task.getName(), name -> new AtomicLong()).incrementAndGet();
+
+            } catch (FlowableObjectNotFoundException e) {
+                // Task was removed in the meantime (e.g. by a boundary event)
+                return;
+
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        System.out.println("Giving up on task " + task.getId() + " after " + MAX_RETRIES + " optimistic locking exceptions");
+    }
+
+    public void printSummary() {
+        System.out.println("Completing all process instances took " + totalTime + " ms (" + String.format("%.1f", getThroughput()) + " instances/sec)");
+
+        System.out.println("Optimistic locking retries per completed task (the branch arriving at a join):");
+        new TreeMap<>(optimisticLockingRetries).forEach((taskName, retries) -> System.out.println("  " + taskName + " : " + retries.get()));
+        System.out.println("Async job executions failed with an optimistic locking exception : " + failedJobs.get());
+
+        latencies.printSummary();
+    }
+
+    public ObjectNode toJson() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("processDefinitionKey", processDefinitionKey);
+        resultNode.put("asyncJoins", asyncJoins);
+        resultNode.put("nrOfProcessInstances", nrOfProcessInstances);
+        resultNode.put("nrOfThreads", nrOfThreads);
+        resultNode.put("threadModel", threadModel);
+        resultNode.put("totalTimeMillis", totalTime);
+        resultNode.put("instancesPerSecond", getThroughput());
+        ObjectNode retriesNode = resultNode.putObject("optimisticLockingRetries");
+        new TreeMap<>(optimisticLockingRetries).forEach((taskName, retries) -> retriesNode.put(taskName, retries.get()));
+        resultNode.put("optimisticLockingJobFailures", failedJobs.get());
+        resultNode.set("latencies", latencies.toJson());
+        return resultNode;
+    }
+
+    public void addMetrics(RunResult runResult) {
+        String prefix = asyncJoins ? "taskCompletionAsyncJoin." : "taskCompletion.";
+        runResult.addMetrics(prefix, latencies, TimeUnit.MILLISECONDS.toNanos(totalTime));
+        runResult.addThroughput(prefix + "instances", getThroughput());
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        File jsonFile = new File(resultsDir, "task-completion-" + (asyncJoins ? "async-join-" : "") + runId + ".json");
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(jsonFile, toJson());
+        System.out.println("Task completion results written to " + jsonFile.getAbsolutePath());
+    }
+
+    public void setBusinessKey(String businessKey) {
+        this.businessKey = businessKey;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void setStallTimeoutMillis(long stallTimeoutMillis) {
+        this.stallTimeoutMillis = stallTimeoutMillis;
+    }
+
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    public long getFailedJobs() {
+        return failedJobs.get();
+    }
+
+    public double getThroughput() {
+        return totalTime > 0 ? nrOfProcessInstances / (totalTime / 1000.0) : 0.0;
+    }
+
+    public OperationLatencies getLatencies() {
+        return latencies;
+    }
+
+    public Map<String, AtomicLong> getOptimisticLockingRetries() {
+        return optimisticLockingRetries;
+    }
+
+    protected class JobFailureListener implements FlowableEventListener {
+
+        @Override
+        public void onEvent(FlowableEvent event) {
+            if (event instanceof FlowableExceptionEvent && ((FlowableExceptionEvent) event).getCause() instanceof FlowableOptimisticLockingException) {
+                failedJobs.incrementAndGet();
+            }
+        }
+
+        @Override
+        public boolean isFailOnException() {
+            return false;
+        }
+
+        @Override
+        public boolean isFireOnTransactionLifecycleEvent() {
+            return false;
+        }
+
+        @Override
+        public String getOnTransaction() {
+            return null;
+        }
+
+    }
+
+}
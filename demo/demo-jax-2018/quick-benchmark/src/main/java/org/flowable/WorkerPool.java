@@ -0,0 +1,87 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmark tasks with at most 'nrOfThreads' of them executing concurrently,
+ * either on a fixed pool of platform threads or on one virtual thread per task.
+ *
+ * Virtual threads are looked up reflectively, so the benchmark still builds for Java 8,
+ * but the 'virtual' thread model needs to run on Java 21 or later.
+ */
+public class WorkerPool {
+
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    protected final String threadModel;
+    protected final ExecutorService executorService;
+    protected final Semaphore permits;
+
+    public WorkerPool(String threadModel, int nrOfThreads) {
+        this.threadModel = threadModel;
+        if (VIRTUAL.equals(threadModel)) {
+            this.executorService = newVirtualThreadPerTaskExecutor();
+            this.permits = new Semaphore(nrOfThreads);
+        } else if (PLATFORM.equals(threadModel)) {
+            this.executorService = Executors.newFixedThreadPool(nrOfThreads);
+            this.permits = null;
+        } else {
+            throw new RuntimeException("Invalid thread model " + threadModel);
+        }
+    }
+
+    /**
+     * Blocks when running on virtual threads and all permits are taken,
+     * the platform thread pool queues the task instead.
+     */
+    public void submit(Runnable task) throws InterruptedException {
+        if (permits != null) {
+            permits.acquire();
+            executorService.submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } else {
+            executorService.submit(task);
+        }
+    }
+
+    public void shutdownAndWait() throws InterruptedException {
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.DAYS);
+    }
+
+    public String getThreadModel() {
+        return threadModel;
+    }
+
+    protected static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException("Virtual threads need Java 21 or later, running on " + System.getProperty("java.version"));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not create virtual thread executor", e);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.cmd;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.flowable.common.engine.impl.interceptor.Command;
+import org.flowable.common.engine.impl.interceptor.CommandContext;
+import org.flowable.engine.impl.cmd.StartProcessInstanceCmd;
+import org.flowable.engine.runtime.ProcessInstance;
+
+/**
+ * Starts one process instance per given variable map, all in the same command context.
+ *
+ * The inserts of all instances are flushed together and committed in one transaction when the command ends,
+ * instead of once per instance. If one start fails, none of the instances of the batch are created.
+ * The business keys are optional, when given there is one per variable map.
+ */
+public class BulkStartProcessInstancesCmd implements Command<List<String>>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected String processDefinitionKey;
+    protected List<Map<String, Object>> variablesPerInstance;
+    protected List<String> businessKeys;
+
+    public BulkStartProcessInstancesCmd(String processDefinitionKey, List<Map<String, Object>> variablesPerInstance) {
+        this(processDefinitionKey, variablesPerInstance, null);
+    }
+
+    public BulkStartProcessInstancesCmd(String processDefinitionKey, List<Map<String, Object>> variablesPerInstance, List<String> businessKeys) {
+        this.processDefinitionKey = processDefinitionKey;
+        this.variablesPerInstance = variablesPerInstance;
+        this.businessKeys = businessKeys;
+    }
+
+    @Override
+    public List<String> execute(CommandContext commandContext) {
+        List<String> processInstanceIds = new ArrayList<>(variablesPerInstance.size());
+        for (int i = 0; i < variablesPerInstance.size(); i++) {
+            String businessKey = businessKeys != null ? businessKeys.get(i) : null;
+            ProcessInstance processInstance = new StartProcessInstanceCmd<ProcessInstance>(processDefinitionKey, null, businessKey, variablesPerInstance.get(i))
+                .execute(commandContext);
+            processInstanceIds.add(processInstance.getId());
+        }
+        return processInstanceIds;
+    }
+
+}
@@ -0,0 +1,96 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.cmd;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flowable.common.engine.api.FlowableOptimisticLockingException;
+import org.flowable.common.engine.impl.interceptor.AbstractCommandInterceptor;
+import org.flowable.common.engine.impl.interceptor.Command;
+import org.flowable.common.engine.impl.interceptor.CommandConfig;
+
+/**
+ * Counts the {@link FlowableOptimisticLockingException}s per command class, e.g. AcquireJobsCmd and AcquireTimerJobsCmd
+ * for job acquisition conflicts between async executors, or CompleteTaskCmd for concurrent completions.
+ * Must be registered as a custom pre command interceptor, so it sees the exceptions thrown when the command context flushes.
+ *
+ * Only the outermost command is counted: a nested command failing with the same exception isn't counted twice.
+ */
+public class ConflictCountingInterceptor extends AbstractCommandInterceptor {
+
+    protected final ThreadLocal<Integer> depth = ThreadLocal.withInitial(() -> 0);
+    protected final Map<String, AtomicLong> conflicts = new ConcurrentHashMap<>();
+    protected final Map<String, AtomicLong> executions = new ConcurrentHashMap<>();
+
+    @Override
+    public <T> T execute(CommandConfig config, Command<T> command) {
+        int currentDepth = depth.get();
+        depth.set(currentDepth + 1);
+        try {
+            T result = next.execute(config, command);
+            if (currentDepth == 0) {
+                executions.computeIfAbsent(command.getClass().getSimpleName(), name -> new AtomicLong()).incrementAndGet();
+            }
+            return result;
+        } catch (FlowableOptimisticLockingException e) {
+            if (currentDepth == 0) {
+                String commandName = command.getClass().getSimpleName();
+                executions.computeIfAbsent(commandName, name -> new AtomicLong()).incrementAndGet();
+                conflicts.computeIfAbsent(commandName, name -> new AtomicLong()).incrementAndGet();
+            }
+            throw e;
+        } finally {
+            depth.set(currentDepth);
+        }
+    }
+
+    public Map<String, Long> getConflicts() {
+        Map<String, Long> result = new TreeMap<>();
+        conflicts.forEach((commandName, count) -> result.put(commandName, count.get()));
+        return result;
+    }
+
+    public long getExecutions(String commandName) {
+        AtomicLong count = executions.get(commandName);
+        return count != null ? count.get() : 0L;
+    }
+
+    /**
+     * Conflicts of the commands with which the async executors acquire and lock jobs.
+     */
+    public long getJobAcquisitionConflicts() {
+        long total = 0;
+        for (Map.Entry<String, AtomicLong> entry : conflicts.entrySet()) {
+            if (isJobAcquisitionCommand(entry.getKey())) {
+                total += entry.getValue().get();
+            }
+        }
+        return total;
+    }
+
+    public long getTotalConflicts() {
+        long total = 0;
+        for (AtomicLong count : conflicts.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    protected boolean isJobAcquisitionCommand(String commandName) {
+        return commandName.startsWith("Acquire") || commandName.startsWith("Lock") || commandName.startsWith("Unacquire");
+    }
+
+}
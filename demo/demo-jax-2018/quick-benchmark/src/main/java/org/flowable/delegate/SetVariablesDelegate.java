@@ -23,10 +23,16 @@ public class SetVariablesDelegate implements JavaDelegate {
 
     private static final Random random = new Random();
 
+    /** Number of variables set per execution, 10 unless the 'nrOfDelegateVariables' system property says otherwise. */
+    public static int getNrOfVariables() {
+        return Integer.getInteger("nrOfDelegateVariables", 10);
+    }
+
     @Override
     public void execute(DelegateExecution delegateExecution) {
+        int nrOfVariables = getNrOfVariables();
         Map<String, Object> variables = new HashMap<>();
-        for (int i = 0; i < 10; i++) {
+        for (int i = 0; i < nrOfVariables; i++) {
             if (random.nextBoolean()) {
                 variables.put("delegateStringVariable_" + delegateExecution.getId() + "_" + i, i*100 + "");
             } else {
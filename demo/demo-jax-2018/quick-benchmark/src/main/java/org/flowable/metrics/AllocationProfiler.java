@@ -0,0 +1,127 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.flowable.results.RunResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Records the bytes allocated by the executing thread during every benchmark operation, using the
+ * HotSpot specific ThreadMXBean#getThreadAllocatedBytes. The counter only covers the worker thread itself:
+ * work the engine hands off to other threads (e.g. async jobs) is not included.
+ *
+ * Virtual threads don't report allocated bytes, the operations executed on them are not recorded.
+ */
+public class AllocationProfiler implements OperationListener {
+
+    protected final com.sun.management.ThreadMXBean threadMXBean;
+    protected final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    protected long startNanos;
+    protected long endNanos;
+
+    public AllocationProfiler() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new RuntimeException("Allocated bytes per thread are not supported by " + System.getProperty("java.vm.name"));
+        }
+        this.threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        this.threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        OperationContext.addListener(this);
+    }
+
+    public void stop() {
+        endNanos = System.nanoTime();
+    }
+
+    @Override
+    public Object operationStarted(String operation) {
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Override
+    public void operationEnded(String operation, Object state) {
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long startBytes = (Long) state;
+        if (allocatedBytes >= 0 && startBytes >= 0) {
+            histograms.computeIfAbsent(operation, key -> new ConcurrentHistogram(3)).recordValue(allocatedBytes - startBytes);
+        }
+    }
+
+    public long getTotalAllocatedBytes() {
+        long total = 0;
+        for (Histogram histogram : histograms.values()) {
+            total += (long) (histogram.getMean() * histogram.getTotalCount());
+        }
+        return total;
+    }
+
+    /**
+     * Allocation rate of the benchmarked operations, in bytes per second of wall clock time.
+     */
+    public double getAllocationRate() {
+        long durationNanos = (endNanos > 0 ? endNanos : System.nanoTime()) - startNanos;
+        return durationNanos > 0 ? getTotalAllocatedBytes() / (durationNanos / 1_000_000_000.0) : 0.0;
+    }
+
+    public void printSummary() {
+        System.out.println(String.format("%-30s %10s %14s %14s %14s %14s", "allocated bytes", "count", "mean", "p50", "p99", "max"));
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            System.out.println(String.format("%-30s %10d %14.0f %14d %14d %14d", entry.getKey(), histogram.getTotalCount(), histogram.getMean(),
+                histogram.getValueAtPercentile(50.0), histogram.getValueAtPercentile(99.0), histogram.getMaxValue()));
+        }
+        System.out.println(String.format("Allocation rate of the operations: %.1f MB/s", getAllocationRate() / (1024 * 1024)));
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            String name = "allocation." + entry.getKey();
+            runResult.addValue(name, "meanBytes", histogram.getMean());
+            runResult.addValue(name, "p99Bytes", histogram.getValueAtPercentile(99.0));
+        }
+        runResult.addValue("allocation", "bytesPerSecond", getAllocationRate());
+    }
+
+    public ObjectNode toJson() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("allocationRateBytesPerSecond", getAllocationRate());
+        ObjectNode operationsNode = resultNode.putObject("operations");
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            ObjectNode operationNode = operationsNode.putObject(entry.getKey());
+            operationNode.put("count", histogram.getTotalCount());
+            operationNode.put("meanBytes", histogram.getMean());
+            operationNode.put("p50Bytes", histogram.getValueAtPercentile(50.0));
+            operationNode.put("p99Bytes", histogram.getValueAtPercentile(99.0));
+            operationNode.put("maxBytes", histogram.getMaxValue());
+        }
+        return resultNode;
+    }
+
+}
@@ -0,0 +1,178 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.flowable.results.RunResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Tracks the garbage collections between {@link #start()} and {@link #stop()}: the collection count and time per collector
+ * (from the GC MXBeans) and a histogram of the individual pause durations in milliseconds (from the GC notifications).
+ *
+ * The notifications of a concurrent cycle (ZGC and Shenandoah 'end of GC cycle', CMS) cover the whole cycle, most of it
+ * running next to the application threads. Those are kept apart as cycle time and are not counted as pauses; the same goes
+ * for the collection time of the cycle collectors ('ZGC Cycles', 'Shenandoah Cycles', 'ConcurrentMarkSweep').
+ */
+public class GcMonitor implements NotificationListener {
+
+    protected final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+    protected final Map<String, long[]> countAndTimeAtStart = new HashMap<>();
+    protected final Map<String, long[]> countAndTimeAtStop = new HashMap<>();
+    protected final Histogram durations = new ConcurrentHistogram(3);
+    protected final Histogram cycleDurations = new ConcurrentHistogram(3);
+
+    protected long startNanos;
+    protected long stopNanos;
+
+    public void start() {
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            countAndTimeAtStart.put(garbageCollector.getName(), new long[] { garbageCollector.getCollectionCount(), garbageCollector.getCollectionTime() });
+            if (garbageCollector instanceof NotificationEmitter) {
+                ((NotificationEmitter) garbageCollector).addNotificationListener(this, null, null);
+            }
+        }
+        startNanos = System.nanoTime();
+    }
+
+    public void stop() {
+        stopNanos = System.nanoTime();
+        for (GarbageCollectorMXBean garbageCollector : garbageCollectors) {
+            countAndTimeAtStop.put(garbageCollector.getName(), new long[] { garbageCollector.getCollectionCount(), garbageCollector.getCollectionTime() });
+            if (garbageCollector instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) garbageCollector).removeNotificationListener(this);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (isConcurrentCycle(info)) {
+                cycleDurations.recordValue(info.getGcInfo().getDuration());
+            } else {
+                durations.recordValue(info.getGcInfo().getDuration());
+            }
+        }
+    }
+
+    protected boolean isConcurrentCycle(GarbageCollectionNotificationInfo info) {
+        // CMS reports its concurrent cycles with the cause 'No GC'
+        return info.getGcAction().contains("cycle") || "No GC".equals(info.getGcCause()) || isCycleCollector(info.getGcName());
+    }
+
+    protected boolean isCycleCollector(String collectorName) {
+        return collectorName.endsWith(" Cycles") || "ConcurrentMarkSweep".equals(collectorName);
+    }
+
+    public long getCollectionCount() {
+        return sum(0, false);
+    }
+
+    public long getCollectionTimeMillis() {
+        return sum(1, false);
+    }
+
+    public long getCycleCount() {
+        return sum(0, true);
+    }
+
+    public long getCycleTimeMillis() {
+        return sum(1, true);
+    }
+
+    protected long sum(int index, boolean cycleCollectors) {
+        long total = 0;
+        for (Map.Entry<String, long[]> entry : countAndTimeAtStop.entrySet()) {
+            if (isCycleCollector(entry.getKey()) == cycleCollectors) {
+                long[] atStart = countAndTimeAtStart.get(entry.getKey());
+                total += entry.getValue()[index] - (atStart != null ? atStart[index] : 0);
+            }
+        }
+        return total;
+    }
+
+    public double getGcTimeFraction() {
+        long durationMillis = (stopNanos - startNanos) / 1_000_000;
+        return durationMillis > 0 ? (double) getCollectionTimeMillis() / durationMillis : 0.0;
+    }
+
+    public void printSummary() {
+        List<String> collectors = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : countAndTimeAtStop.entrySet()) {
+            long[] atStart = countAndTimeAtStart.get(entry.getKey());
+            collectors.add(entry.getKey() + ": " + (entry.getValue()[0] - atStart[0]) + " collections, " + (entry.getValue()[1] - atStart[1]) + " ms");
+        }
+        System.out.println("GC: " + String.join(", ", collectors));
+        System.out.println(String.format("GC: %d collections, %d ms total (%.1f%% of the run), max %d ms, p99 %d ms",
+            getCollectionCount(), getCollectionTimeMillis(), getGcTimeFraction() * 100, durations.getMaxValue(), durations.getValueAtPercentile(99.0)));
+        if (getCycleCount() > 0 || cycleDurations.getTotalCount() > 0) {
+            System.out.println(String.format("GC: %d concurrent cycles, %d ms cycle time (mostly concurrent, not pauses), max %d ms",
+                getCycleCount(), getCycleTimeMillis(), cycleDurations.getMaxValue()));
+        }
+    }
+
+    public void addMetrics(RunResult runResult) {
+        runResult.addValue("gc", "collections", getCollectionCount());
+        runResult.addValue("gc", "totalMillis", getCollectionTimeMillis());
+        runResult.addValue("gc", "maxMillis", durations.getMaxValue());
+        runResult.addValue("gc", "timeFraction", getGcTimeFraction());
+        runResult.addValue("gc", "cycles", getCycleCount());
+        runResult.addValue("gc", "cycleMillis", getCycleTimeMillis());
+    }
+
+    public ObjectNode toJson() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("collections", getCollectionCount());
+        resultNode.put("totalMillis", getCollectionTimeMillis());
+        resultNode.put("timeFraction", getGcTimeFraction());
+        resultNode.put("p50Millis", durations.getValueAtPercentile(50.0));
+        resultNode.put("p99Millis", durations.getValueAtPercentile(99.0));
+        resultNode.put("maxMillis", durations.getMaxValue());
+        resultNode.put("cycles", getCycleCount());
+        resultNode.put("cycleMillis", getCycleTimeMillis());
+        resultNode.put("cycleMaxMillis", cycleDurations.getMaxValue());
+        ObjectNode collectorsNode = resultNode.putObject("collectors");
+        for (Map.Entry<String, long[]> entry : countAndTimeAtStop.entrySet()) {
+            long[] atStart = countAndTimeAtStart.get(entry.getKey());
+            ObjectNode collectorNode = collectorsNode.putObject(entry.getKey());
+            collectorNode.put("collections", entry.getValue()[0] - atStart[0]);
+            collectorNode.put("totalMillis", entry.getValue()[1] - atStart[1]);
+            collectorNode.put("concurrentCycles", isCycleCollector(entry.getKey()));
+        }
+        return resultNode;
+    }
+
+}
@@ -0,0 +1,88 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.metrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers which benchmark operation the current thread is executing, so that lower layers
+ * (e.g. the JDBC statement accounting) can attribute their work to it. Every {@link OperationLatencies#time} call runs in one.
+ *
+ * Registered {@link OperationListener}s are notified before and after every operation, on the executing thread.
+ */
+public class OperationContext {
+
+    public static final String NONE = "none";
+
+    protected static final ThreadLocal<String> currentOperation = new ThreadLocal<>();
+    protected static final Map<String, AtomicLong> invocations = new ConcurrentHashMap<>();
+    protected static final List<OperationListener> listeners = new CopyOnWriteArrayList<>();
+
+    public static <T> T run(String operation, Supplier<T> supplier) {
+        String previousOperation = currentOperation.get();
+        currentOperation.set(operation);
+        invocations.computeIfAbsent(operation, key -> new AtomicLong()).incrementAndGet();
+
+        Object[] listenerStates = null;
+        if (!listeners.isEmpty()) {
+            listenerStates = new Object[listeners.size()];
+            for (int i = 0; i < listenerStates.length; i++) {
+                listenerStates[i] = listeners.get(i).operationStarted(operation);
+            }
+        }
+        try {
+            return supplier.get();
+        } finally {
+            if (listenerStates != null) {
+                for (int i = listenerStates.length - 1; i >= 0; i--) {
+                    listeners.get(i).operationEnded(operation, listenerStates[i]);
+                }
+            }
+            if (previousOperation != null) {
+                currentOperation.set(previousOperation);
+            } else {
+                currentOperation.remove();
+            }
+        }
+    }
+
+    /**
+     * Listeners should be added before the benchmark starts and not be removed while operations are running.
+     */
+    public static void addListener(OperationListener listener) {
+        listeners.add(listener);
+    }
+
+    public static String getCurrentOperation() {
+        String operation = currentOperation.get();
+        return operation != null ? operation : NONE;
+    }
+
+    public static long getInvocationCount(String operation) {
+        AtomicLong count = invocations.get(operation);
+        return count != null ? count.get() : 0L;
+    }
+
+    public static Map<String, Long> getInvocationCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        invocations.forEach((operation, count) -> counts.put(operation, count.get()));
+        return counts;
+    }
+
+}
@@ -0,0 +1,168 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Keeps an HdrHistogram (in microseconds) per benchmarked operation.
+ *
+ * The operations are executed back-to-back by the worker threads, so a slow call delays the calls that would
+ * have been done in the meantime (coordinated omission). When the expected interval between two calls is known
+ * (the 'expectedIntervalMicros' system property, e.g. 1000000 / rate for a paced run), 'corrected' percentiles are
+ * reported next to the raw ones, back-filling the missing samples with that interval. Without it nothing is corrected.
+ */
+public class OperationLatencies {
+
+    public static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9, 99.99 };
+
+    protected final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    protected Long expectedIntervalMicros = Long.getLong("expectedIntervalMicros");
+
+    public <T> T time(String operation, Supplier<T> supplier) {
+        long start = System.nanoTime();
+        T result = OperationContext.run(operation, supplier);
+        record(operation, System.nanoTime() - start);
+        return result;
+    }
+
+    public void record(String operation, long durationNanos) {
+        getHistogram(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    public Histogram getHistogram(String operation) {
+        return histograms.computeIfAbsent(operation, key -> new ConcurrentHistogram(3));
+    }
+
+    public Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    public boolean isCorrected() {
+        return expectedIntervalMicros != null && expectedIntervalMicros > 0;
+    }
+
+    /**
+     * Returns the histogram of the operation corrected for coordinated omission, or null when no expected interval is configured.
+     */
+    public Histogram getCorrectedHistogram(String operation) {
+        if (!isCorrected()) {
+            return null;
+        }
+        return getHistogram(operation).copyCorrectedForCoordinatedOmission(expectedIntervalMicros);
+    }
+
+    public void printSummary() {
+        if (isCorrected()) {
+            System.out.println(String.format("%-22s %10s %10s %10s %10s %10s %10s %10s", "operation (us)", "count", "mean", "p50", "p99", "p99.9", "p99.9 (co)", "max"));
+        } else {
+            System.out.println(String.format("%-22s %10s %10s %10s %10s %10s %10s", "operation (us)", "count", "mean", "p50", "p99", "p99.9", "max"));
+        }
+        for (Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (isCorrected()) {
+                System.out.println(String.format("%-22s %10d %10.1f %10d %10d %10d %10d %10d", entry.getKey(), histogram.getTotalCount(), histogram.getMean(),
+                    histogram.getValueAtPercentile(50.0), histogram.getValueAtPercentile(99.0), histogram.getValueAtPercentile(99.9),
+                    getCorrectedHistogram(entry.getKey()).getValueAtPercentile(99.9), histogram.getMaxValue()));
+            } else {
+                System.out.println(String.format("%-22s %10d %10.1f %10d %10d %10d %10d", entry.getKey(), histogram.getTotalCount(), histogram.getMean(),
+                    histogram.getValueAtPercentile(50.0), histogram.getValueAtPercentile(99.0), histogram.getValueAtPercentile(99.9),
+                    histogram.getMaxValue()));
+            }
+        }
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode operationsNode = objectMapper.createObjectNode();
+        for (Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+            ObjectNode operationNode = operationsNode.putObject(entry.getKey());
+            operationNode.set("raw", histogramToJson(entry.getValue()));
+            if (isCorrected()) {
+                operationNode.put("expectedIntervalMicros", expectedIntervalMicros);
+                operationNode.set("corrected", histogramToJson(getCorrectedHistogram(entry.getKey())));
+            }
+        }
+        return operationsNode;
+    }
+
+    public Long getExpectedIntervalMicros() {
+        return expectedIntervalMicros;
+    }
+
+    public void setExpectedIntervalMicros(Long expectedIntervalMicros) {
+        this.expectedIntervalMicros = expectedIntervalMicros;
+    }
+
+    protected ObjectNode histogramToJson(Histogram histogram) {
+        ObjectNode histogramNode = objectMapper.createObjectNode();
+        histogramNode.put("count", histogram.getTotalCount());
+        histogramNode.put("mean", histogram.getMean());
+        histogramNode.put("stdDeviation", histogram.getStdDeviation());
+        histogramNode.put("max", histogram.getMaxValue());
+        ArrayNode percentilesNode = histogramNode.putArray("percentiles");
+        for (double percentile : PERCENTILES) {
+            percentilesNode.addObject()
+                .put("percentile", percentile)
+                .put("value", histogram.getValueAtPercentile(percentile));
+        }
+        return histogramNode;
+    }
+
+    /**
+     * Writes the percentiles of all operations to 'latencies-<runId>.json' and 'latencies-<runId>.csv' in the given directory.
+     */
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+
+        File jsonFile = new File(resultsDir, "latencies-" + runId + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, toJson());
+
+        File csvFile = new File(resultsDir, "latencies-" + runId + ".csv");
+        try (PrintWriter writer = new PrintWriter(csvFile, "UTF-8")) {
+            writer.println("operation,type,count,mean,max,percentile,value");
+            for (Map.Entry<String, Histogram> entry : getHistograms().entrySet()) {
+                writeCsvLines(writer, entry.getKey(), "raw", entry.getValue());
+                if (isCorrected()) {
+                    writeCsvLines(writer, entry.getKey(), "corrected", getCorrectedHistogram(entry.getKey()));
+                }
+            }
+        }
+
+        System.out.println("Latencies written to " + jsonFile.getAbsolutePath() + " and " + csvFile.getAbsolutePath());
+    }
+
+    protected void writeCsvLines(PrintWriter writer, String operation, String type, Histogram histogram) {
+        for (double percentile : PERCENTILES) {
+            writer.println(operation + "," + type + "," + histogram.getTotalCount() + "," + histogram.getMean() + "," + histogram.getMaxValue()
+                + "," + percentile + "," + histogram.getValueAtPercentile(percentile));
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.metrics;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A profiler that records for the whole run and writes its recording to the results directory at the end.
+ *
+ * The JFR implementation lives in 'src/jfr/java' and is only compiled with the 'jfr' Maven profile
+ * (the jdk.jfr API isn't available on the Java 8 target of the default build), so it is looked up by name.
+ */
+public interface RecordingProfiler {
+
+    String JFR_PROFILER_CLASS = "org.flowable.metrics.jfr.JfrProfiler";
+
+    void start();
+
+    void stop(File resultsDir, String runId) throws IOException;
+
+    static RecordingProfiler createJfrProfiler() {
+        try {
+            return (RecordingProfiler) Class.forName(JFR_PROFILER_CLASS).newInstance();
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            throw new RuntimeException("JFR profiling isn't available: build the benchmark with the 'jfr' profile (mvn -Pjfr package) on a JDK 11+", e);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not create " + JFR_PROFILER_CLASS, e);
+        }
+    }
+
+}
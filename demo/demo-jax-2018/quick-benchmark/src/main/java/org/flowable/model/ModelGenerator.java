@@ -0,0 +1,165 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.model;
+
+import org.flowable.bpmn.model.Activity;
+import org.flowable.bpmn.model.BoundaryEvent;
+import org.flowable.bpmn.model.BpmnModel;
+import org.flowable.bpmn.model.EndEvent;
+import org.flowable.bpmn.model.FlowElementsContainer;
+import org.flowable.bpmn.model.FlowNode;
+import org.flowable.bpmn.model.ImplementationType;
+import org.flowable.bpmn.model.ParallelGateway;
+import org.flowable.bpmn.model.Process;
+import org.flowable.bpmn.model.SequenceFlow;
+import org.flowable.bpmn.model.ServiceTask;
+import org.flowable.bpmn.model.StartEvent;
+import org.flowable.bpmn.model.SubProcess;
+import org.flowable.bpmn.model.TimerEventDefinition;
+import org.flowable.bpmn.model.UserTask;
+import org.flowable.delegate.NoopDelegate;
+
+/**
+ * Generates synthetic process models of a given size, to see how the engine scales with the model.
+ *
+ * Every level of the model is a parallel split into 'fanOut' chains of no-op service tasks, a parallel join, the next level
+ * as an embedded subprocess (up to 'subProcessDepth' levels deep) and a user task. With 'boundaryEvents', every subprocess
+ * and user task gets an interrupting timer boundary event leading to a 'Timeout' user task.
+ *
+ * Starting an instance runs the service task chains of all levels and stops at the user task of the deepest level,
+ * so an instance has subProcessDepth + 1 user tasks that get active one after the other.
+ * The 'nrOfNodes' is divided over the levels and is approximate: {@link #getNrOfFlowNodes()} is the actual count.
+ */
+public class ModelGenerator {
+
+    protected final int nrOfNodes;
+    protected final int fanOut;
+    protected final int subProcessDepth;
+    protected final boolean boundaryEvents;
+
+    protected int idCounter;
+    protected int nrOfFlowNodes;
+
+    public ModelGenerator(int nrOfNodes, int fanOut, int subProcessDepth, boolean boundaryEvents) {
+        this.nrOfNodes = nrOfNodes;
+        this.fanOut = Math.max(1, fanOut);
+        this.subProcessDepth = Math.max(0, subProcessDepth);
+        this.boundaryEvents = boundaryEvents;
+    }
+
+    public BpmnModel generate(String processDefinitionKey) {
+        idCounter = 0;
+        nrOfFlowNodes = 0;
+
+        Process process = new Process();
+        process.setId(processDefinitionKey);
+        process.setName(processDefinitionKey);
+
+        StartEvent startEvent = add(process, new StartEvent(), "start");
+        FlowNode last = addLevel(process, startEvent, 0);
+        connect(process, last, add(process, new EndEvent(), "end"));
+
+        BpmnModel bpmnModel = new BpmnModel();
+        bpmnModel.addProcess(process);
+        bpmnModel.setTargetNamespace("http://www.flowable.org/benchmark");
+        return bpmnModel;
+    }
+
+    /**
+     * Adds one level after the given node and returns its last node.
+     */
+    protected FlowNode addLevel(FlowElementsContainer container, FlowNode previous, int level) {
+        int levelOverhead = 3 + (boundaryEvents ? 3 : 0) + (level < subProcessDepth ? 3 + (boundaryEvents ? 3 : 0) : 0);
+        int chainLength = Math.max(1, (nrOfNodes / (subProcessDepth + 1) - levelOverhead) / fanOut);
+
+        ParallelGateway split = add(container, new ParallelGateway(), "split");
+        ParallelGateway join = add(container, new ParallelGateway(), "join");
+        connect(container, previous, split);
+        for (int branch = 0; branch < fanOut; branch++) {
+            FlowNode branchNode = split;
+            for (int i = 0; i < chainLength; i++) {
+                ServiceTask serviceTask = add(container, new ServiceTask(), "noop");
+                serviceTask.setName("No-op");
+                serviceTask.setImplementationType(ImplementationType.IMPLEMENTATION_TYPE_CLASS);
+                serviceTask.setImplementation(NoopDelegate.class.getName());
+                connect(container, branchNode, serviceTask);
+                branchNode = serviceTask;
+            }
+            connect(container, branchNode, join);
+        }
+
+        FlowNode last = join;
+        if (level < subProcessDepth) {
+            SubProcess subProcess = add(container, new SubProcess(), "subProcess");
+            subProcess.setName("Level " + (level + 1));
+            StartEvent subProcessStart = add(subProcess, new StartEvent(), "subProcessStart");
+            FlowNode subProcessLast = addLevel(subProcess, subProcessStart, level + 1);
+            connect(subProcess, subProcessLast, add(subProcess, new EndEvent(), "subProcessEnd"));
+            connect(container, last, subProcess);
+            addTimeoutBoundaryEvent(container, subProcess);
+            last = subProcess;
+        }
+
+        UserTask userTask = add(container, new UserTask(), "userTask");
+        userTask.setName("Level " + level + " task");
+        connect(container, last, userTask);
+        addTimeoutBoundaryEvent(container, userTask);
+        return userTask;
+    }
+
+    protected void addTimeoutBoundaryEvent(FlowElementsContainer container, Activity activity) {
+        if (!boundaryEvents) {
+            return;
+        }
+        BoundaryEvent boundaryEvent = add(container, new BoundaryEvent(), "timeout");
+        boundaryEvent.setAttachedToRefId(activity.getId());
+        boundaryEvent.setAttachedToRef(activity);
+        boundaryEvent.setCancelActivity(true);
+        TimerEventDefinition timerEventDefinition = new TimerEventDefinition();
+        timerEventDefinition.setTimeDuration("PT3H");
+        boundaryEvent.addEventDefinition(timerEventDefinition);
+
+        UserTask timeoutTask = add(container, new UserTask(), "timeoutTask");
+        timeoutTask.setName("Timeout");
+        connect(container, boundaryEvent, timeoutTask);
+        connect(container, timeoutTask, add(container, new EndEvent(), "timeoutEnd"));
+    }
+
+    protected <T extends FlowNode> T add(FlowElementsContainer container, T flowNode, String idPrefix) {
+        flowNode.setId(idPrefix + "_" + (++idCounter));
+        container.addFlowElement(flowNode);
+        nrOfFlowNodes++;
+        return flowNode;
+    }
+
+    protected void connect(FlowElementsContainer container, FlowNode source, FlowNode target) {
+        SequenceFlow sequenceFlow = new SequenceFlow(source.getId(), target.getId());
+        sequenceFlow.setId("flow_" + (++idCounter));
+        container.addFlowElement(sequenceFlow);
+    }
+
+    /**
+     * The flow nodes (events, gateways, activities) of the last generated model.
+     */
+    public int getNrOfFlowNodes() {
+        return nrOfFlowNodes;
+    }
+
+    /**
+     * The user tasks an instance passes through when no timer fires.
+     */
+    public int getNrOfUserTasksPerInstance() {
+        return subProcessDepth + 1;
+    }
+
+}
@@ -0,0 +1,153 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.results;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Compares the metrics of a candidate run against a baseline run and exits with status 1 when
+ * the throughput dropped or the p99 latency grew by more than the allowed fraction, e.g.
+ *
+ * <pre>
+ * java -DthroughputThreshold=0.05 -Dp99Threshold=0.10 -cp flowable-benchmark.jar org.flowable.results.ResultComparator baseline:6.4.0 20181015-101500
+ * </pre>
+ *
+ * A run is given as a path to a run result file, as a run id in 'runs' or as 'baseline:&lt;name&gt;' in 'baselines'
+ * of the results directory ('resultsDir' system property, default 'results').
+ * Metrics that only exist in one of the two runs and differences in environment are reported, but never fail the comparison.
+ */
+public class ResultComparator {
+
+    protected final double throughputThreshold;
+    protected final double p99Threshold;
+
+    protected final List<String> regressions = new ArrayList<>();
+
+    public ResultComparator(double throughputThreshold, double p99Threshold) {
+        this.throughputThreshold = throughputThreshold;
+        this.p99Threshold = p99Threshold;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: ResultComparator <baseline run> <candidate run>");
+            System.out.println("  a run is a path to a run result file, a run id or baseline:<name>");
+            System.exit(2);
+        }
+
+        File resultsDir = new File(System.getProperty("resultsDir", "results"));
+        RunResult baseline = RunResult.read(resolve(resultsDir, args[0]));
+        RunResult candidate = RunResult.read(resolve(resultsDir, args[1]));
+
+        ResultComparator comparator = new ResultComparator(Double.valueOf(System.getProperty("throughputThreshold", "0.05")),
+            Double.valueOf(System.getProperty("p99Threshold", "0.10")));
+        boolean regressed = comparator.compare(baseline, candidate);
+        System.exit(regressed ? 1 : 0);
+    }
+
+    public static File resolve(File resultsDir, String run) throws IOException {
+        File file;
+        if (run.startsWith("baseline:")) {
+            file = new File(new File(resultsDir, "baselines"), run.substring("baseline:".length()) + ".json");
+        } else if (new File(run).isFile()) {
+            file = new File(run);
+        } else {
+            file = new File(new File(resultsDir, "runs"), run + ".json");
+        }
+        if (!file.isFile()) {
+            throw new IOException("No run result found for " + run + " (looked at " + file.getAbsolutePath() + ")");
+        }
+        return file;
+    }
+
+    /**
+     * @return true when at least one metric regressed past its threshold
+     */
+    public boolean compare(RunResult baseline, RunResult candidate) {
+        System.out.println("Baseline " + baseline.getRunId() + " vs candidate " + candidate.getRunId()
+            + String.format(" (thresholds: throughput -%.1f%%, p99 +%.1f%%)", throughputThreshold * 100, p99Threshold * 100));
+        reportDifferences("Config", baseline.getConfig(), candidate.getConfig());
+        reportDifferences("Environment", baseline.getEnvironment(), candidate.getEnvironment());
+
+        System.out.println(String.format("%-40s %-10s %14s %14s %9s", "metric", "value", "baseline", "candidate", "change"));
+        TreeSet<String> metricNames = new TreeSet<>(fieldNames(baseline.getMetrics()));
+        metricNames.addAll(fieldNames(candidate.getMetrics()));
+        for (String metricName : metricNames) {
+            JsonNode baselineMetric = baseline.getMetrics().get(metricName);
+            JsonNode candidateMetric = candidate.getMetrics().get(metricName);
+            if (baselineMetric == null || candidateMetric == null) {
+                System.out.println(String.format("%-40s only in the %s", metricName, baselineMetric == null ? "candidate" : "baseline"));
+                continue;
+            }
+
+            // Lower throughput and higher p99 latency are worse
+            compareValue(metricName, "throughput", baselineMetric, candidateMetric, -throughputThreshold);
+            compareValue(metricName, "p99", baselineMetric, candidateMetric, p99Threshold);
+        }
+
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions");
+        } else {
+            System.out.println(regressions.size() + " regression(s): " + regressions);
+        }
+        return !regressions.isEmpty();
+    }
+
+    protected void compareValue(String metricName, String field, JsonNode baselineMetric, JsonNode candidateMetric, double threshold) {
+        if (!baselineMetric.has(field) || !candidateMetric.has(field)) {
+            return;
+        }
+        double baselineValue = baselineMetric.get(field).asDouble();
+        double candidateValue = candidateMetric.get(field).asDouble();
+        double change = baselineValue != 0.0 ? (candidateValue - baselineValue) / baselineValue : 0.0;
+        boolean regressed = threshold < 0 ? change < threshold : change > threshold;
+        if (regressed) {
+            regressions.add(metricName + "." + field);
+        }
+        System.out.println(String.format("%-40s %-10s %14.1f %14.1f %+8.1f%%  %s", metricName, field, baselineValue, candidateValue,
+            change * 100, regressed ? "REGRESSION" : ""));
+    }
+
+    protected void reportDifferences(String title, JsonNode baselineNode, JsonNode candidateNode) {
+        TreeSet<String> names = new TreeSet<>(fieldNames(baselineNode));
+        names.addAll(fieldNames(candidateNode));
+        for (String name : names) {
+            String baselineValue = baselineNode.path(name).asText(null);
+            String candidateValue = candidateNode.path(name).asText(null);
+            if (baselineValue == null ? candidateValue != null : !baselineValue.equals(candidateValue)) {
+                System.out.println(title + " differs for " + name + ": " + baselineValue + " -> " + candidateValue);
+            }
+        }
+    }
+
+    protected static List<String> fieldNames(JsonNode node) {
+        List<String> names = new ArrayList<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            names.add(fields.next().getKey());
+        }
+        return names;
+    }
+
+    public List<String> getRegressions() {
+        return regressions;
+    }
+
+}
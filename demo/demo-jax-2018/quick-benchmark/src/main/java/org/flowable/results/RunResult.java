@@ -0,0 +1,215 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.results;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import org.HdrHistogram.Histogram;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.metrics.OperationLatencies;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The persisted outcome of one benchmark run, written to 'runs/&lt;runId&gt;.json' in the results directory:
+ *
+ * <pre>
+ * {
+ *   "schemaVersion": 1,
+ *   "runId": "20181015-101500",
+ *   "timestamp": "2018-10-15T10:15:00.000+0200",
+ *   "config": { "mode": "jdbc", "nrOfThreads": "8", ... },
+ *   "environment": { "javaVersion": "1.8.0_181", "availableProcessors": 8, "databaseProductName": "PostgreSQL", ... },
+ *   "metrics": {
+ *     "start": { "count": 10000, "throughput": 612.3, "mean": 1630.2, "p50": 1500, "p90": 2100, "p99": 4800, "p999": 9100, "max": 15300 },
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * Latencies are in microseconds, throughput in operations per second. A metric may only have a throughput.
+ * The config holds all system properties that are not standard JVM properties, except for passwords.
+ * Fields are only ever added to this schema; a change of meaning bumps the schema version.
+ */
+public class RunResult {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    protected static final String[] JVM_PROPERTY_PREFIXES = { "java.", "jdk.", "sun.", "os.", "user.", "file.", "line.", "path.", "awt.", "jboss.", "native.", "stdout.", "stderr.", "com.zaxxer." };
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+    protected final ObjectNode resultNode;
+
+    public RunResult(String runId) {
+        resultNode = objectMapper.createObjectNode();
+        resultNode.put("schemaVersion", SCHEMA_VERSION);
+        resultNode.put("runId", runId);
+        resultNode.put("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date()));
+        resultNode.putObject("config");
+        resultNode.putObject("environment");
+        resultNode.putObject("metrics");
+        captureConfig();
+    }
+
+    protected RunResult(ObjectNode resultNode) {
+        this.resultNode = resultNode;
+    }
+
+    public static RunResult read(File file) throws IOException {
+        JsonNode node = new ObjectMapper().readTree(file);
+        if (!node.isObject() || !node.has("metrics")) {
+            throw new RuntimeException(file + " is not a benchmark run result");
+        }
+        if (node.path("schemaVersion").asInt() != SCHEMA_VERSION) {
+            throw new RuntimeException(file + " has schema version " + node.path("schemaVersion").asInt() + ", expected " + SCHEMA_VERSION);
+        }
+        return new RunResult((ObjectNode) node);
+    }
+
+    protected void captureConfig() {
+        ObjectNode configNode = (ObjectNode) resultNode.get("config");
+        Map<String, String> config = new TreeMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (!isJvmProperty(name) && !name.toLowerCase().contains("password")) {
+                config.put(name, System.getProperty(name));
+            }
+        }
+        config.forEach(configNode::put);
+    }
+
+    protected boolean isJvmProperty(String name) {
+        for (String prefix : JVM_PROPERTY_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void captureEnvironment(ProcessEngine processEngine) {
+        ObjectNode environmentNode = (ObjectNode) resultNode.get("environment");
+        environmentNode.put("javaVersion", System.getProperty("java.version"));
+        environmentNode.put("javaVendor", System.getProperty("java.vendor"));
+        environmentNode.put("vmName", System.getProperty("java.vm.name"));
+        environmentNode.put("jvmArguments", String.join(" ", ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        environmentNode.put("osName", System.getProperty("os.name"));
+        environmentNode.put("osArch", System.getProperty("os.arch"));
+        environmentNode.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        environmentNode.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        environmentNode.put("flowableVersion", ProcessEngine.VERSION);
+
+        DataSource dataSource = processEngine.getProcessEngineConfiguration().getDataSource();
+        if (dataSource != null) {
+            try (Connection connection = dataSource.getConnection()) {
+                DatabaseMetaData metaData = connection.getMetaData();
+                environmentNode.put("databaseProductName", metaData.getDatabaseProductName());
+                environmentNode.put("databaseProductVersion", metaData.getDatabaseProductVersion());
+                environmentNode.put("jdbcDriver", metaData.getDriverName() + " " + metaData.getDriverVersion());
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        } else {
+            environmentNode.put("databaseProductName", processEngine.getProcessEngineConfiguration().getDatabaseType());
+        }
+    }
+
+    /**
+     * Adds a metric per operation of the given latencies, with the throughput based on the wall clock time of the phase.
+     */
+    public void addMetrics(String prefix, OperationLatencies latencies, long durationNanos) {
+        for (Map.Entry<String, Histogram> entry : latencies.getHistograms().entrySet()) {
+            addMetric(prefix + entry.getKey(), entry.getValue(), durationNanos);
+        }
+    }
+
+    public void addMetric(String name, Histogram histogram, long durationNanos) {
+        ObjectNode metricNode = getMetricNode(name);
+        metricNode.put("count", histogram.getTotalCount());
+        if (durationNanos > 0) {
+            metricNode.put("throughput", histogram.getTotalCount() / (durationNanos / 1_000_000_000.0));
+        }
+        metricNode.put("mean", histogram.getMean());
+        metricNode.put("p50", histogram.getValueAtPercentile(50.0));
+        metricNode.put("p90", histogram.getValueAtPercentile(90.0));
+        metricNode.put("p99", histogram.getValueAtPercentile(99.0));
+        metricNode.put("p999", histogram.getValueAtPercentile(99.9));
+        metricNode.put("max", histogram.getMaxValue());
+    }
+
+    public void addThroughput(String name, double throughput) {
+        addValue(name, "throughput", throughput);
+    }
+
+    public void addValue(String name, String field, double value) {
+        getMetricNode(name).put(field, value);
+    }
+
+    protected ObjectNode getMetricNode(String name) {
+        ObjectNode metricsNode = (ObjectNode) resultNode.get("metrics");
+        return metricsNode.has(name) ? (ObjectNode) metricsNode.get(name) : metricsNode.putObject(name);
+    }
+
+    public File write(File resultsDir) throws IOException {
+        File runsDir = new File(resultsDir, "runs");
+        runsDir.mkdirs();
+        File jsonFile = new File(runsDir, getRunId() + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Run result written to " + jsonFile.getAbsolutePath());
+        return jsonFile;
+    }
+
+    /**
+     * Stores this run as named baseline ('baselines/&lt;name&gt;.json' in the results directory), replacing an earlier one.
+     */
+    public File writeBaseline(File resultsDir, String name) throws IOException {
+        File baselinesDir = new File(resultsDir, "baselines");
+        baselinesDir.mkdirs();
+        File jsonFile = new File(baselinesDir, name + ".json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, resultNode);
+        System.out.println("Baseline " + name + " written to " + jsonFile.getAbsolutePath());
+        return jsonFile;
+    }
+
+    public String getRunId() {
+        return resultNode.get("runId").asText();
+    }
+
+    public JsonNode getConfig() {
+        return resultNode.get("config");
+    }
+
+    public JsonNode getEnvironment() {
+        return resultNode.get("environment");
+    }
+
+    public JsonNode getMetrics() {
+        return resultNode.get("metrics");
+    }
+
+    public ObjectNode toJson() {
+        return resultNode;
+    }
+
+}
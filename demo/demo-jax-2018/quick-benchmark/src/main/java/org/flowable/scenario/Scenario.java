@@ -0,0 +1,160 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.scenario;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A benchmark workload read from a JSON file, e.g.
+ *
+ * <pre>
+ * {
+ *   "name": "order-handling",
+ *   "deployments": [ "benchmark-process.bpmn20.xml", "/path/to/other-process.bpmn20.xml" ],
+ *   "processes": { "testProcess": 3, "otherProcess": 1 },
+ *   "variables": [
+ *     { "name": "customerName", "type": "string", "length": 20 },
+ *     { "name": "amount", "type": "long", "count": 5 },
+ *     { "name": "region", "type": "choice", "values": [ "EU", "US", "APAC" ] }
+ *   ],
+ *   "completionVariables": [ { "name": "goUp", "type": "boolean" } ],
+ *   "threads": 8,
+ *   "mix": { "start": 40, "query": 20, "complete": 25, "getVariables": 10, "historyQuery": 5 },
+ *   "phases": [
+ *     { "name": "fill", "durationSeconds": 20, "mix": { "start": 1 } },
+ *     { "name": "steady", "durationSeconds": 60, "threads": 16 }
+ *   ]
+ * }
+ * </pre>
+ *
+ * Deployments are looked up on the file system first and on the classpath otherwise.
+ * The process to start is picked according to the weights in 'processes'. The 'variables' are passed when starting
+ * a process instance, the 'completionVariables' when completing a task. Phases without 'mix' or 'threads' use the scenario level ones.
+ */
+public class Scenario {
+
+    protected String name;
+    protected List<String> deployments = new ArrayList<>();
+    protected Map<String, Integer> processes = new LinkedHashMap<>();
+    protected int totalProcessWeight;
+    protected List<VariableGenerator> variableGenerators = new ArrayList<>();
+    protected List<VariableGenerator> completionVariableGenerators = new ArrayList<>();
+    protected List<ScenarioPhase> phases = new ArrayList<>();
+
+    public static Scenario load(String location) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = new File(location);
+        JsonNode scenarioNode;
+        if (file.exists()) {
+            scenarioNode = objectMapper.readTree(file);
+        } else {
+            try (InputStream inputStream = Scenario.class.getClassLoader().getResourceAsStream(location)) {
+                if (inputStream == null) {
+                    throw new RuntimeException("Scenario " + location + " not found on the file system nor on the classpath");
+                }
+                scenarioNode = objectMapper.readTree(inputStream);
+            }
+        }
+        return fromJson(scenarioNode, file.exists() ? file.getName() : location);
+    }
+
+    public static Scenario fromJson(JsonNode scenarioNode, String defaultName) {
+        Scenario scenario = new Scenario();
+        scenario.name = scenarioNode.path("name").asText(defaultName);
+
+        scenarioNode.path("deployments").forEach(deployment -> scenario.deployments.add(deployment.asText()));
+
+        scenario.processes = ScenarioPhase.parseWeights(scenarioNode.path("processes"));
+        scenario.processes.values().forEach(weight -> scenario.totalProcessWeight += weight);
+        if (scenario.totalProcessWeight <= 0) {
+            throw new RuntimeException("Scenario " + scenario.name + " has no process with a positive weight");
+        }
+
+        scenarioNode.path("variables").forEach(variableNode -> scenario.variableGenerators.add(VariableGenerator.fromJson(variableNode)));
+        scenarioNode.path("completionVariables").forEach(variableNode -> scenario.completionVariableGenerators.add(VariableGenerator.fromJson(variableNode)));
+
+        Map<String, Integer> defaultMix = scenarioNode.has("mix") ? ScenarioPhase.parseWeights(scenarioNode.get("mix")) : null;
+        int defaultThreads = scenarioNode.path("threads").asInt(Integer.valueOf(System.getProperty("nrOfThreads", "8")));
+        for (JsonNode phaseNode : scenarioNode.path("phases")) {
+            scenario.phases.add(ScenarioPhase.fromJson(phaseNode, defaultMix, defaultThreads));
+        }
+        if (scenario.phases.isEmpty()) {
+            throw new RuntimeException("Scenario " + scenario.name + " has no phases");
+        }
+
+        return scenario;
+    }
+
+    public String nextProcessDefinitionKey() {
+        int value = ThreadLocalRandom.current().nextInt(totalProcessWeight);
+        for (Map.Entry<String, Integer> entry : processes.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Weights changed while picking a process");
+    }
+
+    public Map<String, Object> generateVariables() {
+        return generateVariables(variableGenerators);
+    }
+
+    public Map<String, Object> generateCompletionVariables() {
+        return generateVariables(completionVariableGenerators);
+    }
+
+    protected Map<String, Object> generateVariables(List<VariableGenerator> generators) {
+        Map<String, Object> variables = new HashMap<>();
+        for (VariableGenerator variableGenerator : generators) {
+            variableGenerator.generate(variables);
+        }
+        return variables;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getDeployments() {
+        return deployments;
+    }
+
+    public Map<String, Integer> getProcesses() {
+        return processes;
+    }
+
+    public List<VariableGenerator> getVariableGenerators() {
+        return variableGenerators;
+    }
+
+    public List<VariableGenerator> getCompletionVariableGenerators() {
+        return completionVariableGenerators;
+    }
+
+    public List<ScenarioPhase> getPhases() {
+        return phases;
+    }
+
+}
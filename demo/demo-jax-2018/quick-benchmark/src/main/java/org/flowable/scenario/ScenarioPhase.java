@@ -0,0 +1,110 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.scenario;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One phase of a scenario: 'threads' worker threads that each keep executing operations, picked at random
+ * according to the weights of the 'mix', for 'durationSeconds'.
+ */
+public class ScenarioPhase {
+
+    public static final String START = "start";
+    public static final String QUERY = "query";
+    public static final String COMPLETE = "complete";
+    public static final String GET_VARIABLES = "getVariables";
+    public static final String HISTORY_QUERY = "historyQuery";
+
+    protected String name;
+    protected long durationSeconds;
+    protected int threads;
+    protected Map<String, Integer> mix;
+    protected int totalWeight;
+
+    public ScenarioPhase(String name, long durationSeconds, int threads, Map<String, Integer> mix) {
+        this.name = name;
+        this.durationSeconds = durationSeconds;
+        this.threads = threads;
+        this.mix = mix;
+
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            String operation = entry.getKey();
+            if (!START.equals(operation) && !QUERY.equals(operation) && !COMPLETE.equals(operation)
+                    && !GET_VARIABLES.equals(operation) && !HISTORY_QUERY.equals(operation)) {
+                throw new RuntimeException("Invalid operation " + operation + " in the mix of phase " + name);
+            }
+            totalWeight += entry.getValue();
+        }
+        if (totalWeight <= 0) {
+            throw new RuntimeException("Phase " + name + " has no operation with a positive weight");
+        }
+    }
+
+    public static ScenarioPhase fromJson(JsonNode node, Map<String, Integer> defaultMix, int defaultThreads) {
+        String name = node.path("name").asText("phase");
+        Map<String, Integer> mix = defaultMix;
+        if (node.has("mix")) {
+            mix = parseWeights(node.get("mix"));
+        }
+        if (mix == null) {
+            throw new RuntimeException("Phase " + name + " has no mix and the scenario has no default mix");
+        }
+        return new ScenarioPhase(name, node.path("durationSeconds").asLong(30), node.path("threads").asInt(defaultThreads), mix);
+    }
+
+    /**
+     * Reads an object of name to weight pairs, keeping the order of the file.
+     */
+    public static Map<String, Integer> parseWeights(JsonNode node) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            weights.put(field.getKey(), field.getValue().asInt());
+        }
+        return weights;
+    }
+
+    public String nextOperation() {
+        int value = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Weights changed while picking an operation");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public Map<String, Integer> getMix() {
+        return mix;
+    }
+
+}
@@ -0,0 +1,337 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.scenario;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flowable.WorkerPool;
+import org.flowable.common.engine.api.FlowableObjectNotFoundException;
+import org.flowable.common.engine.api.FlowableOptimisticLockingException;
+import org.flowable.engine.HistoryService;
+import org.flowable.engine.ProcessEngine;
+import org.flowable.engine.RuntimeService;
+import org.flowable.engine.TaskService;
+import org.flowable.engine.repository.DeploymentBuilder;
+import org.flowable.engine.runtime.ProcessInstance;
+import org.flowable.metrics.OperationContext;
+import org.flowable.metrics.OperationLatencies;
+import org.flowable.results.RunResult;
+import org.flowable.task.api.Task;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Deploys the processes of a {@link Scenario} and executes its phases one after the other.
+ *
+ * The operations work on the process instances started during the run:
+ * 'query', 'complete' and 'getVariables' pick a random running instance, 'historyQuery' a random started one.
+ * An instance that turns out to be ended is dropped from the running instances and counted as a 'miss'.
+ * The latencies of misses are kept apart (as '&lt;operation&gt;.miss'), so they don't pull down the latencies of the executed calls.
+ * Concurrent modifications (optimistic locking, task already completed) are counted as 'conflicts'.
+ */
+public class ScenarioRunner {
+
+    public static final String MISS_SUFFIX = ".miss";
+
+    protected final ProcessEngine processEngine;
+    protected final Scenario scenario;
+    protected final String threadModel;
+
+    protected final List<String> runningProcessInstanceIds = new ArrayList<>();
+    protected final List<String> startedProcessInstanceIds = new ArrayList<>();
+
+    protected final List<PhaseResult> phaseResults = new ArrayList<>();
+
+    public ScenarioRunner(ProcessEngine processEngine, Scenario scenario, String threadModel) {
+        this.processEngine = processEngine;
+        this.scenario = scenario;
+        this.threadModel = threadModel;
+    }
+
+    public void deploy() throws IOException {
+        DeploymentBuilder deploymentBuilder = processEngine.getRepositoryService().createDeployment().name(scenario.getName());
+        for (String deployment : scenario.getDeployments()) {
+            File file = new File(deployment);
+            if (file.exists()) {
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    deploymentBuilder.addInputStream(file.getName(), inputStream);
+                }
+            } else {
+                deploymentBuilder.addClasspathResource(deployment);
+            }
+        }
+        System.out.println("Deploying " + scenario.getDeployments() + " for scenario " + scenario.getName());
+        deploymentBuilder.deploy();
+    }
+
+    public void run() throws InterruptedException {
+        for (ScenarioPhase phase : scenario.getPhases()) {
+            System.out.println("Scenario " + scenario.getName() + ", phase " + phase.getName() + ": " + phase.getThreads() + " threads ("
+                + threadModel + ") for " + phase.getDurationSeconds() + " s, mix " + phase.getMix());
+
+            PhaseResult phaseResult = new PhaseResult(phase);
+            phaseResults.add(phaseResult);
+
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(phase.getDurationSeconds());
+            WorkerPool workerPool = new WorkerPool(threadModel, phase.getThreads());
+            for (int i = 0; i < phase.getThreads(); i++) {
+                workerPool.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        executeOperation(phase.nextOperation(), phaseResult);
+                    }
+                });
+            }
+            workerPool.shutdownAndWait();
+            phaseResult.durationNanos = System.nanoTime() - start;
+
+            phaseResult.printSummary();
+        }
+    }
+
+    protected void executeOperation(String operation, PhaseResult phaseResult) {
+        try {
+            long start = System.nanoTime();
+            boolean executed = OperationContext.run(operation, () -> {
+                switch (operation) {
+                    case ScenarioPhase.START:
+                        return start();
+                    case ScenarioPhase.QUERY:
+                        return query();
+                    case ScenarioPhase.COMPLETE:
+                        return complete();
+                    case ScenarioPhase.GET_VARIABLES:
+                        return getVariables();
+                    case ScenarioPhase.HISTORY_QUERY:
+                        return historyQuery();
+                    default:
+                        throw new RuntimeException("Invalid operation " + operation);
+                }
+            });
+            phaseResult.latencies.record(executed ? operation : operation + MISS_SUFFIX, System.nanoTime() - start);
+            phaseResult.count(executed ? phaseResult.executed : phaseResult.misses, operation);
+
+        } catch (FlowableOptimisticLockingException | FlowableObjectNotFoundException e) {
+            phaseResult.count(phaseResult.conflicts, operation);
+
+        } catch (Exception e) {
+            phaseResult.count(phaseResult.errors, operation);
+            e.printStackTrace();
+        }
+    }
+
+    protected boolean start() {
+        ProcessInstance processInstance = processEngine.getRuntimeService().createProcessInstanceBuilder()
+            .processDefinitionKey(scenario.nextProcessDefinitionKey())
+            .variables(scenario.generateVariables())
+            .start();
+        synchronized (runningProcessInstanceIds) {
+            if (!processInstance.isEnded()) {
+                runningProcessInstanceIds.add(processInstance.getId());
+            }
+            startedProcessInstanceIds.add(processInstance.getId());
+        }
+        return true;
+    }
+
+    protected boolean query() {
+        String processInstanceId = randomRunningProcessInstanceId();
+        if (processInstanceId == null) {
+            return false;
+        }
+        RuntimeService runtimeService = processEngine.getRuntimeService();
+        if (runtimeService.createProcessInstanceQuery().processInstanceId(processInstanceId).singleResult() == null) {
+            removeRunningProcessInstanceId(processInstanceId);
+            return false;
+        }
+        processEngine.getTaskService().createTaskQuery().processInstanceId(processInstanceId).list();
+        return true;
+    }
+
+    protected boolean complete() {
+        String processInstanceId = randomRunningProcessInstanceId();
+        if (processInstanceId == null) {
+            return false;
+        }
+        TaskService taskService = processEngine.getTaskService();
+        List<Task> tasks = taskService.createTaskQuery().processInstanceId(processInstanceId).list();
+        if (tasks.isEmpty()) {
+            if (processEngine.getRuntimeService().createProcessInstanceQuery().processInstanceId(processInstanceId).count() == 0) {
+                removeRunningProcessInstanceId(processInstanceId);
+            }
+            return false;
+        }
+        Task task = tasks.get(ThreadLocalRandom.current().nextInt(tasks.size()));
+        taskService.complete(task.getId(), scenario.generateCompletionVariables());
+        return true;
+    }
+
+    protected boolean getVariables() {
+        String processInstanceId = randomRunningProcessInstanceId();
+        if (processInstanceId == null) {
+            return false;
+        }
+        try {
+            processEngine.getRuntimeService().getVariables(processInstanceId);
+            return true;
+        } catch (FlowableObjectNotFoundException e) {
+            removeRunningProcessInstanceId(processInstanceId);
+            return false;
+        }
+    }
+
+    protected boolean historyQuery() {
+        String processInstanceId;
+        synchronized (runningProcessInstanceIds) {
+            if (startedProcessInstanceIds.isEmpty()) {
+                return false;
+            }
+            processInstanceId = startedProcessInstanceIds.get(ThreadLocalRandom.current().nextInt(startedProcessInstanceIds.size()));
+        }
+        HistoryService historyService = processEngine.getHistoryService();
+        historyService.createHistoricProcessInstanceQuery().processInstanceId(processInstanceId).singleResult();
+        historyService.createHistoricActivityInstanceQuery().processInstanceId(processInstanceId).list();
+        return true;
+    }
+
+    protected String randomRunningProcessInstanceId() {
+        synchronized (runningProcessInstanceIds) {
+            if (runningProcessInstanceIds.isEmpty()) {
+                return null;
+            }
+            return runningProcessInstanceIds.get(ThreadLocalRandom.current().nextInt(runningProcessInstanceIds.size()));
+        }
+    }
+
+    protected void removeRunningProcessInstanceId(String processInstanceId) {
+        synchronized (runningProcessInstanceIds) {
+            int index = runningProcessInstanceIds.indexOf(processInstanceId);
+            if (index >= 0) {
+                // Swap with the last element, the order doesn't matter
+                int lastIndex = runningProcessInstanceIds.size() - 1;
+                runningProcessInstanceIds.set(index, runningProcessInstanceIds.get(lastIndex));
+                runningProcessInstanceIds.remove(lastIndex);
+            }
+        }
+    }
+
+    public ObjectNode toJson() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        resultNode.put("scenario", scenario.getName());
+        resultNode.put("threadModel", threadModel);
+        ArrayNode phasesNode = resultNode.putArray("phases");
+        for (PhaseResult phaseResult : phaseResults) {
+            phasesNode.add(phaseResult.toJson());
+        }
+        return resultNode;
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (PhaseResult phaseResult : phaseResults) {
+            runResult.addMetrics("scenario." + scenario.getName() + "." + phaseResult.phase.getName() + ".", phaseResult.latencies, phaseResult.durationNanos);
+        }
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        File jsonFile = new File(resultsDir, "scenario-" + scenario.getName().replaceAll("[^A-Za-z0-9_.-]", "_") + "-" + runId + ".json");
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(jsonFile, toJson());
+        System.out.println("Scenario results written to " + jsonFile.getAbsolutePath());
+    }
+
+    public List<PhaseResult> getPhaseResults() {
+        return phaseResults;
+    }
+
+    public static class PhaseResult {
+
+        protected final ScenarioPhase phase;
+        protected final OperationLatencies latencies = new OperationLatencies();
+        protected final Map<String, AtomicLong> executed = new ConcurrentHashMap<>();
+        protected final Map<String, AtomicLong> misses = new ConcurrentHashMap<>();
+        protected final Map<String, AtomicLong> conflicts = new ConcurrentHashMap<>();
+        protected final Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+        protected long durationNanos;
+
+        public PhaseResult(ScenarioPhase phase) {
+            this.phase = phase;
+        }
+
+        protected void count(Map<String, AtomicLong> counters, String operation) {
+            counters.computeIfAbsent(operation, key -> new AtomicLong()).incrementAndGet();
+        }
+
+        protected long get(Map<String, AtomicLong> counters, String operation) {
+            AtomicLong counter = counters.get(operation);
+            return counter != null ? counter.get() : 0L;
+        }
+
+        public double getThroughput(String operation) {
+            return durationNanos > 0 ? get(executed, operation) / (durationNanos / 1_000_000_000.0) : 0.0;
+        }
+
+        public void printSummary() {
+            System.out.println(String.format("%-14s %10s %10s %10s %10s %10s", "operation", "executed", "ops/sec", "misses", "conflicts", "errors"));
+            for (String operation : new TreeMap<>(phase.getMix()).keySet()) {
+                System.out.println(String.format("%-14s %10d %10.1f %10d %10d %10d", operation, get(executed, operation), getThroughput(operation),
+                    get(misses, operation), get(conflicts, operation), get(errors, operation)));
+            }
+            latencies.printSummary();
+        }
+
+        public ObjectNode toJson() {
+            ObjectMapper objectMapper = new ObjectMapper();
+            ObjectNode phaseNode = objectMapper.createObjectNode();
+            phaseNode.put("name", phase.getName());
+            phaseNode.put("threads", phase.getThreads());
+            phaseNode.put("durationNanos", durationNanos);
+            ObjectNode operationsNode = phaseNode.putObject("operations");
+            for (Map.Entry<String, Integer> entry : new TreeMap<>(phase.getMix()).entrySet()) {
+                String operation = entry.getKey();
+                ObjectNode operationNode = operationsNode.putObject(operation);
+                operationNode.put("weight", entry.getValue());
+                operationNode.put("executed", get(executed, operation));
+                operationNode.put("throughput", getThroughput(operation));
+                operationNode.put("misses", get(misses, operation));
+                operationNode.put("conflicts", get(conflicts, operation));
+                operationNode.put("errors", get(errors, operation));
+            }
+            phaseNode.set("latencies", latencies.toJson());
+            return phaseNode;
+        }
+
+        public ScenarioPhase getPhase() {
+            return phase;
+        }
+
+        public OperationLatencies getLatencies() {
+            return latencies;
+        }
+
+    }
+
+}
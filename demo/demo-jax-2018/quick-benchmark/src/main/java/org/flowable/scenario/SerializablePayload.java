@@ -0,0 +1,40 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.scenario;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * A plain Java object variable, stored by the engine with Java serialization in a byte array.
+ */
+public class SerializablePayload implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    protected String data;
+    protected Date created = new Date();
+
+    public SerializablePayload(String data) {
+        this.data = data;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    public Date getCreated() {
+        return created;
+    }
+
+}
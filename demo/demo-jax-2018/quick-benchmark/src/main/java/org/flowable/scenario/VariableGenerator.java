@@ -0,0 +1,175 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.scenario;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates 'count' process variables of one type, named 'name' (or 'name_0', 'name_1', ... when count > 1).
+ *
+ * Supported types: string (random characters of 'length'), int, long, double, boolean, date,
+ * choice (one of 'values', picked at random), json (an object node of about 'length' characters),
+ * serializable (a {@link SerializablePayload} holding 'length' characters) and bytes (a byte[] of 'length').
+ * When 'maxLength' is set, the length of every value is picked uniformly between 'length' and 'maxLength'.
+ */
+public class VariableGenerator {
+
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    protected static final char[] CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+    protected String name;
+    protected String type;
+    protected int count;
+    protected int length;
+    protected int maxLength;
+    protected List<String> values;
+
+    public VariableGenerator(String name, String type, int count, int length, List<String> values) {
+        this(name, type, count, length, length, values);
+    }
+
+    public VariableGenerator(String name, String type, int count, int length, int maxLength, List<String> values) {
+        this.name = name;
+        this.type = type;
+        this.count = count;
+        this.length = length;
+        this.maxLength = Math.max(length, maxLength);
+        this.values = values;
+
+        if ("choice".equals(type) && values.isEmpty()) {
+            throw new RuntimeException("Variable " + name + " of type choice needs 'values'");
+        }
+        generateValue(); // fails on an invalid type when loading the scenario instead of during the run
+    }
+
+    public static VariableGenerator fromJson(JsonNode node) {
+        if (!node.hasNonNull("name")) {
+            throw new RuntimeException("Variable generator without name: " + node);
+        }
+        List<String> values = new ArrayList<>();
+        node.path("values").forEach(value -> values.add(value.asText()));
+        int length = node.path("length").asInt(10);
+        return new VariableGenerator(node.get("name").asText(), node.path("type").asText("string"),
+            node.path("count").asInt(1), length, node.path("maxLength").asInt(length), values);
+    }
+
+    public void generate(Map<String, Object> variables) {
+        if (count == 1) {
+            variables.put(name, generateValue());
+        } else {
+            for (int i = 0; i < count; i++) {
+                variables.put(name + "_" + i, generateValue());
+            }
+        }
+    }
+
+    protected Object generateValue() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int length = maxLength > this.length ? random.nextInt(this.length, maxLength + 1) : this.length;
+        switch (type) {
+            case "string":
+                return randomString(length);
+            case "int":
+                return random.nextInt(1_000_000);
+            case "long":
+                return random.nextLong();
+            case "double":
+                return random.nextDouble();
+            case "boolean":
+                return random.nextBoolean();
+            case "date":
+                return new Date(System.currentTimeMillis() - random.nextLong(365L * 24 * 60 * 60 * 1000));
+            case "choice":
+                return values.get(random.nextInt(values.size()));
+            case "json":
+                ObjectNode objectNode = OBJECT_MAPPER.createObjectNode();
+                int jsonLength = 2;
+                for (int i = 0; jsonLength < length; i++) {
+                    // "field_i":"<value>", with values of at most 64 characters
+                    String fieldName = "field_" + i;
+                    String value = randomString(Math.max(1, Math.min(64, length - jsonLength - fieldName.length() - 6)));
+                    objectNode.put(fieldName, value);
+                    jsonLength += fieldName.length() + value.length() + 6;
+                }
+                return objectNode;
+            case "serializable":
+                return new SerializablePayload(randomString(length));
+            case "bytes":
+                byte[] bytes = new byte[length];
+                random.nextBytes(bytes);
+                return bytes;
+            default:
+                throw new RuntimeException("Invalid variable type " + type + " for variable " + name);
+        }
+    }
+
+    protected String randomString(int length) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = CHARACTERS[random.nextInt(CHARACTERS.length)];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Approximate size of a generated value as handed to the engine, before the engine serializes it.
+     */
+    public static long sizeOf(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof JsonNode) {
+            return value.toString().length();
+        } else if (value instanceof SerializablePayload) {
+            return ((SerializablePayload) value).getData().length();
+        } else if (value instanceof Integer) {
+            return 4;
+        } else if (value instanceof Boolean) {
+            return 1;
+        } else {
+            return 8;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+}
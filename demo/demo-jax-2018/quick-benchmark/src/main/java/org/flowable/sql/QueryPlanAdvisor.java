@@ -0,0 +1,414 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.sql;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Asks the database for the plan of a statement (EXPLAIN with the parameters of a real execution) and derives index suggestions
+ * from it. Full table scans are recognized in the plans of H2 ('tableScan'), PostgreSQL ('Seq Scan on') and MySQL (access type 'ALL').
+ *
+ * The advice is a heuristic based on the statement text: for every table it collects the columns compared with a parameter,
+ * the join columns and the first range or ORDER BY column, and suggests an index on them (in that order) when the table is scanned
+ * or when no existing index starts with all the columns compared with a parameter. Always check a suggestion against the plan.
+ */
+public class QueryPlanAdvisor {
+
+    protected static final Pattern TABLE_REFERENCE = Pattern.compile("(?i)(?:\\bfrom|\\bjoin)\\s+(?:\\w+\\.)?([A-Za-z_]\\w*)\\s+(?:as\\s+)?([A-Za-z_]\\w*)");
+    protected static final Pattern LEFT_COMPARISON = Pattern.compile("(?i)\\b([A-Za-z_]\\w*)\\.([A-Za-z_]\\w*)\\s*(<=|>=|<>|!=|=|<|>|\\bis\\s+not\\b|\\bis\\b|\\blike\\b|\\bin\\b|\\bbetween\\b)\\s*(\\(?\\s*[\\w.?']+)?");
+    protected static final Pattern RIGHT_COMPARISON = Pattern.compile("(?i)(<=|>=|=|<|>)\\s*([A-Za-z_]\\w*)\\.([A-Za-z_]\\w*)\\b");
+    protected static final Pattern ORDER_BY = Pattern.compile("(?i)\\border\\s+by\\s+(.*?)(?:\\blimit\\b|\\boffset\\b|\\bfetch\\b|\\)|$)");
+    protected static final Pattern COLUMN_REFERENCE = Pattern.compile("\\b([A-Za-z_]\\w*)\\.([A-Za-z_]\\w*)\\b");
+    protected static final Pattern H2_TABLE_SCAN = Pattern.compile("(?i)/\\*\\s*(?:\\w+\\.)?(\\w+)\\.tableScan");
+    protected static final Pattern POSTGRES_TABLE_SCAN = Pattern.compile("(?i)Seq Scan on (?:\\w+\\.)?(\\w+)");
+
+    protected static final Set<String> KEYWORDS = new LinkedHashSet<>(Arrays.asList("WHERE", "ON", "INNER", "LEFT", "RIGHT", "OUTER", "FULL", "CROSS",
+        "JOIN", "ORDER", "GROUP", "LIMIT", "OFFSET", "UNION", "NATURAL", "SELECT", "SET", "AND", "OR"));
+
+    protected final DataSource dataSource;
+    protected final Map<String, Map<String, List<String>>> indexesPerTable = new HashMap<>();
+
+    public QueryPlanAdvisor(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Explains the statement with the given parameters (by index, as captured by the {@link StatementAccountingDataSource})
+     * and suggests indexes for it.
+     */
+    public QueryPlan explain(String sql, Map<Integer, Object> parameters) {
+        QueryPlan queryPlan = new QueryPlan(sql);
+        Map<String, String> tablesPerAlias = getTablesPerAlias(sql);
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            if (parameters != null) {
+                for (Map.Entry<Integer, Object> entry : parameters.entrySet()) {
+                    statement.setObject(entry.getKey(), entry.getValue());
+                }
+            }
+
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                while (resultSet.next()) {
+                    if (metaData.getColumnCount() == 1) {
+                        plan.append(resultSet.getString(1)).append('\n');
+                    } else {
+                        // MySQL style: one row per table access
+                        List<String> values = new ArrayList<>();
+                        Map<String, String> row = new HashMap<>();
+                        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                            String value = resultSet.getString(i);
+                            values.add(metaData.getColumnLabel(i) + "=" + value);
+                            row.put(metaData.getColumnLabel(i).toLowerCase(), value);
+                        }
+                        plan.append(String.join(", ", values)).append('\n');
+                        if ("ALL".equalsIgnoreCase(row.get("type")) && row.get("table") != null) {
+                            queryPlan.scannedTables.add(resolveTable(row.get("table"), tablesPerAlias));
+                        }
+                    }
+                }
+            }
+            queryPlan.plan = plan.toString().trim();
+
+            for (Pattern tableScan : Arrays.asList(H2_TABLE_SCAN, POSTGRES_TABLE_SCAN)) {
+                Matcher matcher = tableScan.matcher(queryPlan.plan);
+                while (matcher.find()) {
+                    queryPlan.scannedTables.add(resolveTable(matcher.group(1), tablesPerAlias));
+                }
+            }
+
+            suggestIndexes(connection, queryPlan, tablesPerAlias);
+
+        } catch (SQLException e) {
+            queryPlan.plan = "EXPLAIN failed: " + e.getMessage();
+        }
+        return queryPlan;
+    }
+
+    protected void suggestIndexes(Connection connection, QueryPlan queryPlan, Map<String, String> tablesPerAlias) throws SQLException {
+        String sql = normalize(queryPlan.sql);
+        Map<String, ColumnUsage> usagePerAlias = new LinkedHashMap<>();
+        for (String alias : tablesPerAlias.keySet()) {
+            // the join columns only matter for the joined tables, not for the one the join starts from
+            usagePerAlias.put(alias, new ColumnUsage(usagePerAlias.isEmpty()));
+        }
+
+        Matcher leftMatcher = LEFT_COMPARISON.matcher(sql);
+        while (leftMatcher.find()) {
+            ColumnUsage usage = usagePerAlias.get(leftMatcher.group(1).toUpperCase());
+            if (usage == null) {
+                continue;
+            }
+            String column = leftMatcher.group(2).toUpperCase();
+            String operator = leftMatcher.group(3).toUpperCase().replaceAll("\\s+", " ");
+            String rightSide = leftMatcher.group(4) != null ? leftMatcher.group(4).trim() : "";
+            boolean joinColumn = COLUMN_REFERENCE.matcher(rightSide).lookingAt() && !rightSide.contains("?");
+            if ("=".equals(operator) || "IN".equals(operator) || "IS".equals(operator)) {
+                if (!joinColumn) {
+                    usage.equalityColumns.add(column);
+                } else if (!usage.drivingTable) {
+                    usage.joinColumns.add(column);
+                }
+            } else if (!"<>".equals(operator) && !"!=".equals(operator)) {
+                usage.rangeColumns.add(column);
+            }
+        }
+        Matcher rightMatcher = RIGHT_COMPARISON.matcher(sql);
+        while (rightMatcher.find()) {
+            ColumnUsage usage = usagePerAlias.get(rightMatcher.group(2).toUpperCase());
+            if (usage != null && !usage.drivingTable && "=".equals(rightMatcher.group(1))) {
+                usage.joinColumns.add(rightMatcher.group(3).toUpperCase());
+            }
+        }
+        Matcher orderByMatcher = ORDER_BY.matcher(sql);
+        while (orderByMatcher.find()) {
+            Matcher columnMatcher = COLUMN_REFERENCE.matcher(orderByMatcher.group(1));
+            while (columnMatcher.find()) {
+                ColumnUsage usage = usagePerAlias.get(columnMatcher.group(1).toUpperCase());
+                if (usage != null) {
+                    usage.orderColumns.add(columnMatcher.group(2).toUpperCase());
+                }
+            }
+        }
+
+        for (Map.Entry<String, ColumnUsage> entry : usagePerAlias.entrySet()) {
+            String table = tablesPerAlias.get(entry.getKey());
+            ColumnUsage usage = entry.getValue();
+            boolean scanned = queryPlan.scannedTables.contains(table);
+            List<String> columns = usage.getIndexColumns(scanned);
+            if (columns.isEmpty()) {
+                continue;
+            }
+
+            String bestIndex = null;
+            int bestCoverage = -1;
+            boolean equalityColumnsCovered = false;
+            for (Map.Entry<String, List<String>> index : getIndexes(connection, table).entrySet()) {
+                int coverage = usage.getCoverage(index.getValue(), columns);
+                if (coverage > bestCoverage) {
+                    bestCoverage = coverage;
+                    bestIndex = index.getKey();
+                }
+                equalityColumnsCovered |= usage.coversEqualityColumns(index.getValue());
+            }
+
+            if (scanned) {
+                if (bestCoverage >= columns.size()) {
+                    queryPlan.notes.add("Table scan on " + table + " although index " + bestIndex + " covers " + columns
+                        + " (low selectivity or missing statistics?)");
+                } else {
+                    queryPlan.suggestions.add(new IndexSuggestion(table, columns, "table scan"));
+                }
+            } else if (!usage.equalityColumns.isEmpty() && !equalityColumnsCovered) {
+                queryPlan.suggestions.add(new IndexSuggestion(table, columns, bestIndex != null
+                    ? "best index " + bestIndex + " covers " + Math.max(bestCoverage, 0) + " of " + columns.size() + " columns"
+                    : "no index"));
+            }
+        }
+    }
+
+    /**
+     * The columns of the indexes of the table, by index name (cached).
+     */
+    protected Map<String, List<String>> getIndexes(Connection connection, String table) throws SQLException {
+        Map<String, List<String>> indexes = indexesPerTable.get(table);
+        if (indexes != null) {
+            return indexes;
+        }
+
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, TreeMap<Short, String>> columnsPerIndex = new LinkedHashMap<>();
+        for (String tableName : new LinkedHashSet<>(Arrays.asList(table, table.toLowerCase(), table.toUpperCase()))) {
+            try (ResultSet resultSet = metaData.getIndexInfo(connection.getCatalog(), null, tableName, false, true)) {
+                while (resultSet.next()) {
+                    String indexName = resultSet.getString("INDEX_NAME");
+                    String columnName = resultSet.getString("COLUMN_NAME");
+                    if (indexName != null && columnName != null && resultSet.getShort("TYPE") != DatabaseMetaData.tableIndexStatistic) {
+                        columnsPerIndex.computeIfAbsent(indexName.toUpperCase(), key -> new TreeMap<>())
+                            .put(resultSet.getShort("ORDINAL_POSITION"), columnName.toUpperCase());
+                    }
+                }
+            }
+            if (!columnsPerIndex.isEmpty()) {
+                break;
+            }
+        }
+
+        indexes = new LinkedHashMap<>();
+        for (Map.Entry<String, TreeMap<Short, String>> entry : columnsPerIndex.entrySet()) {
+            indexes.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        }
+        indexesPerTable.put(table, indexes);
+        return indexes;
+    }
+
+    /**
+     * The referenced tables by their (upper case) alias. A table without alias is registered under its own name.
+     */
+    protected static Map<String, String> getTablesPerAlias(String sql) {
+        Map<String, String> tablesPerAlias = new LinkedHashMap<>();
+        Matcher matcher = TABLE_REFERENCE.matcher(normalize(sql));
+        while (matcher.find()) {
+            String table = matcher.group(1).toUpperCase();
+            String alias = matcher.group(2).toUpperCase();
+            if (KEYWORDS.contains(table)) {
+                continue;
+            }
+            tablesPerAlias.put(KEYWORDS.contains(alias) ? table : alias, table);
+        }
+        return tablesPerAlias;
+    }
+
+    protected static String resolveTable(String tableOrAlias, Map<String, String> tablesPerAlias) {
+        String name = tableOrAlias.toUpperCase();
+        return tablesPerAlias.getOrDefault(name, name);
+    }
+
+    protected static String normalize(String sql) {
+        return sql.replaceAll("\\s+", " ").trim();
+    }
+
+    protected static class ColumnUsage {
+
+        protected final boolean drivingTable;
+        protected final Set<String> equalityColumns = new LinkedHashSet<>();
+        protected final Set<String> joinColumns = new LinkedHashSet<>();
+        protected final Set<String> rangeColumns = new LinkedHashSet<>();
+        protected final Set<String> orderColumns = new LinkedHashSet<>();
+
+        protected ColumnUsage(boolean drivingTable) {
+            this.drivingTable = drivingTable;
+        }
+
+        /**
+         * Equality columns first, then the join columns and then the first range column, or the ORDER BY columns when there is none.
+         * Tables that are only joined or sorted on get no columns unless they are scanned.
+         */
+        protected List<String> getIndexColumns(boolean scanned) {
+            if (equalityColumns.isEmpty() && rangeColumns.isEmpty() && !scanned) {
+                return new ArrayList<>();
+            }
+            Set<String> columns = new LinkedHashSet<>(equalityColumns);
+            columns.addAll(joinColumns);
+            if (!rangeColumns.isEmpty()) {
+                columns.add(rangeColumns.iterator().next());
+            } else {
+                columns.addAll(orderColumns);
+            }
+            return new ArrayList<>(columns);
+        }
+
+        /**
+         * The number of leading index columns that are usable: equality or join columns in any order,
+         * followed by the next column of the suggestion.
+         */
+        protected int getCoverage(List<String> indexColumns, List<String> columns) {
+            int coverage = 0;
+            while (coverage < indexColumns.size()
+                    && (equalityColumns.contains(indexColumns.get(coverage)) || joinColumns.contains(indexColumns.get(coverage)))) {
+                coverage++;
+            }
+            if (coverage < indexColumns.size() && coverage < columns.size() && indexColumns.get(coverage).equals(columns.get(coverage))) {
+                coverage++;
+            }
+            return coverage;
+        }
+
+        protected boolean coversEqualityColumns(List<String> indexColumns) {
+            Set<String> leadingColumns = new LinkedHashSet<>();
+            for (String column : indexColumns) {
+                if (!equalityColumns.contains(column)) {
+                    break;
+                }
+                leadingColumns.add(column);
+            }
+            return leadingColumns.containsAll(equalityColumns);
+        }
+
+    }
+
+    public static class QueryPlan {
+
+        protected final String sql;
+        protected String plan;
+        protected final Set<String> scannedTables = new LinkedHashSet<>();
+        protected final List<IndexSuggestion> suggestions = new ArrayList<>();
+        protected final List<String> notes = new ArrayList<>();
+
+        public QueryPlan(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getPlan() {
+            return plan;
+        }
+
+        public Set<String> getScannedTables() {
+            return scannedTables;
+        }
+
+        public List<IndexSuggestion> getSuggestions() {
+            return suggestions;
+        }
+
+        public List<String> getNotes() {
+            return notes;
+        }
+
+        public ObjectNode toJson() {
+            ObjectNode planNode = new ObjectMapper().createObjectNode();
+            planNode.put("sql", normalize(sql));
+            planNode.put("plan", plan);
+            ArrayNode scannedNode = planNode.putArray("scannedTables");
+            scannedTables.forEach(scannedNode::add);
+            ArrayNode suggestionsNode = planNode.putArray("suggestions");
+            for (IndexSuggestion suggestion : suggestions) {
+                ObjectNode suggestionNode = suggestionsNode.addObject();
+                suggestionNode.put("table", suggestion.table);
+                suggestionNode.put("reason", suggestion.reason);
+                suggestionNode.put("ddl", suggestion.getDdl());
+            }
+            ArrayNode notesNode = planNode.putArray("notes");
+            notes.forEach(notesNode::add);
+            return planNode;
+        }
+
+    }
+
+    public static class IndexSuggestion {
+
+        protected final String table;
+        protected final List<String> columns;
+        protected final String reason;
+
+        public IndexSuggestion(String table, List<String> columns, String reason) {
+            this.table = table;
+            this.columns = columns;
+            this.reason = reason;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * Index names are kept within 30 characters (Oracle).
+         */
+        public String getIndexName() {
+            String tableName = table.startsWith("ACT_") ? table.substring(4) : table;
+            String name = "ACT_IDX_" + tableName + "_" + Integer.toHexString(columns.hashCode() & 0xfffff).toUpperCase();
+            return name.length() > 30 ? name.substring(0, 30) : name;
+        }
+
+        public String getDdl() {
+            return "create index " + getIndexName() + " on " + table + "(" + String.join(", ", columns) + ");";
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.sql;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.flowable.metrics.OperationContext;
+import org.flowable.sql.StatementStatistics.StatementCounter;
+
+/**
+ * Wraps a {@link DataSource} so that every statement executed on its connections is recorded in a {@link StatementStatistics}:
+ * the execution time of the execute call, the rows changed (updates) or fetched from the result set (queries),
+ * attributed to the operation of the {@link OperationContext} of the executing thread.
+ *
+ * Uses JDK dynamic proxies for the connections, statements and result sets, so it works with any driver.
+ * When {@link StatementStatistics#isCaptureParameters()} is enabled, the parameters of the last execution of every statement
+ * are kept too (e.g. to EXPLAIN it afterwards).
+ */
+public class StatementAccountingDataSource implements DataSource {
+
+    protected final DataSource delegate;
+    protected final StatementStatistics statistics;
+
+    public StatementAccountingDataSource(DataSource delegate, StatementStatistics statistics) {
+        this.delegate = delegate;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxyConnection(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxyConnection(delegate.getConnection(username, password));
+    }
+
+    protected Connection proxyConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return proxyStatement((Statement) result, sql);
+            }
+            return result;
+        });
+    }
+
+    protected Statement proxyStatement(Statement statement, String preparedSql) {
+        Class<?> statementInterface = statement instanceof CallableStatement ? CallableStatement.class
+            : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        StatementInvocationHandler handler = new StatementInvocationHandler(statement, preparedSql);
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { statementInterface }, handler);
+    }
+
+    protected ResultSet proxyResultSet(ResultSet resultSet, StatementCounter counter) {
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+            Object result = invoke(resultSet, method, args);
+            if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                counter.addRows(1);
+            }
+            return result;
+        });
+    }
+
+    protected static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    protected class StatementInvocationHandler implements InvocationHandler {
+
+        protected final Statement statement;
+        protected final String preparedSql;
+        protected final Map<Integer, Object> parameters = new TreeMap<>();
+        protected StatementCounter lastCounter;
+
+        public StatementInvocationHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
+            if (methodName.startsWith("execute")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                String operation = OperationContext.getCurrentOperation();
+                StatementCounter counter = statistics.getCounter(operation, sql != null ? sql : "<batch>");
+                lastCounter = counter;
+
+                long start = System.nanoTime();
+                Object result = StatementAccountingDataSource.invoke(statement, method, args);
+                long durationNanos = System.nanoTime() - start;
+
+                statistics.record(counter, operation, durationNanos, getChangedRows(result));
+                if (statistics.isCaptureParameters()) {
+                    counter.setLastParameters(new TreeMap<>(parameters));
+                }
+                if (result instanceof ResultSet) {
+                    return proxyResultSet((ResultSet) result, counter);
+                }
+                return result;
+
+            } else if (statistics.isCaptureParameters() && methodName.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], "setNull".equals(methodName) ? null : args[1]);
+
+            } else if ("clearParameters".equals(methodName)) {
+                parameters.clear();
+
+            } else if ("getResultSet".equals(methodName)) {
+                ResultSet resultSet = (ResultSet) StatementAccountingDataSource.invoke(statement, method, args);
+                return resultSet != null && lastCounter != null ? proxyResultSet(resultSet, lastCounter) : resultSet;
+            }
+
+            return StatementAccountingDataSource.invoke(statement, method, args);
+        }
+
+        protected long getChangedRows(Object result) throws SQLException {
+            if (result instanceof Integer) {
+                return (Integer) result;
+            } else if (result instanceof Long) {
+                return (Long) result;
+            } else if (result instanceof int[]) {
+                long rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(count, 0);
+                }
+                return rows;
+            } else if (Boolean.FALSE.equals(result)) {
+                return statement.getUpdateCount();
+            }
+            return 0L;
+        }
+
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return delegate.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+
+    public DataSource getDelegate() {
+        return delegate;
+    }
+
+    public StatementStatistics getStatistics() {
+        return statistics;
+    }
+
+}
@@ -0,0 +1,299 @@
+/* Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.flowable.sql;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flowable.metrics.OperationContext;
+import org.flowable.results.RunResult;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Counts the executed SQL statements, the rows they returned or changed and their execution time,
+ * per benchmark operation ({@link OperationContext}) and per SQL text. Also keeps the 'topN' slowest single executions.
+ */
+public class StatementStatistics {
+
+    protected final int topN;
+
+    protected final Map<String, Map<String, StatementCounter>> countersPerOperation = new ConcurrentHashMap<>();
+    protected final PriorityQueue<SlowStatement> slowestStatements = new PriorityQueue<>(Comparator.comparingLong(SlowStatement::getDurationNanos));
+    protected volatile long slowestThresholdNanos;
+    protected volatile boolean captureParameters;
+
+    public StatementStatistics(int topN) {
+        this.topN = topN;
+    }
+
+    public StatementCounter getCounter(String operation, String sql) {
+        return countersPerOperation.computeIfAbsent(operation, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(sql, StatementCounter::new);
+    }
+
+    /**
+     * The counters of the statements executed by the given operation.
+     */
+    public Collection<StatementCounter> getCounters(String operation) {
+        Map<String, StatementCounter> counters = countersPerOperation.get(operation);
+        return counters != null ? new ArrayList<>(counters.values()) : Collections.emptyList();
+    }
+
+    public void record(StatementCounter counter, String operation, long durationNanos, long rows) {
+        counter.executions.incrementAndGet();
+        counter.durationNanos.addAndGet(durationNanos);
+        if (rows > 0) {
+            counter.rows.addAndGet(rows);
+        }
+
+        if (durationNanos > slowestThresholdNanos) {
+            synchronized (slowestStatements) {
+                slowestStatements.add(new SlowStatement(counter.sql, operation, durationNanos));
+                if (slowestStatements.size() > topN) {
+                    slowestStatements.poll();
+                    slowestThresholdNanos = slowestStatements.peek().durationNanos;
+                }
+            }
+        }
+    }
+
+    /**
+     * SELECT, INSERT, UPDATE, DELETE or OTHER.
+     */
+    public static String getStatementType(String sql) {
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        String keyword = trimmed.substring(0, end).toUpperCase();
+        switch (keyword) {
+            case "SELECT":
+            case "INSERT":
+            case "UPDATE":
+            case "DELETE":
+                return keyword;
+            default:
+                return "OTHER";
+        }
+    }
+
+    public void printSummary() {
+        System.out.println("SQL statements per operation:");
+        System.out.println(String.format("%-30s %-7s %12s %12s %12s %14s %12s", "operation", "type", "statements", "per op", "rows", "rows per op", "time (ms)"));
+        for (Map.Entry<String, Map<String, StatementCounter>> entry : new TreeMap<>(countersPerOperation).entrySet()) {
+            String operation = entry.getKey();
+            long invocations = OperationContext.getInvocationCount(operation);
+            for (Map.Entry<String, long[]> typeEntry : totalsPerType(entry.getValue()).entrySet()) {
+                long[] totals = typeEntry.getValue();
+                System.out.println(String.format("%-30s %-7s %12d %12s %12d %14s %12d", operation, typeEntry.getKey(), totals[0],
+                    invocations > 0 ? String.format("%.1f", (double) totals[0] / invocations) : "-", totals[1],
+                    invocations > 0 ? String.format("%.1f", (double) totals[1] / invocations) : "-", TimeUnit.NANOSECONDS.toMillis(totals[2])));
+            }
+        }
+
+        System.out.println("Top " + topN + " slowest statements:");
+        for (SlowStatement slowStatement : getSlowestStatements()) {
+            System.out.println(String.format("%10d us  %-25s %s", TimeUnit.NANOSECONDS.toMicros(slowStatement.durationNanos), slowStatement.operation,
+                abbreviate(slowStatement.sql, 160)));
+        }
+    }
+
+    /**
+     * Statement count, rows and time (nanos) per statement type.
+     */
+    protected Map<String, long[]> totalsPerType(Map<String, StatementCounter> counters) {
+        Map<String, long[]> totals = new TreeMap<>();
+        for (StatementCounter counter : counters.values()) {
+            long[] typeTotals = totals.computeIfAbsent(counter.type, key -> new long[3]);
+            typeTotals[0] += counter.executions.get();
+            typeTotals[1] += counter.rows.get();
+            typeTotals[2] += counter.durationNanos.get();
+        }
+        return totals;
+    }
+
+    /**
+     * The rows changed by INSERT, UPDATE and DELETE statements of all operations, limited to the statements
+     * mentioning the given table name prefix (e.g. ACT_HI_) when it isn't null.
+     */
+    public long getRowsWritten(String tableNamePrefix) {
+        long rows = 0;
+        for (Map<String, StatementCounter> counters : countersPerOperation.values()) {
+            for (StatementCounter counter : counters.values()) {
+                if (("INSERT".equals(counter.type) || "UPDATE".equals(counter.type) || "DELETE".equals(counter.type))
+                        && (tableNamePrefix == null || counter.sql.toUpperCase().contains(tableNamePrefix))) {
+                    rows += counter.rows.get();
+                }
+            }
+        }
+        return rows;
+    }
+
+    public List<SlowStatement> getSlowestStatements() {
+        List<SlowStatement> statements;
+        synchronized (slowestStatements) {
+            statements = new ArrayList<>(slowestStatements);
+        }
+        statements.sort(Comparator.comparingLong(SlowStatement::getDurationNanos).reversed());
+        return statements;
+    }
+
+    public void addMetrics(RunResult runResult) {
+        for (Map.Entry<String, Map<String, StatementCounter>> entry : countersPerOperation.entrySet()) {
+            long invocations = OperationContext.getInvocationCount(entry.getKey());
+            if (invocations > 0) {
+                long statements = 0;
+                for (StatementCounter counter : entry.getValue().values()) {
+                    statements += counter.executions.get();
+                }
+                runResult.addValue("sql." + entry.getKey(), "statementsPerOperation", (double) statements / invocations);
+            }
+        }
+    }
+
+    public ObjectNode toJson() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode resultNode = objectMapper.createObjectNode();
+        ObjectNode operationsNode = resultNode.putObject("operations");
+        for (Map.Entry<String, Map<String, StatementCounter>> entry : new TreeMap<>(countersPerOperation).entrySet()) {
+            ObjectNode operationNode = operationsNode.putObject(entry.getKey());
+            operationNode.put("invocations", OperationContext.getInvocationCount(entry.getKey()));
+            ArrayNode statementsNode = operationNode.putArray("statements");
+            for (StatementCounter counter : entry.getValue().values()) {
+                ObjectNode statementNode = statementsNode.addObject();
+                statementNode.put("type", counter.type);
+                statementNode.put("sql", counter.sql);
+                statementNode.put("executions", counter.executions.get());
+                statementNode.put("rows", counter.rows.get());
+                statementNode.put("durationNanos", counter.durationNanos.get());
+            }
+        }
+        ArrayNode slowestNode = resultNode.putArray("slowest");
+        for (SlowStatement slowStatement : getSlowestStatements()) {
+            ObjectNode statementNode = slowestNode.addObject();
+            statementNode.put("operation", slowStatement.operation);
+            statementNode.put("sql", slowStatement.sql);
+            statementNode.put("durationNanos", slowStatement.durationNanos);
+        }
+        return resultNode;
+    }
+
+    public void writeResults(File resultsDir, String runId) throws IOException {
+        resultsDir.mkdirs();
+        File jsonFile = new File(resultsDir, "sql-statistics-" + runId + ".json");
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(jsonFile, toJson());
+        System.out.println("SQL statistics written to " + jsonFile.getAbsolutePath());
+    }
+
+    public boolean isCaptureParameters() {
+        return captureParameters;
+    }
+
+    public void setCaptureParameters(boolean captureParameters) {
+        this.captureParameters = captureParameters;
+    }
+
+    protected static String abbreviate(String sql, int maxLength) {
+        String singleLine = sql.replaceAll("\\s+", " ").trim();
+        return singleLine.length() > maxLength ? singleLine.substring(0, maxLength) + "..." : singleLine;
+    }
+
+    public static class StatementCounter {
+
+        protected final String sql;
+        protected final String type;
+        protected final AtomicLong executions = new AtomicLong();
+        protected final AtomicLong rows = new AtomicLong();
+        protected final AtomicLong durationNanos = new AtomicLong();
+        protected volatile Map<Integer, Object> lastParameters;
+
+        public StatementCounter(String sql) {
+            this.sql = sql;
+            this.type = getStatementType(sql);
+        }
+
+        public void addRows(long rows) {
+            this.rows.addAndGet(rows);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public long getExecutions() {
+            return executions.get();
+        }
+
+        public long getDurationNanos() {
+            return durationNanos.get();
+        }
+
+        /**
+         * The parameters (by index) of the last execution, only when capturing parameters was enabled.
+         */
+        public Map<Integer, Object> getLastParameters() {
+            return lastParameters;
+        }
+
+        public void setLastParameters(Map<Integer, Object> lastParameters) {
+            this.lastParameters = lastParameters;
+        }
+
+    }
+
+    public static class SlowStatement {
+
+        protected final String sql;
+        protected final String operation;
+        protected final long durationNanos;
+
+        public SlowStatement(String sql, String operation, long durationNanos) {
+            this.sql = sql;
+            this.operation = operation;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+    }
+
+}